@@ -3,6 +3,7 @@
 
 # Default commands and library locations
 JAVAC_CMD=javac
+JAVA_CMD=java
 JAR_CMD=jar
 JAR_FLAGS=cvf
 FASTJAR_ENABLED=no
@@ -160,6 +161,7 @@ with-jdk-home:,\
 \
 with-jar:,\
 with-javac:,\
+with-java:,\
 \
 with-jni-include:,\
 with-sdl-include:\
@@ -241,6 +243,7 @@ while true; do
       echo "External programs:"
       echo "  --with-jar                : Location and name of the jar tool (default: $JAR_CMD)"
       echo "  --with-javac              : Location and name of the javac tool (default: $JAVAC_CMD)"
+      echo "  --with-java               : Location and name of the java launcher (default: $JAVA_CMD)"
       echo
       echo "Header file locations:"
       echo "Note: Quoting is neccessary for multiple path elements."
@@ -452,6 +455,10 @@ while true; do
       JAVAC_CMD=$2
       echo "using javac command: $JAVAC_CMD"
       shift 2 ;;
+    --with-java )
+      JAVA_CMD=$2
+      echo "using java command: $JAVA_CMD"
+      shift 2 ;;
     --with-jni-include )
       JNI_INCLUDE=$2
       echo "using JNI include paths: $JNI_INCLUDE"
@@ -611,6 +618,12 @@ if [ $MIDPATH_ENABLED = yes ]; then
   # Add classes to midpath and microbackend jars (which could be used in a Java SE environment)
   ${JAR_CMD} uvf $MIDPATH_JAR -C components/j2se-glue/classes .
   ${JAR_CMD} uvf $MICROBACKEND_JAR -C components/j2se-glue/classes com
+
+  # Convert the BDF fonts to the binary format loaded at startup by BDFFontPeer
+  ${JAVA_CMD} -cp components/j2se-glue/classes:$MIDPATH_JAR org.thenesis.midpath.font.bdf.BDFConverter \
+    components/core/resources/org/thenesis/midpath/font/bdf \
+    components/j2se-glue/fonts/org/thenesis/midpath/font/bdf || exit 1
+  ${JAR_CMD} uvf $MIDPATH_JAR -C components/j2se-glue/fonts .
 fi
 
 if [ $KXML2_DIST_ENABLED = yes ]; then
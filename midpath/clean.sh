@@ -1,4 +1,5 @@
 find . -name '*.class' -exec rm -f {} \;
+rm -rf components/j2se-glue/fonts
 make -C external/sdljava-cldc/native/ clean
 make -C native/file/ clean
 make -C native/nio/ clean
@@ -25,12 +25,18 @@
 
 package com.sun.midp.chameleon;
 
-import java.util.Vector;
+import com.sun.midp.main.Configuration;
 
 /**
  * Chameleon graphics queue class. This class contains methods 
  * to help to better control when, how, and how many pixels 
  * actually get blitted from the buffer to the physical display.
+ * <p>
+ * The queue accumulates the damaged regions of a frame. Two regions
+ * are merged into their bounding box when the pixels it would needlessly
+ * blit cost less than an extra blit (see <code>regionCost</code>), and
+ * the number of regions of a frame is capped by merging the cheapest
+ * pairs first.
  */
 public class CGraphicsQ {
     /** 
@@ -40,14 +46,72 @@ public class CGraphicsQ {
      */    
     public static final boolean DEBUG = false;
     
-    /** A queue of refresh areas, represented by 4 element arrays */
-    protected Vector refreshQ;
+    /** Default maximum number of regions per frame */
+    public static final int DEFAULT_MAX_REGIONS = 8;
+    
+    /** Default cost of a blit, in pixels */
+    public static final int DEFAULT_REGION_COST = 2048;
+    
+    /** 
+     * The refresh areas of the current frame, as (x, y, w, h)
+     * quadruples. One more slot than the maximum is kept so that
+     * the cap can be applied after an insertion.
+     */
+    private int[] regions;
+    
+    /** Number of regions in the queue */
+    private int regionCount;
+    
+    /** Maximum number of regions per frame */
+    private int maxRegions;
+    
+    /** 
+     * Fixed cost of a blit, expressed in pixels. Two regions are merged
+     * when their bounding box holds at most this many pixels which are
+     * in neither region.
+     */
+    private int regionCost;
+    
+    /* Statistics of the current frame */
+    private int requestCount;
+    
+    /* Statistics of the last frame */
+    private int lastRequestCount;
+    private int lastRegionCount;
+    private int lastPixelCount;
+    
+    /* Statistics since the queue was created */
+    private int frameCount;
+    private long totalPixelCount;
     
     /**
-     * Construct a new Graphics queue. 
+     * Construct a new Graphics queue. The maximum number of regions per
+     * frame and the cost of a blit are read from the
+     * <code>org.thenesis.midpath.ui.damage.maxRegions</code> and
+     * <code>org.thenesis.midpath.ui.damage.regionCost</code> properties.
      */
     public CGraphicsQ() {
-        refreshQ = new Vector();
+        this(Configuration.getPositiveIntProperty(
+                "org.thenesis.midpath.ui.damage.maxRegions", 
+                DEFAULT_MAX_REGIONS),
+             Configuration.getNonNegativeIntProperty(
+                "org.thenesis.midpath.ui.damage.regionCost", 
+                DEFAULT_REGION_COST));
+    }
+    
+    /**
+     * Construct a new Graphics queue.
+     *
+     * @param maxRegions the maximum number of regions per frame
+     * @param regionCost the cost of a blit, in pixels
+     */
+    public CGraphicsQ(int maxRegions, int regionCost) {
+        if (maxRegions < 1) {
+            maxRegions = 1;
+        }
+        this.maxRegions = maxRegions;
+        this.regionCost = regionCost;
+        regions = new int[(maxRegions + 1) * 4];
     }
     
     /**
@@ -63,47 +127,54 @@ public class CGraphicsQ {
      * @param w the width of the region
      * @param h the height of the region
      */
-    public void queueRefresh(int x, int y, int w, int h) {
-        synchronized (refreshQ) {
-            int[] region;
-            for (int i = 0; i < refreshQ.size(); i++) {
-                region = (int[])refreshQ.elementAt(i);
-                
-                // We test to see if we already have the dirty region
-                if (region[0] == x && region[1] == y &&
-                    region[2] == w && region[3] == h)
-                {
-                    return;
-                }
-
-                // We also test to see if the dirty region is wholely
-                // contained within another region
-                if (x >= region[0] && y >= region[1] &&                
-                    (x + w) <= (region[0] + region[1]) && 
-                    (y + h) <= (region[1] + region[3])) 
-                {
-                    return;                    
-                }
-
-                // Lastly, we do a special case whereby the region
-                // is congruent with a previous region. For instance,
-                // when changing screens, the title area will repaint,
-                // the body area will repaint, and the soft button
-                // area will repaint. All 3 areas are congruent and
-                // can be coalesced.
-                if (x == region[0] && w == region[2]) {
-                    if ((region[1] + region[3]) == y ||
-                        (y + h) == region[1]) 
-                    {
-                        if (region[1] > y) {
-                            region[1] = y;
-                        }
-                        region[3] += h;
-                        return;
-                    } 
-                }
+    public synchronized void queueRefresh(int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        requestCount++;
+        
+        int i = 0;
+        while (i < regionCount) {
+            int p = i * 4;
+            int rx = regions[p];
+            int ry = regions[p + 1];
+            int rw = regions[p + 2];
+            int rh = regions[p + 3];
+            
+            // The dirty region is wholely contained within another region
+            if (x >= rx && y >= ry && (x + w) <= (rx + rw) && 
+                (y + h) <= (ry + rh)) 
+            {
+                return;
+            }
+            
+            // The dirty region contains another region, or they are
+            // close enough to be blitted as one: the other region is
+            // removed and the merged region is checked again against
+            // all the queued ones
+            if (mergeCost(x, y, w, h, rx, ry, rw, rh) <= regionCost) {
+                int x2 = Math.max(x + w, rx + rw);
+                int y2 = Math.max(y + h, ry + rh);
+                x = Math.min(x, rx);
+                y = Math.min(y, ry);
+                w = x2 - x;
+                h = y2 - y;
+                remove(i);
+                i = 0;
+                continue;
             }
-            refreshQ.addElement(new int[] {x, y, w, h});
+            i++;
+        }
+        
+        int p = regionCount * 4;
+        regions[p] = x;
+        regions[p + 1] = y;
+        regions[p + 2] = w;
+        regions[p + 3] = h;
+        regionCount++;
+        
+        if (regionCount > maxRegions) {
+            mergeCheapestPair();
         }
     }
     
@@ -117,13 +188,173 @@ public class CGraphicsQ {
      * @return the queue of all areas of the screen to be refreshed,
      *         as an array of arrays
      */
-    public Object[] getRefreshRegions() {
-        synchronized (refreshQ) {
-            Object[] q = new Object[refreshQ.size()];
-            refreshQ.copyInto(q);
-            refreshQ.removeAllElements();
-            return q;
+    public synchronized Object[] getRefreshRegions() {
+        Object[] q = new Object[regionCount];
+        for (int i = 0; i < regionCount; i++) {
+            int p = i * 4;
+            q[i] = new int[] {regions[p], regions[p + 1], 
+                              regions[p + 2], regions[p + 3]};
+        }
+        endFrame();
+        return q;
+    }
+    
+    /**
+     * Get the areas of the screen to be refreshed and empty the queue.
+     * The areas are copied in <code>dest</code> as (x, y, w, h)
+     * quadruples.
+     *
+     * @param dest the array receiving the regions, which must hold
+     *        at least <code>getMaxRegions() * 4</code> elements
+     * @return the number of regions copied
+     */
+    public synchronized int getRefreshRegions(int[] dest) {
+        int count = regionCount;
+        System.arraycopy(regions, 0, dest, 0, count * 4);
+        endFrame();
+        return count;
+    }
+    
+    /**
+     * Get the maximum number of regions of a frame.
+     *
+     * @return the maximum number of regions
+     */
+    public int getMaxRegions() {
+        return maxRegions;
+    }
+    
+    /**
+     * Get the number of regions queued during the last frame, before 
+     * they were merged.
+     *
+     * @return the number of queued regions
+     */
+    public synchronized int getLastFrameRequestCount() {
+        return lastRequestCount;
+    }
+    
+    /**
+     * Get the number of regions refreshed for the last frame.
+     *
+     * @return the number of refreshed regions
+     */
+    public synchronized int getLastFrameRegionCount() {
+        return lastRegionCount;
+    }
+    
+    /**
+     * Get the number of pixels refreshed for the last frame.
+     *
+     * @return the number of refreshed pixels
+     */
+    public synchronized int getLastFramePixelCount() {
+        return lastPixelCount;
+    }
+    
+    /**
+     * Get the number of frames since the queue was created.
+     *
+     * @return the number of frames
+     */
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+    
+    /**
+     * Get the number of pixels refreshed since the queue was created.
+     *
+     * @return the number of refreshed pixels
+     */
+    public synchronized long getTotalPixelCount() {
+        return totalPixelCount;
+    }
+    
+    /**
+     * Empty the queue and update the statistics of the frame.
+     */
+    private void endFrame() {
+        int pixels = 0;
+        for (int i = 0; i < regionCount; i++) {
+            pixels += regions[i * 4 + 2] * regions[i * 4 + 3];
+        }
+        lastRequestCount = requestCount;
+        lastRegionCount = regionCount;
+        lastPixelCount = pixels;
+        if (regionCount > 0) {
+            frameCount++;
+            totalPixelCount += pixels;
+        }
+        
+        if (DEBUG) {
+            System.err.println("CGraphicsQ: " + requestCount + " requests, "
+                               + regionCount + " regions, " + pixels 
+                               + " pixels");
         }
+        
+        requestCount = 0;
+        regionCount = 0;
+    }
+    
+    /**
+     * Merge the two regions whose bounding box wastes the fewest pixels.
+     */
+    private void mergeCheapestPair() {
+        int best = Integer.MAX_VALUE;
+        int bi = 0;
+        int bj = 1;
+        for (int i = 0; i < regionCount; i++) {
+            int p = i * 4;
+            for (int j = i + 1; j < regionCount; j++) {
+                int q = j * 4;
+                int cost = mergeCost(regions[p], regions[p + 1], 
+                                     regions[p + 2], regions[p + 3],
+                                     regions[q], regions[q + 1], 
+                                     regions[q + 2], regions[q + 3]);
+                if (cost < best) {
+                    best = cost;
+                    bi = i;
+                    bj = j;
+                }
+            }
+        }
+        
+        int p = bi * 4;
+        int q = bj * 4;
+        int x2 = Math.max(regions[p] + regions[p + 2], 
+                          regions[q] + regions[q + 2]);
+        int y2 = Math.max(regions[p + 1] + regions[p + 3], 
+                          regions[q + 1] + regions[q + 3]);
+        regions[p] = Math.min(regions[p], regions[q]);
+        regions[p + 1] = Math.min(regions[p + 1], regions[q + 1]);
+        regions[p + 2] = x2 - regions[p];
+        regions[p + 3] = y2 - regions[p + 1];
+        remove(bj);
+    }
+    
+    /**
+     * Remove a region, replacing it with the last one.
+     *
+     * @param i the index of the region
+     */
+    private void remove(int i) {
+        regionCount--;
+        if (i != regionCount) {
+            System.arraycopy(regions, regionCount * 4, regions, i * 4, 4);
+        }
+    }
+    
+    /**
+     * Compute the number of pixels of the bounding box of two regions
+     * which are in neither region.
+     */
+    private static int mergeCost(int x1, int y1, int w1, int h1,
+                                 int x2, int y2, int w2, int h2) {
+        int bw = Math.max(x1 + w1, x2 + w2) - Math.min(x1, x2);
+        int bh = Math.max(y1 + h1, y2 + h2) - Math.min(y1, y2);
+        int ow = Math.min(x1 + w1, x2 + w2) - Math.max(x1, x2);
+        int oh = Math.min(y1 + h1, y2 + h2) - Math.max(y1, y2);
+        int overlap = (ow > 0 && oh > 0) ? ow * oh : 0;
+        return bw * bh - (w1 * h1 + w2 * h2 - overlap);
     }
 }
-
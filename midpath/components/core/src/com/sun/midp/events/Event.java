@@ -35,6 +35,9 @@ public class Event {
     /** Links events in the queue. */
     Event next;
 
+    /** Time the event was posted, to measure its dispatch latency. */
+    long postTime;
+
     /**
      * Construct an event.
      *
@@ -25,6 +25,7 @@
 
 package com.sun.midp.events;
 
+import com.sun.midp.lcdui.EventConstants;
 import com.sun.midp.log.LogChannels;
 import com.sun.midp.log.Logging;
 import com.sun.midp.main.Configuration;
@@ -54,6 +55,16 @@ import com.sun.midp.security.SecurityToken;
  * the empty event in one call, saving up to 3 native method calls per native
  * event over the old stream based implementation.
  * </p>
+ * <p>
+ * Native events obtained with {@link #getNativeEvent(int)} are recycled once
+ * processed. A pen drag event posted right after another drag event of the
+ * same display replaces its coordinates instead of being queued. The number of
+ * queued input events is bounded by
+ * <code>com.sun.midp.events.maxQueueSize</code>: when the queue is full, pen
+ * drags and key repeats are dropped. {@link #post(Event)} never blocks, as it
+ * is called by application threads holding the LCDUI lock. The time between
+ * the post and the dispatch of events is measured for each event type.
+ * </p>
  */
 public class EventQueue implements Runnable {
 	/** The global event queue. */
@@ -100,8 +111,14 @@ public class EventQueue implements Runnable {
 	/** True, if the queue is alive. */
 	boolean alive; // = false
 
+	/**
+	 * Number of events in the queue above which input events that can be
+	 * lost are dropped, 0 if they are never dropped.
+	 */
+	int maxEvents;
+
 	/** A pool for reusing native events. */
-	//NativeEventPool pool;
+	NativeEventPool pool;
 
 	/** This is for the native finalizer to reset peer native queue. */
 	int nativeEventQueueHandle = -1;
@@ -155,7 +172,9 @@ public class EventQueue implements Runnable {
 		tableSize = Configuration.getPositiveIntProperty("com.sun.midp.events.dispatchTableInitSize", tableSize);
 		dispatchTable = new DispatchData[tableSize];
 
-		//pool = new NativeEventPool();
+		maxEvents = Configuration.getNonNegativeIntProperty("com.sun.midp.events.maxQueueSize", 64);
+
+		pool = new NativeEventPool();
 
 		eventQueueThread = new Thread(this);
 
@@ -235,6 +254,118 @@ public class EventQueue implements Runnable {
 			System.out.println("[DEBUG] EventQueue.sendShutdownEvent()");
 	}
 
+	/**
+	 * Gets a native event from the pool. The event is returned to the pool
+	 * after it has been processed, so it must not be used once posted.
+	 * 
+	 * @param type
+	 *            type ID of the event
+	 * 
+	 * @return a native event with all its parameters cleared
+	 */
+	public NativeEvent getNativeEvent(int type) {
+		NativeEvent event = pool.get();
+		event.type = type;
+		return event;
+	}
+
+	/**
+	 * Gets the number of dispatched events of a type.
+	 * 
+	 * @param eventType
+	 *            event type ID
+	 * 
+	 * @return the number of events processed by the listener of the type
+	 */
+	public int getDispatchCount(int eventType) {
+		synchronized (eventQueueThread) {
+			DispatchData dispatchData = getDispatchData(eventType);
+			return (dispatchData == null) ? 0 : dispatchData.dispatchCount;
+		}
+	}
+
+	/**
+	 * Gets the number of events of a type merged into an event waiting in
+	 * the queue.
+	 * 
+	 * @param eventType
+	 *            event type ID
+	 * 
+	 * @return the number of coalesced events
+	 */
+	public int getCoalescedCount(int eventType) {
+		synchronized (eventQueueThread) {
+			DispatchData dispatchData = getDispatchData(eventType);
+			return (dispatchData == null) ? 0 : dispatchData.coalescedCount;
+		}
+	}
+
+	/**
+	 * Gets the number of events of a type dropped because the queue was
+	 * full.
+	 * 
+	 * @param eventType
+	 *            event type ID
+	 * 
+	 * @return the number of dropped events
+	 */
+	public int getDroppedCount(int eventType) {
+		synchronized (eventQueueThread) {
+			DispatchData dispatchData = getDispatchData(eventType);
+			return (dispatchData == null) ? 0 : dispatchData.droppedCount;
+		}
+	}
+
+	/**
+	 * Gets the average time between the post and the dispatch of the events
+	 * of a type.
+	 * 
+	 * @param eventType
+	 *            event type ID
+	 * 
+	 * @return the average latency in milliseconds
+	 */
+	public int getAverageLatency(int eventType) {
+		synchronized (eventQueueThread) {
+			DispatchData dispatchData = getDispatchData(eventType);
+			if ((dispatchData == null) || (dispatchData.dispatchCount == 0)) {
+				return 0;
+			}
+			return (int) (dispatchData.totalLatency / dispatchData.dispatchCount);
+		}
+	}
+
+	/**
+	 * Gets the longest time between the post and the dispatch of an event of
+	 * a type.
+	 * 
+	 * @param eventType
+	 *            event type ID
+	 * 
+	 * @return the maximum latency in milliseconds
+	 */
+	public int getMaxLatency(int eventType) {
+		synchronized (eventQueueThread) {
+			DispatchData dispatchData = getDispatchData(eventType);
+			return (dispatchData == null) ? 0 : dispatchData.maxLatency;
+		}
+	}
+
+	/**
+	 * Gets the dispatch data of an event type.
+	 * 
+	 * @param eventType
+	 *            event type ID
+	 * 
+	 * @return the dispatch data, or null if no listener is registered
+	 */
+	private DispatchData getDispatchData(int eventType) {
+		if ((eventType < 1) || (eventType > dispatchTable.length)) {
+			return null;
+		}
+		return dispatchTable[eventType - 1];
+	}
+
 	/**
 	 * Register to preprocess and process events of single type.
 	 * 
@@ -285,6 +416,9 @@ public class EventQueue implements Runnable {
 	 * type ID. So if there is no event listener registered for event either a
 	 * <code>NullPointerException</code> or a
 	 * <code>IndexOutOfBoundException</code> will be thrown.
+	 * <p>
+	 * This method never blocks. If the queue is full, pen drag and key
+	 * repeat events that can't be merged into a queued event are dropped.
 	 * 
 	 * @param event
 	 *            event to post
@@ -328,12 +462,35 @@ public class EventQueue implements Runnable {
 
 				if (!dispatchData.listener.preprocess(event, dispatchData.waitingEvent)) {
 					/* The listener does not want this event posted. */
+					recycle(event);
+					return;
+				}
+
+				if (canCoalesce(lastEvent, event)) {
+					/* Only the latest position of a drag needs to be processed. */
+					NativeEvent lastPen = (NativeEvent) lastEvent;
+					lastPen.intParam2 = ((NativeEvent) event).intParam2;
+					lastPen.intParam3 = ((NativeEvent) event).intParam3;
+					dispatchData.coalescedCount++;
+					recycle(event);
+					return;
+				}
+
+				if ((maxEvents > 0) && (numEvents >= maxEvents) && canDrop(event)) {
+					/*
+					 * The queue is full: drop input events whose loss is
+					 * harmless rather than making the poster wait.
+					 */
+					dispatchData.droppedCount++;
+					recycle(event);
 					return;
 				}
 
 				dispatchData.waitingEvent = event;
 			}
 
+			event.postTime = System.currentTimeMillis();
+
 			if (lastEvent != null) {
 				lastEvent.next = event;
 			} else {
@@ -341,10 +498,10 @@ public class EventQueue implements Runnable {
 			}
 
 			lastEvent = event;
+			numEvents++;
 
 			// IMPL_NOTE
 			if (Logging.REPORT_LEVEL <= Logging.INFORMATION) {
-				numEvents++;
 				if (numEvents > 30) {
 					Logging.report(Logging.INFORMATION, LogChannels.LC_CORE, "*** queue overloaded, num events = "
 							+ numEvents);
@@ -355,6 +512,65 @@ public class EventQueue implements Runnable {
 		}
 	}
 
+	/**
+	 * Checks if an event being posted is a pen drag event following a drag
+	 * event of the same display at the end of the queue.
+	 * 
+	 * @param last
+	 *            last event in the queue, or null
+	 * @param event
+	 *            event being posted
+	 * 
+	 * @return true if the event can be merged into the last event
+	 */
+	private static boolean canCoalesce(Event last, Event event) {
+		if ((last == null) || (last.type != EventTypes.PEN_EVENT) || (event.type != EventTypes.PEN_EVENT)) {
+			return false;
+		}
+
+		NativeEvent lastPen = (NativeEvent) last;
+		NativeEvent pen = (NativeEvent) event;
+		return (lastPen.intParam1 == EventConstants.DRAGGED) && (pen.intParam1 == EventConstants.DRAGGED)
+				&& (lastPen.intParam4 == pen.intParam4);
+	}
+
+	/**
+	 * Checks if an event can be dropped when the queue is full: pen drags
+	 * and key repeats, which are followed by a release event. Presses and
+	 * releases are always queued.
+	 * 
+	 * @param event
+	 *            event being posted
+	 * 
+	 * @return true if the event can be dropped
+	 */
+	private static boolean canDrop(Event event) {
+		if (event.type == EventTypes.PEN_EVENT) {
+			return ((NativeEvent) event).intParam1 == EventConstants.DRAGGED;
+		}
+
+		if (event.type == EventTypes.KEY_EVENT) {
+			return ((NativeEvent) event).intParam1 == EventConstants.REPEATED;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns an event to the pool if it has been obtained from it.
+	 * 
+	 * @param event
+	 *            event that won't be used anymore
+	 */
+	private void recycle(Event event) {
+		if (event instanceof NativeEvent) {
+			NativeEvent nativeEvent = (NativeEvent) event;
+			if (nativeEvent.pooled) {
+				pool.putBack(nativeEvent);
+			}
+		}
+	}
+
 	/**
 	 * Remove the oldest event of the given type from the queue.
 	 * 
@@ -404,11 +620,7 @@ public class EventQueue implements Runnable {
 			}
 
 			result.next = null;
-
-			// IMPL_NOTE
-			if (Logging.REPORT_LEVEL <= Logging.INFORMATION) {
-				numEvents--;
-			}
+			numEvents--;
 		}
 
 		return result;
@@ -476,10 +688,14 @@ public class EventQueue implements Runnable {
 						dispatchData.waitingEvent = null;
 					}
 
-					// IMPL_NOTE
-					if (Logging.REPORT_LEVEL <= Logging.INFORMATION) {
-						numEvents--;
+					int latency = (int) (System.currentTimeMillis() - event.postTime);
+					dispatchData.dispatchCount++;
+					dispatchData.totalLatency += latency;
+					if (latency > dispatchData.maxLatency) {
+						dispatchData.maxLatency = latency;
 					}
+
+					numEvents--;
 				} // synchronized
 
 				// IMPL_NOTE
@@ -488,13 +704,14 @@ public class EventQueue implements Runnable {
 				}
 				
 				if (Logging.TRACE_ENABLED)
-					System.out.println("[DEBUG] EventQueue.run(): event type: " + event.getType());
+					System.out.println("[DEBUG] EventQueue.run(): event type: " + event.getType() + " latency: "
+							+ (System.currentTimeMillis() - event.postTime) + " ms, average: "
+							+ (dispatchData.totalLatency / dispatchData.dispatchCount) + " ms, max: "
+							+ dispatchData.maxLatency + " ms");
 
 				dispatchData.listener.process(event);
 
-//				if (event instanceof NativeEvent) {
-//					pool.putBack((NativeEvent) event);
-//				}
+				recycle(event);
 
 				// IMPL_NOTE
 				if (Logging.REPORT_LEVEL <= Logging.INFORMATION) {
@@ -532,6 +749,21 @@ class DispatchData {
 	/** Previously posted event of this type waiting to be processed. */
 	Event waitingEvent;
 
+	/** Number of processed events of this type. */
+	int dispatchCount;
+
+	/** Number of events of this type merged into a waiting event. */
+	int coalescedCount;
+
+	/** Number of events of this type dropped because the queue was full. */
+	int droppedCount;
+
+	/** Sum of the times between post and dispatch, in milliseconds. */
+	long totalLatency;
+
+	/** Longest time between post and dispatch, in milliseconds. */
+	int maxLatency;
+
 	/**
 	 * Construct a dispatch table entry.
 	 * 
@@ -639,63 +871,62 @@ class DispatchData {
 //		}
 //	}
 //}
-//
-///**
-// * Pools native events, to avoid repetitive allocation by the native event
-// * monitor.
-// */
-//class NativeEventPool {
-//	/** The default size of the pool. */
-//	static final int DEFAULT_SIZE = 20;
-//
-//	/** Native event storage. */
-//	NativeEvent[] eventStack;
-//
-//	/** Number of events in the pool. */
-//	int eventsInPool; // = 0;
-//
-//	/** Set up an event pool. */
-//	NativeEventPool() {
-//		eventStack = new NativeEvent[DEFAULT_SIZE];
-//	}
-//
-//	/**
-//	 * Gets an event from the pool or allocates one if the pool is empty.
-//	 * 
-//	 * Note: the array entry isn't cleared. This isn't a problem because the
-//	 * event will either eventually be returned to the pool, or its entry will
-//	 * be overwritten by another event returned to the pool.
-//	 * 
-//	 * @return native event
-//	 */
-//	NativeEvent get() {
-//		synchronized (eventStack) {
-//			if (eventsInPool == 0) {
-//				return new NativeEvent();
-//			}
-//
-//			eventsInPool--;
-//			return eventStack[eventsInPool];
-//		}
-//	}
-//
-//	/**
-//	 * Returns an event to the pool. Simply discards the event if the pool is
-//	 * full. Otherwise, cleans out the event (so that its strings can be GC'ed)
-//	 * and adds the event to the pool.
-//	 * 
-//	 * @param event
-//	 *            event that has been processed
-//	 */
-//	void putBack(NativeEvent event) {
-//		synchronized (eventStack) {
-//			if (eventsInPool == eventStack.length) {
-//				return;
-//			}
-//
-//			event.clear();
-//			eventStack[eventsInPool] = event;
-//			eventsInPool++;
-//		}
-//	}
-//}
+
+/**
+ * Pools native events, to avoid allocating an event for each input sample.
+ */
+class NativeEventPool {
+	/** The default size of the pool. */
+	static final int DEFAULT_SIZE = 20;
+
+	/** Native event storage. */
+	NativeEvent[] eventStack;
+
+	/** Number of events in the pool. */
+	int eventsInPool; // = 0;
+
+	/** Set up an event pool. */
+	NativeEventPool() {
+		eventStack = new NativeEvent[DEFAULT_SIZE];
+	}
+
+	/**
+	 * Gets an event from the pool or allocates one if the pool is empty.
+	 * 
+	 * @return native event
+	 */
+	NativeEvent get() {
+		synchronized (eventStack) {
+			if (eventsInPool == 0) {
+				NativeEvent event = new NativeEvent();
+				event.pooled = true;
+				return event;
+			}
+
+			eventsInPool--;
+			NativeEvent event = eventStack[eventsInPool];
+			eventStack[eventsInPool] = null;
+			return event;
+		}
+	}
+
+	/**
+	 * Returns an event to the pool. Simply discards the event if the pool is
+	 * full. Otherwise, cleans out the event (so that its strings can be GC'ed)
+	 * and adds the event to the pool.
+	 * 
+	 * @param event
+	 *            event that has been processed
+	 */
+	void putBack(NativeEvent event) {
+		synchronized (eventStack) {
+			if (eventsInPool == eventStack.length) {
+				return;
+			}
+
+			event.clear();
+			eventStack[eventsInPool] = event;
+			eventsInPool++;
+		}
+	}
+}
@@ -80,6 +80,9 @@ public class NativeEvent extends Event {
     /** Third string parameter for the event. Event dependent. */
     public String stringParam6;
 
+    /** True if the event comes from the event queue pool. */
+    boolean pooled;
+
     /**
      * Clears the parameters, so the event can be reused.
      */
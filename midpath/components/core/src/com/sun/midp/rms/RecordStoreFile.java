@@ -96,10 +96,17 @@ public class RecordStoreFile implements AbstractRecordStoreFile {
 			BaseFileHandler fileHandler = IOToolkit.getToolkit().createBaseFileHandler();
 			fileHandler.connect(RMS_ROOT_PATH, "");
 			Vector v = fileHandler.list(suiteID + "*", true);
-			stores = new String[v.size()];
-			for (int i = 0; i < stores.length; i++) {
-				stores[i] = getRecordStoreName((String)v.elementAt(i));
+			// Skip the index files stored next to the databases
+			String dbSuffix = "." + DB_EXTENSION;
+			Vector names = new Vector(v.size());
+			for (int i = 0; i < v.size(); i++) {
+				String fileName = (String)v.elementAt(i);
+				if (fileName.endsWith(dbSuffix)) {
+					names.addElement(getRecordStoreName(fileName));
+				}
 			}
+			stores = new String[names.size()];
+			names.copyInto(stores);
 		} catch (IOException e) {
 			if (Logging.TRACE_ENABLED)
 				Logging.trace(e, "Error while listing record stores");
@@ -1008,6 +1008,8 @@ public class RecordStoreImpl implements AbstractRecordStoreImpl {
         throws IOException {
 
         int remainder;
+        // let the index know that the db file is about to change
+        dbIndex.beginUpdate();
         dbFile.seek(blockOffset);
         dbFile.write(header);
         if (data != null && numBytes > 0) {
@@ -33,48 +33,79 @@ import com.sun.midp.log.LogChannels;
 import com.sun.midp.log.Logging;
 
 /**
- * This class implements a record offset cache. It enables us to quickly
- * find offsets for records whose IDs we know.
+ * A class implementing a index of the record store.
+ *
+ * The index keeps two tables in memory: the live records sorted by
+ * record ID (with the offset of their block in the db file) and the
+ * free blocks sorted by offset (with the data size stored in their
+ * header). Lookups are binary searches and listing the record IDs
+ * does not touch the db file.
+ *
+ * The tables are saved to the <code>.idx</code> companion file of the
+ * record store when it is closed. Before the first change of a session
+ * the file is marked as dirty, so that a crash while the store is
+ * being modified causes the index to be rebuilt from the db file the
+ * next time the store is opened. The index is also rebuilt if it
+ * does not match the header of the db file.
  */
-class OffsetCache extends IntToIntMapper {
-    /**
-     * A special value for LastSeenOffset.
-     * There's a database header at offset 0, and 0 means we have not seen any
-     * records yet.
+class RecordStoreIndex {
+    /*
+     * The layout of the index file is as follows:
+     *
+     * Bytes - Usage
+     * 00-07 - Signature = 'midp-idx'
+     * 08-11 - State of the index (clean or dirty)
+     * 12-15 - Next record ID of the indexed db (big endian)
+     * 16-19 - Number of live records of the indexed db (big endian)
+     * 20-23 - Size of the indexed db (big endian)
+     * 24-31 - Last modified time of the indexed db (big endian)
+     * 32-35 - Number of record entries (big endian)
+     * 36-39 - Number of free block entries (big endian)
+     * 40-xx - Record entries: record ID, block offset
+     * xx-yy - Free block entries: block offset, data size
      */
-    static final int NO_OFFSET = 0;
 
-    /**
-     * After this offset there's no cached record IDs.
-     * (An OffsetCache may cache offsets only for already seen records.)
-     * The value NO_OFFSET is a special value for this variable:
-     * NO_OFFSET means we have not seen any records yet.
-     */
-    public int LastSeenOffset = NO_OFFSET;
+    /** IX1_STATE offset */
+    private static final int IX1_STATE = 8;
 
-    /**
-     * Constructs an empty OffsetCache with the specified initial capacity and
-     * capacity increment.
-     *
-     * @param initialCapacity       the initial capacity
-     * @param defaultElement        the offset value that gets returned for
-     *                              record IDs that are not there
-     * @param capacityIncrement     the amount by which the capacity is
-     *                              increased when the mapper overflows.
-     *                              (0 means "to be doubled")
-     * @exception IllegalArgumentException if the specified initial capacity
-     *            is negative
-     */
-    OffsetCache(int initialCapacity, int defaultElement, int capacityIncrement)
-    {
-        super(initialCapacity, defaultElement, capacityIncrement);
-    }
-}
+    /** IX2_NEXT_ID offset */
+    private static final int IX2_NEXT_ID = 12;
 
-/**
- * A class implementing a index of the record store.
- */
-class RecordStoreIndex {
+    /** IX3_NUM_LIVE offset */
+    private static final int IX3_NUM_LIVE = 16;
+
+    /** IX4_DB_SIZE offset */
+    private static final int IX4_DB_SIZE = 20;
+
+    /** IX5_LAST_MODIFIED offset */
+    private static final int IX5_LAST_MODIFIED = 24;
+
+    /** IX6_NUM_RECORDS offset */
+    private static final int IX6_NUM_RECORDS = 32;
+
+    /** IX7_NUM_FREE offset */
+    private static final int IX7_NUM_FREE = 36;
+
+    /** Size of the index header */
+    private static final int IDX_HEADER_SIZE = 40;
+
+    /** Size of an entry of the index file */
+    private static final int IDX_ENTRY_SIZE = 8;
+
+    /** The index file matches the db file */
+    private static final int STATE_CLEAN = 0;
+
+    /** The db file may have been changed since the index was saved */
+    private static final int STATE_DIRTY = 1;
+
+    /** pre initialized index header structure */
+    private static final byte[] IDX_SIGNATURE = {
+        (byte)'m', (byte)'i', (byte)'d', (byte)'p', 
+        (byte)'-', (byte)'i', (byte)'d', (byte)'x'
+    };
+
+    /** the initial capacity of the index tables */
+    private static final int INITIAL_CAPACITY = 0x20;
 
     /** The Record Store that this object indexes */
     private AbstractRecordStoreImpl recordStore;
@@ -82,23 +113,29 @@ class RecordStoreIndex {
     /** The Record Store database file */
     private AbstractRecordStoreFile dbFile;
 
-    /** specifies record ID to offset mapping */
-    private OffsetCache recordIdOffsets;
+    /** The index file, or null if it could not be opened */
+    private AbstractRecordStoreFile idxFile;
 
-    /**
-     *  This value will be returned by recordIdOffsets.elementAt() when
-     *  record id is not found
-     */
-    private static final int INVALID_OFFSET = -1;
+    /** IDs of the live records, in ascending order */
+    private int[] recordIds = new int[INITIAL_CAPACITY];
 
-    /**
-     *  Capacity increment for the offset cache. Zero indicates that capacity
-     *  has to be doubled each time.
-     */
-    private static final int CACHE_CAPACITY_INCREMENT = 0;
+    /** offsets of the blocks of the records in <code>recordIds</code> */
+    private int[] recordOffsets = new int[INITIAL_CAPACITY];
+
+    /** number of entries in the record table */
+    private int recordCount;
+
+    /** offsets of the free blocks, in ascending order */
+    private int[] freeOffsets = new int[INITIAL_CAPACITY];
+
+    /** data sizes of the free blocks in <code>freeOffsets</code> */
+    private int[] freeSizes = new int[INITIAL_CAPACITY];
+
+    /** number of entries in the free block table */
+    private int freeCount;
 
-    /** the initial record offset cache capacity */
-    private static final int INITIAL_CACHE_CAPACITY = 0x20;
+    /** true if the index file has been marked as dirty */
+    private boolean dirty;
 
     /**
      * Constructor for creating an index object for the given Record Store.
@@ -106,35 +143,70 @@ class RecordStoreIndex {
      * @param rs record store that this object indexes
      * @param suiteID unique ID of the suite that owns the store
      * @param recordStoreName a string to name the record store
+     *
+     * @exception IOException if the db file cannot be read
      */
     RecordStoreIndex(AbstractRecordStoreImpl rs, String suiteID, 
                      String recordStoreName) throws IOException {
         recordStore = rs;
         dbFile = rs.getDbFile();
+
+        try {
+            idxFile = rs.createIndexFile(suiteID, recordStoreName);
+        } catch (IOException ioe) {
+            // work without a persistent index
+            if (Logging.REPORT_LEVEL <= Logging.WARNING) {
+                Logging.report(Logging.WARNING, LogChannels.LC_RMS,
+                               "cannot open index of " + recordStoreName);
+            }
+            idxFile = null;
+        }
+
+        if (!load()) {
+            rebuild();
+            save();
+        }
     }
 
     /**
-     * Closes the index file.
+     * Closes the index file. The index is saved first if the
+     * record store has been changed.
      *
      * @exception IOException if there are any file errors
      */
     void close() throws IOException {
+        if (idxFile == null) {
+            return;
+        }
+
+        try {
+            if (dirty) {
+                save();
+            }
+        } finally {
+            idxFile.close();
+            idxFile = null;
+        }
     }
 
     /**
-     * Deletes index filed of named record store. There is no index
-     * file in case of linear index implementation, thus makes 
-     * nothing.
+     * Deletes index file of named record store.
      *
      * Called from RecordStoreImpl where record store files need to 
      *     be deleted.
      *
-     * @param suiteID not used
-     * @param recordStoreName not used
-     * @return always <code>true</code>
+     * @param suiteID unique ID of the suite that owns the store
+     * @param recordStoreName a string to name the record store
+     * @return <code>true</code> if there is no index file left,
+     *         <code>false</code> otherwise
      */
     static boolean deleteIndex(String suiteID, String recordStoreName) {
-        return true;
+        if (!RecordStoreFile.exists(suiteID, recordStoreName,
+                                    AbstractRecordStoreFile.IDX_EXTENSION)) {
+            return true;
+        }
+        return RecordStoreFile.quietDeleteFile(suiteID, recordStoreName,
+            AbstractRecordStoreFile.IDX_EXTENSION);
     }
 
     /**
@@ -143,48 +215,9 @@ class RecordStoreIndex {
      * @return an array of the recordId's currently in the index.
      */
     int[] getRecordIDs() {
-        int numRecordIDs = recordStore.getNumRecords();
-        int[] recordIDs = new int[numRecordIDs];
-
-        byte[] header = new byte[AbstractRecordStoreImpl.BLOCK_HEADER_SIZE];
-        int currentOffset = AbstractRecordStoreImpl.DB_HEADER_SIZE;
-        int currentSize = 0;
-        int currentRecordId = 0;
-
-        int dbSize = recordStore.getSize();
-        int idx = 0;
-        while (idx < numRecordIDs) {
-            if (currentOffset >= dbSize) {
-                // reached end of db file
-                break;
-            }
-
-            try {
-                // seek to the next offset
-                currentOffset += currentSize;
-                dbFile.seek(currentOffset);
-
-                // read the block header
-                if (dbFile.read(header) != 
-                    AbstractRecordStoreImpl.BLOCK_HEADER_SIZE) {
-                    // error reading header
-                    break;
-                }
-            } catch (java.io.IOException ioe) {
-                break;
-            }
-
-           
-            currentRecordId = RecordStoreUtil.getInt(header, 0);
-            if (currentRecordId > 0) {
-                recordIDs[idx++] = currentRecordId;
-            }
-
-            currentSize = RecordStoreUtil.
-                calculateBlockSize(RecordStoreUtil.getInt(header, 4));
-        }
-
-        return recordIDs;
+        int[] ids = new int[recordCount];
+        System.arraycopy(recordIds, 0, ids, 0, recordCount);
+        return ids;
     }
 
     /**
@@ -206,135 +239,54 @@ class RecordStoreIndex {
             throw new InvalidRecordIDException("error finding record data");
         }
 
-        if (null != recordIdOffsets)
-        {
-            int offset = recordIdOffsets.elementAt(recordId);
-            if (offset != recordIdOffsets.defaultValue) {
-                dbFile.seek(offset);
+        if (findRecord(recordId) < 0) {
+            // all the live records are in the table
+            throw new InvalidRecordIDException("error finding record");
+        }
 
-                // read the block header
-                if (dbFile.read(header) != 
-                    AbstractRecordStoreImpl.BLOCK_HEADER_SIZE) {
-                    // did not find the recordId at the returned offset
-                    // throw away the index then!
-                    // (in principle, this should never happen)
-                    recordIdOffsets = null;
-                }
-                else
-                {
-                    int foundId = RecordStoreUtil.getInt(header, 0);
-                    if (foundId == recordId) {
-                        return offset;
-                    }
-                }
+        int offset = readRecordHeader(recordId, header);
+        if (offset < 0) {
+            // the index does not match the db file,
+            // (in principle, this should never happen)
+            if (Logging.REPORT_LEVEL <= Logging.WARNING) {
+                Logging.report(Logging.WARNING, LogChannels.LC_RMS,
+                               "index mismatch for record " + recordId);
             }
+            markDirty();
+            rebuild();
+            offset = readRecordHeader(recordId, header);
         }
-        if (null == recordIdOffsets) {
-            recordIdOffsets = new OffsetCache(INITIAL_CACHE_CAPACITY,
-                                              INVALID_OFFSET,
-                                              CACHE_CAPACITY_INCREMENT);
+
+        if (offset < 0) {
+            throw new InvalidRecordIDException("error finding record");
         }
-        return getRecordHeader_NoCache(recordId, header);
+        return offset;
     }
 
     /**
      *  A helper function for getRecordHeader().
-     *  Finds the record header for the given record and returns the
-     *  offset to the header without using the cache.
+     *  Reads the block header at the indexed offset of the record.
      *
      * @param recordId  the ID of the record to use in this operation
      * @param header    a buffer that receives the header of the block
-     * @return the offset in the db file of the block
-     * @exception IOException
-     * @exception InvalidRecordIDException
+     * @return the offset in the db file of the block, or -1 if the
+     *         record is unknown or the block does not belong to it
+     * @exception IOException if there is an error accessing the db file
      */
-    protected int getRecordHeader_NoCache(int recordId, byte[] header)
-        throws IOException, InvalidRecordIDException {
-        final int beginningOffset = AbstractRecordStoreImpl.DB_HEADER_SIZE;
-        final int endOffset = recordStore.getSize();
-        int resultOffset = INVALID_OFFSET;
-        if (null != recordIdOffsets
-          &&recordIdOffsets.LastSeenOffset != recordIdOffsets.NO_OFFSET)
-        {
-            resultOffset =
-                getRecordHeader_SearchFromTo(recordId,
-                                             header,
-                                             recordIdOffsets.LastSeenOffset,
-                                             endOffset);
-        }
-        if (INVALID_OFFSET == resultOffset) {
-            resultOffset =
-                getRecordHeader_SearchFromTo(recordId,
-                                             header,
-                                             beginningOffset,
-                                             endOffset);
-        }
-        if (INVALID_OFFSET == resultOffset) {
-            throw new InvalidRecordIDException("error finding record");
+    private int readRecordHeader(int recordId, byte[] header)
+        throws IOException {
+        int index = findRecord(recordId);
+        if (index < 0) {
+            return -1;
         }
-        return resultOffset;
-    }
 
-    /**
-     *  A helper function for getRecordHeader().
-     *
-     * @param recordId    the ID of the record to use in this operation
-     * @param header      a buffer that receives the header of the block
-     * @param offsetFrom  offset in the file to start search from
-     * @param offsetUpto  offset in the file to abandon search at
-     * @return            the offset in the db file of the block, or
-     *                    -1 (INVALID_OFFSET) in place 
-     *                    of InvalidRecordIDException
-     * @exception IOException
-     * @exception InvalidRecordIDException
-     */
-    protected int getRecordHeader_SearchFromTo(int recordId,
-                                               byte[] header,
-                                               int offsetFrom,
-                                               int offsetUpto)
-        throws IOException, InvalidRecordIDException {
-        // (we could start from last known index; I tried this, but noticed
-        // no improvement)
-
-        // search through the data blocks for a matching record
-        int currentId = 0;
-        int currentOffset = offsetFrom;
-        int currentSize = 0;
-
-        while (currentId != recordId) {
-            // seek to the next offset
-            currentOffset += currentSize;
-
-            // IMPL_NOTE: is it correct to invoke getSize() once?
-            // IMPL_NOTE: So far it is -- the db file is locked...
-            if (currentOffset >= offsetUpto) {
-                // reached the end and did not find the recordId
-                return INVALID_OFFSET;
-            }
-
-            dbFile.seek(currentOffset);
-
-            // read the block header
-            if (dbFile.read(header) != 
-                AbstractRecordStoreImpl.BLOCK_HEADER_SIZE) {
-                // did not find the recordId
-                return INVALID_OFFSET; // have a chance to retry
-            }
-
-            currentId = RecordStoreUtil.getInt(header, 0);
-            currentSize = RecordStoreUtil.
-                calculateBlockSize(RecordStoreUtil.getInt(header, 4));
-
-            if (null != recordIdOffsets) {
-                recordIdOffsets.setElementAt(currentOffset, recordId);
-                recordIdOffsets.LastSeenOffset = currentOffset;
-                // if we had to repeat search from the beginning, there has been
-                // something wrong, and it's ok to forget where we have been.
-                // Normally, LastSeenOffset will only grow.
-            }
+        int offset = recordOffsets[index];
+        dbFile.seek(offset);
+        if (dbFile.read(header) != AbstractRecordStoreImpl.BLOCK_HEADER_SIZE
+                || RecordStoreUtil.getInt(header, 0) != recordId) {
+            return -1;
         }
-
-        return currentOffset;
+        return offset;
     }
 
     /**
@@ -349,9 +301,6 @@ class RecordStoreIndex {
     int getFreeBlock(byte[] header) throws IOException {
         int targetSize = RecordStoreUtil.
             calculateBlockSize(RecordStoreUtil.getInt(header, 4));
-        int currentId = 0;
-        int currentOffset = AbstractRecordStoreImpl.DB_HEADER_SIZE;
-        int currentSize = 0;
 
         if (Logging.REPORT_LEVEL <= Logging.INFORMATION) {
             Logging.report(Logging.INFORMATION, LogChannels.LC_RMS,
@@ -361,47 +310,35 @@ class RecordStoreIndex {
                            " targetSize = " + targetSize);
         }
 
-        // search through the data blocks for a free block that is large enough
-        while (currentOffset < recordStore.getSize()) {
-            // seek to the next offset
-            dbFile.seek(currentOffset);
-
-            // read the block header
-            if (dbFile.read(header) != 
-                AbstractRecordStoreImpl.BLOCK_HEADER_SIZE) {
-                // did not find the recordId
-                throw new IOException();
-            }
-
-            currentId = RecordStoreUtil.getInt(header, 0);
-            currentSize = RecordStoreUtil.
-                calculateBlockSize(RecordStoreUtil.getInt(header, 4));
-
-            if (Logging.REPORT_LEVEL <= Logging.INFORMATION) {
-                Logging.report(Logging.INFORMATION, LogChannels.LC_RMS,
-                               "currentId = " + currentId +
-                               " currentSize = " + currentSize);
-            }
-
-            // check for a free block big enough to hold the data
-            if (currentId < 0 && currentSize >= targetSize) {
+        // first fit, in the order of the db file
+        for (int i = 0; i < freeCount; i++) {
+            if (RecordStoreUtil.calculateBlockSize(freeSizes[i]) >= 
+                    targetSize) {
                 if (Logging.REPORT_LEVEL <= Logging.INFORMATION) {
                     Logging.report(Logging.INFORMATION, LogChannels.LC_RMS,
                                    "found free block at offset " + 
-                                   currentOffset);
+                                   freeOffsets[i]);
                 }
 
-                // a free block
-                return currentOffset;
+                // hand back the header of the free block
+                RecordStoreUtil.putInt(-1, header, 0);
+                RecordStoreUtil.putInt(freeSizes[i], header, 4);
+                return freeOffsets[i];
             }
-
-            // added the block size to the currentOffset
-            currentOffset += currentSize;
         }
 
         return 0;
     }
 
+    /**
+     * Called before a block of the db file is written. Marks the
+     * index file as dirty so that an interrupted update is detected
+     * when the record store is opened again.
+     */
+    void beginUpdate() {
+        markDirty();
+    }
+
     /**
      * Updates the index of the given block and its offset.
      *
@@ -424,9 +361,14 @@ class RecordStoreIndex {
                            " numBytes = " + RecordStoreUtil.getInt(header, 4) + 
                            " blockOffset = " + blockOffset);
         }
+        markDirty();
+
         int recordId = RecordStoreUtil.getInt(header, 0);
-        if (null != recordIdOffsets) {
-            recordIdOffsets.setElementAt(blockOffset, recordId);
+        if (recordId > 0) {
+            putRecord(recordId, blockOffset);
+            removeFree(blockOffset);
+        } else {
+            putFree(blockOffset, RecordStoreUtil.getInt(header, 4));
         }
     }
 
@@ -449,13 +391,8 @@ class RecordStoreIndex {
                            " numBytes = " + RecordStoreUtil.getInt(header, 4) + 
                            " blockOffset = " + blockOffset);
         }
-        // blocks get moved, LastSeenOffset may point into the middle
-        // of a record.
-        // In principle, all moved blocks will notify us via UpdateBlock(),
-        // so LastSeenOffset=min(LastSeenOffset,blockOffset) should be ok.
-        if (null != recordIdOffsets) {
-            recordIdOffsets.LastSeenOffset = recordIdOffsets.NO_OFFSET;
-        }
+        markDirty();
+        removeFree(blockOffset);
     }
 
     /**
@@ -473,8 +410,320 @@ class RecordStoreIndex {
             Logging.report(Logging.INFORMATION, LogChannels.LC_RMS,
                            "deleteRecordIndex(" + recordId + ")");
         }
-        if (null != recordIdOffsets) {
-            recordIdOffsets.removeElementAt(recordId);
+        markDirty();
+
+        int index = findRecord(recordId);
+        if (index >= 0) {
+            recordCount--;
+            System.arraycopy(recordIds, index + 1, recordIds, index,
+                             recordCount - index);
+            System.arraycopy(recordOffsets, index + 1, recordOffsets, index,
+                             recordCount - index);
+        }
+    }
+
+    /**
+     * Loads the index from the index file.
+     *
+     * @return <code>true</code> if the index file is clean and matches
+     *         the db file, <code>false</code> otherwise
+     */
+    private boolean load() {
+        if (idxFile == null) {
+            return false;
+        }
+
+        try {
+            byte[] header = new byte[IDX_HEADER_SIZE];
+            idxFile.seek(0);
+            if (idxFile.read(header) != IDX_HEADER_SIZE) {
+                return false;
+            }
+
+            for (int i = 0; i < IDX_SIGNATURE.length; i++) {
+                if (header[i] != IDX_SIGNATURE[i]) {
+                    return false;
+                }
+            }
+
+            int numRecords = RecordStoreUtil.getInt(header, IX6_NUM_RECORDS);
+            int numFree = RecordStoreUtil.getInt(header, IX7_NUM_FREE);
+            if (RecordStoreUtil.getInt(header, IX1_STATE) != STATE_CLEAN
+                    || RecordStoreUtil.getInt(header, IX2_NEXT_ID) != 
+                        recordStore.getNextRecordID()
+                    || RecordStoreUtil.getInt(header, IX3_NUM_LIVE) != 
+                        recordStore.getNumRecords()
+                    || RecordStoreUtil.getInt(header, IX4_DB_SIZE) != 
+                        recordStore.getSize()
+                    || RecordStoreUtil.getLong(header, IX5_LAST_MODIFIED) != 
+                        recordStore.getLastModified()
+                    || numRecords != recordStore.getNumRecords()
+                    || numFree < 0) {
+                return false;
+            }
+
+            // read all the entries at once
+            int bodySize = (numRecords + numFree) * IDX_ENTRY_SIZE;
+            byte[] body = new byte[bodySize];
+            if (bodySize > 0 && idxFile.read(body) != bodySize) {
+                return false;
+            }
+
+            recordIds = new int[Math.max(numRecords, INITIAL_CAPACITY)];
+            recordOffsets = new int[recordIds.length];
+            int pos = 0;
+            for (int i = 0; i < numRecords; i++) {
+                recordIds[i] = RecordStoreUtil.getInt(body, pos);
+                recordOffsets[i] = RecordStoreUtil.getInt(body, pos + 4);
+                pos += IDX_ENTRY_SIZE;
+                if (i > 0 && recordIds[i] <= recordIds[i - 1]) {
+                    return false;
+                }
+            }
+            recordCount = numRecords;
+
+            freeOffsets = new int[Math.max(numFree, INITIAL_CAPACITY)];
+            freeSizes = new int[freeOffsets.length];
+            for (int i = 0; i < numFree; i++) {
+                freeOffsets[i] = RecordStoreUtil.getInt(body, pos);
+                freeSizes[i] = RecordStoreUtil.getInt(body, pos + 4);
+                pos += IDX_ENTRY_SIZE;
+                if (i > 0 && freeOffsets[i] <= freeOffsets[i - 1]) {
+                    return false;
+                }
+            }
+            freeCount = numFree;
+        } catch (IOException ioe) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Rebuilds the index by walking all the block headers
+     * of the db file.
+     *
+     * @exception IOException if there is an error accessing the db file
+     */
+    private void rebuild() throws IOException {
+        if (Logging.REPORT_LEVEL <= Logging.INFORMATION) {
+            Logging.report(Logging.INFORMATION, LogChannels.LC_RMS,
+                           "rebuilding record store index");
+        }
+
+        recordCount = 0;
+        freeCount = 0;
+
+        byte[] header = new byte[AbstractRecordStoreImpl.BLOCK_HEADER_SIZE];
+        int currentOffset = AbstractRecordStoreImpl.DB_HEADER_SIZE;
+        int dbSize = recordStore.getSize();
+
+        while (currentOffset < dbSize) {
+            dbFile.seek(currentOffset);
+
+            // read the block header
+            if (dbFile.read(header) != 
+                AbstractRecordStoreImpl.BLOCK_HEADER_SIZE) {
+                throw new IOException();
+            }
+
+            int currentId = RecordStoreUtil.getInt(header, 0);
+            int dataSize = RecordStoreUtil.getInt(header, 4);
+            if (currentId > 0) {
+                putRecord(currentId, currentOffset);
+            } else {
+                putFree(currentOffset, dataSize);
+            }
+
+            currentOffset += RecordStoreUtil.calculateBlockSize(dataSize);
         }
     }
+
+    /**
+     * Writes the whole index to the index file and marks it as clean.
+     *
+     * @exception IOException if there is an error accessing the index file
+     */
+    private void save() throws IOException {
+        if (idxFile == null) {
+            return;
+        }
+
+        byte[] buffer = new byte[IDX_HEADER_SIZE + 
+                                 (recordCount + freeCount) * IDX_ENTRY_SIZE];
+        System.arraycopy(IDX_SIGNATURE, 0, buffer, 0, IDX_SIGNATURE.length);
+        RecordStoreUtil.putInt(STATE_CLEAN, buffer, IX1_STATE);
+        RecordStoreUtil.putInt(recordStore.getNextRecordID(), buffer,
+                               IX2_NEXT_ID);
+        RecordStoreUtil.putInt(recordStore.getNumRecords(), buffer,
+                               IX3_NUM_LIVE);
+        RecordStoreUtil.putInt(recordStore.getSize(), buffer, IX4_DB_SIZE);
+        RecordStoreUtil.putLong(recordStore.getLastModified(), buffer,
+                                IX5_LAST_MODIFIED);
+        RecordStoreUtil.putInt(recordCount, buffer, IX6_NUM_RECORDS);
+        RecordStoreUtil.putInt(freeCount, buffer, IX7_NUM_FREE);
+
+        int pos = IDX_HEADER_SIZE;
+        for (int i = 0; i < recordCount; i++) {
+            RecordStoreUtil.putInt(recordIds[i], buffer, pos);
+            RecordStoreUtil.putInt(recordOffsets[i], buffer, pos + 4);
+            pos += IDX_ENTRY_SIZE;
+        }
+        for (int i = 0; i < freeCount; i++) {
+            RecordStoreUtil.putInt(freeOffsets[i], buffer, pos);
+            RecordStoreUtil.putInt(freeSizes[i], buffer, pos + 4);
+            pos += IDX_ENTRY_SIZE;
+        }
+
+        idxFile.seek(0);
+        idxFile.write(buffer);
+        idxFile.truncate(buffer.length);
+        idxFile.commitWrite();
+        dirty = false;
+    }
+
+    /**
+     * Marks the index file as dirty, once per session.
+     * Errors are ignored: the index is then simply rebuilt
+     * on the next opening.
+     */
+    private void markDirty() {
+        if (dirty || idxFile == null) {
+            return;
+        }
+        dirty = true;
+
+        byte[] state = new byte[4];
+        RecordStoreUtil.putInt(STATE_DIRTY, state, 0);
+        try {
+            idxFile.seek(IX1_STATE);
+            idxFile.write(state);
+            idxFile.commitWrite();
+        } catch (IOException ioe) {
+            if (Logging.REPORT_LEVEL <= Logging.WARNING) {
+                Logging.report(Logging.WARNING, LogChannels.LC_RMS,
+                               "cannot mark index as dirty");
+            }
+        }
+    }
+
+    /**
+     * Binary search of a record in the record table.
+     *
+     * @param recordId the ID of the record to search for
+     * @return the index of the record, or <code>-(insertion point) - 1</code>
+     *         if the record is not in the table
+     */
+    private int findRecord(int recordId) {
+        return search(recordIds, recordCount, recordId);
+    }
+
+    /**
+     * Adds or updates the offset of a record.
+     *
+     * @param recordId the ID of the record
+     * @param offset the offset of the block of the record
+     */
+    private void putRecord(int recordId, int offset) {
+        int index = findRecord(recordId);
+        if (index >= 0) {
+            recordOffsets[index] = offset;
+            return;
+        }
+
+        index = -index - 1;
+        if (recordCount == recordIds.length) {
+            recordIds = grow(recordIds);
+            recordOffsets = grow(recordOffsets);
+        }
+        System.arraycopy(recordIds, index, recordIds, index + 1,
+                         recordCount - index);
+        System.arraycopy(recordOffsets, index, recordOffsets, index + 1,
+                         recordCount - index);
+        recordIds[index] = recordId;
+        recordOffsets[index] = offset;
+        recordCount++;
+    }
+
+    /**
+     * Adds or updates a free block.
+     *
+     * @param offset the offset of the free block
+     * @param dataSize the data size stored in the header of the block
+     */
+    private void putFree(int offset, int dataSize) {
+        int index = search(freeOffsets, freeCount, offset);
+        if (index >= 0) {
+            freeSizes[index] = dataSize;
+            return;
+        }
+
+        index = -index - 1;
+        if (freeCount == freeOffsets.length) {
+            freeOffsets = grow(freeOffsets);
+            freeSizes = grow(freeSizes);
+        }
+        System.arraycopy(freeOffsets, index, freeOffsets, index + 1,
+                         freeCount - index);
+        System.arraycopy(freeSizes, index, freeSizes, index + 1,
+                         freeCount - index);
+        freeOffsets[index] = offset;
+        freeSizes[index] = dataSize;
+        freeCount++;
+    }
+
+    /**
+     * Removes a free block, if there is one at the given offset.
+     *
+     * @param offset the offset of the block
+     */
+    private void removeFree(int offset) {
+        int index = search(freeOffsets, freeCount, offset);
+        if (index >= 0) {
+            freeCount--;
+            System.arraycopy(freeOffsets, index + 1, freeOffsets, index,
+                             freeCount - index);
+            System.arraycopy(freeSizes, index + 1, freeSizes, index,
+                             freeCount - index);
+        }
+    }
+
+    /**
+     * Binary search in the first <code>count</code> elements
+     * of a sorted array.
+     *
+     * @param keys the sorted array
+     * @param count the number of valid elements
+     * @param key the value to search for
+     * @return the index of the key, or <code>-(insertion point) - 1</code>
+     */
+    private static int search(int[] keys, int count, int key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = keys[mid];
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Doubles the capacity of a table.
+     *
+     * @param array the table to grow
+     * @return a copy of the table with twice its capacity
+     */
+    private static int[] grow(int[] array) {
+        int[] newArray = new int[array.length * 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
 }
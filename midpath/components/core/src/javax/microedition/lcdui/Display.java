@@ -504,6 +504,9 @@ public class Display {
 	/** Chameleon graphics queue */
 	private CGraphicsQ graphicsQ;
 	
+	/** Refresh regions of a frame, as (x, y, w, h) quadruples */
+	private int[] refreshRegions;
+	
 	/** Accessor to extended Image API needed for Chameleon and GameCanvas */
     private static GraphicsAccessImpl graphicsAccessor;
 
@@ -593,6 +596,7 @@ public class Display {
 		drawTrustedIcon0(displayId, false);
 
 		graphicsQ = new CGraphicsQ();
+		refreshRegions = new int[graphicsQ.getMaxRegions() * 4];
 		cham_tunnel = new ChameleonTunnel();
 		window = new MIDPWindow(cham_tunnel);
 		region = new int[4];
@@ -1783,18 +1787,17 @@ public class Display {
 			// IMPL NOTE: This code block should really be a method inside CGraphics
 			// with its own native call to the refresh function. Until that
 			// can be refactored, we'll do it here.
-			Object[] refreshQ = graphicsQ.getRefreshRegions();
-			int[] subregion;
-			for (int i = 0; i < refreshQ.length; i++) {
-				subregion = (int[]) refreshQ[i]; /* x, y, w, h */
-				if (CGraphicsQ.DEBUG) {
-					System.err.println("Refresh(): " + subregion[0] + ", " + subregion[1] + ", " + subregion[2] + ", "
-							+ subregion[3]);
+			// The regions of a frame are coalesced by the queue and
+			// pushed to the backend in a single call.
+			int count = graphicsQ.getRefreshRegions(refreshRegions); /* x, y, w, h */
+			if (CGraphicsQ.DEBUG) {
+				for (int i = 0; i < count * 4; i += 4) {
+					System.err.println("Refresh(): " + refreshRegions[i] + ", " + refreshRegions[i + 1] + ", "
+							+ refreshRegions[i + 2] + ", " + refreshRegions[i + 3]);
 				}
-				// Be sure to convert the regions which are x,y,w,h to
-				// x1, y1, x2, y2
-				refresh0(displayId, subregion[0], subregion[1], subregion[0] + subregion[2], subregion[1]
-						+ subregion[3]);
+			}
+			if (count > 0) {
+				UIToolkit.getToolkit().refresh(displayId, refreshRegions, count);
 			}
 		}
 
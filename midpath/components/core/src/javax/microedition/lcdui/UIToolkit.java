@@ -64,6 +64,19 @@ public abstract class UIToolkit {
 
 	public abstract void refresh(int displayId, int x, int y, long widht, long heigth);
 
+	/**
+	 * Refreshes several regions of the screen at once.
+	 * The default implementation refreshes the regions one by one.
+	 * 
+	 * @param regions the regions, as (x, y, width, height) quadruples
+	 * @param regionCount the number of regions
+	 */
+	public void refresh(int displayId, int[] regions, int regionCount) {
+		for (int i = 0; i < regionCount * 4; i += 4) {
+			refresh(displayId, regions[i], regions[i + 1], regions[i + 2], regions[i + 3]);
+		}
+	}
+
 	public abstract Image createImage(int w, int h);
 
 	public abstract Image createImage(Image source);
@@ -0,0 +1,156 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ */
+package javax.microedition.lcdui.game;
+
+import javax.microedition.lcdui.Image;
+
+/**
+ * A 1-bit opacity mask of a transformed image region, used for pixel
+ * level collision detection. A bit is set if the corresponding pixel is
+ * fully opaque.
+ * <p>
+ * The mask is in painter orientation: the transform is applied when the
+ * mask is built, so that two masks can be compared row by row. Each row
+ * is stored in 32-bit words, the leftmost pixel being bit 0 of the first
+ * word, followed by one spare word so that a row can be read 32 bits at
+ * a time from any bit offset.
+ */
+final class CollisionMask {
+
+    /** The width of the mask, in pixels */
+    final int width;
+
+    /** The height of the mask, in pixels */
+    final int height;
+
+    /** The number of words per row */
+    private final int scanlength;
+
+    private final int[] bits;
+
+    /**
+     * Builds the mask of a region of an image.
+     *
+     * @param image the image
+     * @param x the x coordinate of the region in the image
+     * @param y the y coordinate of the region in the image
+     * @param w the width of the region, before transformation
+     * @param h the height of the region, before transformation
+     * @param transform the transform applied to the region
+     */
+    CollisionMask(Image image, int x, int y, int w, int h, int transform) {
+
+        boolean inverted = (transform & Sprite.INVERTED_AXES) != 0;
+        boolean xFlip = (transform & Sprite.X_FLIP) != 0;
+        boolean yFlip = (transform & Sprite.Y_FLIP) != 0;
+
+        width = inverted ? h : w;
+        height = inverted ? w : h;
+        scanlength = ((width + 31) >> 5) + 1;
+        bits = new int[scanlength * height];
+
+        int[] argbData = new int[w * h];
+        image.getRGB(argbData, 0, w, x, y, w, h);
+
+        for (int j = 0; j < height; j++) {
+            int rowOffset = j * scanlength;
+            for (int i = 0; i < width; i++) {
+                // Find the source pixel of the painter pixel (i, j)
+                int sx, sy;
+                if (inverted) {
+                    sx = xFlip ? w - 1 - j : j;
+                    sy = yFlip ? h - 1 - i : i;
+                } else {
+                    sx = xFlip ? w - 1 - i : i;
+                    sy = yFlip ? h - 1 - j : j;
+                }
+                if ((argbData[sy * w + sx] & 0xff000000) == 0xff000000) {
+                    bits[rowOffset + (i >> 5)] |= 1 << (i & 31);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if opaque pixels of this mask and of another mask overlap.
+     * The compared areas have the same size and are given by their top
+     * left corners in each mask. Rows are compared 32 pixels at a time.
+     * Parts of the areas lying outside of a mask are treated as transparent.
+     *
+     * @param x1 the x coordinate of the area in this mask
+     * @param y1 the y coordinate of the area in this mask
+     * @param other the other mask
+     * @param x2 the x coordinate of the area in the other mask
+     * @param y2 the y coordinate of the area in the other mask
+     * @param w the width of the areas
+     * @param h the height of the areas
+     * @return true if at least one pair of opaque pixels overlaps
+     */
+    boolean collidesWith(int x1, int y1, CollisionMask other, int x2, int y2, int w, int h) {
+
+        // clip the areas to the bounds of both masks
+        int d = Math.max(-x1, -x2);
+        if (d > 0) {
+            x1 += d;
+            x2 += d;
+            w -= d;
+        }
+        d = Math.max(-y1, -y2);
+        if (d > 0) {
+            y1 += d;
+            y2 += d;
+            h -= d;
+        }
+        w = Math.min(w, Math.min(width - x1, other.width - x2));
+        h = Math.min(h, Math.min(height - y1, other.height - y2));
+        if ((w <= 0) || (h <= 0)) {
+            return false;
+        }
+
+        int[] bits1 = bits;
+        int[] bits2 = other.bits;
+        int shift1 = x1 & 31;
+        int shift2 = x2 & 31;
+        int rowOffset1 = y1 * scanlength + (x1 >> 5);
+        int rowOffset2 = y2 * other.scanlength + (x2 >> 5);
+
+        for (int row = 0; row < h; row++, rowOffset1 += scanlength, rowOffset2 += other.scanlength) {
+            int p1 = rowOffset1;
+            int p2 = rowOffset2;
+            for (int n = w; n > 0; n -= 32, p1++, p2++) {
+                int word1 = bits1[p1];
+                if (shift1 != 0) {
+                    word1 = (word1 >>> shift1) | (bits1[p1 + 1] << (32 - shift1));
+                }
+                int word2 = bits2[p2];
+                if (shift2 != 0) {
+                    word2 = (word2 >>> shift2) | (bits2[p2 + 1] << (32 - shift2));
+                }
+                int overlap = word1 & word2;
+                if (n < 32) {
+                    overlap &= (1 << n) - 1;
+                }
+                if (overlap != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
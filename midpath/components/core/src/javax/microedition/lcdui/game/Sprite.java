@@ -979,6 +979,22 @@ public class Sprite extends Layer
                 int intersectWidth  = Math.abs(intersectRight - intersectLeft);
                 int intersectHeight = Math.abs(intersectBottom - intersectTop);
 
+                // compare the collision masks of the current frames
+                // if both images are immutable, an empty intersection
+                // means that the collision rectangle is outside of
+                // the frame
+                CollisionMask thisMask = getCollisionMask();
+                CollisionMask otherMask = s.getCollisionMask();
+                if ((thisMask != null) && (otherMask != null)) {
+                    return thisMask.collidesWith(intersectLeft - this.x,
+                                                 intersectTop - this.y,
+                                                 otherMask,
+                                                 intersectLeft - s.x,
+                                                 intersectTop - s.y,
+                                                 intersectRight - intersectLeft,
+                                                 intersectBottom - intersectTop);
+                }
+
                 // have the coordinates in painter space,
                 // need coordinates of top left and width, height
                 // in source image of Sprite.
@@ -1167,6 +1183,12 @@ public class Sprite extends Layer
             // the index of the current tile.
             int tileIndex; // = 0;
 
+            // the collision masks of the current frame and of the
+            // tile set, if both images are immutable
+            CollisionMask thisMask = getCollisionMask();
+            CollisionMask tileMask = (thisMask != null) 
+                                     ? t.getCollisionMask() : null;
+
             for (int row = startRow; row <= endRow; 
                  row++, cellTop += tH, cellBottom += tH) {
 
@@ -1193,6 +1215,13 @@ public class Sprite extends Layer
                         int intersectBottom = (sy2 < cellBottom) ? 
                                                sy2 : cellBottom;
 
+                        if ((tileMask != null) 
+                            && ((intersectLeft >= intersectRight)
+                                || (intersectTop >= intersectBottom))) {
+                            // the cell is outside of the Sprite frame
+                            continue;
+                        }
+
                         if (intersectLeft > intersectRight) {
                             int temp = intersectRight;
                             intersectRight = intersectLeft;
@@ -1208,6 +1237,25 @@ public class Sprite extends Layer
                         int intersectWidth  = intersectRight  - intersectLeft;
                         int intersectHeight = intersectBottom - intersectTop;
 
+                        int image2XOffset = t.tileSetX[tileIndex] +
+                                            (intersectLeft - cellLeft);
+                        int image2YOffset = t.tileSetY[tileIndex] +
+                                            (intersectTop - cellTop);
+
+                        if (tileMask != null) {
+                            if (thisMask.collidesWith(intersectLeft - this.x,
+                                                      intersectTop - this.y,
+                                                      tileMask,
+                                                      image2XOffset,
+                                                      image2YOffset,
+                                                      intersectWidth, 
+                                                      intersectHeight)) {
+                                // intersection found with this tile
+                                return true;
+                            }
+                            continue;
+                        }
+
                         int image1XOffset = getImageTopLeftX(intersectLeft, 
                                                              intersectTop,
                                                              intersectRight,
@@ -1218,11 +1266,6 @@ public class Sprite extends Layer
                                                              intersectRight,
                                                              intersectBottom);
 
-                        int image2XOffset = t.tileSetX[tileIndex] +
-                                            (intersectLeft - cellLeft);
-                        int image2YOffset = t.tileSetY[tileIndex] +
-                                            (intersectTop - cellTop);
-
                         if (doPixelCollision(image1XOffset,
                                              image1YOffset,
                                              image2XOffset,
@@ -1347,6 +1390,28 @@ public class Sprite extends Layer
                 int intersectWidth  = Math.abs(intersectRight - intersectLeft);
                 int intersectHeight = Math.abs(intersectBottom - intersectTop);
 
+                // compare the collision masks of the current frame and
+                // of the image if both images are immutable, an empty
+                // intersection means that the collision rectangle is
+                // outside of the frame
+                CollisionMask thisMask = getCollisionMask();
+                if ((thisMask != null) && !image.isMutable()) {
+                    if (image != maskedImage) {
+                        maskedImageMask = new CollisionMask(image, 0, 0,
+                                                            image.getWidth(),
+                                                            image.getHeight(),
+                                                            TRANS_NONE);
+                        maskedImage = image;
+                    }
+                    return thisMask.collidesWith(intersectLeft - this.x,
+                                                 intersectTop - this.y,
+                                                 maskedImageMask,
+                                                 intersectLeft - inp_x,
+                                                 intersectTop - inp_y,
+                                                 intersectRight - intersectLeft,
+                                                 intersectBottom - intersectTop);
+                }
+
                 // have the coordinates in painter space,
                 // need coordinates of top left and width, height
                 // in source image of Sprite.
@@ -1405,6 +1470,7 @@ public class Sprite extends Layer
         int numVerticalFrames   = imageH / fHeight;
 
         sourceImage = image;
+        collisionMasks = null;
 
         srcFrameWidth = fWidth;
           srcFrameHeight = fHeight;
@@ -1657,6 +1723,35 @@ public class Sprite extends Layer
         return false;
     }
 
+    /**
+     * Returns the collision mask of the current frame, in the current
+     * transform. The mask is built the first time it is needed.
+     *
+     * @return the collision mask, or <code>null</code> if the source
+     * image is mutable and the mask can't be cached
+     */
+    CollisionMask getCollisionMask() {
+        if (sourceImage.isMutable()) {
+            return null;
+        }
+
+        if (collisionMasks == null) {
+            collisionMasks = new CollisionMask[numberFrames * 8];
+        }
+
+        int frame = frameSequence[sequenceIndex];
+        int index = (frame << 3) + t_currentTransformation;
+        CollisionMask mask = collisionMasks[index];
+        if (mask == null) {
+            mask = new CollisionMask(sourceImage, 
+                                     frameCoordsX[frame], frameCoordsY[frame],
+                                     srcFrameWidth, srcFrameHeight,
+                                     t_currentTransformation);
+            collisionMasks[index] = mask;
+        }
+        return mask;
+    }
+
     /**
      * Given a rectangle that lies within the sprite 
      * in the painter's coordinates,
@@ -2109,19 +2204,19 @@ public class Sprite extends Layer
      * If this bit is set, it denotes that the transform causes the
      * axes to be interchanged
      */
-    private static final int INVERTED_AXES = 0x4;
+    static final int INVERTED_AXES = 0x4;
 
     /**
      * If this bit is set, it denotes that the transform causes the
      * x axis to be flipped.
      */
-    private static final int X_FLIP = 0x2;
+    static final int X_FLIP = 0x2;
 
     /**
      * If this bit is set, it denotes that the transform causes the
      * y axis to be flipped.
      */
-    private static final int Y_FLIP = 0x1;
+    static final int Y_FLIP = 0x1;
 
     /**
      * Bit mask for channel value in ARGB pixel.
@@ -2248,5 +2343,24 @@ public class Sprite extends Layer
      */
     int t_collisionRectHeight;
 
+    // --- pixel level collision detection
+
+    /**
+     * Collision masks of the raw frames, indexed by
+     * <code>frame * 8 + transform</code>. They are built when first
+     * needed, and only if the source image is immutable.
+     */
+    private CollisionMask[] collisionMasks; // = null
+
+    /**
+     * The last immutable image tested by collidesWith(Image, ...)
+     */
+    private Image maskedImage; // = null
+
+    /**
+     * The collision mask of <code>maskedImage</code>
+     */
+    private CollisionMask maskedImageMask; // = null
+
 }
 
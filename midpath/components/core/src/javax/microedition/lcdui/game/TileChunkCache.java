@@ -0,0 +1,217 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package javax.microedition.lcdui.game;
+
+import javax.microedition.lcdui.Image;
+
+import com.sun.midp.log.Logging;
+import com.sun.midp.main.Configuration;
+
+/**
+ * A LRU cache of pre-rendered TiledLayer chunks, shared by all the
+ * layers. A chunk is a square block of cells rendered into an immutable
+ * image, so that a layer can be painted with a few large blits instead of
+ * one blit per cell.
+ * <p>
+ * The memory used by the rendered chunks is bounded by the
+ * <code>org.thenesis.midpath.game.tileCacheSize</code> property, in bytes.
+ * The cache is disabled when it is 0 (the default). The number of cells
+ * on each side of a chunk is set by
+ * <code>org.thenesis.midpath.game.tileChunkSize</code>.
+ */
+final class TileChunkCache {
+
+    /** Maximum memory used by the rendered chunks, in bytes */
+    static final int MEMORY_LIMIT = Configuration.getNonNegativeIntProperty(
+            "org.thenesis.midpath.game.tileCacheSize", 0);
+
+    /** Number of cells on each side of a chunk */
+    static final int CHUNK_CELLS = Math.max(1, Configuration.getIntProperty(
+            "org.thenesis.midpath.game.tileChunkSize", 8));
+
+    /**
+     * A block of cells of a TiledLayer. The layer owns its chunks, the
+     * cache only links the rendered ones in LRU order.
+     */
+    static final class Chunk {
+
+        /** The rendered cells, or null if the chunk is empty or not rendered */
+        Image image;
+
+        /** true if the rendering is up to date */
+        boolean valid;
+
+        /**
+         * Animated tiles used by the cells, bit (index & 63) being set
+         * for the animated tile -index
+         */
+        long animatedTiles;
+
+        /** Memory used by the image, in bytes */
+        int size;
+
+        Chunk prev;
+        Chunk next;
+    }
+
+    /* Most recently used chunk is head.next, least recently used is head.prev */
+    private static final Chunk head = new Chunk();
+
+    private static int memoryUsed;
+    private static int hits;
+    private static int misses;
+    private static int evictions;
+
+    /** Scratch buffer used to render the chunks */
+    private static int[] pixels;
+
+    static {
+        head.next = head;
+        head.prev = head;
+    }
+
+    private TileChunkCache() {
+    }
+
+    /**
+     * Returns true if a chunk of the given size in pixels can be cached.
+     *
+     * @param width the width of the chunk
+     * @param height the height of the chunk
+     * @return true if the chunk fits in the cache
+     */
+    static boolean fits(int width, int height) {
+        return (width * height) <= (MEMORY_LIMIT >> 2);
+    }
+
+    /**
+     * Looks up the rendering of a chunk. A null image is returned for
+     * an empty chunk, whose <code>valid</code> flag is still set.
+     *
+     * @param chunk the chunk
+     * @return the rendered image of the chunk, or null
+     */
+    static synchronized Image get(Chunk chunk) {
+        if (!chunk.valid) {
+            misses++;
+            return null;
+        }
+        hits++;
+        if (chunk.image != null) {
+            unlink(chunk);
+            link(chunk);
+        }
+        return chunk.image;
+    }
+
+    /**
+     * Stores the rendering of a chunk, evicting the least recently used
+     * chunks if needed. A null image marks an empty chunk, which uses no
+     * memory.
+     *
+     * @param chunk the chunk
+     * @param image the rendered cells, or null if no cell has a tile
+     * @param animatedTiles the animated tiles used by the cells
+     */
+    static synchronized void put(Chunk chunk, Image image, long animatedTiles) {
+        remove(chunk);
+        chunk.animatedTiles = animatedTiles;
+        chunk.valid = true;
+        if (image == null) {
+            return;
+        }
+
+        int size = (image.getWidth() * image.getHeight()) << 2;
+        while ((memoryUsed + size > MEMORY_LIMIT) && (head.prev != head)) {
+            remove(head.prev);
+            evictions++;
+        }
+        chunk.image = image;
+        chunk.size = size;
+        memoryUsed += size;
+        link(chunk);
+
+        if (Logging.TRACE_ENABLED)
+            System.out.println("[DEBUG] TileChunkCache.put(): memory=" + memoryUsed + " hits=" + hits + " misses="
+                    + misses + " evictions=" + evictions);
+    }
+
+    /**
+     * Invalidates a chunk and releases its rendering.
+     *
+     * @param chunk the chunk
+     */
+    static synchronized void remove(Chunk chunk) {
+        if (chunk.image != null) {
+            unlink(chunk);
+            memoryUsed -= chunk.size;
+            chunk.image = null;
+            chunk.size = 0;
+        }
+        chunk.valid = false;
+    }
+
+    /**
+     * Returns a buffer of at least the given length to render a chunk.
+     * The content of the buffer is undefined.
+     *
+     * @param length the number of pixels
+     * @return the shared scratch buffer
+     */
+    static synchronized int[] getPixels(int length) {
+        if ((pixels == null) || (pixels.length < length)) {
+            pixels = new int[length];
+        }
+        return pixels;
+    }
+
+    /** @return the number of chunks found rendered */
+    static synchronized int getHits() {
+        return hits;
+    }
+
+    /** @return the number of chunks which had to be rendered */
+    static synchronized int getMisses() {
+        return misses;
+    }
+
+    /** @return the number of chunks released to stay under the memory limit */
+    static synchronized int getEvictions() {
+        return evictions;
+    }
+
+    /** @return the memory used by the rendered chunks, in bytes */
+    static synchronized int getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    private static void link(Chunk chunk) {
+        chunk.prev = head;
+        chunk.next = head.next;
+        head.next.prev = chunk;
+        head.next = chunk;
+    }
+
+    private static void unlink(Chunk chunk) {
+        chunk.prev.next = chunk.next;
+        chunk.next.prev = chunk.prev;
+        chunk.prev = null;
+        chunk.next = null;
+    }
+
+}
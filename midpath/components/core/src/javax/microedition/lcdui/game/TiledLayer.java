@@ -272,7 +272,10 @@ public class TiledLayer extends Layer {
 	    throw new IndexOutOfBoundsException();
         }
 
-        anim_to_static[animatedTileIndex] = staticTileIndex;
+        if (anim_to_static[animatedTileIndex] != staticTileIndex) {
+            anim_to_static[animatedTileIndex] = staticTileIndex;
+            invalidateAnimatedTile(animatedTileIndex);
+        }
 
     }
 
@@ -333,7 +336,10 @@ public class TiledLayer extends Layer {
             }
 	}
 
-        cellMatrix[row][col] = tileIndex;
+        if (cellMatrix[row][col] != tileIndex) {
+            cellMatrix[row][col] = tileIndex;
+            invalidateChunks(col, row, 1, 1);
+        }
  
     }
 
@@ -414,6 +420,7 @@ public class TiledLayer extends Layer {
                 cellMatrix[rowCount][columnCount] = tileIndex;
             }
         }
+        invalidateChunks(col, row, numCols, numRows);
     }
 
 
@@ -569,6 +576,37 @@ public class TiledLayer extends Layer {
 		endRow -= number;
 	    }
 
+	    if ((startColumn >= endColumn) || (startRow >= endRow)) {
+		return;
+	    }
+
+	    // blit pre-rendered chunks of cells if the cache is enabled,
+	    // the tiles of a mutable image may change at any time
+	    int chunkCells = TileChunkCache.CHUNK_CELLS;
+	    if (!sourceImage.isMutable() 
+		&& TileChunkCache.fits(chunkCells * cellWidth, 
+				       chunkCells * cellHeight)) {
+		paintChunks(g, startColumn, endColumn, startRow, endRow);
+	    } else {
+		paintCells(g, startColumn, endColumn, startRow, endRow);
+	    }
+	}
+    }
+
+    // private implementation
+
+    /**
+     * Draws a range of cells tile by tile.
+     *
+     * @param g the graphics object to draw the cells
+     * @param startColumn the first column to draw
+     * @param endColumn the column after the last one to draw
+     * @param startRow the first row to draw
+     * @param endRow the row after the last one to draw
+     */
+    private void paintCells(Graphics g, int startColumn, int endColumn, 
+			    int startRow, int endRow) {
+
 	    // paint all visible cells
 	    int tileIndex = 0;
 
@@ -590,7 +628,10 @@ public class TiledLayer extends Layer {
 		    if (tileIndex == 0) { // transparent tile
 			continue;
                     } else if (tileIndex < 0) {
-                        tileIndex = getAnimatedTile(tileIndex);
+                        tileIndex = anim_to_static[-tileIndex];
+                        if (tileIndex == 0) { // transparent tile
+                            continue;
+                        }
 		    }
 
 		    g.drawRegion(sourceImage, 
@@ -603,10 +644,211 @@ public class TiledLayer extends Layer {
 
                 }
             }
-	}
     }
 
-    // private implementation
+    /**
+     * Draws a range of cells by blitting the chunks containing them,
+     * rendering the chunks which are not in the cache.
+     *
+     * @param g the graphics object to draw the cells
+     * @param startColumn the first column to draw
+     * @param endColumn the column after the last one to draw
+     * @param startRow the first row to draw
+     * @param endRow the row after the last one to draw
+     */
+    private void paintChunks(Graphics g, int startColumn, int endColumn, 
+			     int startRow, int endRow) {
+
+        int chunkCells = TileChunkCache.CHUNK_CELLS;
+        if (chunks == null) {
+            chunkColumns = (columns + chunkCells - 1) / chunkCells;
+            chunks = new TileChunkCache.Chunk[chunkColumns 
+                         * ((rows + chunkCells - 1) / chunkCells)];
+        }
+
+        int endChunkColumn = (endColumn - 1) / chunkCells;
+        int endChunkRow = (endRow - 1) / chunkCells;
+        int chunkWidth = chunkCells * cellWidth;
+        int chunkHeight = chunkCells * cellHeight;
+
+        for (int chunkRow = startRow / chunkCells; 
+             chunkRow <= endChunkRow; chunkRow++) {
+            for (int chunkColumn = startColumn / chunkCells;
+                 chunkColumn <= endChunkColumn; chunkColumn++) {
+
+                int index = chunkRow * chunkColumns + chunkColumn;
+                TileChunkCache.Chunk chunk = chunks[index];
+                if (chunk == null) {
+                    chunk = new TileChunkCache.Chunk();
+                    chunks[index] = chunk;
+                }
+
+                Image image = TileChunkCache.get(chunk);
+                if ((image == null) && !chunk.valid) {
+                    image = renderChunk(chunk, chunkColumn, chunkRow);
+                }
+
+                // an empty chunk has no image
+                if (image != null) {
+                    g.drawImage(image, 
+                                this.x + chunkColumn * chunkWidth,
+                                this.y + chunkRow * chunkHeight,
+                                Graphics.TOP | Graphics.LEFT);
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders the cells of a chunk and stores the result in the cache.
+     *
+     * @param chunk the chunk to render
+     * @param chunkColumn the column of the chunk
+     * @param chunkRow the row of the chunk
+     * @return the rendered image, or <code>null</code> if all the cells 
+     * of the chunk are empty
+     */
+    private Image renderChunk(TileChunkCache.Chunk chunk, 
+                              int chunkColumn, int chunkRow) {
+
+        int chunkCells = TileChunkCache.CHUNK_CELLS;
+        int startColumn = chunkColumn * chunkCells;
+        int startRow = chunkRow * chunkCells;
+        int endColumn = Math.min(startColumn + chunkCells, columns);
+        int endRow = Math.min(startRow + chunkCells, rows);
+        int width = (endColumn - startColumn) * cellWidth;
+        int height = (endRow - startRow) * cellHeight;
+
+        long animatedTiles = 0;
+        boolean empty = true;
+        Image image = null;
+
+        // the scratch buffer is shared by all the layers
+        synchronized (TileChunkCache.class) {
+            int[] pixels = TileChunkCache.getPixels(width * height);
+
+            int rowOffset = 0;
+            for (int row = startRow; row < endRow; 
+                 row++, rowOffset += width * cellHeight) {
+                int offset = rowOffset;
+                for (int column = startColumn; column < endColumn; 
+                     column++, offset += cellWidth) {
+
+                    int tileIndex = cellMatrix[row][column];
+                    if (tileIndex < 0) {
+                        animatedTiles |= 1L << (-tileIndex & 63);
+                        tileIndex = anim_to_static[-tileIndex];
+                    }
+
+                    if (tileIndex == 0) { // transparent tile
+                        for (int i = 0, p = offset; i < cellHeight; 
+                             i++, p += width) {
+                            for (int j = p + cellWidth - 1; j >= p; j--) {
+                                pixels[j] = 0;
+                            }
+                        }
+                    } else {
+                        sourceImage.getRGB(pixels, offset, width,
+                                           tileSetX[tileIndex], 
+                                           tileSetY[tileIndex],
+                                           cellWidth, cellHeight);
+                        empty = false;
+                    }
+                }
+            }
+
+            if (!empty) {
+                image = Image.createRGBImage(pixels, width, height, true);
+            }
+            TileChunkCache.put(chunk, image, animatedTiles);
+        }
+        return image;
+    }
+
+    /**
+     * Invalidates the chunks containing a range of cells.
+     *
+     * @param col the column of the top-left cell of the range
+     * @param row the row of the top-left cell of the range
+     * @param numCols the number of columns of the range
+     * @param numRows the number of rows of the range
+     */
+    private void invalidateChunks(int col, int row, 
+                                  int numCols, int numRows) {
+        if ((chunks == null) || (numCols == 0) || (numRows == 0)) {
+            return;
+        }
+
+        int chunkCells = TileChunkCache.CHUNK_CELLS;
+        int endChunkColumn = (col + numCols - 1) / chunkCells;
+        int endChunkRow = (row + numRows - 1) / chunkCells;
+        for (int chunkRow = row / chunkCells; 
+             chunkRow <= endChunkRow; chunkRow++) {
+            for (int chunkColumn = col / chunkCells;
+                 chunkColumn <= endChunkColumn; chunkColumn++) {
+                TileChunkCache.Chunk chunk = 
+                    chunks[chunkRow * chunkColumns + chunkColumn];
+                if (chunk != null) {
+                    TileChunkCache.remove(chunk);
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidates the chunks which may contain an animated tile.
+     *
+     * @param animatedTileIndex the index of the animated tile, as a 
+     * positive number
+     */
+    private void invalidateAnimatedTile(int animatedTileIndex) {
+        if (chunks == null) {
+            return;
+        }
+
+        long mask = 1L << (animatedTileIndex & 63);
+        for (int i = 0; i < chunks.length; i++) {
+            TileChunkCache.Chunk chunk = chunks[i];
+            if ((chunk != null) && ((chunk.animatedTiles & mask) != 0)) {
+                TileChunkCache.remove(chunk);
+            }
+        }
+    }
+
+    /**
+     * Releases all the chunks of the layer.
+     */
+    private void releaseChunks() {
+        if (chunks == null) {
+            return;
+        }
+
+        for (int i = 0; i < chunks.length; i++) {
+            if (chunks[i] != null) {
+                TileChunkCache.remove(chunks[i]);
+            }
+        }
+        chunks = null;
+    }
+
+    /**
+     * Returns the collision mask of the tile set.
+     *
+     * @return the collision mask, or <code>null</code> if the source
+     * image is mutable and the mask can't be cached
+     */
+    CollisionMask getCollisionMask() {
+        if (sourceImage.isMutable()) {
+            return null;
+        }
+        if (collisionMask == null) {
+            collisionMask = new CollisionMask(sourceImage, 0, 0,
+                                              sourceImage.getWidth(),
+                                              sourceImage.getHeight(),
+                                              Sprite.TRANS_NONE);
+        }
+        return collisionMask;
+    }
 
     /**
      * create the Image Array.
@@ -628,6 +870,8 @@ public class TiledLayer extends Layer {
 	int imageH = image.getHeight();
 
 	sourceImage = image;
+	collisionMask = null;
+	releaseChunks();
 
 	numberOfTiles = noOfFrames;
 	tileSetX = new int[numberOfTiles];
@@ -709,6 +953,23 @@ public class TiledLayer extends Layer {
     // package access as it is used by Pixel level Collision
     // detection with a Sprite
     int[] tileSetY;
+
+    /**
+     * 1-bit opacity mask of the source image, built when first needed
+     * by pixel level collision detection with a Sprite
+     */
+    private CollisionMask collisionMask; // = null
+
+    /**
+     * Pre-rendered blocks of cells, in row-major order. Created when
+     * the layer is first painted with the chunk cache enabled.
+     */
+    private TileChunkCache.Chunk[] chunks; // = null
+
+    /**
+     * The number of columns of chunks
+     */
+    private int chunkColumns; // = 0
     
     /** 
      * Table to map from animated Index to static Index
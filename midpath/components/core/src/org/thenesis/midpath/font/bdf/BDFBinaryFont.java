@@ -0,0 +1,412 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.midpath.font.bdf;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compact form of a BDF font: a metrics table and a single glyph atlas
+ * holding one byte (the BDF pixel value) per pixel.
+ * <p>
+ * Binary fonts are produced at build time from BDF files (see BDFConverter)
+ * and loaded with a single read. The file layout (big endian) is:
+ * <pre>
+ * int    magic ('MPFN')
+ * short  version
+ * byte   depth (bits per pixel of the BDF font)
+ * short  bounding box x, y, width, height
+ * short  glyph count
+ * short  default glyph index
+ * int    atlas size
+ * glyph count times:
+ *   char   character
+ *   short  advance, top, width, height
+ *   int    atlas offset
+ * atlas bytes
+ * </pre>
+ * Glyphs are sorted by character. <code>top</code> is the offset of the first
+ * glyph row from the top of the font bounding box.
+ */
+public class BDFBinaryFont {
+
+	public static final String BDF_EXTENSION = ".bdf";
+	public static final String BINARY_EXTENSION = ".fnt";
+
+	private static final int MAGIC = 0x4D50464E; // 'MPFN'
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 4 + 2 + 1 + 8 + 2 + 2 + 4;
+	private static final int GLYPH_ENTRY_SIZE = 2 + 8 + 4;
+
+	/** Characters below this value are looked up directly */
+	private static final int DIRECT_SIZE = 256;
+
+	private int depth;
+	private int boundingBoxX;
+	private int boundingBoxY;
+	private int boundingBoxWidth;
+	private int boundingBoxHeight;
+
+	/* Metrics table, indexed by glyph */
+	private char[] chars;
+	private int[] advances;
+	private int[] tops;
+	private int[] widths;
+	private int[] heights;
+	private int[] offsets;
+
+	private byte[] atlas;
+	private int defaultGlyph;
+
+	/* Glyph index and advance of the characters below DIRECT_SIZE */
+	private int[] directGlyphs = new int[DIRECT_SIZE];
+	private int[] directAdvances = new int[DIRECT_SIZE];
+
+	private BDFBinaryFont() {
+	}
+
+	/**
+	 * Creates a binary font from a parsed BDF font.
+	 */
+	public static BDFBinaryFont create(BDFFontContainer container) {
+
+		BDFBinaryFont font = new BDFBinaryFont();
+		BDFParser.Rectangle bbox = container.getBoundingBox();
+		font.depth = container.getDepth();
+		font.boundingBoxX = bbox.x;
+		font.boundingBoxY = bbox.y;
+		font.boundingBoxWidth = bbox.width;
+		font.boundingBoxHeight = bbox.height;
+
+		// Keep the glyphs with a valid encoding, sorted by character
+		BDFGlyph[] allGlyphs = container.getGlyphs();
+		int count = 0;
+		for (int i = 0; i < allGlyphs.length; i++) {
+			int encoding = allGlyphs[i].getEncoding();
+			if ((encoding >= 0) && (encoding <= 0xFFFF)) {
+				count++;
+			}
+		}
+		BDFGlyph[] glyphs = new BDFGlyph[count];
+		for (int i = 0, j = 0; i < allGlyphs.length; i++) {
+			int encoding = allGlyphs[i].getEncoding();
+			if ((encoding >= 0) && (encoding <= 0xFFFF)) {
+				// Insertion sort (glyphs are usually already sorted)
+				int k = j++;
+				while ((k > 0) && (glyphs[k - 1].getEncoding() > encoding)) {
+					glyphs[k] = glyphs[k - 1];
+					k--;
+				}
+				glyphs[k] = allGlyphs[i];
+			}
+		}
+
+		font.allocate(count);
+
+		int atlasSize = 0;
+		for (int i = 0; i < count; i++) {
+			BDFParser.Rectangle bbx = glyphs[i].getBbx();
+			atlasSize += bbx.width * bbx.height;
+		}
+		font.atlas = new byte[atlasSize];
+
+		int offset = 0;
+		for (int i = 0; i < count; i++) {
+			BDFGlyph glyph = glyphs[i];
+			BDFParser.Rectangle bbx = glyph.getBbx();
+			int[] data = glyph.getData();
+			int w = bbx.width;
+			int h = bbx.height;
+
+			font.chars[i] = (char) glyph.getEncoding();
+			font.advances[i] = glyph.getDWidth().width - bbx.x;
+			font.tops[i] = bbox.height + bbox.y - h - bbx.y;
+			font.widths[i] = w;
+			font.heights[i] = h;
+			font.offsets[i] = offset;
+
+			// BDF rows are padded to a byte boundary
+			int scan = (h > 0) ? data.length / h : 0;
+			for (int y = 0; y < h; y++) {
+				for (int x = 0; x < w; x++) {
+					font.atlas[offset++] = (byte) data[y * scan + x];
+				}
+			}
+		}
+
+		font.defaultGlyph = font.findGlyph(' ');
+		font.initDirectTables();
+
+		return font;
+	}
+
+	/**
+	 * Loads a binary font with a single read of the stream.
+	 */
+	public static BDFBinaryFont load(InputStream is) throws IOException {
+
+		byte[] buf = readFully(is);
+		if ((buf.length < HEADER_SIZE) || (getInt(buf, 0) != MAGIC) || (getShort(buf, 4) != VERSION)) {
+			throw new IOException("Not a binary font");
+		}
+
+		BDFBinaryFont font = new BDFBinaryFont();
+		font.depth = buf[6];
+		font.boundingBoxX = getShort(buf, 7);
+		font.boundingBoxY = getShort(buf, 9);
+		font.boundingBoxWidth = getShort(buf, 11);
+		font.boundingBoxHeight = getShort(buf, 13);
+		int count = getShort(buf, 15) & 0xFFFF;
+		font.defaultGlyph = getShort(buf, 17);
+		int atlasSize = getInt(buf, 19);
+
+		int atlasBase = HEADER_SIZE + count * GLYPH_ENTRY_SIZE;
+		if (buf.length < atlasBase + atlasSize) {
+			throw new IOException("Truncated binary font");
+		}
+
+		font.allocate(count);
+		for (int i = 0, p = HEADER_SIZE; i < count; i++, p += GLYPH_ENTRY_SIZE) {
+			font.chars[i] = (char) getShort(buf, p);
+			font.advances[i] = getShort(buf, p + 2);
+			font.tops[i] = getShort(buf, p + 4);
+			font.widths[i] = getShort(buf, p + 6);
+			font.heights[i] = getShort(buf, p + 8);
+			// The atlas is not copied: offsets point in the file buffer
+			font.offsets[i] = atlasBase + getInt(buf, p + 10);
+		}
+		font.atlas = buf;
+		font.initDirectTables();
+
+		return font;
+	}
+
+	/**
+	 * Writes this font in the binary format.
+	 */
+	public void write(OutputStream os) throws IOException {
+
+		int count = chars.length;
+		int atlasSize = 0;
+		for (int i = 0; i < count; i++) {
+			atlasSize += widths[i] * heights[i];
+		}
+
+		DataOutputStream dos = new DataOutputStream(os);
+		dos.writeInt(MAGIC);
+		dos.writeShort(VERSION);
+		dos.writeByte(depth);
+		dos.writeShort(boundingBoxX);
+		dos.writeShort(boundingBoxY);
+		dos.writeShort(boundingBoxWidth);
+		dos.writeShort(boundingBoxHeight);
+		dos.writeShort(count);
+		dos.writeShort(defaultGlyph);
+		dos.writeInt(atlasSize);
+
+		int offset = 0;
+		for (int i = 0; i < count; i++) {
+			dos.writeChar(chars[i]);
+			dos.writeShort(advances[i]);
+			dos.writeShort(tops[i]);
+			dos.writeShort(widths[i]);
+			dos.writeShort(heights[i]);
+			dos.writeInt(offset);
+			offset += widths[i] * heights[i];
+		}
+
+		for (int i = 0; i < count; i++) {
+			dos.write(atlas, offsets[i], widths[i] * heights[i]);
+		}
+
+		dos.flush();
+	}
+
+	private void allocate(int count) {
+		chars = new char[count];
+		advances = new int[count];
+		tops = new int[count];
+		widths = new int[count];
+		heights = new int[count];
+		offsets = new int[count];
+	}
+
+	private void initDirectTables() {
+		for (int c = 0; c < DIRECT_SIZE; c++) {
+			int glyph = findGlyph((char) c);
+			if (glyph < 0) {
+				glyph = defaultGlyph;
+			}
+			directGlyphs[c] = glyph;
+			directAdvances[c] = (glyph < 0) ? 0 : advances[glyph];
+		}
+	}
+
+	/**
+	 * Binary search of a character in the metrics table.
+	 * @return the glyph index or -1 if the font has no glyph for this character
+	 */
+	private int findGlyph(char c) {
+		int low = 0;
+		int high = chars.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			char midChar = chars[mid];
+			if (midChar < c) {
+				low = mid + 1;
+			} else if (midChar > c) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the glyph used to draw a character. Characters without glyph
+	 * are drawn with the default glyph (space).
+	 * @return the glyph index or -1 if there is nothing to draw
+	 */
+	public int getGlyph(char c) {
+		if (c < DIRECT_SIZE) {
+			return directGlyphs[c];
+		}
+		int glyph = findGlyph(c);
+		return (glyph < 0) ? defaultGlyph : glyph;
+	}
+
+	public int charWidth(char c) {
+		if (c < DIRECT_SIZE) {
+			return directAdvances[c];
+		}
+		int glyph = getGlyph(c);
+		return (glyph < 0) ? 0 : advances[glyph];
+	}
+
+	public int charsWidth(char[] ch, int offset, int length) {
+		int w = 0;
+		for (int i = offset; i < offset + length; i++) {
+			w += charWidth(ch[i]);
+		}
+		return w;
+	}
+
+	public int substringWidth(String str, int offset, int length) {
+		int w = 0;
+		for (int i = offset; i < offset + length; i++) {
+			w += charWidth(str.charAt(i));
+		}
+		return w;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getAscent() {
+		return boundingBoxHeight + boundingBoxY;
+	}
+
+	public int getDescent() {
+		return boundingBoxY;
+	}
+
+	public int getHeight() {
+		return boundingBoxHeight;
+	}
+
+	public int getMaxAdvance() {
+		return boundingBoxWidth;
+	}
+
+	/* Glyph metrics */
+
+	public int getAdvance(int glyph) {
+		return advances[glyph];
+	}
+
+	public int getTop(int glyph) {
+		return tops[glyph];
+	}
+
+	public int getWidth(int glyph) {
+		return widths[glyph];
+	}
+
+	public int getHeight(int glyph) {
+		return heights[glyph];
+	}
+
+	/**
+	 * Returns the offset of the first pixel of a glyph in the atlas.
+	 * Glyph rows are <code>getWidth(glyph)</code> bytes long.
+	 */
+	public int getAtlasOffset(int glyph) {
+		return offsets[glyph];
+	}
+
+	public byte[] getAtlas() {
+		return atlas;
+	}
+
+	/**
+	 * Returns the name of the binary font matching a BDF file name.
+	 */
+	public static String getBinaryName(String bdfName) {
+		if (bdfName.endsWith(BDF_EXTENSION)) {
+			return bdfName.substring(0, bdfName.length() - BDF_EXTENSION.length()) + BINARY_EXTENSION;
+		}
+		return bdfName + BINARY_EXTENSION;
+	}
+
+	private static byte[] readFully(InputStream is) throws IOException {
+		byte[] buf = new byte[Math.max(is.available(), 4096)];
+		int length = 0;
+		while (true) {
+			if (length == buf.length) {
+				byte[] newBuf = new byte[buf.length * 2];
+				System.arraycopy(buf, 0, newBuf, 0, length);
+				buf = newBuf;
+			}
+			int n = is.read(buf, length, buf.length - length);
+			if (n < 0) {
+				break;
+			}
+			length += n;
+		}
+		if (length == buf.length) {
+			return buf;
+		}
+		byte[] result = new byte[length];
+		System.arraycopy(buf, 0, result, 0, length);
+		return result;
+	}
+
+	private static int getShort(byte[] buf, int offset) {
+		return (short) (((buf[offset] & 0xFF) << 8) | (buf[offset + 1] & 0xFF));
+	}
+
+	private static int getInt(byte[] buf, int offset) {
+		return ((buf[offset] & 0xFF) << 24) | ((buf[offset + 1] & 0xFF) << 16) | ((buf[offset + 2] & 0xFF) << 8)
+				| (buf[offset + 3] & 0xFF);
+	}
+
+}
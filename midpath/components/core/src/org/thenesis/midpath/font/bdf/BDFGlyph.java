@@ -43,6 +43,7 @@ package org.thenesis.midpath.font.bdf;
  */
 public class BDFGlyph {
 	public String name;
+	private int encoding = -1;
 	public BDFParser.Rectangle bbx = new BDFParser.Rectangle();
 	public int[] data;
 	public StringBuffer rawData;
@@ -119,6 +120,17 @@ public class BDFGlyph {
 		this.name = name;
 	}
 
+	/**
+	 * Returns the character code of the glyph or -1 if it has no standard encoding.
+	 */
+	public int getEncoding() {
+		return encoding;
+	}
+
+	public void setEncoding(int encoding) {
+		this.encoding = encoding;
+	}
+
 	public BDFFontContainer getFont() {
 		return font;
 	}
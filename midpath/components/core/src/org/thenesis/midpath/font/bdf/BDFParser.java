@@ -452,6 +452,7 @@ public class BDFParser implements BDFParserConstants {
 		jj_consume_token(ENDCHAR);
 		dat.setSWidth(Integer.parseInt(swx0.image), Integer.parseInt(swy0.image));
 		dat.setDWidth(Integer.parseInt(dwx0.image), Integer.parseInt(dwy0.image));
+		dat.setEncoding(Integer.parseInt(encoding.image));
 		dat.setBBX(Integer.parseInt(x.image), Integer.parseInt(y.image), Integer.parseInt(width.image), Integer
 				.parseInt(height.image));
 		dat.setRawData(buf);
@@ -29,6 +29,10 @@ import com.sun.midp.io.j2me.file.BaseFileHandler;
 
 public class JarInspectorME extends AbstractJarInspector {
 
+	/** Prefix and suffix of the file holding the index of the central directory of the jar */
+	private static final String INDEX_PREFIX = "jar-";
+	private static final String INDEX_SUFFIX = ".idx";
+
 	private String fileName;
 
 	public JarInspectorME(String fileName) {
@@ -44,17 +48,18 @@ public class JarInspectorME extends AbstractJarInspector {
 			throw new IOException("File doesn't exist");
 		}
 		fHandler.openForRead();
-		ZipFile file = new ZipFile(fHandler);
+		ZipFile file = new ZipFile(fHandler, getIndexFileName(fileName));
 		
-		// Get the manifest zip entry 
-		// ZipEntry entry = file.getEntry("META-INF/MANIFEST.MF");
-		Enumeration enumeration = file.entries();
-		ZipEntry manifestEntry = null;
-		while(enumeration.hasMoreElements()) {
-			ZipEntry entry = (ZipEntry)enumeration.nextElement();
-			if (entry.getName().equalsIgnoreCase("META-INF/MANIFEST.MF")) {
-				manifestEntry = entry;
-				break;
+		// Get the manifest zip entry, from the index of the jar if possible 
+		ZipEntry manifestEntry = file.getEntry("META-INF/MANIFEST.MF");
+		if (manifestEntry == null) {
+			Enumeration enumeration = file.entries();
+			while(enumeration.hasMoreElements()) {
+				ZipEntry entry = (ZipEntry)enumeration.nextElement();
+				if (entry.getName().equalsIgnoreCase("META-INF/MANIFEST.MF")) {
+					manifestEntry = entry;
+					break;
+				}
 			}
 		}
 		
@@ -65,5 +70,15 @@ public class JarInspectorME extends AbstractJarInspector {
 		InputStream is = file.getInputStream(manifestEntry);
 		return is;
 	}
+
+	/**
+	 * Returns the name of the index file of a jar in the MIDPath storage
+	 * directory: the name of the jar, made unique by the hash code of its
+	 * path.
+	 */
+	private static String getIndexFileName(String fileName) {
+		int start = Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1;
+		return INDEX_PREFIX + fileName.substring(start) + "-" + Integer.toHexString(fileName.hashCode()) + INDEX_SUFFIX;
+	}
 	
 }
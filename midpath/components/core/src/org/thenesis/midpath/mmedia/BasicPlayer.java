@@ -302,13 +302,17 @@ public abstract class BasicPlayer implements Player, TimeBase, StopTimeControl {
 	 *  Description of the Field
 	 */
 	protected final static String vocName = "VolumeControl";
+	/**
+	 *  Non-standard control giving the state of the decoding buffer
+	 */
+	protected final static String bucName = "org.thenesis.midpath.mmedia.BufferControl";
 
 	/**
 	 * An array containing all available controls in Players
 	 * extending BasicPlayer.
 	 */
 	private final static String[] allCtrls = { fpcName, mdcName, micName, picName, racName, recName, stcName, tecName,
-			guiName, vicName, rtspName, tocName, vocName, };
+			guiName, vicName, rtspName, tocName, vocName, bucName, };
 
 	/**
 	 * Locator string
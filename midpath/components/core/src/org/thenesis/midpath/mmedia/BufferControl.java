@@ -0,0 +1,52 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.midpath.mmedia;
+
+import javax.microedition.media.Control;
+
+/**
+ * A non-standard control giving the state of the buffer between the decoder
+ * of a player and the mixer. Sizes are in bytes of mixer format data.
+ */
+public interface BufferControl extends Control {
+
+	/**
+	 * Returns the size of the read-ahead buffer.
+	 */
+	int getBufferSize();
+
+	/**
+	 * Returns the number of bytes decoded and not played yet.
+	 */
+	int getFillLevel();
+
+	/**
+	 * Returns the lowest fill level seen by the mixer since the statistics
+	 * were reset, or -1 if the player hasn't been played.
+	 */
+	int getMinimumFillLevel();
+
+	/**
+	 * Returns the number of times the mixer had less than one buffer of
+	 * data to play, i.e. the number of audible glitches.
+	 */
+	int getUnderrunCount();
+
+	void resetStatistics();
+
+}
@@ -28,8 +28,11 @@ import javax.microedition.media.control.ToneControl;
 import javax.microedition.media.control.VolumeControl;
 import javax.microedition.media.protocol.SourceStream;
 
+import org.thenesis.midpath.sound.AudioFormat;
+import org.thenesis.midpath.sound.ClipCache;
 import org.thenesis.midpath.sound.Line;
 import org.thenesis.midpath.sound.Mixer;
+import org.thenesis.midpath.sound.SoftMixer;
 import org.thenesis.midpath.sound.SoundBackend;
 import org.thenesis.midpath.sound.SoundToolkit;
 import org.thenesis.midpath.sound.codec.AudioDecoder;
@@ -60,12 +63,19 @@ public class VirtualSoundPlayer extends BasicPlayer {
 	private Mixer mixer;
 	private Line line;
 	private volatile DecodingThread decodingThread;
+	private VirtualVolumeControl volumeControl;
+	private VirtualBufferControl bufferControl;
+	/* Decoded media in the mixer format when it is short enough to be cached, null otherwise */
+	private byte[] clip;
 
 	public VirtualSoundPlayer() {
 	}
 
 	protected void doClose() {
-		decodingThread.close();
+		if (decodingThread != null) {
+			decodingThread.close();
+		}
+		line.stop();
 		mixer.removeLine(line);
 		line.close();
 	}
@@ -77,12 +87,25 @@ public class VirtualSoundPlayer extends BasicPlayer {
 
 	protected Control doGetControl(String type) {
 		if (type.equals(pkgName + "VolumeControl")) {
-			return new VirtualVolumeControl();
+			if (volumeControl == null) {
+				volumeControl = new VirtualVolumeControl();
+			}
+			return volumeControl;
+		}
+		if (type.equals(bucName)) {
+			if (bufferControl == null) {
+				bufferControl = new VirtualBufferControl();
+			}
+			return bufferControl;
 		}
 		return null;
 	}
 
 	protected long doGetDuration() {
+		if (clip != null) {
+			AudioFormat format = line.getFormat();
+			return ((long) (clip.length / format.getBytesPerFrame()) * 1000000) / format.sampleRate;
+		}
 		return TIME_UNKNOWN;
 	}
 
@@ -111,6 +134,28 @@ public class VirtualSoundPlayer extends BasicPlayer {
 			decoder = new OggVorbisDecoder();
 		} 
 
+		mixer = backend.getMixer();
+
+		// Short clips are decoded once and played from memory by the mixer
+		if (mixer instanceof SoftMixer) {
+			try {
+				clip = getCachedClip(type);
+			} catch (IOException e) {
+				clip = null;
+			}
+		}
+
+		if (clip != null) {
+			line = mixer.createLine(backend.getAudioFormat());
+			((SoftMixer.SoftMixerLine) line).setClip(clip, clip.length, new Runnable() {
+				public void run() {
+					endOfMediaReached();
+				}
+			});
+			mixer.addLine(line);
+			return;
+		}
+
 		// Create an audio decoder 
 		try {
 			resetDecoder();
@@ -123,12 +168,59 @@ public class VirtualSoundPlayer extends BasicPlayer {
 		//System.out.println("[DEBUG] VirtualSoundPlayer.realize(): audio format : " + decoder.getOutputAudioFormat());
 
 		// Create a line
-		mixer = backend.getMixer();
 		line = mixer.createLine(decoder.getOutputAudioFormat());
 		mixer.addLine(line);
 
 	}
 
+	/**
+	 * Reads the whole media if it is small enough and returns it decoded in the mixer format.
+	 * @return the decoded media, or null if it is too large or the cache is disabled
+	 */
+	private byte[] getCachedClip(String type) throws IOException {
+
+		ClipCache cache = SoundToolkit.getClipCache();
+		// The media has to be read again if it isn't cached
+		if (!cache.isEnabled() || (stream.getSeekType() == SourceStream.NOT_SEEKABLE)) {
+			return null;
+		}
+
+		int maxLength = cache.getMaxClipSize();
+		long contentLength = stream.getContentLength();
+		if (contentLength > maxLength) {
+			return null;
+		}
+
+		byte[] data = new byte[(contentLength >= 0) ? (int) contentLength : 4096];
+		int length = 0;
+		while (true) {
+			if (length == data.length) {
+				if ((contentLength >= 0) || (length >= maxLength)) {
+					// Check for the end of the media
+					if (stream.read(new byte[1], 0, 1) >= 0) {
+						stream.seek(0);
+						return null;
+					}
+					break;
+				}
+				byte[] newData = new byte[Math.min(length * 2, maxLength)];
+				System.arraycopy(data, 0, newData, 0, length);
+				data = newData;
+			}
+			int count = stream.read(data, length, data.length - length);
+			if (count < 0) {
+				break;
+			}
+			length += count;
+		}
+
+		byte[] result = cache.getClip(data, length, type, decoder, SoundToolkit.getBackend().getAudioFormat());
+		if (result == null) {
+			stream.seek(0);
+		}
+		return result;
+	}
+
 	private void resetDecoder() throws IOException {
 		
 		if (stream.tell() > 0) {
@@ -140,6 +232,10 @@ public class VirtualSoundPlayer extends BasicPlayer {
 
 	protected long doSetMediaTime(long now) throws MediaException {
 
+		if ((clip != null) && (now == 0)) {
+			((SoftMixer.SoftMixerLine) line).rewindClip();
+			return 0;
+		}
 		
 		try {
 			if (now == 0) {
@@ -157,6 +253,12 @@ public class VirtualSoundPlayer extends BasicPlayer {
 
 		//System.out.println("[DEBUG] VirtualPlayer.doStart(): 1");
 
+		// A cached clip is mixed straight from memory
+		if (clip != null) {
+			line.start();
+			return true;
+		}
+
 		if ((decodingThread == null) || decodingThread.isClosed()) {
 			decodingThread = new DecodingThread(decoder, line);
 		}
@@ -174,6 +276,10 @@ public class VirtualSoundPlayer extends BasicPlayer {
 	}
 
 	protected void doStop() throws MediaException {
+		if (clip != null) {
+			line.stop();
+			return;
+		}
 		decodingThread.pause();
 	}
 
@@ -193,43 +299,69 @@ public class VirtualSoundPlayer extends BasicPlayer {
 
 	class VirtualVolumeControl implements VolumeControl {
 
-		public int oldLevel = 0;
-		boolean muted = false;
+		private int level = SoftMixer.VOLUME_MAX;
+		private boolean muted = false;
 
 		public int getLevel() {
-
-			if (muted) {
-				return oldLevel;
-			}
-
-			return 0;
+			return level;
 		}
 
 		public boolean isMuted() {
-			return (getLevel() == 0) ? true : false;
+			return muted;
 		}
 
 		public int setLevel(int level) {
 
-			if (muted) {
-				oldLevel = level;
-				return level;
+			if (level < 0) {
+				level = 0;
+			} else if (level > SoftMixer.VOLUME_MAX) {
+				level = SoftMixer.VOLUME_MAX;
 			}
 
-			return 0;
+			this.level = level;
+			if (!muted) {
+				applyLevel(level);
+			}
+
+			return level;
 		}
 
 		public void setMute(boolean mute) {
+			muted = mute;
+			applyLevel(mute ? 0 : level);
+		}
 
-			if (mute) {
-				oldLevel = getLevel();
-				setLevel(0);
-				muted = true;
-			} else {
-				setLevel(oldLevel);
-				muted = false;
+		private void applyLevel(int level) {
+			if (line instanceof SoftMixer.SoftMixerLine) {
+				((SoftMixer.SoftMixerLine) line).setVolume(level);
 			}
+		}
+
+	}
+
+	class VirtualBufferControl implements BufferControl {
+
+		public int getBufferSize() {
+			return (line instanceof SoftMixer.SoftMixerLine) ? ((SoftMixer.SoftMixerLine) line).getBufferSize() : 0;
+		}
 
+		public int getFillLevel() {
+			return (line instanceof SoftMixer.SoftMixerLine) ? ((SoftMixer.SoftMixerLine) line).getFillLevel() : 0;
+		}
+
+		public int getMinimumFillLevel() {
+			return (line instanceof SoftMixer.SoftMixerLine) ? ((SoftMixer.SoftMixerLine) line).getMinimumFillLevel()
+					: -1;
+		}
+
+		public int getUnderrunCount() {
+			return (line instanceof SoftMixer.SoftMixerLine) ? ((SoftMixer.SoftMixerLine) line).getUnderrunCount() : 0;
+		}
+
+		public void resetStatistics() {
+			if (line instanceof SoftMixer.SoftMixerLine) {
+				((SoftMixer.SoftMixerLine) line).resetStatistics();
+			}
 		}
 
 	}
@@ -310,6 +442,8 @@ public class VirtualSoundPlayer extends BasicPlayer {
 					}
 
 					if (DecodingThread.this.decoder.decodeStep(decoderCallback) < 0) {
+						// Play the buffered data before stopping the line
+						line.drain();
 						close();
 						break;
 					}
@@ -0,0 +1,350 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.midpath.sound;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Hashtable;
+
+import org.thenesis.midpath.sound.codec.AudioDecoder;
+import org.thenesis.midpath.sound.codec.DecoderCallback;
+
+/**
+ * <p>A cache of fully decoded sound clips, in the mixer format, so that a short
+ * sound effect played again and again is decoded only once and is played
+ * straight from memory (see SoftMixer.SoftMixerLine.setClip()).</p>
+ * <p>Clips are keyed by the content of their source and the least recently
+ * used clips are evicted when the total size of the decoded data exceeds the
+ * size of the cache.</p>
+ */
+public class ClipCache {
+
+	/** Size of the chunks given to the format converter */
+	private static final int CHUNK_SIZE = 1024;
+
+	/** Maximum number of keys of the sources known to be too large */
+	private static final int MAX_REJECTED = 64;
+
+	private int maxSize;
+	private int maxClipSize;
+
+	/* Entries by key, and list of the entries from the most to the least recently used */
+	private Hashtable entries = new Hashtable();
+	private Entry head;
+	private Entry tail;
+	private int size;
+
+	/* Keys of the sources whose decoded data is larger than maxClipSize, so that they are decoded only once */
+	private Hashtable rejected = new Hashtable();
+
+	/* Statistics */
+	private int hitCount;
+	private int missCount;
+	private int evictionCount;
+
+	/**
+	 * @param maxSize the maximum size of the decoded data in bytes (0 disables the cache)
+	 * @param maxClipSize the maximum size of a decoded clip in bytes
+	 */
+	public ClipCache(int maxSize, int maxClipSize) {
+		this.maxSize = maxSize;
+		this.maxClipSize = Math.min(maxClipSize, maxSize);
+	}
+
+	public boolean isEnabled() {
+		return maxClipSize > 0;
+	}
+
+	/**
+	 * Returns the maximum size of a decoded clip. Sources larger than this are never cached.
+	 */
+	public int getMaxClipSize() {
+		return maxClipSize;
+	}
+
+	/**
+	 * Returns the decoded clip of a source, decoding and caching it if needed.
+	 * @param source the encoded data
+	 * @param length the length of the encoded data
+	 * @param type the content type of the source, part of the key
+	 * @param decoder a decoder for the source, only used on a cache miss
+	 * @param format the mixer format
+	 * @return the decoded data in the mixer format, or null if the clip is
+	 *         larger than getMaxClipSize()
+	 */
+	public byte[] getClip(byte[] source, int length, String type, AudioDecoder decoder, AudioFormat format)
+			throws IOException {
+
+		String key = createKey(source, length, type, format);
+
+		synchronized (this) {
+			Entry entry = (Entry) entries.get(key);
+			if (entry != null) {
+				hitCount++;
+				unlink(entry);
+				link(entry);
+				return entry.data;
+			}
+			missCount++;
+			if (rejected.containsKey(key)) {
+				return null;
+			}
+		}
+
+		// Decode outside of the lock, other players may use the cache meanwhile
+		byte[] data = decode(source, length, decoder, format);
+		if (data == null) {
+			synchronized (this) {
+				if (rejected.size() >= MAX_REJECTED) {
+					rejected.clear();
+				}
+				rejected.put(key, key);
+			}
+			return null;
+		}
+
+		synchronized (this) {
+			Entry entry = (Entry) entries.get(key);
+			if (entry != null) {
+				// Decoded by another player at the same time
+				return entry.data;
+			}
+			entry = new Entry(key, data);
+			entries.put(key, entry);
+			link(entry);
+			size += data.length;
+			while (size > maxSize) {
+				Entry last = tail;
+				unlink(last);
+				entries.remove(last.key);
+				size -= last.data.length;
+				evictionCount++;
+			}
+		}
+
+		return data;
+	}
+
+	/**
+	 * Removes all the clips. The statistics are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		rejected.clear();
+		head = null;
+		tail = null;
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of clips found in the cache.
+	 */
+	public synchronized int getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Returns the number of clips which had to be decoded.
+	 */
+	public synchronized int getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Returns the percentage of clips found in the cache.
+	 */
+	public synchronized int getHitRate() {
+		int total = hitCount + missCount;
+		return (total == 0) ? 0 : (hitCount * 100) / total;
+	}
+
+	/**
+	 * Returns the number of clips removed to make room for new ones.
+	 */
+	public synchronized int getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Returns the number of clips in the cache.
+	 */
+	public synchronized int getClipCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the size of the decoded data in the cache in bytes.
+	 */
+	public synchronized int getSize() {
+		return size;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized void resetStatistics() {
+		hitCount = 0;
+		missCount = 0;
+		evictionCount = 0;
+	}
+
+	private void link(Entry entry) {
+		entry.previous = null;
+		entry.next = head;
+		if (head != null) {
+			head.previous = entry;
+		}
+		head = entry;
+		if (tail == null) {
+			tail = entry;
+		}
+	}
+
+	private void unlink(Entry entry) {
+		if (entry.previous != null) {
+			entry.previous.next = entry.next;
+		} else {
+			head = entry.next;
+		}
+		if (entry.next != null) {
+			entry.next.previous = entry.previous;
+		} else {
+			tail = entry.previous;
+		}
+		entry.previous = null;
+		entry.next = null;
+	}
+
+	/**
+	 * Builds a key from two independent hashes of the source, its length and
+	 * its type. The mixer format is included in case a backend is reopened
+	 * with another one.
+	 */
+	private static String createKey(byte[] source, int length, String type, AudioFormat format) {
+		int hash = 0;
+		int fnv = 0x811C9DC5;
+		for (int i = 0; i < length; i++) {
+			int b = source[i];
+			hash = 31 * hash + b;
+			fnv = (fnv ^ (b & 0xFF)) * 0x01000193;
+		}
+		return type + '/' + format.sampleRate + '/' + length + '/' + Integer.toHexString(hash) + '/'
+				+ Integer.toHexString(fnv);
+	}
+
+	/**
+	 * Decodes a whole clip and converts it to the mixer format.
+	 * @return the decoded data, or null if it is larger than maxClipSize
+	 */
+	private byte[] decode(byte[] source, int length, AudioDecoder decoder, AudioFormat format) throws IOException {
+		decoder.initialize(new ByteArrayInputStream(source, 0, length));
+		ClipBuilder builder = new ClipBuilder(decoder.getOutputAudioFormat(), format, maxClipSize);
+		while (!builder.overflow && (decoder.decodeStep(builder) >= 0))
+			;
+		return builder.overflow ? null : builder.toByteArray();
+	}
+
+	private static class Entry {
+
+		String key;
+		byte[] data;
+		Entry previous;
+		Entry next;
+
+		Entry(String key, byte[] data) {
+			this.key = key;
+			this.data = data;
+		}
+
+	}
+
+	/**
+	 * Converts the decoded data to the mixer format like SoftMixerLine does,
+	 * and collects it.
+	 */
+	private static class ClipBuilder implements DecoderCallback {
+
+		private AudioFormat srcFormat;
+		private AudioFormat dstFormat;
+		private int chunkSize;
+		private byte[] convertingBuffer;
+		private byte[] resamplingBuffer;
+		private int maxSize;
+		private byte[] data = new byte[CHUNK_SIZE * 4];
+		private int size;
+		boolean overflow;
+
+		ClipBuilder(AudioFormat srcFormat, AudioFormat dstFormat, int maxSize) {
+			this.srcFormat = srcFormat;
+			this.dstFormat = dstFormat;
+			this.maxSize = maxSize;
+			chunkSize = CHUNK_SIZE - (CHUNK_SIZE % srcFormat.getBytesPerFrame());
+			convertingBuffer = new byte[AudioTools.getFrameConversionBufferSize(chunkSize, srcFormat, dstFormat)];
+			resamplingBuffer = new byte[AudioTools.getFormatConversionBufferSize(chunkSize, srcFormat, dstFormat)];
+		}
+
+		public void write(byte[] buf, int offset, int length) {
+			while ((length > 0) && !overflow) {
+				int n = Math.min(length, chunkSize);
+				writeChunk(buf, offset, n);
+				offset += n;
+				length -= n;
+			}
+		}
+
+		private void writeChunk(byte[] b, int offset, int length) {
+			if (srcFormat.matches(dstFormat)) {
+				append(b, offset, length);
+			} else {
+				if (!srcFormat.is16bitsStereoSignedLittleEndian()) {
+					length = AudioTools.convertTo16BitsStereo(b, srcFormat, offset, convertingBuffer, dstFormat, 0,
+							length);
+					offset = 0;
+					b = convertingBuffer;
+				}
+				int resamplingSize = AudioTools.resample(b, srcFormat, offset, resamplingBuffer, dstFormat, 0, length);
+				append(resamplingBuffer, 0, resamplingSize);
+			}
+		}
+
+		private void append(byte[] b, int offset, int length) {
+			if (size + length > maxSize) {
+				overflow = true;
+				return;
+			}
+			if (size + length > data.length) {
+				byte[] newData = new byte[Math.min(Math.max(data.length * 2, size + length), maxSize)];
+				System.arraycopy(data, 0, newData, 0, size);
+				data = newData;
+			}
+			System.arraycopy(b, offset, data, size, length);
+			size += length;
+		}
+
+		byte[] toByteArray() {
+			// Whole frames only
+			int length = size & ~(dstFormat.getBytesPerFrame() - 1);
+			byte[] result = new byte[length];
+			System.arraycopy(data, 0, result, 0, length);
+			return result;
+		}
+
+	}
+
+}
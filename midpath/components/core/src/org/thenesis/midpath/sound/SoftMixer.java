@@ -17,144 +17,349 @@
  */
 package org.thenesis.midpath.sound;
 
-import java.util.Vector;
-
 /**
  * <p>A software mixer with embedded resampler and audio format converter.</p>
+ * <p>Lines are mixed by a dedicated thread, one period (i.e. one backend buffer) at a time.
+ * Each line has its own read-ahead ring buffer of a few periods: a line which is late is
+ * mixed with the data it has and the rest of its period is silence, so it never blocks
+ * the other lines.</p>
+ * <p>Samples are summed in a 32 bits accumulator and saturated to 16 bits.</p>
  * <p>References: http://www.pascalgamedevelopment.com/library/oxygen_damt/index.html</p>
  * @author Guillaume Legris
  * @author Mathieu legris
  */
 public class SoftMixer extends Mixer {
-	
-	private static final int MIXER_VOLUME_MAX = 1 << 7; // 128
+
+	/** Volume level of the unity gain (same scale as VolumeControl) */
+	public static final int VOLUME_MAX = 100;
+
+	public static final int PAN_LEFT = -100;
+	public static final int PAN_CENTER = 0;
+	public static final int PAN_RIGHT = 100;
+
+	/** Unity gain in 8.8 fixed point */
+	private static final int GAIN_ONE = 1 << 8;
+
+	/** Minimum number of mixing periods a line can buffer */
+	private static final int MIN_LINE_PERIODS = 2;
+
+	private static final int BYTES_PER_FRAME = 4;
 
 	private int mixbufferSize;
 	private byte[] mixBuffer;
+	private int[] accBuffer;
 	private Object mutex = new Object();
 	private SoundBackend soundBackend;
 	private AudioFormat mixerAudioFormat;
-	private Vector aliveLines = new Vector();
-	private int mixerVolume = MIXER_VOLUME_MAX; // 128
+	private int mixerVolume = VOLUME_MAX;
+	private long periodMillis;
+	private int linePeriods;
+
+	/** Copy of lineList used by the mixing thread, rebuilt when a line is added or removed */
+	private SoftMixerLine[] mixedLines = new SoftMixerLine[0];
+	private Thread mixingThread;
+
+	/** Lines whose clip ended during the last mix(), notified by the mixing thread without the mutex */
+	private SoftMixerLine[] endedLines = new SoftMixerLine[4];
+	private int endedCount;
+
+	/* Statistics */
+	private int underrunCount;
+	private int overrunCount;
+	private int mixCount;
 
 	public SoftMixer(SoundBackend backend) {
 		this.soundBackend = backend;
-		this.mixbufferSize = soundBackend.getBufferSize();
-		this.mixBuffer = new byte[mixbufferSize];
 		this.mixerAudioFormat = soundBackend.getAudioFormat();
+		// The mixer works on 16 bits stereo frames
+		this.mixbufferSize = soundBackend.getBufferSize() & ~(BYTES_PER_FRAME - 1);
+		this.mixBuffer = new byte[mixbufferSize];
+		this.accBuffer = new int[mixbufferSize / 2];
+
+		int bytesPerSecond = mixerAudioFormat.sampleRate * BYTES_PER_FRAME;
+		periodMillis = ((long) mixbufferSize * 1000) / bytesPerSecond;
+		if (periodMillis <= 0) {
+			periodMillis = 1;
+		}
+
+		linePeriods = Math.max(SoundToolkit.getReadAheadPeriods(), MIN_LINE_PERIODS);
 	}
 
 	public Line createLine(AudioFormat format) {
-		return new SoftMixerLine(format, mixerAudioFormat, mixbufferSize);
+		return new SoftMixerLine(format, mixerAudioFormat, mixbufferSize, linePeriods);
 	}
 
-	//	 Mix if needed (i.e. when all line buffers are filled)
-	private void mix() {
+	/**
+	 * Creates a line with a given read-ahead depth.
+	 * @param format the format of the data written to the line
+	 * @param periods the number of mixing periods the line can buffer
+	 */
+	public Line createLine(AudioFormat format, int periods) {
+		return new SoftMixerLine(format, mixerAudioFormat, mixbufferSize, Math.max(periods, MIN_LINE_PERIODS));
+	}
+
+	/**
+	 * Returns the duration of a mixing period in milliseconds.
+	 */
+	public long getPeriodMillis() {
+		return periodMillis;
+	}
+
+	public void addLine(Line line) {
+		synchronized (mutex) {
+			super.addLine(line);
+			updateMixedLines();
+			if (mixingThread == null) {
+				mixingThread = new Thread(new MixingThread());
+				mixingThread.start();
+			}
+			mutex.notifyAll();
+		}
+	}
 
-		//System.out.println("[DEBUG] SoftMixer.mix() : start " + Thread.currentThread());
+	public void removeLine(Line line) {
+		synchronized (mutex) {
+			super.removeLine(line);
+			updateMixedLines();
+			mutex.notifyAll();
+		}
+	}
 
-		//		try {
-		//			Thread.sleep(20);
-		//		} catch (InterruptedException e) {
-		//			// TODO Auto-generated catch block
-		//			e.printStackTrace();
-		//		}
+	/**
+	 * Sets the master volume.
+	 * @param level the volume level between 0 and VOLUME_MAX
+	 */
+	public void setVolume(int level) {
+		mixerVolume = clamp(level, 0, VOLUME_MAX);
+	}
 
-		// Prevent operations while mixing (other lines acquiring the lock, line added to the pool)
-		//synchronized (mutex) {
+	public int getVolume() {
+		return mixerVolume;
+	}
 
-		aliveLines.removeAllElements();
+	/**
+	 * Returns the number of times a running line had less than one period of data
+	 * when it was mixed. A high value means that the decoders can't keep up with
+	 * the buffer size.
+	 */
+	public int getUnderrunCount() {
+		return underrunCount;
+	}
 
-		// Check if we have to mix the buffers.
-		for (int i = 0; i < lineList.size(); i++) {
-			SoftMixerLine line = (SoftMixerLine) lineList.elementAt(i);
-			if (line.isRunning()) {
+	/**
+	 * Returns the number of periods mixed and written after their deadline.
+	 * A high value means that the buffer size is too small for the backend.
+	 */
+	public int getOverrunCount() {
+		return overrunCount;
+	}
 
-				// Do not mix yet if line is not filled 
-				if (line.available() > 0) {
-					return;
-				}
-				// Add a line to the mix 
-				aliveLines.addElement(line);
+	/**
+	 * Returns the number of periods mixed.
+	 */
+	public int getMixCount() {
+		return mixCount;
+	}
+
+	public void resetStatistics() {
+		underrunCount = 0;
+		overrunCount = 0;
+		mixCount = 0;
+	}
+
+	private void updateMixedLines() {
+		// Only SoftMixerLines are mixed
+		int count = 0;
+		for (int i = 0; i < lineList.size(); i++) {
+			if (lineList.elementAt(i) instanceof SoftMixerLine) {
+				count++;
+			}
+		}
 
+		SoftMixerLine[] lines = new SoftMixerLine[count];
+		for (int i = 0, j = 0; i < lineList.size(); i++) {
+			Object line = lineList.elementAt(i);
+			if (line instanceof SoftMixerLine) {
+				lines[j++] = (SoftMixerLine) line;
 			}
+		}
+
+		for (int i = 0; i < mixedLines.length; i++) {
+			mixedLines[i].attached = false;
+		}
+		for (int i = 0; i < lines.length; i++) {
+			lines[i].attached = true;
+		}
+
+		mixedLines = lines;
+	}
 
+	private boolean hasRunningLine() {
+		SoftMixerLine[] lines = mixedLines;
+		for (int i = 0; i < lines.length; i++) {
+			if (lines[i].state == Line.STARTED) {
+				return true;
+			}
 		}
+		return false;
+	}
+
+	/**
+	 * Mixes one period of all the running lines in mixBuffer. Must be called with the mutex held.
+	 */
+	private void mix() {
 
-		//System.out.println("[DEBUG] SoftMixer.mix() : have to mix " + Thread.currentThread());
+		int[] acc = accBuffer;
+		for (int i = 0; i < acc.length; i++) {
+			acc[i] = 0;
+		}
 
-		// Clean mixBuffer
-		for (int i = 0; i < mixBuffer.length; i++) {
-			mixBuffer[i] = 0;
+		SoftMixerLine[] lines = mixedLines;
+		for (int i = 0; i < lines.length; i++) {
+			SoftMixerLine line = lines[i];
+			if (line.state == Line.STARTED) {
+				line.mixInto(acc);
+				if (line.clipEnded) {
+					line.clipEnded = false;
+					if (endedCount == endedLines.length) {
+						SoftMixerLine[] newLines = new SoftMixerLine[endedCount * 2];
+						System.arraycopy(endedLines, 0, newLines, 0, endedCount);
+						endedLines = newLines;
+					}
+					endedLines[endedCount++] = line;
+				}
+			}
 		}
 
-		// Mix the line buffers
-		for (int i = 0; i < aliveLines.size(); i++) {
-			SoftMixerLine line = (SoftMixerLine) aliveLines.elementAt(i);
-			mixLine(mixBuffer, line, aliveLines.size());
-			// Clear the line buffer
-			line.reset();
+		// Saturate to 16 bits
+		byte[] out = mixBuffer;
+		for (int i = 0, j = 0; i < acc.length; i++, j += 2) {
+			int val = acc[i];
+			if (val > Short.MAX_VALUE) {
+				val = Short.MAX_VALUE;
+			} else if (val < Short.MIN_VALUE) {
+				val = Short.MIN_VALUE;
+			}
+			out[j] = (byte) val;
+			out[j + 1] = (byte) (val >> 8);
 		}
 
-		soundBackend.write(mixBuffer, 0, mixBuffer.length);
-		//}
+		mixCount++;
+	}
 
-		//System.out.println("[DEBUG] SoftMixer.mix() : end " + Thread.currentThread());
+	/**
+	 * Calls the listeners of the clips which ended during the last mix().
+	 * Must be called by the mixing thread without the mutex, a listener may use the lines.
+	 */
+	private void notifyEndedClips() {
+		for (int i = 0; i < endedCount; i++) {
+			Runnable listener = endedLines[i].clipListener;
+			endedLines[i] = null;
+			if (listener != null) {
+				listener.run();
+			}
+		}
+		endedCount = 0;
+	}
 
+	private static int clamp(int value, int min, int max) {
+		if (value < min) {
+			return min;
+		}
+		if (value > max) {
+			return max;
+		}
+		return value;
 	}
 
-	private void mixLine(byte[] destBuf, SoftMixerLine line, int lines) {
+	/**
+	 * Mixes the lines at a fixed period and writes the result to the backend.
+	 */
+	private class MixingThread implements Runnable {
+
+		public void run() {
+
+			long deadline = 0;
+			boolean idle = true;
 
-		//System.out.println("[DEBUG] SoftMixer.mix2()");
+			while (true) {
 
-		byte[] srcBuf = line.getData();
+				synchronized (mutex) {
+					// Wait for a running line
+					while ((mixedLines.length > 0) && !hasRunningLine()) {
+						idle = true;
+						try {
+							mutex.wait();
+						} catch (InterruptedException e) {
+						}
+					}
+
+					// No more lines: the thread is started again by addLine()
+					if (mixedLines.length == 0) {
+						mixingThread = null;
+						return;
+					}
+
+					mix();
 
-		// TODO Add line volume and compressor
-		if ((lines <= 1) && (mixerVolume == MIXER_VOLUME_MAX)) {
-			System.arraycopy(srcBuf, 0, destBuf, 0, srcBuf.length);
-//			for (int i = 0; i < srcBuf.length; i += 1) {
-//				destBuf[i] = srcBuf[i];
-//			}
-		} else {
+					// Wake up the writers waiting for free space
+					mutex.notifyAll();
+				}
 
-			int mixFactor = ((256 / lines) * mixerVolume) >> 7;
+				notifyEndedClips();
 
-			for (int i = 0; i < srcBuf.length; i += 2) {
+				long now = System.currentTimeMillis();
+				if (idle) {
+					deadline = now;
+					idle = false;
+				}
+				deadline += periodMillis;
+
+				soundBackend.write(mixBuffer, 0, mixBuffer.length);
+
+				// The backend write usually blocks until there is room for a period.
+				// Don't get more than one period ahead if it doesn't.
+				now = System.currentTimeMillis();
+				long ahead = deadline - now;
+				if (ahead > periodMillis) {
+					try {
+						Thread.sleep(ahead - periodMillis);
+					} catch (InterruptedException e) {
+					}
+				} else if (ahead < -periodMillis) {
+					overrunCount++;
+					deadline = now;
+				}
 
-				int srcVal = (srcBuf[i + 1] << 8) + srcBuf[i];
-				int dstVal = ((destBuf[i + 1] << 8) + destBuf[i]);
-				int mixVal = ((srcVal * mixFactor) >> 8) + dstVal;
-				//int mixVal = srcVal / lines + dstVal;
-				//int mixVal = srcVal + dstVal;
-				
-				destBuf[i] = (byte) (mixVal & 0xFF);
-				destBuf[i + 1] = (byte) ((mixVal >> 8) & 0xFF);
 			}
 		}
-
 	}
 
 	/**
 	 * An audio line with embedded resampler and audio format converter.<br>
-	 * When line is started, the line must be regulary filled with data. Otherwhise it could block underlying mixing process (if any).<br>
-	 * A correct code is: 
+	 * Converted data are stored in a ring buffer which is consumed by the mixing thread.
+	 * A write blocks only while the ring buffer is full.<br>
+	 * A correct code is:
 	 * <pre>
 	 * line.start();
 	 * while(running) {
 	 *   line.write(buf, 0, buf.length);
 	 * }
 	 * // No more data to write.
-	 * // Push data inside the buffer to the hardware and stop the line.
+	 * // Wait until the data inside the buffer are played and stop the line.
 	 * line.drain();
 	 * line.stop();
 	 * </pre>
+	 * The ring buffer has a single producer (the writer) and a single consumer
+	 * (the mixing thread): each side only moves its own position, so the data is
+	 * copied without locking. The writer only takes the mixer lock to wait while
+	 * the buffer is full.<br>
+	 * A line can also play a clip already in the mixer format (see setClip()): the
+	 * clip is mixed straight from memory and nothing has to be written.
 	 */
 	public class SoftMixerLine implements Line {
 
-		public int state = STOPPED;
-		private int lineBufferSize;
-		private int lineOffset;
-		private byte[] lineBuffer;
+		public volatile int state = STOPPED;
 		private AudioFormat lineAudioFormat;
 		private AudioFormat mixerAudioFormat;
 		private int convertingBufferSize;
@@ -163,27 +368,81 @@ public class SoftMixer extends Mixer {
 		private byte[] resamplingBuffer;
 		private int maxChunkSize;
 
-		SoftMixerLine(AudioFormat format, AudioFormat dstformat, int size) {
+		/*
+		 * Ring buffer in the mixer format. The writer owns writePosition and writtenBytes,
+		 * the mixing thread owns readPosition and readBytes. The byte counters wrap around
+		 * and the number of buffered bytes is their difference.
+		 */
+		private byte[] ringBuffer;
+		private int readPosition;
+		private int writePosition;
+		private volatile int writtenBytes;
+		private volatile int readBytes;
+		private int periodSize;
+		/* False until the line has buffered a period since it was started */
+		private boolean primed;
+
+		private int volume = VOLUME_MAX;
+		private int pan = PAN_CENTER;
+		private int leftGain = GAIN_ONE;
+		private int rightGain = GAIN_ONE;
+
+		/* Clip played instead of the ring buffer. Only the mixing thread moves clipPosition. */
+		private byte[] clip;
+		private int clipLength;
+		private int clipPosition;
+		private Runnable clipListener;
+		boolean clipEnded;
+
+		boolean attached;
+		private boolean draining;
+		private int lineUnderrunCount;
+		private int minimumFillLevel = Integer.MAX_VALUE;
+
+		SoftMixerLine(AudioFormat format, AudioFormat dstformat, int size, int periods) {
 			this.lineAudioFormat = format;
 			this.mixerAudioFormat = dstformat;
-			lineBufferSize = size;
-			maxChunkSize = lineBufferSize >> 2;
+			periodSize = size;
+			maxChunkSize = size >> 2;
 			convertingBufferSize = AudioTools.getFrameConversionBufferSize(maxChunkSize, lineAudioFormat,
 					mixerAudioFormat);
 			convertingBuffer = new byte[convertingBufferSize];
 			resamplingBufferSize = AudioTools.getFormatConversionBufferSize(maxChunkSize, lineAudioFormat,
 					mixerAudioFormat);
 			resamplingBuffer = new byte[resamplingBufferSize];
-			lineBuffer = new byte[size];
+			ringBuffer = new byte[size * periods];
 		}
 
 		public int available() {
-			return lineBufferSize - lineOffset;
+			return ringBuffer.length - getFillLevel();
+		}
+
+		/**
+		 * Returns the number of bytes buffered and not mixed yet.
+		 */
+		public int getFillLevel() {
+			return writtenBytes - readBytes;
+		}
+
+		/**
+		 * Returns the size of the read-ahead buffer in bytes.
+		 */
+		public int getBufferSize() {
+			return ringBuffer.length;
+		}
+
+		/**
+		 * Returns the lowest number of bytes buffered when the line was mixed,
+		 * or -1 if it hasn't been mixed.
+		 */
+		public int getMinimumFillLevel() {
+			int level = minimumFillLevel;
+			return (level == Integer.MAX_VALUE) ? -1 : level;
 		}
 
 		public int write(byte[] b, int offset, int length) {
 
-			//System.out.println("[DEBUG] SoftMixer.write(): b.length=" + b.length + " offset="  + offset + " length="+ length + " lineBufferSize=" + lineBufferSize);
+			//System.out.println("[DEBUG] SoftMixer.write(): b.length=" + b.length + " offset="  + offset + " length="+ length);
 
 			int bytesWritten = 0;
 
@@ -200,52 +459,24 @@ public class SoftMixer extends Mixer {
 				}
 			}
 
-			//System.out.println("[DEBUG] SoftMixer.write(): end");
-
 			return bytesWritten;
 
 		}
 
 		/**
-		 * Writes a chunk of audio data. Chunk size must be smaller or equal to the line buffer size.
+		 * Writes a chunk of audio data. Chunk size must be smaller or equal to maxChunkSize.
 		 * @param b
 		 * @param offset
 		 * @param length
 		 */
 		private void writeChunk(byte[] b, int offset, int length) {
 
-			//System.out.println("[DEBUG] SoftMixer.writeChunk(): line audio format : " + lineAudioFormat);
-			//System.out.println("[DEBUG] SoftMixer.writeChunk(): mixer audio format : " + mixerAudioFormat);
-
 			// Convert audio data only if the line and mixer audio formats don't match
 			if (lineAudioFormat.matches(mixerAudioFormat)) {
-				// Block/loop until all data are consumed
-				while (state == STARTED && length > 0) {
-
-					// Prevent other operations while writing and requesting mix
-					synchronized (mutex) {
-
-						int available = available();
-
-						if (available > 0) {
-							int size = Math.min(length, available);
-							System.arraycopy(b, offset, lineBuffer, lineOffset, size);
-							length -= size;
-							offset += size;
-							lineOffset += size;
-						}
-
-						// Mix if needed (i.e. when all line buffers are filled)
-						mix();
-
-					}
-
-					Thread.yield();
-				}
+				enqueue(b, offset, length);
 			} else {
 
 				if (!lineAudioFormat.is16bitsStereoSignedLittleEndian()) {
-					//System.out.println("[DEBUG] SoftMixer.writeChunk(): convert format");
 					length = AudioTools.convertTo16BitsStereo(b, lineAudioFormat, offset, convertingBuffer,
 							mixerAudioFormat, 0, length);
 					offset = 0;
@@ -253,84 +484,262 @@ public class SoftMixer extends Mixer {
 				}
 
 				// Resample
-				//System.out.println("[DEBUG] SoftMixer.writeChunk(): " + b.length + " " + length + "  " + resamplingBuffer.length + " " + offset);
 				int resamplingSize = AudioTools.resample(b, lineAudioFormat, offset, resamplingBuffer,
 						mixerAudioFormat, 0, length);
-				int resamplingBufferOffset = 0;
-				// System.out.println("[DEBUG] SoftMixer.writeChunk(): resamplingSize=" + resamplingSize);
+				enqueue(resamplingBuffer, 0, resamplingSize);
+			}
+
+		}
+
+		/**
+		 * Copies data in the ring buffer. Blocks until all data are copied or the line is stopped.
+		 */
+		private void enqueue(byte[] b, int offset, int length) {
+
+			byte[] ring = ringBuffer;
 
-				// Block/loop until all (resampled) data are consumed
-				while (state == STARTED && resamplingSize > 0) {
+			while ((state == STARTED) && (length > 0)) {
 
-					// Prevent other operations while writing and requesting mix
+				int free = ring.length - (writtenBytes - readBytes);
+				if (free == 0) {
+					// Wait for the mixing thread, which moves readBytes with the mutex held
 					synchronized (mutex) {
+						while ((state == STARTED) && (writtenBytes - readBytes == ring.length)) {
+							try {
+								mutex.wait();
+							} catch (InterruptedException e) {
+							}
+						}
+					}
+					continue;
+				}
 
-						int available = available();
+				int size = Math.min(length, free);
+				int firstPart = Math.min(size, ring.length - writePosition);
+				System.arraycopy(b, offset, ring, writePosition, firstPart);
+				if (size > firstPart) {
+					System.arraycopy(b, offset + firstPart, ring, 0, size - firstPart);
+				}
 
-						if (available > 0) {
-							int size = Math.min(resamplingSize, available);
+				writePosition = (writePosition + size) % ring.length;
+				// Publish the data to the mixing thread
+				writtenBytes += size;
+				offset += size;
+				length -= size;
+			}
 
-							System.arraycopy(resamplingBuffer, resamplingBufferOffset, lineBuffer, lineOffset, size);
+		}
 
-							resamplingSize -= size;
-							resamplingBufferOffset += size;
-							lineOffset += size;
-						}
+		/**
+		 * Plays a clip instead of the data written to the line. The line must
+		 * have been created with the mixer format. When the whole clip has been
+		 * mixed, the line is stopped and the listener is called by the mixing thread.
+		 * @param data the clip in the mixer format
+		 * @param length the length of the clip in bytes
+		 * @param listener the listener called at the end of the clip, or null
+		 */
+		public void setClip(byte[] data, int length, Runnable listener) {
+			synchronized (mutex) {
+				clip = data;
+				clipLength = length & ~(BYTES_PER_FRAME - 1);
+				clipPosition = 0;
+				clipListener = listener;
+				clipEnded = false;
+			}
+		}
 
-						// Mix if needed (i.e. when all line buffers are filled)
-						mix();
+		/**
+		 * Plays the clip from its beginning at the next start().
+		 */
+		public void rewindClip() {
+			synchronized (mutex) {
+				clipPosition = 0;
+				clipEnded = false;
+			}
+		}
 
+		/**
+		 * Adds at most one period of the buffered data (or of the clip) to the accumulator.
+		 * Called by the mixing thread with the mutex held.
+		 */
+		void mixInto(int[] acc) {
+
+			byte[] ring;
+			int ringSize;
+			int p;
+			int length;
+
+			if (clip != null) {
+				ring = clip;
+				ringSize = clipLength;
+				p = clipPosition;
+				length = Math.min(clipLength - clipPosition, periodSize);
+			} else {
+				int count = writtenBytes - readBytes;
+				if (!primed) {
+					// Wait for the writer to get ahead before mixing a new stream
+					if ((count < periodSize) && !draining) {
+						return;
 					}
+					primed = true;
+				}
+				if (count < minimumFillLevel) {
+					minimumFillLevel = count;
+				}
+				ring = ringBuffer;
+				ringSize = ring.length;
+				p = readPosition;
+				length = Math.min(count, periodSize) & ~(BYTES_PER_FRAME - 1);
+				if ((length < periodSize) && !draining) {
+					lineUnderrunCount++;
+					underrunCount++;
+				}
+			}
+
+			if (length > 0) {
+				int gainL = (leftGain * mixerVolume) / VOLUME_MAX;
+				int gainR = (rightGain * mixerVolume) / VOLUME_MAX;
+				mixFrames(acc, ring, ringSize, p, length, gainL, gainR);
+			}
+
+			if (clip != null) {
+				clipPosition += length;
+				if (clipPosition >= clipLength) {
+					state = STOPPED;
+					clipEnded = true;
+				}
+			} else {
+				readPosition = (p + length) % ringSize;
+				// Give the space back to the writer
+				readBytes += length;
+			}
+		}
 
-					Thread.yield();
+		/**
+		 * Adds length bytes of frames read from position p of a circular buffer to the accumulator.
+		 */
+		private void mixFrames(int[] acc, byte[] ring, int ringSize, int p, int length, int gainL, int gainR) {
+
+			if ((gainL == GAIN_ONE) && (gainR == GAIN_ONE)) {
+				for (int i = 0, k = 0; i < length; i += BYTES_PER_FRAME) {
+					acc[k++] += (ring[p + 1] << 8) | (ring[p] & 0xFF);
+					acc[k++] += (ring[p + 3] << 8) | (ring[p + 2] & 0xFF);
+					p += BYTES_PER_FRAME;
+					if (p >= ringSize) {
+						p = 0;
+					}
+				}
+			} else {
+				for (int i = 0, k = 0; i < length; i += BYTES_PER_FRAME) {
+					acc[k++] += (((ring[p + 1] << 8) | (ring[p] & 0xFF)) * gainL) >> 8;
+					acc[k++] += (((ring[p + 3] << 8) | (ring[p + 2] & 0xFF)) * gainR) >> 8;
+					p += BYTES_PER_FRAME;
+					if (p >= ringSize) {
+						p = 0;
+					}
 				}
-			} // if
+			}
+		}
 
+		/**
+		 * Sets the line volume.
+		 * @param level the volume level between 0 and VOLUME_MAX
+		 */
+		public void setVolume(int level) {
+			volume = clamp(level, 0, VOLUME_MAX);
+			updateGains();
 		}
 
-		public void start() {
-			state = STARTED;
+		public int getVolume() {
+			return volume;
 		}
 
-		public void stop() {
-			state = STOPPED;
+		/**
+		 * Sets the line balance.
+		 * @param pan the balance between PAN_LEFT and PAN_RIGHT
+		 */
+		public void setPan(int pan) {
+			this.pan = clamp(pan, PAN_LEFT, PAN_RIGHT);
+			updateGains();
 		}
 
-		public void close() {
-			state = CLOSED;
+		public int getPan() {
+			return pan;
 		}
 
-		public void drain() {
-			lineOffset = lineBufferSize;
-			mix();
+		private void updateGains() {
+			int gain = (volume * GAIN_ONE) / VOLUME_MAX;
+			leftGain = (pan > PAN_CENTER) ? (gain * (PAN_RIGHT - pan)) / PAN_RIGHT : gain;
+			rightGain = (pan < PAN_CENTER) ? (gain * (pan - PAN_LEFT)) / PAN_RIGHT : gain;
 		}
 
-		public boolean isRunning() {
-			return (state == STARTED) ? true : false;
+		/**
+		 * Returns the number of periods this line was mixed with less than one period of data.
+		 */
+		public int getUnderrunCount() {
+			return lineUnderrunCount;
 		}
 
-		//		public boolean isFilled() {
-		//			return (available() == 0);
-		//		}
+		public void resetStatistics() {
+			lineUnderrunCount = 0;
+			minimumFillLevel = Integer.MAX_VALUE;
+		}
 
-		public boolean isEmpty() {
-			return (lineOffset == 0);
+		public void start() {
+			synchronized (mutex) {
+				primed = false;
+				state = STARTED;
+				mutex.notifyAll();
+			}
+		}
+
+		public void stop() {
+			synchronized (mutex) {
+				state = STOPPED;
+				mutex.notifyAll();
+			}
+		}
+
+		public void close() {
+			synchronized (mutex) {
+				state = CLOSED;
+				readPosition = 0;
+				writePosition = 0;
+				readBytes = 0;
+				writtenBytes = 0;
+				clip = null;
+				clipListener = null;
+				mutex.notifyAll();
+			}
 		}
 
 		/**
-		 * Reset the line (i.e clear the line buffer).
+		 * Blocks until the buffered data are mixed.
 		 */
-		void reset() {
-			lineOffset = 0;
+		public void drain() {
+			synchronized (mutex) {
+				draining = true;
+				while ((state == STARTED) && attached && (writtenBytes - readBytes >= BYTES_PER_FRAME)) {
+					try {
+						mutex.wait();
+					} catch (InterruptedException e) {
+					}
+				}
+				draining = false;
+			}
 		}
 
-		byte[] getData() {
-			return lineBuffer;
+		public boolean isRunning() {
+			return (state == STARTED) ? true : false;
+		}
+
+		public boolean isEmpty() {
+			return (writtenBytes == readBytes);
 		}
 
 		/**
 		 * Gets the format of the line audio data.
-		 * 
+		 *
 		 * @return the format of the line audio data
 		 */
 		public AudioFormat getFormat() {
@@ -339,192 +748,4 @@ public class SoftMixer extends Mixer {
 
 	}
 
-	//	public class SoftMixerLine extends AbstractLine {
-	//
-	//		public SoftMixerLine(AudioFormat format, AudioFormat dstformat, int size) {
-	//			super(format, dstformat, size);
-	//		}
-	//
-	//		public void notifyLineUpdated() {
-	//			mix();
-	//		}
-	//		
-	//	}
-
-	//	public class SoftMixerLine implements Line {
-	//
-	//		public int state = STOPPED;
-	//		private int lineBufferSize;
-	//		private int lineOffset;
-	//		private byte[] lineBuffer;
-	//		private AudioFormat lineAudioFormat;
-	//		private int convertingBufferSize;
-	//		private byte[] convertingBuffer;
-	//		private int resamplingBufferSize;
-	//		private byte[] resamplingBuffer;
-	//		private int maxChunkSize;
-	//
-	//		SoftMixerLine(AudioFormat format, int size) {
-	//			this.lineAudioFormat = format;
-	//			lineBufferSize = size;
-	//			maxChunkSize = lineBufferSize >> 2;
-	//			convertingBufferSize = AudioTools.getFrameConversionBufferSize(maxChunkSize, lineAudioFormat, mixerAudioFormat);
-	//			convertingBuffer = new byte[convertingBufferSize];
-	//			resamplingBufferSize = AudioTools.getFormatConversionBufferSize(maxChunkSize, lineAudioFormat, mixerAudioFormat);
-	//			resamplingBuffer = new byte[resamplingBufferSize];
-	//			lineBuffer = new byte[size];
-	//		}
-	//
-	//		public synchronized int available() {
-	//			return lineBufferSize - lineOffset;
-	//		}
-	//
-	//		public synchronized int write(byte[] b, int offset, int length) {
-	//
-	//			//System.out.println("[DEBUG] SoftMixer.write(): b.length=" + b.length + " offset="  + offset + " length="+ length + " lineBufferSize=" + lineBufferSize);
-	//			
-	//			int bytesWritten = 0;
-	//			
-	//			while ((state == STARTED) && (length > 0)) {
-	//				if (length < maxChunkSize) {
-	//					writeChunk(b, offset, length);
-	//					bytesWritten += length;
-	//					break;
-	//				} else {
-	//					writeChunk(b, offset, maxChunkSize);
-	//					length -= maxChunkSize;
-	//					offset += maxChunkSize;
-	//					bytesWritten += maxChunkSize;
-	//				}
-	//			}
-	//			
-	//			//System.out.println("[DEBUG] SoftMixer.write(): end");
-	//			
-	//			return bytesWritten;
-	//
-	//		}
-	//
-	//		/**
-	//		 * Writes a chunk of audio data. Chunk size must be smaller or equal to the line buffer size.
-	//		 * @param b
-	//		 * @param offset
-	//		 * @param length
-	//		 */
-	//		private void writeChunk(byte[] b, int offset, int length) {
-	//			
-	//			//System.out.println("[DEBUG] SoftMixer.writeChunk(): line audio format : " + lineAudioFormat);
-	//			//System.out.println("[DEBUG] SoftMixer.writeChunk(): mixer audio format : " + mixerAudioFormat);
-	//
-	//			// Convert audio data only if the line and mixer audio formats don't match
-	//			if (lineAudioFormat.matches(mixerAudioFormat)) {
-	//				// Block/loop until all data are consumed
-	//				while (state == STARTED && length > 0) {
-	//
-	//					int available = available();
-	//
-	//					if (available > 0) {
-	//						int size = Math.min(length, available);
-	//						System.arraycopy(b, offset, lineBuffer, lineOffset, size);
-	//						length -= size;
-	//						offset += size;
-	//						lineOffset += size;
-	//					}
-	//
-	//					// Mix if needed (i.e. when all line buffers are filled)
-	//					mix();
-	//
-	//					Thread.yield();
-	//				}
-	//			} else {
-	//
-	//				if (!lineAudioFormat.is16bitsStereoSignedLittleEndian()) {
-	//					System.out.println("[DEBUG] SoftMixer.writeChunk(): convert format");
-	//					length = AudioTools.convertTo16BitsStereo(b, lineAudioFormat, offset, convertingBuffer,
-	//							mixerAudioFormat, 0, length);
-	//					offset = 0;
-	//					b = convertingBuffer;
-	//				}
-	//
-	//				// Resample
-	//				//System.out.println("[DEBUG] SoftMixer.writeChunk(): " + b.length + " " + length + "  " + resamplingBuffer.length + " " + offset);
-	//				int resamplingSize = AudioTools.resample(b, lineAudioFormat, offset, resamplingBuffer,
-	//						mixerAudioFormat, 0, length);
-	//				int resamplingBufferOffset = 0;
-	//				// System.out.println("[DEBUG] SoftMixer.writeChunk(): resamplingSize=" + resamplingSize);
-	//
-	//				// Block/loop until all (resampled) data are consumed
-	//				while (state == STARTED && resamplingSize > 0) {
-	//
-	//					int available = available();
-	//
-	//					if (available > 0) {
-	//						int size = Math.min(resamplingSize, available);
-	//
-	//						System.arraycopy(resamplingBuffer, resamplingBufferOffset, lineBuffer, lineOffset, size);
-	//
-	//						resamplingSize -= size;
-	//						resamplingBufferOffset += size;
-	//						lineOffset += size;
-	//					}
-	//
-	//					// Mix if needed (i.e. when all line buffers are filled)
-	//					mix();
-	//
-	//					Thread.yield();
-	//				}
-	//			} // if
-	//
-	//		}
-	//
-	//		public synchronized void start() {
-	//			state = STARTED;
-	//		}
-	//
-	//		public synchronized void stop() {
-	//			state = STOPPED;
-	//		}
-	//
-	//		public synchronized void close() {
-	//			state = CLOSED;
-	//		}
-	//		
-	//		public synchronized void drain() {
-	//			lineOffset = lineBufferSize;
-	//			mix();
-	//		}
-	//
-	//		public boolean isRunning() {
-	//			return (state == STARTED) ? true : false;
-	//		}
-	//
-	//		//		public boolean isFilled() {
-	//		//			return (available() == 0);
-	//		//		}
-	//
-	//		public boolean isEmpty() {
-	//			return (lineOffset == 0);
-	//		}
-	//
-	//		/**
-	//		 * Reset the line (i.e clear the line buffer).
-	//		 */
-	//		void reset() {
-	//			lineOffset = 0;
-	//		}
-	//
-	//		byte[] getData() {
-	//			return lineBuffer;
-	//		}
-	//
-	//		/**
-	//		 * Gets the format of the line audio data.
-	//		 * 
-	//		 * @return the format of the line audio data
-	//		 */
-	//		public AudioFormat getFormat() {
-	//			return lineAudioFormat;
-	//		}
-	//
-	//	}
-
 }
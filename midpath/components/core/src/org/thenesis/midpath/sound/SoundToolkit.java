@@ -26,16 +26,23 @@ import com.sun.midp.main.Configuration;
 public class SoundToolkit {
 
 	private static int bufferSize;
+	private static int readAheadPeriods;
 	private static String deviceName;
 	public static SoundBackend soundBackend;
 	private static AudioFormat audioFormat;
+	private static ClipCache clipCache;
 
 	static {
 		int sampleRate = com.sun.midp.main.Configuration.getIntProperty("org.thenesis.midpath.sound.sampleRate", 44100);
 		bufferSize = com.sun.midp.main.Configuration.getIntProperty("org.thenesis.midpath.sound.bufferSize", 8192);
+		readAheadPeriods = Configuration.getIntProperty("org.thenesis.midpath.sound.readAhead", 4);
 		deviceName = com.sun.midp.main.Configuration.getPropertyDefault("org.thenesis.midpath.sound.device", "default");
 		audioFormat = new AudioFormat(sampleRate, AudioFormat.BITS_16, AudioFormat.STEREO, true, false);
 
+		int cacheSize = Configuration.getIntProperty("org.thenesis.midpath.sound.clipCache.size", 1048576);
+		int maxClipSize = Configuration.getIntProperty("org.thenesis.midpath.sound.clipCache.maxClipSize", 262144);
+		clipCache = new ClipCache(cacheSize, maxClipSize);
+
 		String backendName = Configuration.getPropertyDefault("org.thenesis.midpath.sound.backend", "NULL");
 		if (backendName.equalsIgnoreCase("ALSA")) {
 			soundBackend = new AlsaBackend();
@@ -56,10 +63,24 @@ public class SoundToolkit {
 		return audioFormat;
 	}
 
+	/**
+	 * Returns the cache of decoded clips shared by the players.
+	 */
+	public static ClipCache getClipCache() {
+		return clipCache;
+	}
+
 	public static int getBufferSize() {
 		return bufferSize;
 	}
 
+	/**
+	 * Returns the number of buffers of decoded data a line can hold ahead of the mixer.
+	 */
+	public static int getReadAheadPeriods() {
+		return readAheadPeriods;
+	}
+
 	public static String getDeviceName() {
 		return deviceName;
 	}
@@ -27,20 +27,38 @@ import javazoom.jlme.decoder.SampleBuffer;
 
 import org.thenesis.midpath.sound.AudioFormat;
 
+import com.sun.midp.main.Configuration;
+
 public class MP3Decoder implements AudioDecoder {
 
 	private Decoder decoder;
 	private BitStream bitstream;
 	private AudioFormat format;
+	private boolean fixedPoint;
 
+	/**
+	 * Creates a decoder using the integer decoding path if the
+	 * "org.thenesis.midpath.sound.mp3.fixedPoint" property is true.
+	 */
 	public MP3Decoder()  {
+		this(Configuration.getPropertyDefault("org.thenesis.midpath.sound.mp3.fixedPoint", "false").equalsIgnoreCase(
+				"true"));
+	}
+
+	/**
+	 * Creates a decoder.
+	 * @param fixedPoint true to decode with integer arithmetic only (faster on
+	 *        devices without FPU), false to use the floating point decoder
+	 */
+	public MP3Decoder(boolean fixedPoint) {
+		this.fixedPoint = fixedPoint;
 	}
 	
 	public void initialize(InputStream stream) throws IOException {
 		bitstream = new BitStream(stream);
 		// Read first frame and get audio format
 		Header header = bitstream.readFrame();
-		decoder = new Decoder(header, bitstream);
+		decoder = new Decoder(header, bitstream, fixedPoint);
 		SampleBuffer output = (SampleBuffer) decoder.decodeFrame();
 		format = new AudioFormat(decoder.getOutputFrequency(), AudioFormat.BITS_16, decoder.getOutputChannels(), true, false);
 		bitstream.closeFrame();
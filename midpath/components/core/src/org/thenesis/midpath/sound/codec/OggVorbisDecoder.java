@@ -32,6 +32,7 @@ import com.jcraft.jorbis.Block;
 import com.jcraft.jorbis.Comment;
 import com.jcraft.jorbis.DspState;
 import com.jcraft.jorbis.Info;
+import com.sun.midp.main.Configuration;
 
 /**
  * Takes a vorbis bitstream from an input stream and writes raw stereo PCM to
@@ -48,8 +49,7 @@ public class OggVorbisDecoder implements AudioDecoder {
 	public static final int DECODING = 2;
 	public static final int CLOSED = 3;
 
-	private static int convsize = 4096 * 2;
-	private static byte[] convbuffer = new byte[convsize]; // take 8k out of the data segment, not the stack
+	private static final int PCM_BUFFER_SIZE = 4096 * 2;
 
 	private InputStream input;
 
@@ -76,15 +76,33 @@ public class OggVorbisDecoder implements AudioDecoder {
 	private int eos;
 	private int index;
 
-	float[][][] _pcm;
-	int[] _index;
+	// Decoded samples before they are passed to the callback
+	private byte[] pcmBuffer;
+
+	// Decode with integer arithmetic only
+	private boolean fixedPoint;
 
 	private boolean paused = false;
 
 	private AudioFormat format;
 
+	/**
+	 * Creates a decoder using the integer decoding path if the
+	 * "org.thenesis.midpath.sound.ogg.fixedPoint" property is true.
+	 */
 	public OggVorbisDecoder() {
 		//System.out.println("[DEBUG] OggVorbisDecoder.<init>()");
+		this(Configuration.getPropertyDefault("org.thenesis.midpath.sound.ogg.fixedPoint", "false").equalsIgnoreCase(
+				"true"));
+	}
+
+	/**
+	 * Creates a decoder.
+	 * @param fixedPoint true to decode with integer arithmetic only (faster on
+	 *        devices without FPU), false to use the floating point decoder
+	 */
+	public OggVorbisDecoder(boolean fixedPoint) {
+		this.fixedPoint = fixedPoint;
 	}
 
 	/**
@@ -256,19 +274,16 @@ public class OggVorbisDecoder implements AudioDecoder {
 		 + new String(comment.vendor, 0, comment.vendor.length - 1) + "\n");
 		 }*/
 
-		convsize = 4096 / info.channels;
-
 		// OK, got and parsed all three headers. Initialize the Vorbis
 		// packet->PCM decoder.
-		dspState.synthesis_init(info); // central decode state
+		dspState.synthesis_init(info, fixedPoint); // central decode state
 		block.init(dspState); // local state for most of the decode
 		// so multiple block decodes can
 		// proceed in parallel.  We could init
 		// multiple vorbis_block structures
 		// for dspState here
 
-		_pcm = new float[1][][];
-		_index = new int[info.channels];
+		pcmBuffer = new byte[PCM_BUFFER_SIZE];
 
 		format = new AudioFormat(getSampleRate(), AudioFormat.BITS_16, getChannels(), true, false);
 
@@ -337,62 +352,17 @@ public class OggVorbisDecoder implements AudioDecoder {
 							// no reason to complain; already complained above
 						} else {
 							// we have a packet.  Decode it
-							int samples;
 							if (block.synthesis(packet) == 0) { // test for success!
 								dspState.synthesis_blockin(block);
 							}
 
-							// **pcm is a multichannel float vector.  In stereo, for
-							// example, pcm[0] is left, and pcm[1] is right.  samples is
-							// the size of each channel.  Convert the float values
-							// (-1.<=range<=1.) to whatever PCM format and write it out
-
-							while ((samples = dspState.synthesis_pcmout(_pcm, _index)) > 0) {
-								float[][] pcm = _pcm[0];
-								boolean clipflag = false;
-								int bout = (samples < convsize ? samples : convsize);
-
-								// convert floats to 16 bit signed ints (host order) and
-								// interleave
-								for (int i = 0; i < info.channels; i++) {
-									int ptr = i * 2;
-									//int ptr=i;
-									int mono = _index[i];
-									for (int j = 0; j < bout; j++) {
-										int val = (int) (pcm[i][mono + j] * 32767.);
-										//		      short val=(short)(pcm[i][mono+j]*32767.);
-										//		      int val=(int)Math.round(pcm[i][mono+j]*32767.);
-										// might as well guard against clipping
-										if (val > 32767) {
-											val = 32767;
-											clipflag = true;
-										}
-										if (val < -32768) {
-											val = -32768;
-											clipflag = true;
-										}
-										if (val < 0)
-											val = val | 0x8000;
-										convbuffer[ptr] = (byte) (val);
-										convbuffer[ptr + 1] = (byte) (val >>> 8);
-										ptr += 2 * (info.channels);
-									}
-								}
-
-								//if(clipflag)
-								//System.err.println("Clipping in frame "+dspState.sequence);
-
-								//System.out.write(convbuffer, 0, 2
-								//        * info.channels * bout);
-
-								//System.out.println("write");
-
-								//System.out.println("write");
-								callback.write(convbuffer, 0, 2 * info.channels * bout);
-								bytesWritten += 2 * info.channels * bout;
+							// Get the decoded samples as 16 bit signed little endian
+							// values, the channels being interleaved
+							int length;
+							while ((length = dspState.synthesis_pcmout(pcmBuffer, 0, pcmBuffer.length)) > 0) {
 
-								// Tell libvorbis how many samples we actually consumed
-								dspState.synthesis_read(bout);
+								callback.write(pcmBuffer, 0, length);
+								bytesWritten += length;
 
 								// Needed to operate in a multi-threaded way 
 
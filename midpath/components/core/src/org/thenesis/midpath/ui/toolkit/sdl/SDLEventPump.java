@@ -108,7 +108,8 @@ public class SDLEventPump implements Runnable {
 
 	public void processEvent(SDLMouseButtonEvent event) {
 		
-		NativeEvent nativeEvent = new NativeEvent(EventTypes.PEN_EVENT);
+		EventQueue eventQueue = EventQueue.getEventQueue();
+		NativeEvent nativeEvent = eventQueue.getNativeEvent(EventTypes.PEN_EVENT);
 
 		int sdlButton = event.getButton();
 		drag = sdlButton;
@@ -129,23 +130,27 @@ public class SDLEventPump implements Runnable {
 		// Set event source (intParam4). Fake display with id=1
 		nativeEvent.intParam4 = 1;
 		
-		EventQueue.getEventQueue().post(nativeEvent);
+		eventQueue.post(nativeEvent);
 		
 	}
 
 	public void processEvent(SDLMouseMotionEvent event) {
 		
-		NativeEvent nativeEvent = new NativeEvent(EventTypes.PEN_EVENT);
-		
-		if (drag != -1) {
-			nativeEvent.intParam1 = EventConstants.DRAGGED; // Event type
-			nativeEvent.intParam2 = event.getX(); // x
-			nativeEvent.intParam3 = event.getY(); // y
-			// Set event source (intParam4). Fake display with id=1
-			nativeEvent.intParam4 = 1;
+		// Motion without a pressed button is not a pen event
+		if (drag == -1) {
+			return;
 		}
+
+		// Consecutive drag events are merged by the event queue
+		EventQueue eventQueue = EventQueue.getEventQueue();
+		NativeEvent nativeEvent = eventQueue.getNativeEvent(EventTypes.PEN_EVENT);
+		nativeEvent.intParam1 = EventConstants.DRAGGED; // Event type
+		nativeEvent.intParam2 = event.getX(); // x
+		nativeEvent.intParam3 = event.getY(); // y
+		// Set event source (intParam4). Fake display with id=1
+		nativeEvent.intParam4 = 1;
 		
-		EventQueue.getEventQueue().post(nativeEvent);
+		eventQueue.post(nativeEvent);
 
 	}
 
@@ -154,7 +159,8 @@ public class SDLEventPump implements Runnable {
 		int unicode = event.getUnicode();
 		int keyCode = event.getSym();
 		
-		NativeEvent nativeEvent = new NativeEvent(EventTypes.KEY_EVENT);
+		EventQueue eventQueue = EventQueue.getEventQueue();
+		NativeEvent nativeEvent = eventQueue.getNativeEvent(EventTypes.KEY_EVENT);
 		// Set event type (intParam1)
 		if (event.getState() == SDLPressedState.PRESSED) {
 			if (Logging.TRACE_ENABLED)
@@ -177,7 +183,7 @@ public class SDLEventPump implements Runnable {
 		// Set event source (intParam4). Fake display with id=1
 		nativeEvent.intParam4 = 1;
 
-		EventQueue.getEventQueue().post(nativeEvent);
+		eventQueue.post(nativeEvent);
 	
 	}
 
@@ -17,15 +17,15 @@
  */
 package org.thenesis.midpath.ui.toolkit.virtual;
 
+import java.io.InputStream;
 import java.io.InputStreamReader;
 
 import javax.microedition.lcdui.Font;
 import javax.microedition.lcdui.FontPeer;
 import javax.microedition.lcdui.Graphics;
 
+import org.thenesis.midpath.font.bdf.BDFBinaryFont;
 import org.thenesis.midpath.font.bdf.BDFFontContainer;
-import org.thenesis.midpath.font.bdf.BDFGlyph;
-import org.thenesis.midpath.font.bdf.BDFMetrics;
 import org.thenesis.midpath.font.bdf.BDFParser;
 
 import com.sun.midp.log.Logging;
@@ -33,10 +33,15 @@ import com.sun.midp.main.Configuration;
 
 /**
  * A BDF font renderer which supports 1bpp and 8bpp fonts.
+ * The font is loaded from its binary form (see BDFBinaryFont) if available,
+ * otherwise the BDF file is parsed.
  */
 public class BDFFontPeer implements FontPeer {
 
-	private static BDFFontContainer container;
+	private static BDFBinaryFont font;
+
+	/* Maps the glyph pixels to alpha values, null for 8bpp fonts */
+	private static int[] levels;
 
 	private int inset = 0;
 	private int size;
@@ -45,14 +50,44 @@ public class BDFFontPeer implements FontPeer {
 		
 		String fontFilename = Configuration.getPropertyDefault("org.thenesis.midpath.font.bdf.filename", "VeraMono-12-8.bdf");
 		
-		InputStreamReader reader = new InputStreamReader(BDFFontContainer.class
-				.getResourceAsStream(fontFilename));
+		// Binary fonts are generated at build time from the BDF files
+		InputStream is = BDFFontContainer.class.getResourceAsStream(BDFBinaryFont.getBinaryName(fontFilename));
+		if (is != null) {
+			try {
+				font = BDFBinaryFont.load(is);
+			} catch (Exception e) {
+				e.printStackTrace();
+			} finally {
+				try {
+					is.close();
+				} catch (Exception e) {
+				}
+			}
+		}
 		
-		try {
-			container = new BDFParser(reader).createFont();
-		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		// Fall back to the BDF parser
+		if (font == null) {
+			if (Logging.TRACE_ENABLED)
+				System.out.println("[DEBUG] BDFFontPeer: no binary font found, parsing " + fontFilename);
+			
+			InputStreamReader reader = new InputStreamReader(BDFFontContainer.class
+					.getResourceAsStream(fontFilename));
+			
+			try {
+				font = BDFBinaryFont.create(new BDFParser(reader).createFont());
+			} catch (Exception e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+		}
+
+		int depth = (font != null) ? font.getDepth() : 8;
+		if (depth < 8) {
+			int max = (1 << depth) - 1;
+			levels = new int[256];
+			for (int i = 0; i < 256; i++) {
+				levels[i] = (i >= max) ? 0xFF : i * 0xFF / max;
+			}
 		}
 
 	}
@@ -84,27 +119,23 @@ public class BDFFontPeer implements FontPeer {
 	}
 
 	public int charWidth(char ch) {
-		return charsWidth(new char[] { ch }, 0, 1);
+		return font.charWidth(ch);
 		//return FONTS_WIDTH[font];
 	}
 
 	public int charsWidth(char[] ch, int offset, int length) {
 
-		int w = 0;
-		for (int i = 0; i < length; i++) {
-			w += container.getFontMetrics().charWidth(ch[offset + i]);
-		}
+		int w = font.charsWidth(ch, offset, length);
 
 		if (Logging.TRACE_ENABLED)
 			System.out.println("BDFFontPeer.charsWidth(): " + new String(ch, offset, length) + " : " + w);
 
 		return w;
-		//return (container.getFontMetrics().charsWidth(ch, offset, offset + length));
 		//return length * FONTS_WIDTH[font];
 	}
 
 	public int getBaselinePosition() {
-		return container.getFontMetrics().getAscent();
+		return font.getAscent();
 		//return 16;
 		//return FONTS_HEIGHT[font] + inset / 2;
 	}
@@ -114,7 +145,7 @@ public class BDFFontPeer implements FontPeer {
 	}
 
 	public int getHeight() {
-		return container.getFontMetrics().getHeight();
+		return font.getHeight();
 		//return FONTS_HEIGHT[font] + inset;
 	}
 
@@ -143,16 +174,43 @@ public class BDFFontPeer implements FontPeer {
 	}
 
 	public int stringWidth(String str) {
-		return charsWidth(str.toCharArray(), 0, str.length());
+		TextRunCache widths = TextRunCache.WIDTHS;
+		int w = widths.getWidth(font, str);
+		if (w < 0) {
+			w = font.substringWidth(str, 0, str.length());
+			widths.putWidth(font, str, w);
+		}
+		return w;
 		//return str.length() * FONTS_WIDTH[font];
 	}
 
 	public int substringWidth(String str, int offset, int len) {
-		return charsWidth(str.toCharArray(), offset, len);
+		return font.substringWidth(str, offset, len);
 		//return len * FONTS_WIDTH[font];
 	}
 
 	public void render(Graphics g, String str, int x, int y, int anchor) {
+
+		int charsCount = str.length();
+		if ((font == null) || (charsCount == 0)) {
+			return;
+		}
+
+		VirtualGraphics vg = ((VirtualGraphics) g);
+		VirtualSurface surface = vg.getSurface();
+		int color = vg.getInternalColor();
+
+		// Short strings are drawn from a cached run
+		GlyphRun run = null;
+		TextRunCache runs = TextRunCache.RUNS;
+		if (runs.isEnabled() && (charsCount <= TextRunCache.MAX_RUN_LENGTH)) {
+			run = runs.getRun(font, str, color);
+			if (run == null) {
+				run = rasterize(str, color);
+				runs.putRun(font, str, color, run);
+			}
+		}
+
 		x += g.getTranslateX();
 		y += g.getTranslateY();
 
@@ -160,114 +218,92 @@ public class BDFFontPeer implements FontPeer {
 			y -= getHeight() - 1;
 		}
 
-		if ((anchor & Graphics.RIGHT) == Graphics.RIGHT) {
-			x -= stringWidth(str) - 1;
-		} else if ((anchor & Graphics.HCENTER) == Graphics.HCENTER) {
-			x -= stringWidth(str) / 2 - 1;
+		if ((anchor & (Graphics.RIGHT | Graphics.HCENTER)) != 0) {
+			int width = (run != null) ? run.advance : stringWidth(str);
+			if ((anchor & Graphics.RIGHT) == Graphics.RIGHT) {
+				x -= width - 1;
+			} else {
+				x -= width / 2 - 1;
+			}
 		}
 
 		y += inset / 2;
 
-		VirtualGraphics vg = ((VirtualGraphics) g);
-		VirtualSurface surface = vg.getSurface();
-
 		if (Logging.TRACE_ENABLED)
 			System.out.println("SDLGraphics.drawString(): " + str + " x=" + x + " y=" + y + " color="
 					+ Integer.toHexString(g.getColor()));
 
-		int color = vg.getInternalColor();
-		//int pw = surface.getWidth();
 		Rectangle r = vg.clipRectangle;
 
-		char[] chars = str.toCharArray();
-		int charsCount = chars.length;
+		if (run != null) {
+			run.blit(surface, r, x, y);
+			return;
+		}
 
-		if ((container != null) && (charsCount > 0)) {
+		// Draw glyph by glyph, clipping each one
+		byte[] atlas = font.getAtlas();
+		for (int i = 0; i < charsCount; i++) {
+			int glyph = font.getGlyph(str.charAt(i));
+			if (glyph < 0) {
+				continue;
+			}
+			if (x >= r.xmax) {
+				break;
+			}
+			GlyphRun.blit(surface, r, atlas, font.getAtlasOffset(glyph), font.getWidth(glyph), font.getWidth(glyph),
+					font.getHeight(glyph), x, y + font.getTop(glyph), color, levels);
+			x += font.getAdvance(glyph);
+		}
 
-			int offset = 0;
-			BDFMetrics fm = (BDFMetrics) container.getFontMetrics();
+	}
 
-			for (int i = 0; i < charsCount; i++) {
+	/**
+	 * Rasterizes a string to a glyph run.
+	 */
+	private GlyphRun rasterize(String str, int color) {
+
+		int charsCount = str.length();
+
+		// The run is wide enough for glyphs extending beyond their advance
+		int advance = 0;
+		int width = 0;
+		for (int i = 0; i < charsCount; i++) {
+			int glyph = font.getGlyph(str.charAt(i));
+			if (glyph >= 0) {
+				width = Math.max(width, advance + font.getWidth(glyph));
+				advance += font.getAdvance(glyph);
+			}
+		}
+		width = Math.max(width, advance);
 
-				BDFGlyph glyph = container.getGlyph(chars[i]);
-				if (glyph == null) {
-					continue;
-				}
+		GlyphRun run = new GlyphRun(width, font.getHeight(), advance, color);
+		byte[] atlas = font.getAtlas();
 
-				int base = fm.getDescent();
-				int charWidth = fm.charWidth(chars[i]);
-
-				int fHeight = glyph.getBbx().height;
-				int[] fData = glyph.getData();
-				int scan = fData.length / fHeight;
-
-				// FIXME Improve clipping
-				int currentX = x + offset;
-				if (currentX > r.xmax || (currentX + scan) > r.xmax || y < r.ymin || y > r.ymax
-						|| (y + fHeight) > r.ymax)
-					break;
-
-				if (container.getDepth() == 8) {
-					for (int k = 0; k < fHeight; k++) {
-						for (int j = 0; j < scan; j++) {
-							int fPixel = fData[(k * scan) + j];
-							if (fPixel != 0) {
-
-								int destPosition = (y + (container.getBoundingBox().height + base - fHeight) + k - glyph
-										.getBbx().y)
-										* surface.getWidth() + (x + offset + j);
-
-								// Source.
-								int sr = (color & 0x00FF0000) >> 16;
-								int sg = (color & 0x0000FF00) >> 8;
-								int sb = color & 0x000000FF;
-
-								// Destination.
-								int dr = (surface.data[destPosition] & 0x00FF0000) >> 16;
-								int dg = (surface.data[destPosition] & 0x0000FF00) >> 8;
-								int db = surface.data[destPosition] & 0x000000FF;
-
-								// Alpha blending
-								int a = fPixel;
-								int factor = 0x00010000 / 255;
-								dr = ((a * sr + (0xff - a) * dr) * factor) >> 16;
-								dg = ((a * sg + (0xff - a) * dg) * factor) >> 16;
-								db = ((a * sb + (0xff - a) * db) * factor) >> 16;
-
-								surface.data[destPosition] = (((dr << 16) + (dg << 8) + db) | 0xFF000000);
-							}
-						}
+		int pen = 0;
+		for (int i = 0; i < charsCount; i++) {
+			int glyph = font.getGlyph(str.charAt(i));
+			if (glyph < 0) {
+				continue;
+			}
+			int fWidth = font.getWidth(glyph);
+			int fHeight = font.getHeight(glyph);
+			int src = font.getAtlasOffset(glyph);
+			int top = font.getTop(glyph);
+			for (int k = 0; k < fHeight; k++) {
+				for (int j = 0; j < fWidth; j++, src++) {
+					int a = atlas[src] & 0xFF;
+					if (levels != null) {
+						a = levels[a];
 					}
-				} else {
-
-					for (int k = 0; k < fHeight; k++) {
-						for (int j = 0; j < scan; j++) {
-							int fPixel = fData[(k * scan) + j];
-							if (fPixel != 0) {
-
-								int destPosition = (y + (container.getBoundingBox().height + base - fHeight) + k - glyph
-										.getBbx().y)
-										* surface.getWidth() + (x + offset + j);
-
-								int red = (color & 0x00FF0000) >> 16;
-								int green = (color & 0x0000FF00) >> 8;
-								int blue = (color & 0x000000FF);
-
-								red = ((red * fPixel) >> container.getDepth()) & 0xFF;
-								green = ((green * fPixel) >> container.getDepth()) & 0xFF;
-								blue = ((blue * fPixel) >> container.getDepth()) & 0xFF;
-
-								surface.data[destPosition] = (((red << 16) + (green << 8) + blue) | 0xFF000000);
-							}
-						}
+					if (a != 0) {
+						run.cover(pen + j, top + k, a);
 					}
 				}
-
-				offset += charWidth;
-
 			}
+			pen += font.getAdvance(glyph);
 		}
 
+		return run;
 	}
 
 }
@@ -0,0 +1,146 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ */
+package org.thenesis.midpath.ui.toolkit.virtual;
+
+import org.thenesis.microbackend.ui.graphics.Compositor;
+
+/**
+ * A string rasterized once to an 8-bit coverage mask (0 is transparent,
+ * 255 is opaque), together with the color channels it is drawn with.
+ * Runs are built by the font peers and kept in a TextRunCache so that
+ * drawing the same string again is a single clipped blit.
+ */
+class GlyphRun {
+
+	/** Coverage mask, one byte per pixel, <code>width</code> bytes per row */
+	final byte[] mask;
+	final int width;
+	final int height;
+
+	/** Pen advance of the whole run, used for anchoring */
+	final int advance;
+
+	/* Pre-split color */
+	private final int red;
+	private final int green;
+	private final int blue;
+	private final int opaque;
+	private final short opaque16;
+
+	GlyphRun(int width, int height, int advance, int color) {
+		this.width = width;
+		this.height = height;
+		this.advance = advance;
+		mask = new byte[width * height];
+		red = (color >> 16) & 0xFF;
+		green = (color >> 8) & 0xFF;
+		blue = color & 0xFF;
+		opaque = color | 0xFF000000;
+		opaque16 = (short) Compositor.toRGB565(color);
+	}
+
+	/**
+	 * Sets the coverage of a pixel of the run, keeping the highest value
+	 * where glyphs overlap.
+	 */
+	void cover(int x, int y, int alpha) {
+		if ((x < 0) || (x >= width) || (y < 0) || (y >= height)) {
+			return;
+		}
+		int index = y * width + x;
+		if ((mask[index] & 0xFF) < alpha) {
+			mask[index] = (byte) alpha;
+		}
+	}
+
+	/**
+	 * Draws the run with its top-left corner at (x, y), in surface coordinates.
+	 */
+	void blit(VirtualSurface surface, Rectangle clip, int x, int y) {
+		blit(surface, clip, mask, 0, width, width, height, x, y, red, green, blue, opaque, opaque16, null);
+	}
+
+	/**
+	 * Draws a coverage mask with the given color. The mask is clipped
+	 * against <code>clip</code> (whose maximum bounds are exclusive).
+	 * 
+	 * @param levels maps the mask values to alpha values, or null if the mask already holds alpha values
+	 */
+	static void blit(VirtualSurface surface, Rectangle clip, byte[] mask, int offset, int stride, int w, int h, int x,
+			int y, int color, int[] levels) {
+		blit(surface, clip, mask, offset, stride, w, h, x, y, (color >> 16) & 0xFF, (color >> 8) & 0xFF,
+				color & 0xFF, color | 0xFF000000, (short) Compositor.toRGB565(color), levels);
+	}
+
+	private static void blit(VirtualSurface surface, Rectangle clip, byte[] mask, int offset, int stride, int w,
+			int h, int x, int y, int sr, int sg, int sb, int opaque, short opaque16, int[] levels) {
+
+		// Clip the whole mask once
+		int x0 = (x < clip.xmin) ? clip.xmin : x;
+		int y0 = (y < clip.ymin) ? clip.ymin : y;
+		int x1 = ((x + w) > clip.xmax) ? clip.xmax : x + w;
+		int y1 = ((y + h) > clip.ymax) ? clip.ymax : y + h;
+		if ((x0 >= x1) || (y0 >= y1)) {
+			return;
+		}
+
+		int pw = surface.width;
+		int[] data = surface.data;
+		short[] data16 = surface.data16;
+
+		for (int py = y0; py < y1; py++) {
+			int src = offset + (py - y) * stride + (x0 - x);
+			int dst = py * pw + x0;
+			for (int px = x0; px < x1; px++, src++, dst++) {
+				int a = mask[src] & 0xFF;
+				if (levels != null) {
+					a = levels[a];
+				}
+				if (a == 0) {
+					continue;
+				}
+				if (a == 0xFF) {
+					if (data16 != null) {
+						data16[dst] = opaque16;
+					} else {
+						data[dst] = opaque;
+					}
+					continue;
+				}
+
+				// Alpha blending (a * 257 / 65536 ~ a / 255)
+				int d = (data16 != null) ? Compositor.toARGB(data16[dst]) : data[dst];
+				int dr = (d >> 16) & 0xFF;
+				int dg = (d >> 8) & 0xFF;
+				int db = d & 0xFF;
+				int f = a * 257;
+				dr += ((sr - dr) * f) >> 16;
+				dg += ((sg - dg) * f) >> 16;
+				db += ((sb - db) * f) >> 16;
+				d = 0xFF000000 | (dr << 16) | (dg << 8) | db;
+
+				if (data16 != null) {
+					data16[dst] = (short) Compositor.toRGB565(d);
+				} else {
+					data[dst] = d;
+				}
+			}
+		}
+	}
+
+}
@@ -21,6 +21,8 @@ import javax.microedition.lcdui.Font;
 import javax.microedition.lcdui.FontPeer;
 import javax.microedition.lcdui.Graphics;
 
+import org.thenesis.microbackend.ui.graphics.Compositor;
+
 import com.sun.midp.log.Logging;
 
 public class RawFontPeer implements FontPeer {
@@ -103,6 +105,27 @@ public class RawFontPeer implements FontPeer {
 	}
 
 	public void render(Graphics g, String str, int x, int y, int anchor) {
+
+		int charsCount = str.length();
+		if (charsCount == 0) {
+			return;
+		}
+
+		VirtualGraphics vg = ((VirtualGraphics) g);
+		VirtualSurface surface = vg.getSurface();
+		int color = vg.getInternalColor();
+
+		// Short strings are drawn from a cached run
+		GlyphRun run = null;
+		TextRunCache runs = TextRunCache.RUNS;
+		if (runs.isEnabled() && (charsCount <= TextRunCache.MAX_RUN_LENGTH)) {
+			run = runs.getRun(FONTS_DATA[font], str, color);
+			if (run == null) {
+				run = rasterize(str, color);
+				runs.putRun(FONTS_DATA[font], str, color, run);
+			}
+		}
+
 		x += g.getTranslateX();
 		y += g.getTranslateY();
 
@@ -118,32 +141,33 @@ public class RawFontPeer implements FontPeer {
 
 		y += inset / 2;
 
-		VirtualGraphics vg = ((VirtualGraphics) g);
-		VirtualSurface surface = vg.getSurface();
-
 		if (Logging.TRACE_ENABLED)
 			System.out.println("SDLGraphics.drawString(): " + str + " x=" + x + " y=" + y + " color="
 					+ Integer.toHexString(g.getColor()));
 
+		Rectangle r = vg.clipRectangle;
+		//System.out.println("clip rectangle : " + r + " fw=" + fw + " fh=" + fh);
+
+		if (run != null) {
+			run.blit(surface, r, x, y);
+			return;
+		}
+
 		int fw = FONTS_WIDTH[font];
 		int fh = FONTS_HEIGHT[font];
 		char data[] = FONTS_DATA[font];
 
-		int color = vg.getInternalColor();
+		short color16 = (short) Compositor.toRGB565(color);
+		short[] data16 = surface.data16;
 		int pw = surface.getWidth();
 
-		Rectangle r = vg.clipRectangle;
-		//System.out.println("clip rectangle : " + r + " fw=" + fw + " fh=" + fh);
-
-		char[] chars = str.toCharArray();
-
-		for (int i = 0; i < chars.length; i++) {
+		for (int i = 0; i < charsCount; i++) {
 
 			int currentX = x + i * fw;
 
 			// Set the destination offset to the next character
-			int pk = y * surface.getWidth() + currentX;
-			int dk = chars[i] * fh;
+			int pk = y * pw + currentX;
+			int dk = str.charAt(i) * fh;
 			
 			// Check if character exists
 			if (dk >= data.length) {
@@ -151,8 +175,10 @@ public class RawFontPeer implements FontPeer {
 			}
 
 			// Trivial clipping
-			if (currentX > r.xmax || y > r.ymax)
+			if (currentX >= r.xmax || y >= r.ymax)
 				break;
+			if (currentX + fw <= r.xmin)
+				continue;
 
 			// Pixel clipping
 			int cxmin = 0, cxmax = fw;
@@ -180,7 +206,11 @@ public class RawFontPeer implements FontPeer {
 				int bit = 1 << (15 - cxmin);
 				for (int cx = cxmin; cx < cxmax; cx++, bit >>= 1) {
 					if ((d & bit) != 0) {
-						surface.data[pk + cx] = color;
+						if (data16 != null) {
+							data16[pk + cx] = color16;
+						} else {
+							surface.data[pk + cx] = color;
+						}
 					}
 				}
 			}
@@ -189,6 +219,38 @@ public class RawFontPeer implements FontPeer {
 
 	}
 
+	/**
+	 * Rasterizes a string to a glyph run.
+	 */
+	private GlyphRun rasterize(String str, int color) {
+
+		int fw = FONTS_WIDTH[font];
+		int fh = FONTS_HEIGHT[font];
+		char data[] = FONTS_DATA[font];
+
+		int charsCount = str.length();
+		GlyphRun run = new GlyphRun(charsCount * fw, fh, charsCount * fw, color);
+
+		for (int i = 0; i < charsCount; i++) {
+			int dk = str.charAt(i) * fh;
+			if (dk >= data.length) {
+				continue;
+			}
+			int pk = i * fw;
+			for (int cy = 0; cy < fh; cy++, pk += run.width) {
+				int d = data[dk + cy];
+				int bit = 1 << 15;
+				for (int cx = 0; cx < fw; cx++, bit >>= 1) {
+					if ((d & bit) != 0) {
+						run.mask[pk + cx] = (byte) 0xFF;
+					}
+				}
+			}
+		}
+
+		return run;
+	}
+
 	private final static char font8x8[] = { 0x0000, 0x0000, 0x0000, 0x0000, 0x0000, 0x0000, 0x0000, 0x0000, 0x7E00,
 			0x8100, 0xA500, 0x8100, 0xBD00, 0x9900, 0x8100, 0x7E00, 0x7E00, 0xFF00, 0xDB00, 0xFF00, 0xC300, 0xE700,
 			0xFF00, 0x7E00, 0x6C00, 0xFE00, 0xFE00, 0xFE00, 0x7C00, 0x3800, 0x1000, 0x0000, 0x1000, 0x3800, 0x7C00,
@@ -0,0 +1,190 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ */
+package org.thenesis.midpath.ui.toolkit.virtual;
+
+import java.util.Hashtable;
+
+import com.sun.midp.main.Configuration;
+
+/**
+ * A small LRU cache of measured string widths or rasterized glyph runs,
+ * keyed by (font, string, color). The font is compared by identity.
+ * A capacity of 0 disables the cache.
+ */
+class TextRunCache {
+
+	/** Longest string whose run is cached */
+	static final int MAX_RUN_LENGTH = 64;
+
+	/** String widths, shared by the font peers (color is not used) */
+	static final TextRunCache WIDTHS = new TextRunCache(Configuration.getNonNegativeIntProperty(
+			"org.thenesis.midpath.font.widthCacheSize", 64));
+
+	/** Rasterized runs, shared by the font peers */
+	static final TextRunCache RUNS = new TextRunCache(Configuration.getNonNegativeIntProperty(
+			"org.thenesis.midpath.font.runCacheSize", 16));
+
+	private static class Entry {
+
+		Object font;
+		String str;
+		int color;
+		int hash;
+
+		int width;
+		GlyphRun run;
+
+		Entry prev;
+		Entry next;
+
+		void set(Object font, String str, int color) {
+			this.font = font;
+			this.str = str;
+			this.color = color;
+			hash = (font.hashCode() * 31 + str.hashCode()) * 31 + color;
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+			Entry e = (Entry) o;
+			return (e.hash == hash) && (e.font == font) && (e.color == color) && e.str.equals(str);
+		}
+	}
+
+	private int capacity;
+	private Hashtable table;
+
+	/* Most recently used entry is head.next, least recently used is head.prev */
+	private Entry head = new Entry();
+
+	/* Reused key for lookups */
+	private Entry probe = new Entry();
+
+	private int hits;
+	private int misses;
+
+	TextRunCache(int capacity) {
+		this.capacity = capacity;
+		table = new Hashtable(capacity + 1);
+		head.prev = head;
+		head.next = head;
+	}
+
+	boolean isEnabled() {
+		return capacity > 0;
+	}
+
+	/**
+	 * Returns the cached width of a string, or -1 if it is not cached.
+	 */
+	synchronized int getWidth(Object font, String str) {
+		Entry e = lookup(font, str, 0);
+		return (e != null) ? e.width : -1;
+	}
+
+	synchronized void putWidth(Object font, String str, int width) {
+		Entry e = insert(font, str, 0);
+		if (e != null) {
+			e.width = width;
+		}
+	}
+
+	/**
+	 * Returns the cached run of a string drawn with the given color, or null.
+	 */
+	synchronized GlyphRun getRun(Object font, String str, int color) {
+		Entry e = lookup(font, str, color);
+		return (e != null) ? e.run : null;
+	}
+
+	synchronized void putRun(Object font, String str, int color, GlyphRun run) {
+		Entry e = insert(font, str, color);
+		if (e != null) {
+			e.run = run;
+		}
+	}
+
+	synchronized void clear() {
+		table.clear();
+		head.prev = head;
+		head.next = head;
+	}
+
+	public int getHitCount() {
+		return hits;
+	}
+
+	public int getMissCount() {
+		return misses;
+	}
+
+	private Entry lookup(Object font, String str, int color) {
+		if (capacity == 0) {
+			return null;
+		}
+		probe.set(font, str, color);
+		Entry e = (Entry) table.get(probe);
+		probe.font = null;
+		probe.str = null;
+		if (e == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		unlink(e);
+		linkFirst(e);
+		return e;
+	}
+
+	private Entry insert(Object font, String str, int color) {
+		if (capacity == 0) {
+			return null;
+		}
+		Entry e = new Entry();
+		e.set(font, str, color);
+		Entry old = (Entry) table.put(e, e);
+		if (old != null) {
+			unlink(old);
+		} else if (table.size() > capacity) {
+			Entry eldest = head.prev;
+			unlink(eldest);
+			table.remove(eldest);
+		}
+		linkFirst(e);
+		return e;
+	}
+
+	private void unlink(Entry e) {
+		e.prev.next = e.next;
+		e.next.prev = e.prev;
+	}
+
+	private void linkFirst(Entry e) {
+		e.prev = head;
+		e.next = head.next;
+		head.next.prev = e;
+		head.next = e;
+	}
+
+}
@@ -25,8 +25,12 @@ public interface VirtualBackend {
 	
 	public EventMapper getEventMapper();
 	public VirtualSurface createSurface(int w, int h);
+	/** Creates a surface without alpha channel, in the same pixel format as the root surface */
+	public VirtualSurface createOpaqueSurface(int w, int h);
 	public VirtualSurface getRootSurface();
 	public void updateSurfacePixels(int x, int y, long widht, long heigth);
+	/** Updates several regions at once, given as (x, y, width, height) quadruples */
+	public void updateSurfacePixels(int[] regions, int regionCount);
 	public void open() throws IOException;
 	public void close();
 
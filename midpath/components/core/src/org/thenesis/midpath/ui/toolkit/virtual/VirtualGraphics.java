@@ -20,6 +20,9 @@ package org.thenesis.midpath.ui.toolkit.virtual;
 import javax.microedition.lcdui.FontPeer;
 import javax.microedition.lcdui.Graphics;
 
+import org.thenesis.microbackend.ui.graphics.Compositor;
+import org.thenesis.microbackend.ui.graphics.ScanConverter;
+
 import com.sun.midp.log.Logging;
 
 public class VirtualGraphics extends Graphics {
@@ -35,6 +38,8 @@ public class VirtualGraphics extends Graphics {
 
 	Rectangle clipRectangle = new Rectangle();
 	private int internalColor;
+	private short internalColor16;
+	private ScanConverter scanConverter;
 
 	VirtualGraphics(VirtualSurface surface) {
 		this.surface = surface;
@@ -64,6 +69,7 @@ public class VirtualGraphics extends Graphics {
 	 */
 	private void setInternalColor() {
 		internalColor = (rgbColor | 0xFF000000);
+		internalColor16 = (short) Compositor.toRGB565(internalColor);
 	}
 
 	public int getInternalColor() {
@@ -112,15 +118,23 @@ public class VirtualGraphics extends Graphics {
 	//--------------------------------------------------------------------------------
 	// Span.
 	//--------------------------------------------------------------------------------	
-	private void drawSpan(int dst[], int dstPosition, int w) {
+	private void drawSpan(int dstPosition, int w) {
 
 		//if (Logging.TRACE_ENABLED)
 		//	System.out.println("[DEBUG]VirtualGraphics.drawSpan : surface data size= " + surface.data.length + " dstPosition=" + dstPosition + " w=" + w);
 
 		switch (blendMode) {
 		case REPLACE:
-			for (int x = dstPosition; x < (dstPosition + w); x++) {
-				dst[x] = internalColor;
+			if (surface.data16 != null) {
+				short[] dst = surface.data16;
+				for (int x = dstPosition; x < (dstPosition + w); x++) {
+					dst[x] = internalColor16;
+				}
+			} else {
+				int[] dst = surface.data;
+				for (int x = dstPosition; x < (dstPosition + w); x++) {
+					dst[x] = internalColor;
+				}
 			}
 			break;
 		}
@@ -149,7 +163,7 @@ public class VirtualGraphics extends Graphics {
 			x1 = r.xmax - 1;
 
 		// Draw.
-		drawSpan(surface.data, y * surface.width + x0, x1 - x0 + 1);
+		drawSpan(y * surface.width + x0, x1 - x0 + 1);
 	}
 
 	public void drawVLine(int y0, int y1, int x) {
@@ -173,7 +187,7 @@ public class VirtualGraphics extends Graphics {
 		// Draw.
 		int h = y1 - y0 + 1;
 		for (int ry = 0; ry < h; ry++)
-			drawSpan(surface.data, (y0 + ry) * surface.width + x, 1);
+			drawSpan((y0 + ry) * surface.width + x, 1);
 	}
 
 	/**
@@ -237,7 +251,7 @@ public class VirtualGraphics extends Graphics {
 				if (lastPixelFlag)
 					w++;
 				while (w > 0) {
-					drawSpan(surface.data, y * surface.width + x, 1);
+					drawSpan(y * surface.width + x, 1);
 					if (decision >= 0) {
 						decision -= dx;
 						y += sy;
@@ -255,7 +269,7 @@ public class VirtualGraphics extends Graphics {
 				if (lastPixelFlag)
 					h++;
 				while (h > 0) {
-					drawSpan(surface.data, y * surface.width + x, 1);
+					drawSpan(y * surface.width + x, 1);
 					if (decision >= 0) {
 						decision -= dy;
 						x += sx;
@@ -484,7 +498,7 @@ public class VirtualGraphics extends Graphics {
 			return;
 
 		for (int ry = 0; ry < h; ry++) {
-			drawSpan(surface.data, (y0 + ry) * surface.width + x0, w);
+			drawSpan((y0 + ry) * surface.width + x0, w);
 		}
 	}
 
@@ -497,15 +511,15 @@ public class VirtualGraphics extends Graphics {
 		boolean left = (x0 >= r.xmin) && (x0 <= r.xmax), right = (x1 >= r.xmin) && (x1 <= r.xmax) && (xp != 0);
 		if ((y0 >= r.ymin) && (y0 <= r.ymax)) {
 			if (left)
-				drawSpan(surface.data, y0 * surface.width + x0, 1);
+				drawSpan(y0 * surface.width + x0, 1);
 			if (right)
-				drawSpan(surface.data, y0 * surface.width + x1, 1);
+				drawSpan(y0 * surface.width + x1, 1);
 		}
 		if ((y1 >= r.ymin) && (y1 <= r.ymax) && (yp != 0)) {
 			if (left)
-				drawSpan(surface.data, y1 * surface.width + x0, 1);
+				drawSpan(y1 * surface.width + x0, 1);
 			if (right)
-				drawSpan(surface.data, y1 * surface.width + x1, 1);
+				drawSpan(y1 * surface.width + x1, 1);
 		}
 	}
 
@@ -519,9 +533,9 @@ public class VirtualGraphics extends Graphics {
 		int w = x1 - x0 + 1;
 		if (w > 0) {
 			if ((y0 >= r.ymin) && (y0 <= r.ymax))
-				drawSpan(surface.data, y0 * surface.width + x0, w);
+				drawSpan(y0 * surface.width + x0, w);
 			if ((y1 >= r.ymin) && (y1 <= r.ymax) && (yp != 0))
-				drawSpan(surface.data, y1 * surface.width + x0, w);
+				drawSpan(y1 * surface.width + x0, w);
 		}
 	}
 
@@ -750,12 +764,12 @@ public class VirtualGraphics extends Graphics {
 				insideFlag = reflexAngle ? (-xpys - ypxs < 0 || -xpye - ypxe > 0)
 						: (-xpys - ypxs < 0 && -xpye - ypxe > 0);
 				if (insideFlag)
-					drawSpan(surface.data, y0 * surface.width + x0, 1); // Top left. Second quadrant.
+					drawSpan(y0 * surface.width + x0, 1); // Top left. Second quadrant.
 			}
 			if (right) {
 				insideFlag = reflexAngle ? (xpys - ypxs < 0 || xpye - ypxe > 0) : (xpys - ypxs < 0 && xpye - ypxe > 0);
 				if (insideFlag)
-					drawSpan(surface.data, y0 * surface.width + x1, 1); // Top right. First quadrant.
+					drawSpan(y0 * surface.width + x1, 1); // Top right. First quadrant.
 			}
 		}
 		if ((y1 >= r.ymin) && (y1 <= r.ymax) && (yp != 0)) {
@@ -763,12 +777,12 @@ public class VirtualGraphics extends Graphics {
 				insideFlag = reflexAngle ? (-xpys + ypxs < 0 || -xpye + ypxe > 0)
 						: (-xpys + ypxs < 0 && -xpye + ypxe > 0);
 				if (insideFlag)
-					drawSpan(surface.data, y1 * surface.width + x0, 1); // Bottom left. Third quadrant.
+					drawSpan(y1 * surface.width + x0, 1); // Bottom left. Third quadrant.
 			}
 			if (right) {
 				insideFlag = reflexAngle ? (xpys + ypxs < 0 || xpye + ypxe > 0) : (xpys + ypxs < 0 && xpye + ypxe > 0);
 				if (insideFlag)
-					drawSpan(surface.data, y1 * surface.width + x1, 1); // Bottom right. Fourth quadrant.
+					drawSpan(y1 * surface.width + x1, 1); // Bottom right. Fourth quadrant.
 			}
 		}
 	}
@@ -981,7 +995,7 @@ public class VirtualGraphics extends Graphics {
 					x1 = r.xmax;
 				w = x1 - x0 + 1;
 				if (w > 0)
-					drawSpan(surface.data, y0 * surface.width + x0, w);
+					drawSpan(y0 * surface.width + x0, w);
 			} else {
 				x0 = -xp;
 				x1 = xp;
@@ -995,7 +1009,7 @@ public class VirtualGraphics extends Graphics {
 					x1 = r.xmax;
 				w = x1 - x0 + 1;
 				if (w > 0)
-					drawSpan(surface.data, y0 * surface.width + x0, w);
+					drawSpan(y0 * surface.width + x0, w);
 
 				x0 = -xp;
 				x1 = xp;
@@ -1009,7 +1023,7 @@ public class VirtualGraphics extends Graphics {
 					x1 = r.xmax;
 				w = x1 - x0 + 1;
 				if (w > 0)
-					drawSpan(surface.data, y0 * surface.width + x0, w);
+					drawSpan(y0 * surface.width + x0, w);
 			}
 		}
 	}
@@ -1138,33 +1152,20 @@ public class VirtualGraphics extends Graphics {
 		symax = dymax - y;
 
 		int w = sxmax - sxmin, h = symax - symin;
+		if ((w <= 0) || (h <= 0))
+			return;
 
-		if (processAlpha) {
-			for (int ry = 0; ry < h; ry++) {
-
-				int srcPosition = offset + (symin + ry) * scanlength + sxmin;
-				int dstPosition = (dymin + ry) * surface.width + dxmin;
-				int length = w;
-
-				for (int i = 0, sp = srcPosition, dp = dstPosition; i < length; i++, sp += 1, dp += 1) {
-					if (((rgbData[i + srcPosition]) & 0xFF000000) == 0xFF000000)
-						surface.data[i + dstPosition] = rgbData[i + srcPosition];
-				}
+		int srcPosition = offset + symin * scanlength + sxmin;
+		int dstPosition = dymin * surface.width + dxmin;
 
-			}
+		if (surface.data16 != null) {
+			Compositor.blit(rgbData, srcPosition, scanlength, surface.data16, dstPosition, surface.width, w, h,
+					processAlpha ? Compositor.ALPHA_TRANSLUCENT : Compositor.ALPHA_OPAQUE);
+		} else if (processAlpha) {
+			Compositor.blit(rgbData, srcPosition, scanlength, surface.data, dstPosition, surface.width, w, h,
+					Compositor.ALPHA_TRANSLUCENT);
 		} else {
-			for (int ry = 0; ry < h; ry++) {
-
-				int srcPosition = offset + (symin + ry) * scanlength + sxmin;
-				int dstPosition = (dymin + ry) * surface.width + dxmin;
-				int length = w;
-
-				for (int i = 0, sp = srcPosition, dp = dstPosition; i < length; i++, sp += 1, dp += 1) {
-					//System.out.println("[DEBUG] VirtualGraphics.drawRGB()() : dest=" + (i + dstPosition) + " src=" + (i + srcPosition));
-					surface.data[i + dstPosition] = rgbData[i + srcPosition] | 0xFF000000;
-				}
-
-			}
+			Compositor.copyOpaque(rgbData, srcPosition, scanlength, surface.data, dstPosition, surface.width, w, h);
 		}
 
 	}
@@ -1177,34 +1178,77 @@ public class VirtualGraphics extends Graphics {
 		x_src += transX;
 		y_src += transY;
 
-		VirtualImage image = new VirtualImage(width, height);
+		if ((width < 0) || (height < 0) || (x_src < 0) || (y_src < 0) || (x_src + width > surface.width)
+				|| (y_src + height > surface.height)) {
+			throw new IllegalArgumentException();
+		}
 
-		for (int j = 0; j < height; j++) {
+		x_dest += transX;
+		y_dest += transY;
 
-			int srcPosition = (y_src + j) * surface.width + x_src;
-			int dstPosition = j * width;
+		if ((anchor & Graphics.BOTTOM) == Graphics.BOTTOM) {
+			y_dest -= height;
+		} else if ((anchor & Graphics.VCENTER) == Graphics.VCENTER) {
+			y_dest -= height / 2;
+		}
 
-			for (int i = 0; i < width; i++) {
-				image.surface.data[dstPosition + i] = surface.data[srcPosition + i];
-			}
+		if ((anchor & Graphics.RIGHT) == Graphics.RIGHT) {
+			x_dest -= width;
+		} else if ((anchor & Graphics.HCENTER) == Graphics.HCENTER) {
+			x_dest -= width / 2;
 		}
 
-		drawImage(image, x_dest, y_dest, anchor);
+		moveArea(x_src, y_src, width, height, x_dest - x_src, y_dest - y_src);
+	}
+
+	/**
+	 * Moves pixels in place from a source area to the same area shifted by
+	 * (dx, dy). The source is clipped to the surface and the destination to
+	 * the clip rectangle.
+	 */
+	private void moveArea(int x, int y, int width, int height, int dx, int dy) {
+
+		// Clip the source to the surface, then the destination to the clip.
+		int xmin = (x < 0) ? 0 : x;
+		int ymin = (y < 0) ? 0 : y;
+		int xmax = (x + width > surface.width) ? surface.width : x + width;
+		int ymax = (y + height > surface.height) ? surface.height : y + height;
+		Rectangle r = clipRectangle;
+		if (xmin + dx < r.xmin)
+			xmin = r.xmin - dx;
+		if (ymin + dy < r.ymin)
+			ymin = r.ymin - dy;
+		if (xmax + dx > r.xmax)
+			xmax = r.xmax - dx;
+		if (ymax + dy > r.ymax)
+			ymax = r.ymax - dy;
+
+		int w = xmax - xmin, h = ymax - ymin;
+		if ((w <= 0) || (h <= 0))
+			return;
 
+		int srcPosition = ymin * surface.width + xmin;
+		int dstPosition = (ymin + dy) * surface.width + xmin + dx;
+		if (surface.data16 != null) {
+			Compositor.move(surface.data16, srcPosition, dstPosition, surface.width, w, h);
+		} else {
+			Compositor.move(surface.data, srcPosition, dstPosition, surface.width, w, h);
+		}
 	}
 
-	//
-	//	public void fillTriangle(int x1, int y1, int x2, int y2, int x3, int y3) {
-	//
-	//		x1 += transX;
-	//		y1 += transY;
-	//		x2 += transX;
-	//		y2 += transY;
-	//		x3 += transX;
-	//		y3 += transY;
-	//
-	//		SDLGfx.trigonColor(surface, x1, y1, x2, y2, x3, y3, sdlGfxColor);
-	//	}
+	public void fillTriangle(int x1, int y1, int x2, int y2, int x3, int y3) {
+		if (scanConverter == null) {
+			scanConverter = new ScanConverter() {
+				protected void fillSpan(int y, int x, int width) {
+					drawSpan(y * surface.width + x, width);
+				}
+			};
+		}
+		Rectangle r = clipRectangle;
+		scanConverter.setClip(r.xmin, r.ymin, r.xmax, r.ymax);
+		scanConverter.setOrigin(transX, transY);
+		scanConverter.fillTriangle(x1, y1, x2, y2, x3, y3);
+	}
 
 	public void drawRoundRect(int x, int y, int w, int h, int arcWidth, int arcHeight) {
 
@@ -27,8 +27,10 @@ import javax.microedition.lcdui.Image;
 import javax.microedition.lcdui.UIToolkit;
 import javax.microedition.lcdui.game.Sprite;
 
+import org.thenesis.microbackend.ui.graphics.Compositor;
 import org.thenesis.microbackend.ui.image.png.ColorModel;
 import org.thenesis.microbackend.ui.image.png.ImageConsumer;
+import org.thenesis.microbackend.ui.image.png.PngDecoder;
 import org.thenesis.microbackend.ui.image.png.PngImage;
 
 import com.sun.midp.log.Logging;
@@ -41,9 +43,23 @@ public class VirtualImage extends Image {
 
 	VirtualSurface surface;
 	private boolean isMutable = false;
+	/** Alpha type of immutable images, detected on first use (see Compositor) */
+	private int alphaType = Compositor.ALPHA_UNKNOWN;
 
 	public VirtualImage(int w, int h) {
-		surface = createSurface(w, h);
+		surface = createOpaqueSurface(w, h);
+		// A new mutable image is white, as specified by MIDP
+		if (surface.data16 != null) {
+			short[] data16 = surface.data16;
+			for (int i = 0; i < data16.length; i++) {
+				data16[i] = (short) 0xFFFF;
+			}
+		} else {
+			int[] data = surface.data;
+			for (int i = 0; i < data.length; i++) {
+				data[i] = 0xFFFFFFFF;
+			}
+		}
 		imgWidth = w;
 		imgHeight = h;
 		isMutable = true;
@@ -62,10 +78,24 @@ public class VirtualImage extends Image {
 		return ((VirtualToolkit) UIToolkit.getToolkit()).getBackend().createSurface(w, h);
 	}
 
+	private VirtualSurface createOpaqueSurface(int w, int h) {
+		return ((VirtualToolkit) UIToolkit.getToolkit()).getBackend().createOpaqueSurface(w, h);
+	}
+
 	public VirtualImage(InputStream is) throws IOException {
 
-		// Read PNG image from file
-		PngImage png = new PngImage(is);
+		// Decode the common formats in a single pass
+		PngDecoder decoder = new PngDecoder(is);
+		if (decoder.isSupported()) {
+			surface = createSurface(decoder.getWidth(), decoder.getHeight());
+			decoder.decode(surface.data);
+			setDimensions(decoder.getWidth(), decoder.getHeight());
+			isMutable = false;
+			return;
+		}
+
+		// Read other PNG images with the complete decoder
+		PngImage png = new PngImage(decoder.getInputStream());
 
 		final int pngWidth = png.getWidth();
 		int pngHeight = png.getHeight();
@@ -121,19 +151,12 @@ public class VirtualImage extends Image {
 		surface = createSurface(width, height);
 
 		// P(a, b) = rgb[a + b * width];
-		int size = width * height;
 		if (processAlpha) {
-			for (int i = 0; i < size; i++) {
-				if ((rgb[i] & 0xFF000000) != 0xFF000000)
-					surface.data[i] = rgb[i] & 0x00FFFFFF;
-				else {
-					surface.data[i] = rgb[i];
-				}
-			}
+			System.arraycopy(rgb, 0, surface.data, 0, width * height);
+			alphaType = Compositor.getAlphaType(rgb, 0, width, width, height);
 		} else {
-			for (int i = 0; i < size; i++) {
-				surface.data[i] = rgb[i] | 0xFF000000;
-			}
+			Compositor.copyOpaque(rgb, 0, width, surface.data, 0, width, width, height);
+			alphaType = Compositor.ALPHA_OPAQUE;
 		}
 
 		isMutable = false;
@@ -142,15 +165,21 @@ public class VirtualImage extends Image {
 
 	public VirtualImage(VirtualImage srcImage) {
 
-		surface = createSurface(srcImage.getWidth(), srcImage.getHeight());
-
-		int[] srcData = srcImage.surface.data;
-		int[] destData = surface.data;
-
-		System.arraycopy(srcData, 0, destData, 0, srcData.length);
+		if (srcImage.surface.data16 != null) {
+			surface = createOpaqueSurface(srcImage.getWidth(), srcImage.getHeight());
+			short[] srcData = srcImage.surface.data16;
+			System.arraycopy(srcData, 0, surface.data16, 0, srcData.length);
+		} else {
+			surface = createSurface(srcImage.getWidth(), srcImage.getHeight());
+			int[] srcData = srcImage.surface.data;
+			System.arraycopy(srcData, 0, surface.data, 0, srcData.length);
+		}
 
 		setDimensions(srcImage.getWidth(), srcImage.getHeight());
 		isMutable = false;
+		if (!srcImage.isMutable()) {
+			alphaType = srcImage.alphaType;
+		}
 
 	}
 
@@ -197,7 +226,7 @@ public class VirtualImage extends Image {
 		for (int b = y; b < y + height; b++) {
 			for (int a = x; a < x + width; a++) {
 				//System.out.println("[DEBUG]VirtualImage.getRGB(): a=" + a + "  b=" + b);
-				rgbData[offset + (a - x) + (b - y) * scanlength] = surface.data[a + b * scanlength];
+				rgbData[offset + (a - x) + (b - y) * scanlength] = surface.getARGB(a + b * surface.width);
 				//rgbData[offset + (a - x) + (b - y) * scanlength] = P(a, b);
 			}
 		}
@@ -247,49 +276,49 @@ public class VirtualImage extends Image {
 		//			}
 		//		}
 
-		// Clip source rectangle in source image.
-		//int sxmin=r.xmin, symin=r.ymin, sxmax=r.xmax, symax=r.ymax;
-		int sxmin = x_src, symin = y_src, sxmax = x_src + width, symax = y_src + height;
-		if (sxmin < 0)
-			sxmin = 0;
-		if (symin < 0)
-			symin = 0;
-		if (sxmax > surface.width - 1)
-			sxmax = surface.width - 1;
-		if (symax > surface.height - 1)
-			symax = surface.height - 1;
-
 		// Clip destination rectangle in destination image.
-		int dxmin = x + sxmin - x_src, dymin = y + symin - y_src, dxmax = x + sxmax - x_src, dymax = y + symax - y_src;
+		int dxmin = x, dymin = y, dxmax = x + width, dymax = y + height;
 		if (dxmin < clipRect.xmin)
 			dxmin = clipRect.xmin;
 		if (dymin < clipRect.ymin)
 			dymin = clipRect.ymin;
-		if (dxmax > clipRect.xmax - 1)
-			dxmax = clipRect.xmax - 1;
-		if (dymax > clipRect.ymax - 1)
-			dymax = clipRect.ymax - 1;
+		if (dxmax > clipRect.xmax)
+			dxmax = clipRect.xmax;
+		if (dymax > clipRect.ymax)
+			dymax = clipRect.ymax;
+
+		int w = dxmax - dxmin, h = dymax - dymin;
+		if ((w <= 0) || (h <= 0)) {
+			return true;
+		}
 
 		// New source rectangle.
-		sxmin = dxmin - x + x_src;
-		symin = dymin - y + y_src;
-		sxmax = dxmax - x + x_src;
-		symax = dymax - y + y_src;
-
-		int w = sxmax - sxmin + 1, h = symax - symin + 1;
-		for (int ry = 0; ry < h; ry++) {
-
-			int srcPosition = (symin + ry) * surface.width + sxmin;
-			int dstPosition = (dymin + ry) * destSurface.width + dxmin;
-			int length = w;
-
-			for (int i = 0, sp = srcPosition, dp = dstPosition; i < length; i++, sp += 1, dp += 1) {
-				// TODO support transparent pixels
-				//System.out.println("[DEBUG]VirtualImage.render(): " + (i + dstPosition));
-				if (((surface.data[i + srcPosition]) & 0xFF000000) == 0xFF000000)
-					destSurface.data[i + dstPosition] = surface.data[i + srcPosition];
+		int sxmin = dxmin - x + x_src;
+		int symin = dymin - y + y_src;
+
+		int srcPosition = symin * surface.width + sxmin;
+		int dstPosition = dymin * destSurface.width + dxmin;
+		short[] srcData16 = surface.data16;
+		short[] dstData16 = destSurface.data16;
+
+		if (srcData16 != null) {
+			// RGB565 images are opaque
+			for (int ry = 0; ry < h; ry++, srcPosition += surface.width, dstPosition += destSurface.width) {
+				if (dstData16 != null) {
+					System.arraycopy(srcData16, srcPosition, dstData16, dstPosition, w);
+				} else {
+					int[] dstData = destSurface.data;
+					for (int i = 0; i < w; i++) {
+						dstData[i + dstPosition] = Compositor.toARGB(srcData16[i + srcPosition]);
+					}
+				}
 			}
-
+		} else if (dstData16 != null) {
+			Compositor.blit(surface.data, srcPosition, surface.width, dstData16, dstPosition, destSurface.width, w, h,
+					getAlphaType());
+		} else {
+			Compositor.blit(surface.data, srcPosition, surface.width, destSurface.data, dstPosition,
+					destSurface.width, w, h, getAlphaType());
 		}
 
 		return true;
@@ -320,6 +349,7 @@ public class VirtualImage extends Image {
 		} else {
 			VirtualSurface transformedSurface = transform(this.surface, x_src, y_src, width, height, transform);
 			VirtualImage transformedImage = new VirtualImage(transformedSurface);
+			transformedImage.alphaType = getAlphaType();
 			g.drawImage(transformedImage, x_dest, y_dest, anchor);
 		}
 
@@ -348,6 +378,22 @@ public class VirtualImage extends Image {
 	public VirtualSurface transform(VirtualSurface srcSurface, int x_src, int y_src, int width, int height,
 			int transform) {
 
+		if ((srcSurface.data16 != null) && (transform != Sprite.TRANS_NONE)) {
+			// Transformations work on ARGB pixels
+			VirtualSurface argbSurface = createSurface(width, height);
+			int srcOffset = y_src * srcSurface.width + x_src;
+			for (int y = 0; y < height; y++) {
+				int srcPosition = srcOffset + y * srcSurface.width;
+				int destPosition = y * width;
+				for (int x = 0; x < width; x++) {
+					argbSurface.data[destPosition + x] = Compositor.toARGB(srcSurface.data16[srcPosition + x]);
+				}
+			}
+			srcSurface = argbSurface;
+			x_src = 0;
+			y_src = 0;
+		}
+
 		switch (transform) {
 
 		case Sprite.TRANS_ROT90:
@@ -468,4 +514,20 @@ public class VirtualImage extends Image {
 		return isMutable;
 	}
 
+	/**
+	 * Returns the alpha type of the image pixels. It is detected once for
+	 * immutable images. Mutable images are always opaque, as specified by
+	 * MIDP: they start white and every drawing operation blends over opaque
+	 * pixels, so they are copied row by row like RGB565 images.
+	 */
+	int getAlphaType() {
+		if ((surface.data16 != null) || isMutable) {
+			return Compositor.ALPHA_OPAQUE;
+		}
+		if (alphaType == Compositor.ALPHA_UNKNOWN) {
+			alphaType = Compositor.getAlphaType(surface.data, 0, surface.width, surface.width, surface.height);
+		}
+		return alphaType;
+	}
+
 }
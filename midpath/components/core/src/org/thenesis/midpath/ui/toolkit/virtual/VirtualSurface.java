@@ -17,13 +17,25 @@
  */
 package org.thenesis.midpath.ui.toolkit.virtual;
 
+import org.thenesis.microbackend.ui.graphics.Compositor;
+
+/**
+ * A pixel buffer. Pixels are stored either as ARGB8888 values in
+ * <code>data</code> or, for opaque surfaces of a 16 bpp screen, as
+ * RGB565 values in <code>data16</code>. Only one of the two arrays
+ * is allocated.
+ */
 public class VirtualSurface {
 	
 	public int width;
 	public int height;
 	
+	/** ARGB8888 pixels, or null if the surface is in RGB565 format */
 	public int[] data;
 	
+	/** RGB565 pixels, or null if the surface is in ARGB8888 format */
+	public short[] data16;
+	
 	public void lock() { }
 	public void unlock() { }
 	
@@ -35,5 +47,30 @@ public class VirtualSurface {
 		return width;
 	}
 	
+	public boolean isRGB565() {
+		return data16 != null;
+	}
+	
+	/**
+	 * Returns the pixel at the given index as an ARGB value.
+	 */
+	public int getARGB(int index) {
+		if (data16 != null) {
+			return Compositor.toARGB(data16[index]);
+		}
+		return data[index];
+	}
+	
+	/**
+	 * Sets the pixel at the given index from an ARGB value. The alpha
+	 * channel is dropped in RGB565 format.
+	 */
+	public void setARGB(int index, int argb) {
+		if (data16 != null) {
+			data16[index] = (short) Compositor.toRGB565(argb);
+		} else {
+			data[index] = argb;
+		}
+	}
 
 }
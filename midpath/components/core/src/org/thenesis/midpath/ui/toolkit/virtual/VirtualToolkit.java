@@ -26,8 +26,10 @@ import javax.microedition.lcdui.Image;
 import javax.microedition.lcdui.UIToolkit;
 
 import org.thenesis.microbackend.ui.BackendEventListener;
+import org.thenesis.microbackend.ui.BatchUpdateBackend;
 import org.thenesis.microbackend.ui.KeyConstants;
 import org.thenesis.microbackend.ui.NullBackend;
+import org.thenesis.microbackend.ui.RGB565Backend;
 import org.thenesis.microbackend.ui.UIBackend;
 import org.thenesis.microbackend.ui.UIBackendFactory;
 
@@ -100,6 +102,14 @@ public class VirtualToolkit extends UIToolkit {
 		backend.updateSurfacePixels(x, y, widht, heigth);
 	}
 
+	public void refresh(int displayId, int[] regions, int regionCount) {
+
+		if (Logging.TRACE_ENABLED)
+			System.out.println("[DEBUG] Toolkit.refresh(): regionCount=" + regionCount);
+
+		backend.updateSurfacePixels(regions, regionCount);
+	}
+
 	public Image createImage(int w, int h) {
 		return new VirtualImage(w, h);
 	}
@@ -175,11 +185,12 @@ class VirtualBackendImpl implements VirtualBackend {
 	private GenericEventMapper eventMapper = new GenericEventMapper();
 	private VirtualBackendEventListener listener = new VirtualBackendEventListener(eventMapper);
 	private UIBackend backend;
+	private boolean rgb565;
 	
 
 	public VirtualBackendImpl(UIBackend backend, int w, int h) {
 		this.backend = backend;
-		rootVirtualSurface = new VirtualSurfaceImpl(w, h);
+		rootVirtualSurface = new VirtualSurfaceImpl(w, h, false);
 		
 		//Copy MIDPath config in the backend config
 		ConfigurationProperties properties = Configuration.getAllProperties();
@@ -196,7 +207,11 @@ class VirtualBackendImpl implements VirtualBackend {
 	}
 
 	public VirtualSurface createSurface(int w, int h) {
-		return new VirtualSurfaceImpl(w, h);
+		return new VirtualSurfaceImpl(w, h, false);
+	}
+
+	public VirtualSurface createOpaqueSurface(int w, int h) {
+		return new VirtualSurfaceImpl(w, h, rgb565);
 	}
 
 	public VirtualSurface getRootSurface() {
@@ -204,11 +219,40 @@ class VirtualBackendImpl implements VirtualBackend {
 	}
 
 	public void updateSurfacePixels(int x, int y, long width, long height) {
-		backend.updateARGBPixels(rootVirtualSurface.data, x, y, (int) width, (int) height);
+		if (rgb565) {
+			((RGB565Backend) backend).updateRGB565Pixels(rootVirtualSurface.data16, x, y, (int) width, (int) height);
+		} else {
+			backend.updateARGBPixels(rootVirtualSurface.data, x, y, (int) width, (int) height);
+		}
+	}
+
+	public void updateSurfacePixels(int[] regions, int regionCount) {
+		if (rgb565) {
+			((RGB565Backend) backend).updateRGB565Pixels(rootVirtualSurface.data16, regions, regionCount);
+		} else if (backend instanceof BatchUpdateBackend) {
+			((BatchUpdateBackend) backend).updateARGBPixels(rootVirtualSurface.data, regions, regionCount);
+		} else {
+			for (int i = 0; i < regionCount * 4; i += 4) {
+				backend.updateARGBPixels(rootVirtualSurface.data, regions[i], regions[i + 1], regions[i + 2],
+						regions[i + 3]);
+			}
+		}
 	}
 	
 	public void open() throws IOException {
 		backend.open();
+		
+		// Switch to RGB565 surfaces only if the screen is natively in this format
+		String surfaceFormat = Configuration.getPropertyDefault("org.thenesis.midpath.ui.surfaceFormat", "argb8888");
+		if (surfaceFormat.equalsIgnoreCase("rgb565") && (backend instanceof RGB565Backend)
+				&& ((RGB565Backend) backend).isRGB565Native()) {
+			rgb565 = true;
+			rootVirtualSurface.data = null;
+			rootVirtualSurface.data16 = new short[rootVirtualSurface.width * rootVirtualSurface.height];
+		}
+		
+		if (Logging.TRACE_ENABLED)
+			System.out.println("[DEBUG] VirtualBackendImpl.open(): rgb565=" + rgb565);
 	}
 
 	public void close() {
@@ -216,8 +260,12 @@ class VirtualBackendImpl implements VirtualBackend {
 	}
 
 	private class VirtualSurfaceImpl extends VirtualSurface {
-		public VirtualSurfaceImpl(int w, int h) {
-			data = new int[w * h];
+		public VirtualSurfaceImpl(int w, int h, boolean rgb565) {
+			if (rgb565) {
+				data16 = new short[w * h];
+			} else {
+				data = new int[w * h];
+			}
 			this.width = w;
 			this.height = h;
 		}
@@ -242,7 +290,13 @@ class VirtualBackendEventListener implements BackendEventListener {
 		if (Logging.TRACE_ENABLED)
 			System.out.println("[DEBUG] VirtualBackendEventListener.fireKeyEvent: key code: " + keycode + " char: " + c);
 
-		NativeEvent nativeEvent = new NativeEvent(EventTypes.KEY_EVENT);
+		// Filter unwanted events 
+		if ((keycode == KeyConstants.VK_SHIFT) || (keycode == KeyConstants.VK_CONTROL) || (keycode == KeyConstants.VK_ALT)) {
+			return;
+		}
+
+		EventQueue eventQueue = EventQueue.getEventQueue();
+		NativeEvent nativeEvent = eventQueue.getNativeEvent(EventTypes.KEY_EVENT);
 		// Set event type (intParam1)
 		if (pressed) {
 			nativeEvent.intParam1 = EventConstants.PRESSED;
@@ -250,11 +304,6 @@ class VirtualBackendEventListener implements BackendEventListener {
 			nativeEvent.intParam1 = EventConstants.RELEASED;
 		}
 		
-		// Filter unwanted events 
-		if ((keycode == KeyConstants.VK_SHIFT) || (keycode == KeyConstants.VK_CONTROL) || (keycode == KeyConstants.VK_ALT)) {
-			return;
-		}
-		
 		// Set event key code (intParam2)
 		int internalCode = eventMapper.mapToInternalEvent(keycode, c);
 		nativeEvent.intParam2 = internalCode;
@@ -263,7 +312,7 @@ class VirtualBackendEventListener implements BackendEventListener {
 		// Set event source (intParam4). Fake display with id=1
 		nativeEvent.intParam4 = 1;
 
-		EventQueue.getEventQueue().post(nativeEvent);
+		eventQueue.post(nativeEvent);
 
 	}
 
@@ -280,14 +329,16 @@ class VirtualBackendEventListener implements BackendEventListener {
 			System.out.println("[DEBUG] VirtualBackendEventListener.mouseMoved(): drag enabled ? " + dragEnabled);
 
 		if (dragEnabled) {
-			NativeEvent nativeEvent = new NativeEvent(EventTypes.PEN_EVENT);
+			// Consecutive drag events are merged by the event queue
+			EventQueue eventQueue = EventQueue.getEventQueue();
+			NativeEvent nativeEvent = eventQueue.getNativeEvent(EventTypes.PEN_EVENT);
 			nativeEvent.intParam1 = EventConstants.DRAGGED; // Event type
 			nativeEvent.intParam2 = x; // x
 			nativeEvent.intParam3 = y; // y
 			// Set event source (intParam4). Fake display with id=1
 			nativeEvent.intParam4 = 1;
 
-			EventQueue.getEventQueue().post(nativeEvent);
+			eventQueue.post(nativeEvent);
 		}
 
 	}
@@ -296,7 +347,8 @@ class VirtualBackendEventListener implements BackendEventListener {
 		if (Logging.TRACE_ENABLED)
 			System.out.println("[DEBUG] VirtualBackendEventListener.fireMouseEvent()");
 
-		NativeEvent nativeEvent = new NativeEvent(EventTypes.PEN_EVENT);
+		EventQueue eventQueue = EventQueue.getEventQueue();
+		NativeEvent nativeEvent = eventQueue.getNativeEvent(EventTypes.PEN_EVENT);
 
 		if (pressed) {
 			dragEnabled = true;
@@ -311,7 +363,7 @@ class VirtualBackendEventListener implements BackendEventListener {
 		// Set event source (intParam4). Fake display with id=1
 		nativeEvent.intParam4 = 1;
 
-		EventQueue.getEventQueue().post(nativeEvent);
+		eventQueue.post(nativeEvent);
 	}
 
 	public void mousePressed(int x, int y, int modifiers) {
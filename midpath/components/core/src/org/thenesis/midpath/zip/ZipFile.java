@@ -38,6 +38,7 @@
 
 package org.thenesis.midpath.zip;
 
+import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -45,9 +46,10 @@ import java.io.UnsupportedEncodingException;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.NoSuchElementException;
+import java.util.Vector;
 
-import org.thenesis.microbackend.zip.Inflater;
-import org.thenesis.microbackend.zip.InflaterInputStream;
+import org.thenesis.microbackend.zip.DataFormatException;
+import org.thenesis.microbackend.zip.FastInflater;
 import org.thenesis.microbackend.zip.ZipException;
 
 import com.sun.midp.io.j2me.file.BaseFileHandler;
@@ -81,6 +83,23 @@ public class ZipFile implements ZipConstants {
 	 */
 	static final int ENDNRD = 4;
 
+	/**
+	 * Deflated entries up to this size are decompressed in one go into
+	 * memory, larger ones are decompressed while they are read.
+	 */
+	private static final int INFLATE_FULLY_LIMIT = 256 * 1024;
+
+	/**
+	 * Size of the tail of the file first searched for the end of central
+	 * directory record, enough when the zip comment is short.
+	 */
+	private static final int END_SEARCH_SIZE = 1024;
+
+	/* Buffers shared by all the zip files, see getBuffer() */
+	private static final Vector bufferPool = new Vector();
+	private static final int MAX_POOLED_BUFFERS = 4;
+	private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+
 	// File from which zip entries are read.
 	private final BaseFileHandler fileHandler;
 
@@ -89,6 +108,16 @@ public class ZipFile implements ZipConstants {
 
 	private boolean closed = false;
 
+	// Location of the central directory, or -1 if not read yet.
+	private int centralOffset = -1;
+	private int centralSize;
+	private int entryCount;
+
+	// File holding the index of the central directory, or null.
+	private final String indexFileName;
+	private ZipIndex index;
+	private boolean indexRead;
+
 	//	/**
 	//	 * Helper function to open RandomAccessFile and throw the proper
 	//	 * ZipException in case opening the file fails.
@@ -116,8 +145,25 @@ public class ZipFile implements ZipConstants {
 	 * archive.  
 	 */
 	public ZipFile(BaseFileHandler bfh) throws ZipException, IOException {
+		this(bfh, null);
+	}
+
+	/**
+	 * Opens a Zip file for reading, with an index of its central directory
+	 * kept in the given file. Entries are then looked up in the index
+	 * without reading the whole central directory. The index is created,
+	 * or recreated if the zip file has changed, when needed.
+	 * @param bfh the zip file
+	 * @param indexFileName the name of the index file in the MIDPath storage
+	 * directory, or null for no index
+	 * @exception IOException if a i/o error occured.
+	 * @exception ZipException if the file doesn't contain a valid zip
+	 * archive.  
+	 */
+	public ZipFile(BaseFileHandler bfh, String indexFileName) throws ZipException, IOException {
 		//this.raf = openFile(name, null);
 		this.fileHandler = bfh;
+		this.indexFileName = indexFileName;
 		checkZipFile();
 	}
 
@@ -149,73 +195,246 @@ public class ZipFile implements ZipConstants {
 			throw new IllegalStateException("ZipFile has closed");
 	}
 
+	/**
+	 * Reads a part of the zip file.
+	 */
+	private void readFully(long pos, byte[] buf, int off, int len) throws IOException {
+		synchronized (fileHandler) {
+			fileHandler.getRandomAccessStream().seek((int) pos);
+			fileHandler.readFully(buf, off, len);
+		}
+	}
+
+	/**
+	 * Reads the location of the central directory from the End Of Central
+	 * Directory record. The tail of the file is read in one go and searched
+	 * in memory. When a zip comment is present the record may start
+	 * earlier. Note that a comment has a maximum length of 64K, so that is
+	 * the maximum we search backwards.
+	 *
+	 * @exception IOException if a i/o error occured.
+	 * @exception ZipException if the record can't be found
+	 */
+	private void readEndOfCentralDirectory() throws ZipException, IOException {
+		long fileSize = fileHandler.fileSize();
+		int searchSize = END_SEARCH_SIZE;
+		for (;;) {
+			int len = (int) Math.min(fileSize, searchSize);
+			byte[] buf = getBuffer(len);
+			try {
+				readFully(fileSize - len, buf, 0, len);
+				for (int pos = len - ENDHDR; pos >= 0; pos--) {
+					if (getLeInt(buf, pos) == (int) ENDSIG) {
+						entryCount = getLeShort(buf, pos + ENDTOT);
+						centralSize = getLeInt(buf, pos + ENDSIZ);
+						centralOffset = getLeInt(buf, pos + ENDOFF);
+						return;
+					}
+				}
+			} finally {
+				releaseBuffer(buf);
+			}
+			if ((len == fileSize) || (searchSize > 65536))
+				throw new ZipException("central directory not found, probably not a zip file");
+			searchSize = ENDHDR + 65536;
+		}
+	}
+
 	/**
 	 * Read the central directory of a zip file and fill the entries
 	 * array.  This is called exactly once when first needed. It is called
-	 * while holding the lock on <code>raf</code>.
+	 * while holding the lock on <code>fileHandler</code>. The directory is
+	 * read in one go, and its index is written if there is an index file
+	 * and it is missing or out of date.
 	 *
 	 * @exception IOException if a i/o error occured.
 	 * @exception ZipException if the central directory is malformed 
 	 */
 	private void readEntries() throws ZipException, IOException {
-		/* Search for the End Of Central Directory.  When a zip comment is 
-		 * present the directory may start earlier.
-		 * Note that a comment has a maximum length of 64K, so that is the
-		 * maximum we search backwards.
-		 */
-		PartialInputStream inp = new PartialInputStream(fileHandler, 4096);
-		long pos = fileHandler.fileSize() - ENDHDR;
-		long top = Math.max(0, pos - 65536);
-		do {
-			if (pos < top)
-				throw new ZipException("central directory not found, probably not a zip file");
-			inp.seek(pos--);
-		} while (inp.readLeInt() != ENDSIG);
-
-		if (inp.skip(ENDTOT - ENDNRD) != ENDTOT - ENDNRD)
-			throw new EOFException();
-		int count = inp.readLeShort();
-		if (inp.skip(ENDOFF - ENDSIZ) != ENDOFF - ENDSIZ)
-			throw new EOFException();
-		int centralOffset = inp.readLeInt();
-
-		entries = new Hashtable(count + count / 2);
-		inp.seek(centralOffset);
-
-		for (int i = 0; i < count; i++) {
-			if (inp.readLeInt() != CENSIG)
-				throw new ZipException("Wrong Central Directory signature ");
-
-			inp.skip(6);
-			int method = inp.readLeShort();
-			int dostime = inp.readLeInt();
-			int crc = inp.readLeInt();
-			int csize = inp.readLeInt();
-			int size = inp.readLeInt();
-			int nameLen = inp.readLeShort();
-			int extraLen = inp.readLeShort();
-			int commentLen = inp.readLeShort();
-			inp.skip(8);
-			int offset = inp.readLeInt();
-			String name = inp.readString(nameLen);
-
-			ZipEntry entry = new ZipEntry(name);
-			entry.setMethod(method);
-			entry.setCrc(crc & 0xffffffffL);
-			entry.setSize(size & 0xffffffffL);
-			entry.setCompressedSize(csize & 0xffffffffL);
-			entry.setDOSTime(dostime);
-			if (extraLen > 0) {
-				byte[] extra = new byte[extraLen];
-				inp.readFully(extra);
-				entry.setExtra(extra);
+		readIndex();
+		if (centralOffset < 0)
+			readEndOfCentralDirectory();
+
+		int count = entryCount;
+		byte[] central = getBuffer(centralSize);
+		try {
+			readFully(centralOffset, central, 0, centralSize);
+
+			boolean buildIndex = (indexFileName != null) && (index == null);
+			int[] hashes = buildIndex ? new int[count] : null;
+			int[] offsets = buildIndex ? new int[count] : null;
+
+			Hashtable entries = new Hashtable(count + count / 2);
+			int pos = 0;
+			for (int i = 0; i < count; i++) {
+				ZipEntry entry = parseEntry(central, pos, centralSize);
+				String name = entry.getName();
+				entries.put(name, entry);
+				if (buildIndex) {
+					hashes[i] = name.hashCode();
+					offsets[i] = pos;
+				}
+				pos += CENHDR + getLeShort(central, pos + CENNAM) + getLeShort(central, pos + CENEXT)
+						+ getLeShort(central, pos + CENCOM);
 			}
-			if (commentLen > 0) {
-				entry.setComment(inp.readString(commentLen));
+			this.entries = entries;
+
+			if (buildIndex) {
+				index = new ZipIndex(fileHandler.fileSize(), fileHandler.lastModified(), centralOffset, centralSize,
+						hashes, offsets);
+				index.write(indexFileName);
 			}
-			entry.offset = offset;
-			entries.put(name, entry);
+		} finally {
+			releaseBuffer(central);
+		}
+	}
+
+	/**
+	 * Reads the index of the central directory the first time it is
+	 * needed, if there is an index file. An index that doesn't match the
+	 * zip file is ignored. It is called while holding the lock on
+	 * <code>fileHandler</code>.
+	 *
+	 * @exception IOException if the zip file size can't be read
+	 */
+	private void readIndex() throws IOException {
+		if ((indexFileName == null) || indexRead)
+			return;
+
+		indexRead = true;
+		index = ZipIndex.read(indexFileName, fileHandler.fileSize(), fileHandler.lastModified());
+		if (index != null) {
+			centralOffset = index.centralOffset;
+			centralSize = index.centralSize;
+			entryCount = index.size();
+		}
+	}
+
+	/**
+	 * Creates the entry described by a record of the central directory.
+	 *
+	 * @param buf the buffer holding the record
+	 * @param pos the position of the record
+	 * @param end the end of the valid data in the buffer
+	 * @exception ZipException if the record is malformed 
+	 */
+	private ZipEntry parseEntry(byte[] buf, int pos, int end) throws ZipException {
+		if ((pos + CENHDR > end) || (getLeInt(buf, pos) != (int) CENSIG))
+			throw new ZipException("Wrong Central Directory signature ");
+
+		int nameLen = getLeShort(buf, pos + CENNAM);
+		int extraLen = getLeShort(buf, pos + CENEXT);
+		int commentLen = getLeShort(buf, pos + CENCOM);
+		int namePos = pos + CENHDR;
+		if (namePos + nameLen + extraLen + commentLen > end)
+			throw new ZipException("Truncated Central Directory");
+
+		ZipEntry entry = new ZipEntry(new String(buf, namePos, nameLen));
+		entry.setMethod(getLeShort(buf, pos + CENHOW));
+		entry.setCrc(getLeInt(buf, pos + CENCRC) & 0xffffffffL);
+		entry.setSize(getLeInt(buf, pos + CENLEN) & 0xffffffffL);
+		entry.setCompressedSize(getLeInt(buf, pos + CENSIZ) & 0xffffffffL);
+		entry.setDOSTime(getLeInt(buf, pos + CENTIM));
+		if (extraLen > 0) {
+			byte[] extra = new byte[extraLen];
+			System.arraycopy(buf, namePos + nameLen, extra, 0, extraLen);
+			entry.setExtra(extra);
+		}
+		if (commentLen > 0) {
+			entry.setComment(new String(buf, namePos + nameLen + extraLen, commentLen));
 		}
+		entry.offset = getLeInt(buf, pos + CENOFF);
+		return entry;
+	}
+
+	/**
+	 * Searches for an entry, in the index of the central directory if
+	 * the entries haven't been read.
+	 *
+	 * @return the entry, or null if no entry with that name exists.
+	 * @exception IllegalStateException when the ZipFile has already been closed.
+	 * @exception IOException when the entries could not be read.
+	 */
+	private ZipEntry findEntry(String name) throws IOException {
+		synchronized (fileHandler) {
+			checkClosed();
+
+			if (entries == null)
+				readIndex();
+
+			if ((entries != null) || (index == null))
+				return (ZipEntry) getEntries().get(name);
+
+			int hash = name.hashCode();
+			int i = index.find(hash);
+			if (i < 0)
+				return null;
+			byte[] buf = getBuffer(CENHDR + 256);
+			try {
+				for (; (i < index.size()) && (index.getHash(i) == hash); i++) {
+					int pos = centralOffset + index.getOffset(i);
+					readFully(pos, buf, 0, CENHDR);
+					int len = CENHDR + getLeShort(buf, CENNAM) + getLeShort(buf, CENEXT) + getLeShort(buf, CENCOM);
+					if (len > buf.length) {
+						releaseBuffer(buf);
+						buf = getBuffer(len);
+					}
+					readFully(pos, buf, 0, len);
+					ZipEntry entry = parseEntry(buf, 0, len);
+					if (entry.getName().equals(name))
+						return entry;
+				}
+			} finally {
+				releaseBuffer(buf);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a buffer of at least the given size, from the pool of buffers
+	 * shared by the zip files if possible. Its content is undefined.
+	 */
+	private static byte[] getBuffer(int size) {
+		synchronized (bufferPool) {
+			for (int i = bufferPool.size() - 1; i >= 0; i--) {
+				byte[] buffer = (byte[]) bufferPool.elementAt(i);
+				if (buffer.length >= size) {
+					bufferPool.removeElementAt(i);
+					return buffer;
+				}
+			}
+		}
+		return new byte[size];
+	}
+
+	/**
+	 * Gives back a buffer got from getBuffer().
+	 */
+	private static void releaseBuffer(byte[] buffer) {
+		if (buffer.length > MAX_POOLED_BUFFER_SIZE)
+			return;
+		synchronized (bufferPool) {
+			if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+				bufferPool.addElement(buffer);
+			} else {
+				// Keep the largest buffers
+				for (int i = 0; i < bufferPool.size(); i++) {
+					if (((byte[]) bufferPool.elementAt(i)).length < buffer.length) {
+						bufferPool.setElementAt(buffer, i);
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private static int getLeShort(byte[] b, int off) {
+		return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8;
+	}
+
+	private static int getLeInt(byte[] b, int off) {
+		return getLeShort(b, off) | getLeShort(b, off + 2) << 16;
 	}
 
 	/**
@@ -292,11 +511,10 @@ public class ZipFile implements ZipConstants {
 		checkClosed();
 
 		try {
-			Hashtable entries = getEntries();
-			ZipEntry entry = (ZipEntry) entries.get(name);
+			ZipEntry entry = findEntry(name);
 			// If we didn't find it, maybe it's a directory.
 			if (entry == null && !name.endsWith("/"))
-				entry = (ZipEntry) entries.get(name + '/');
+				entry = findEntry(name + '/');
 			return entry != null ? new ZipEntry(entry, name) : null;
 		} catch (IOException ioe) {
 			return null;
@@ -328,53 +546,75 @@ public class ZipFile implements ZipConstants {
 	public InputStream getInputStream(ZipEntry entry) throws IOException {
 		checkClosed();
 
-		Hashtable entries = getEntries();
 		String name = entry.getName();
-		ZipEntry zipEntry = (ZipEntry) entries.get(name);
+		ZipEntry zipEntry = findEntry(name);
 		if (zipEntry == null)
 			return null;
 
+		int method = zipEntry.getMethod();
+		int size = (int) zipEntry.getSize();
+		int compressedSize = (int) zipEntry.getCompressedSize();
+		if ((size >= 0) && (size <= INFLATE_FULLY_LIMIT) && (compressedSize >= 0)
+				&& ((method == ZipEntry.STORED) || (method == ZipEntry.DEFLATED))) {
+			// Read the whole entry in one go straight into its final buffer
+			byte[] data = new byte[size];
+			byte[] buf = getBuffer(Math.max(LOCHDR, compressedSize));
+			try {
+				readFully(zipEntry.offset, buf, 0, LOCHDR);
+				int dataOffset = checkLocalHeader(zipEntry, buf);
+				if (method == ZipEntry.STORED) {
+					readFully(dataOffset, data, 0, size);
+				} else {
+					readFully(dataOffset, buf, 0, compressedSize);
+					try {
+						if (new FastInflater(true).inflateFully(buf, 0, compressedSize, data, 0, size) != size)
+							throw new ZipException("Wrong uncompressed size: " + name);
+					} catch (DataFormatException e) {
+						throw new ZipException(e.getMessage());
+					}
+				}
+			} finally {
+				releaseBuffer(buf);
+			}
+			return new ByteArrayInputStream(data);
+		}
+
 		PartialInputStream inp = new PartialInputStream(fileHandler, 1024);
 		inp.seek(zipEntry.offset);
-
-		if (inp.readLeInt() != LOCSIG)
-			throw new ZipException("Wrong Local header signature: " + name);
-
-		inp.skip(4);
-
-		if (zipEntry.getMethod() != inp.readLeShort())
-			throw new ZipException("Compression method mismatch: " + name);
-
-		inp.skip(16);
-
-		int nameLen = inp.readLeShort();
-		int extraLen = inp.readLeShort();
-		inp.skip(nameLen + extraLen);
-
+		byte[] header = new byte[LOCHDR];
+		inp.readFully(header);
+		inp.seek(checkLocalHeader(zipEntry, header));
 		inp.setLength(zipEntry.getCompressedSize());
 
-		int method = zipEntry.getMethod();
 		switch (method) {
 		case ZipEntry.STORED:
 			return inp;
 		case ZipEntry.DEFLATED:
-			inp.addDummyByte();
-			final Inflater inflater = new Inflater(true);
-			final int sz = (int) entry.getSize();
-			return new InflaterInputStream(inp, inflater) {
-				public int available() throws IOException {
-					if (sz == -1)
-						return super.available();
-					if (super.available() != 0)
-						return sz - inflater.getTotalOut();
-					return 0;
-				}
-			};
+			// Too large to be held in memory: decompressed while it is read
+			return new FastInflaterInputStream(inp, size);
 		default:
 			throw new ZipException("Unknown compression method " + method);
 		}
 	}
 
+	/**
+	 * Checks the local header of an entry.
+	 *
+	 * @param entry the entry
+	 * @param header the first LOCHDR bytes of the local header
+	 * @return the position of the data of the entry in the file
+	 * @exception ZipException if the header doesn't match the entry
+	 */
+	private static int checkLocalHeader(ZipEntry entry, byte[] header) throws ZipException {
+		if (getLeInt(header, 0) != (int) LOCSIG)
+			throw new ZipException("Wrong Local header signature: " + entry.getName());
+
+		if (entry.getMethod() != getLeShort(header, LOCHOW))
+			throw new ZipException("Compression method mismatch: " + entry.getName());
+
+		return entry.offset + LOCHDR + getLeShort(header, LOCNAM) + getLeShort(header, LOCEXT);
+	}
+
 	/**
 	 * Returns the number of entries in this zip file.
 	 *
@@ -455,6 +695,87 @@ public class ZipFile implements ZipConstants {
 		}
 	}
 
+	/**
+	 * Decompresses a deflated entry while it is read.
+	 */
+	private static final class FastInflaterInputStream extends InputStream {
+		private final FastInflater inflater = new FastInflater(true);
+		private final byte[] buf = new byte[4096];
+		private final byte[] oneByte = new byte[1];
+		private final int size;
+		private InputStream in;
+
+		public FastInflaterInputStream(InputStream in, int size) {
+			this.in = in;
+			this.size = size;
+		}
+
+		public int available() throws IOException {
+			if (in == null)
+				throw new IOException("stream closed");
+			if (inflater.finished())
+				return 0;
+			if (size == -1)
+				return 1;
+			return size - inflater.getTotalOut();
+		}
+
+		public void close() throws IOException {
+			if (in != null)
+				in.close();
+			in = null;
+		}
+
+		public int read() throws IOException {
+			return (read(oneByte, 0, 1) > 0) ? oneByte[0] & 0xff : -1;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (in == null)
+				throw new IOException("stream closed");
+			if (len == 0)
+				return 0;
+
+			for (;;) {
+				int count;
+				try {
+					count = inflater.inflate(b, off, len);
+				} catch (DataFormatException e) {
+					throw new ZipException(e.getMessage());
+				}
+				if (count > 0)
+					return count;
+				if (inflater.finished())
+					return -1;
+				if (!inflater.needsInput())
+					throw new ZipException("Inflater stalled");
+
+				int n = in.read(buf, 0, buf.length);
+				if (n < 0)
+					throw new ZipException("Deflated stream ends early.");
+				inflater.setInput(buf, 0, n);
+			}
+		}
+
+		public long skip(long n) throws IOException {
+			if (in == null)
+				throw new IOException("stream closed");
+			if (n <= 0)
+				return 0;
+
+			// Never inflate into buf, which holds the pending compressed input
+			byte[] tmpbuf = new byte[(int) Math.min(n, 2048)];
+			long skipped = 0;
+			while (skipped < n) {
+				int count = read(tmpbuf, 0, (int) Math.min(n - skipped, tmpbuf.length));
+				if (count <= 0)
+					break;
+				skipped += count;
+			}
+			return skipped;
+		}
+	}
+
 	private static final class PartialInputStream extends InputStream {
 
 		private final BaseFileHandler fHandler;
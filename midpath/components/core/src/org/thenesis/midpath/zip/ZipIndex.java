@@ -0,0 +1,239 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.midpath.zip;
+
+import java.io.IOException;
+
+import com.sun.midp.io.IOToolkit;
+import com.sun.midp.io.j2me.file.BaseFileHandler;
+import com.sun.midp.log.Logging;
+import com.sun.midp.main.Configuration;
+
+/**
+ * A compact index of the central directory of a zip file, persisted in the
+ * MIDPath storage directory (the RMS root path) so that an entry can be
+ * found without reading the whole central directory and creating a ZipEntry
+ * for every entry. The directory of the zip file itself may be read-only or
+ * belong to the user, so nothing is ever written there.
+ * <p>
+ * The index maps the hash code of each entry name to the offset of its
+ * record in the central directory. It is only used while the size and the
+ * modification date of the zip file are those recorded in the index.
+ * <p>
+ * File format (big endian): magic, version, zip file size (long), zip
+ * file modification date (long), offset and size of the central directory,
+ * number of entries, then the (hash, offset) pairs sorted by hash.
+ */
+final class ZipIndex {
+
+	private static final int MAGIC = 0x4D505A49; // "MPZI"
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 36;
+
+	/* Directory holding the index files */
+	private static final String ROOT_PATH = Configuration.getPropertyDefault("com.sun.midp.rms.rootPath", "");
+
+	final long fileSize;
+	final long lastModified;
+	final int centralOffset;
+	final int centralSize;
+
+	/* Hash codes of the entry names in ascending order, and offsets of their records */
+	private final int[] hashes;
+	private final int[] offsets;
+
+	/**
+	 * Creates an index. The arrays are sorted in place.
+	 */
+	ZipIndex(long fileSize, long lastModified, int centralOffset, int centralSize, int[] hashes, int[] offsets) {
+		this.fileSize = fileSize;
+		this.lastModified = lastModified;
+		this.centralOffset = centralOffset;
+		this.centralSize = centralSize;
+		this.hashes = hashes;
+		this.offsets = offsets;
+		sort(hashes, offsets);
+	}
+
+	/**
+	 * Returns the number of entries.
+	 */
+	int size() {
+		return hashes.length;
+	}
+
+	int getHash(int i) {
+		return hashes[i];
+	}
+
+	/**
+	 * Returns the offset of the record of an entry in the central directory.
+	 */
+	int getOffset(int i) {
+		return offsets[i];
+	}
+
+	/**
+	 * Returns the position of the first entry with the given hash code,
+	 * or -1 if there is none.
+	 */
+	int find(int hash) {
+		int low = 0;
+		int high = hashes.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (hashes[mid] < hash)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return ((low < hashes.length) && (hashes[low] == hash)) ? low : -1;
+	}
+
+	/**
+	 * Reads an index file.
+	 *
+	 * @param fileName the name of the index file in the storage directory
+	 * @param fileSize the current size of the zip file
+	 * @param lastModified the current modification date of the zip file
+	 * @return the index, or null if the file doesn't exist, is corrupted or
+	 *         doesn't match the zip file
+	 */
+	static ZipIndex read(String fileName, long fileSize, long lastModified) {
+		BaseFileHandler handler = IOToolkit.getToolkit().createBaseFileHandler();
+		try {
+			handler.connect(ROOT_PATH, fileName);
+			if (!handler.exists())
+				return null;
+			int length = (int) handler.fileSize();
+			if (length < HEADER_SIZE)
+				return null;
+
+			byte[] data = new byte[length];
+			handler.openForRead();
+			try {
+				handler.readFully(data, 0, length);
+			} finally {
+				handler.closeForRead();
+				handler.close();
+			}
+
+			if ((getInt(data, 0) != MAGIC) || (getInt(data, 4) != VERSION) || (getLong(data, 8) != fileSize)
+					|| (getLong(data, 16) != lastModified))
+				return null;
+			int count = getInt(data, 32);
+			if ((count < 0) || (length != HEADER_SIZE + count * 8))
+				return null;
+
+			int[] hashes = new int[count];
+			int[] offsets = new int[count];
+			for (int i = 0, pos = HEADER_SIZE; i < count; i++, pos += 8) {
+				hashes[i] = getInt(data, pos);
+				offsets[i] = getInt(data, pos + 4);
+			}
+			return new ZipIndex(fileSize, lastModified, getInt(data, 24), getInt(data, 28), hashes, offsets);
+		} catch (Exception e) {
+			if (Logging.TRACE_ENABLED)
+				System.out.println("[DEBUG] ZipIndex.read(): can't read " + fileName + ": " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the index to a file, replacing its previous content. Errors are
+	 * ignored, the index being only an optimization: the central directory
+	 * is then read again the next time the zip file is opened.
+	 *
+	 * @param fileName the name of the index file in the storage directory
+	 */
+	void write(String fileName) {
+		int count = hashes.length;
+		byte[] data = new byte[HEADER_SIZE + count * 8];
+		putInt(data, 0, MAGIC);
+		putInt(data, 4, VERSION);
+		putLong(data, 8, fileSize);
+		putLong(data, 16, lastModified);
+		putInt(data, 24, centralOffset);
+		putInt(data, 28, centralSize);
+		putInt(data, 32, count);
+		for (int i = 0, pos = HEADER_SIZE; i < count; i++, pos += 8) {
+			putInt(data, pos, hashes[i]);
+			putInt(data, pos + 4, offsets[i]);
+		}
+
+		BaseFileHandler handler = IOToolkit.getToolkit().createBaseFileHandler();
+		try {
+			handler.connect(ROOT_PATH, fileName);
+			if (!handler.exists())
+				handler.create();
+			handler.openForWrite();
+			try {
+				handler.truncate(0);
+				handler.write(data, 0, data.length);
+				handler.flush();
+			} finally {
+				handler.closeForWrite();
+				handler.close();
+			}
+		} catch (Exception e) {
+			// IOException, or SecurityException if the storage can't be written
+			if (Logging.TRACE_ENABLED)
+				System.out.println("[DEBUG] ZipIndex.write(): can't write " + fileName + ": " + e);
+		}
+	}
+
+	/* Sorts the entries by hash code (shell sort, no recursion) */
+	private static void sort(int[] hashes, int[] offsets) {
+		int n = hashes.length;
+		for (int gap = n / 2; gap > 0; gap /= 2) {
+			for (int i = gap; i < n; i++) {
+				int hash = hashes[i];
+				int offset = offsets[i];
+				int j = i;
+				while ((j >= gap) && (hashes[j - gap] > hash)) {
+					hashes[j] = hashes[j - gap];
+					offsets[j] = offsets[j - gap];
+					j -= gap;
+				}
+				hashes[j] = hash;
+				offsets[j] = offset;
+			}
+		}
+	}
+
+	private static int getInt(byte[] b, int off) {
+		return (b[off] << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+	}
+
+	private static long getLong(byte[] b, int off) {
+		return ((long) getInt(b, off) << 32) | (getInt(b, off + 4) & 0xFFFFFFFFL);
+	}
+
+	private static void putInt(byte[] b, int off, int v) {
+		b[off] = (byte) (v >>> 24);
+		b[off + 1] = (byte) (v >>> 16);
+		b[off + 2] = (byte) (v >>> 8);
+		b[off + 3] = (byte) v;
+	}
+
+	private static void putLong(byte[] b, int off, long v) {
+		putInt(b, off, (int) (v >>> 32));
+		putInt(b, off + 4, (int) v);
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.midpath.font.bdf;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+
+/**
+ * Build time tool which converts BDF fonts to the binary format loaded by BDFFontPeer.
+ * <pre>
+ * java org.thenesis.midpath.font.bdf.BDFConverter &lt;input directory&gt; &lt;output directory&gt;
+ * </pre>
+ * Every <code>.bdf</code> file of the input directory is converted to a <code>.fnt</code>
+ * file with the same name in the output directory.
+ */
+public class BDFConverter {
+
+	public static void main(String[] args) throws Exception {
+
+		if (args.length != 2) {
+			System.err.println("Usage: BDFConverter <input directory> <output directory>");
+			System.exit(1);
+		}
+
+		File inputDir = new File(args[0]);
+		File outputDir = new File(args[1]);
+		outputDir.mkdirs();
+
+		String[] names = inputDir.list();
+		if (names == null) {
+			System.err.println("Can't read directory " + inputDir);
+			System.exit(1);
+		}
+
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].endsWith(BDFBinaryFont.BDF_EXTENSION)) {
+				File in = new File(inputDir, names[i]);
+				File out = new File(outputDir, BDFBinaryFont.getBinaryName(names[i]));
+				convert(in, out);
+				System.out.println("Converted " + in + " to " + out + " (" + out.length() + " bytes)");
+			}
+		}
+
+	}
+
+	public static void convert(File in, File out) throws Exception {
+
+		Reader reader = new InputStreamReader(new FileInputStream(in));
+		BDFFontContainer container;
+		try {
+			container = new BDFParser(reader).createFont();
+		} finally {
+			reader.close();
+		}
+
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(out));
+		try {
+			BDFBinaryFont.create(container).write(os);
+		} finally {
+			os.close();
+		}
+
+	}
+
+}
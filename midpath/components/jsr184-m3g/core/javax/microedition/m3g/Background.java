@@ -45,6 +45,7 @@ public class Background extends Object3D {
 	// top right, top left, bottom right, bottom left coordinates
 	private float[] vertexArray = { 1.0f, 1.0f, 0.0f, -1.0f, 1.0f, 0.0f, 1.0f, -1.0f, 0.0f, -1.0f, -1.0f, 0.0f };
 	private float[] textureArray;
+	private float[] clearColor = new float[4];
 
 	public Background() {
 		// 4 elements, 3 coordinates per element, float type
@@ -164,8 +165,8 @@ public class Background extends Object3D {
 	void setupGL(GL10 gl) {
 
 		// Clear the buffers
-		Color c = new Color(backgroundColor);
-		gl.glClearColor(c.r, c.g, c.b, c.a);
+		float[] c = Color.intToFloatArray(backgroundColor, clearColor);
+		gl.glClearColor(c[0], c[1], c[2], c[3]);
 
 		int clearBits = 0;
 		if (isColorClearEnabled())
@@ -196,7 +197,7 @@ public class Background extends Object3D {
 
 			gl.glActiveTexture(GL10.GL_TEXTURE0);
 			gl.glClientActiveTexture(GL10.GL_TEXTURE0);
-			backgroundTexture.setupGL(gl, new float[] { 1, 0, 0, 0 });
+			backgroundTexture.setupGL(gl, Texture2D.IDENTITY_SCALE_BIAS);
 
 			// Calculate crop
 			int w = Graphics3D.getInstance().getViewportWidth();
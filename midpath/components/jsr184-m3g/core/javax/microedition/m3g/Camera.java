@@ -76,14 +76,13 @@ public class Camera extends Node {
 					throw new ArithmeticException(
 							"Unable to compute projection matrix. Illegal parameters (near == far).");
 
-				float[] m = new float[16];
+				float[] m = transform.m;
 				m[1] = m[2] = m[3] = m[4] = m[6] = m[7] = m[8] = m[9] = m[12] = m[13] = m[14] = 0;
 				m[0] = 2 / (aspectRatio * fovy);
 				m[5] = 2 / fovy;
 				m[10] = -2 / (far - near);
 				m[11] = -(near + far) / (far - near);
 				m[15] = 1;
-				transform.set(m);
 			} else if (projectionType == PERSPECTIVE) {
 				if (far == near)
 					throw new ArithmeticException(
@@ -91,7 +90,7 @@ public class Camera extends Node {
 
 				float h = (float) Math.tan(fovy * Constants.TO_RADIANS / 2);
 
-				float[] m = new float[16];
+				float[] m = transform.m;
 				m[1] = m[2] = m[3] = m[4] = m[6] = m[7] = m[8] = m[9] = m[12] = m[13] = m[14] = 0;
 				m[0] = 1 / (aspectRatio * h);
 				m[5] = 1 / h;
@@ -99,7 +98,6 @@ public class Camera extends Node {
 				m[11] = -2 * near * far / (far - near);
 				m[14] = -1;
 				m[15] = 0;
-				transform.set(m);
 			}
 		}
 		return projectionType;
@@ -31,6 +31,7 @@ public class Fog extends Object3D {
 	private float density = 1.0f;
 	private float nearDistance = 0.0f;
 	private float farDistance = 1.0f;
+	private float[] glColor = new float[4];
 	
 	Object3D duplicateImpl() {
 		Fog copy = new Fog();
@@ -89,7 +90,7 @@ public class Fog extends Object3D {
 
 	void setupGL(GL10 gl) {
 		gl.glFogf(GL10.GL_FOG_MODE, getGLFogMode(this.mode));
-		gl.glFogfv(GL10.GL_FOG_COLOR, Color.intToFloatArray(this.color), 0);
+		gl.glFogfv(GL10.GL_FOG_COLOR, Color.intToFloatArray(this.color, glColor), 0);
 		gl.glFogf(GL10.GL_FOG_DENSITY, this.density);
 		gl.glFogf(GL10.GL_FOG_START, this.nearDistance);
 		gl.glFogf(GL10.GL_FOG_END, this.farDistance);
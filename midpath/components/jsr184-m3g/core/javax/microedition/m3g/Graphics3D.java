@@ -30,6 +30,7 @@ import javax.microedition.khronos.egl.EGLDisplay;
 import javax.microedition.khronos.egl.EGLSurface;
 import javax.microedition.khronos.opengles.GL10;
 
+import org.thenesis.m3g.engine.RenderStatistics;
 import org.thenesis.m3g.engine.util.Color;
 
 public final class Graphics3D {
@@ -71,7 +72,7 @@ public final class Graphics3D {
 	private boolean targetBound = false;
 
 	private Camera camera;
-	private Transform cameraTransform;
+	private Transform cameraTransform = new Transform();
 
 	private Vector lights = new Vector();
 	private Vector lightTransforms = new Vector();
@@ -92,6 +93,39 @@ public final class Graphics3D {
 	private boolean depthBufferEnabled;
 	private int hints;
 
+	// Marks the GL state as unknown
+	private static final Object INVALID = new Object();
+
+	// Rendering of a World or a Node: the visible submeshes and sprites are queued then drawn sorted
+	private RenderQueue renderQueue = new RenderQueue();
+	private float[] frustum = new float[24];
+	private int culledCount;
+	private int drawnCount;
+	private int stateChangeCount;
+
+	// GL state set by the last draw
+	private Object lastVertices = INVALID;
+	private Object[] lastTextures;
+	private Object[] lastTexCoords;
+	private float[] lastTexScaleBias;
+	private Object lastPolygonMode = INVALID;
+	private Object lastMaterial = INVALID;
+	private Object lastFog = INVALID;
+	private Object lastCompositingMode = INVALID;
+
+	// Scratch objects, so that rendering a frame doesn't allocate
+	private Transform identity = new Transform();
+	private Transform projectionTransform = new Transform();
+	private Transform viewTransform = new Transform();
+	private Transform clipTransform = new Transform();
+	private Transform compositeTransform = new Transform();
+	private Transform compositeTransform2 = new Transform();
+	private Transform[] transformStack = new Transform[8];
+	private Vector worldLightTransforms = new Vector();
+	private float[] scaleBias = new float[4];
+	private float[] texScaleBias = new float[4];
+	private float[] defaultColor = new float[4];
+
 	private static Hashtable implementationProperties = new Hashtable();
 
 	private Graphics3D() {
@@ -146,6 +180,9 @@ public final class Graphics3D {
 		int[] params = new int[2];
 		gl.glGetIntegerv(GL10.GL_MAX_TEXTURE_UNITS, params, 0);
 		maxTextureUnits = params[0];
+		lastTextures = new Object[maxTextureUnits];
+		lastTexCoords = new Object[maxTextureUnits];
+		lastTexScaleBias = new float[maxTextureUnits * 4];
 		gl.glGetIntegerv(GL10.GL_MAX_LIGHTS, params, 0);
 		maxLights = params[0];
 		lightFlags = new boolean[maxLights];
@@ -397,13 +434,13 @@ public final class Graphics3D {
 	public void setCamera(Camera camera, Transform transform) {
 		// TODO Check if transform is invertible, otherwise throw an ArithmeticException
 		this.camera = camera;
-		
+
 		// If the given transform is null, use the identity matrix
-		Transform t = new Transform();
 		if (transform != null) {
-			t.set(transform);
-		} 
-		this.cameraTransform = t;
+			cameraTransform.set(transform);
+		} else {
+			cameraTransform.setIdentity();
+		}
 		cameraHasChanged = true;
 	}
 
@@ -412,21 +449,54 @@ public final class Graphics3D {
 	 */
 	private void applyCamera() {
 		if (cameraHasChanged) {
-			Transform t = new Transform();
-
 			gl.glMatrixMode(GL10.GL_PROJECTION);
-			camera.getProjection(t);
-			t.setGL(gl);
+			camera.getProjection(projectionTransform);
+			projectionTransform.setGL(gl);
 
 			gl.glMatrixMode(GL10.GL_MODELVIEW);
-			t.set(cameraTransform);
-			t.invert();
-			t.setGL(gl);
+			viewTransform.set(cameraTransform);
+			viewTransform.invert();
+			viewTransform.setGL(gl);
+
+			// Frustum planes in world coordinates
+			clipTransform.set(projectionTransform);
+			clipTransform.postMultiply(viewTransform);
+			computeFrustum(clipTransform.m);
 
 			cameraHasChanged = false;
 		}
 	}
 
+	/**
+	 * Extracts the six planes of the view frustum from the rows of the
+	 * projection * view matrix. A point p is inside a plane (a, b, c, d) if
+	 * a * px + b * py + c * pz + d >= 0.
+	 */
+	private void computeFrustum(float[] m) {
+		for (int i = 0; i < 6; i++) {
+			int row = (i >> 1) * 4;
+			float sign = ((i & 1) == 0) ? 1 : -1;
+			float a = m[12] + sign * m[row];
+			float b = m[13] + sign * m[row + 1];
+			float c = m[14] + sign * m[row + 2];
+			float d = m[15] + sign * m[row + 3];
+			float length = (float) Math.sqrt(a * a + b * b + c * c);
+			int p = i * 4;
+			if (length > 0) {
+				frustum[p] = a / length;
+				frustum[p + 1] = b / length;
+				frustum[p + 2] = c / length;
+				frustum[p + 3] = d / length;
+			} else {
+				// Degenerate plane, nothing is culled by it
+				frustum[p] = 0;
+				frustum[p + 1] = 0;
+				frustum[p + 2] = 0;
+				frustum[p + 3] = 1;
+			}
+		}
+	}
+
 	public Camera getCamera(Transform transform) {
 		if (transform != null)
 			transform.set(this.cameraTransform);
@@ -438,10 +508,13 @@ public final class Graphics3D {
 		if ((!targetBound) || (camera == null)) {
 			throw new IllegalStateException("Graphics3D does not have a rendering target or a current camera");
 		}
-		
+		if (!((node instanceof Mesh) || (node instanceof Sprite3D) || (node instanceof Group))) {
+			throw new IllegalArgumentException("Node is not a Sprite3D, Mesh, or Group");
+		}
+
 		// If the given transform is null, use the identity matrix
 		if (transform == null) {
-			transform = new Transform();
+			transform = identity;
 		}
 
 		// Apply Graphics3D settings to the OpenGL pipeline
@@ -449,12 +522,13 @@ public final class Graphics3D {
 		applyDepthRange();
 		applyLights();
 
-		if ((node instanceof Mesh) || (node instanceof Sprite3D) || (node instanceof Group)) {
-			renderNode(node, transform);
-		} else {
-			throw new IllegalArgumentException("Node is not a Sprite3D, Mesh, or Group");
-		}
+		culledCount = 0;
+		renderQueue.clear();
+		collect(node, transform, 0, false);
+		renderQueue.sort();
+		flush();
 
+		RenderStatistics.getInstance().frameRendered(culledCount, drawnCount, stateChangeCount);
 	}
 
 	public void render(VertexBuffer vertices, IndexBuffer triangles, Appearance appearance, Transform transform) {
@@ -469,10 +543,10 @@ public final class Graphics3D {
 			throw new IllegalStateException("Graphics3D does not have a rendering target or a current camera");
 		}
 		// TODO Check if vertices or triangles violates the constraints defined in VertexBuffer or IndexBuffer
-		
+
 		// If the given transform is null, use the identity matrix
 		if (transform == null) {
-			transform = new Transform();
+			transform = identity;
 		}
 
 		// Apply Graphics3D settings to the OpenGL pipeline
@@ -480,86 +554,9 @@ public final class Graphics3D {
 		applyDepthRange();
 		applyLights();
 
-		// Vertices
-		float[] scaleBias = new float[4];
-		VertexArray positions = vertices.getPositions(scaleBias);
-		FloatBuffer pos = positions.getFloatBuffer();
-		pos.position(0);
-		gl.glVertexPointer(positions.getComponentCount(), GL10.GL_FLOAT, 0, pos);
-		gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
-
-		// Normals
-		VertexArray normals = vertices.getNormals();
-		if (normals != null) {
-			FloatBuffer norm = normals.getFloatBuffer();
-			norm.position(0);
-			gl.glEnable(GL10.GL_NORMALIZE);
-			gl.glNormalPointer(GL10.GL_FLOAT, 0, norm);
-			gl.glEnableClientState(GL10.GL_NORMAL_ARRAY);
-		} else {
-			gl.glDisable(GL10.GL_NORMALIZE);
-			gl.glDisableClientState(GL10.GL_NORMAL_ARRAY);
-		}
-
-		// Colors
-		VertexArray colors = vertices.getColors();
-		if (colors != null) {
-			Buffer buffer = colors.getARGBBuffer();
-			buffer.position(0);
-			// Force number of color components to 4 (i.e. don't use colors.getComponentCount())
-			gl.glColorPointer(4, GL10.GL_UNSIGNED_BYTE, 0, buffer);
-			gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
-		} else {
-			// Use default color as we don't have color per vertex
-			Color color = new Color(vertices.getDefaultColor());
-			float[] colorArray = color.toRBGAArray();
-			gl.glColor4f(colorArray[0], colorArray[1], colorArray[2], colorArray[3]);
-			gl.glDisableClientState(GL10.GL_COLOR_ARRAY);
-		}
-
-		// Textures
-		for (int i = 0; i < maxTextureUnits; ++i) {
-			float[] texScaleBias = new float[4];
-			VertexArray texcoords = vertices.getTexCoords(i, texScaleBias);
-			gl.glClientActiveTexture(GL10.GL_TEXTURE0 + i);
-			if ((texcoords != null) && (appearance.getTexture(i) != null)) {
-				// Enable the texture coordinate array 
-				gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
-				FloatBuffer tex = texcoords.getFloatBuffer();
-				tex.position(0);
-
-				// Activate the texture unit
-				gl.glActiveTexture(GL10.GL_TEXTURE0 + i);
-				appearance.getTexture(i).setupGL(gl, texScaleBias);
-
-				// Set the texture coordinates
-				gl.glTexCoordPointer(texcoords.getComponentCount(), GL10.GL_FLOAT, 0, tex);
-			} else {
-				gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
-			}
-		}
-
-		// Appearance
-		setAppearance(appearance);
-
-		// Scene
-		gl.glMatrixMode(GL10.GL_MODELVIEW);
-		gl.glPushMatrix();
-		transform.multGL(gl);
-
-		gl.glTranslatef(scaleBias[1], scaleBias[2], scaleBias[3]);
-		gl.glScalef(scaleBias[0], scaleBias[0], scaleBias[0]);
-
-		// Draw
-		ShortBuffer indices = triangles.getBuffer();
-		indices.position(0);
-		if (triangles instanceof TriangleStripArray) {
-			gl.glDrawElements(GL10.GL_TRIANGLE_STRIP, triangles.getIndexCount(), GL10.GL_UNSIGNED_SHORT, indices);
-		} else {
-			gl.glDrawElements(GL10.GL_TRIANGLES, triangles.getIndexCount(), GL10.GL_UNSIGNED_SHORT, indices);
-		}
-
-		gl.glPopMatrix();
+		// The GL state may have been changed since the last draw
+		invalidateState();
+		draw(vertices, triangles, appearance, transform);
 	}
 
 	public void render(VertexBuffer vertices, IndexBuffer triangles, Appearance appearance, Transform transform,
@@ -576,116 +573,383 @@ public final class Graphics3D {
 
 		clear(world.getBackground());
 
-		Transform t = new Transform();
-
 		// Setup camera
 		Camera c = world.getActiveCamera();
 		if (c == null)
 			throw new IllegalStateException("World has no active camera.");
-		if (!c.getTransformTo(world, t))
+		if (!getTransformToWorld(c, world, compositeTransform))
 			throw new IllegalStateException("Camera is not in world.");
 
 		// Camera
-		setCamera(c, t);
+		setCamera(c, compositeTransform);
 		applyCamera();
 
 		// Depth range
 		applyDepthRange();
 
-		// Setup lights
+		// Traverse the scene graph: lights are set up, visible submeshes
+		// and sprites are queued
 		resetLights();
-		populateLights(world, world);
+		culledCount = 0;
+		renderQueue.clear();
+		collect(world, identity, 0, true);
 		applyLights();
 
-		// Begin traversal of scene graph
-		renderDescendants(world, world);
-	}
-
-	private void populateLights(World world, Object3D obj) {
-		int numReferences = obj.getReferences(null);
-		if (numReferences > 0) {
-			Object3D[] objArray = new Object3D[numReferences];
-			obj.getReferences(objArray);
-			for (int i = 0; i < numReferences; ++i) {
-				if (objArray[i] instanceof Light) {
-					Transform t = new Transform();
-					Light light = (Light) objArray[i];
-					if (light.isRenderingEnabled() && light.getTransformTo(world, t))
-						addLight(light, t);
-				}
-				populateLights(world, objArray[i]);
+		renderQueue.sort();
+		flush();
+
+		RenderStatistics.getInstance().frameRendered(culledCount, drawnCount, stateChangeCount);
+	}
+
+	/**
+	 * Computes the transform from the coordinates of a node to the ones of
+	 * the world, like Node.getTransformTo() but without allocating.
+	 */
+	private boolean getTransformToWorld(Node node, World world, Transform transform) {
+		transform.setIdentity();
+		while (node != world) {
+			if (node == null)
+				return false;
+			node.getCompositeTransform(compositeTransform2);
+			compositeTransform2.postMultiply(transform);
+			transform.set(compositeTransform2);
+			node = node.getParent();
+		}
+		return true;
+	}
+
+	/**
+	 * Walks the subtree of a node, adding its visible submeshes and sprites
+	 * to the render queue and, if required, its lights to the light list.
+	 * @param transform the transform from the node to the world coordinates
+	 * @param depth the depth of the node in the subtree
+	 */
+	private void collect(Node node, Transform transform, int depth, boolean withLights) {
+		if (node instanceof Group) {
+			Group group = (Group) node;
+			int childCount = group.getChildCount();
+			if (childCount == 0)
+				return;
+			Transform childTransform = getStackTransform(depth);
+			for (int i = 0; i < childCount; i++) {
+				Node child = group.getChild(i);
+				if (!child.isRenderingEnabled())
+					continue;
+				childTransform.set(transform);
+				child.getCompositeTransform(compositeTransform2);
+				childTransform.postMultiply(compositeTransform2);
+				collect(child, childTransform, depth + 1, withLights);
 			}
+		} else if (node instanceof Mesh) {
+			if ((node.getScope() & camera.getScope()) != 0)
+				queueMesh((Mesh) node, transform);
+		} else if (node instanceof Sprite3D) {
+			if ((node.getScope() & camera.getScope()) != 0) {
+				Sprite3D sprite = (Sprite3D) node;
+				RenderQueue.Item item = renderQueue.add(sprite.getAppearance(), transform, getDepth(transform.m, 0, 0,
+						0));
+				item.sprite = sprite;
+			}
+		} else if ((node instanceof Light) && withLights) {
+			addWorldLight((Light) node, transform);
+		}
+	}
+
+	private Transform getStackTransform(int depth) {
+		if (depth >= transformStack.length) {
+			Transform[] newStack = new Transform[depth * 2];
+			System.arraycopy(transformStack, 0, newStack, 0, transformStack.length);
+			transformStack = newStack;
+		}
+		Transform t = transformStack[depth];
+		if (t == null) {
+			t = new Transform();
+			transformStack[depth] = t;
 		}
+		return t;
 	}
 
-	private void renderDescendants(Node topNode, Object3D obj) {
-		int numReferences = obj.getReferences(null);
-		if (numReferences > 0) {
-			Object3D[] objArray = new Object3D[numReferences];
-			obj.getReferences(objArray);
-			for (int i = 0; i < numReferences; ++i) {
-				if (objArray[i] instanceof Node) {
-					Node subNode = (Node) objArray[i];
-					if (subNode instanceof Group) {
-						renderDescendants(topNode, subNode);
-					} else {
-						Transform t = new Transform();
-						subNode.getTransformTo(topNode, t);
-						renderNode(subNode, t);
+	/**
+	 * Adds a light found in the world, reusing the transforms of the
+	 * previous frames.
+	 */
+	private void addWorldLight(Light light, Transform transform) {
+		int index = lights.size();
+		Transform t;
+		if (index < worldLightTransforms.size()) {
+			t = (Transform) worldLightTransforms.elementAt(index);
+		} else {
+			t = new Transform();
+			worldLightTransforms.addElement(t);
+		}
+		t.set(transform);
+		lights.addElement(light);
+		lightTransforms.addElement(t);
+		if (index < maxLights) {
+			lightFlags[index] = true;
+		}
+		lightHasChanged = true;
+	}
+
+	/**
+	 * Queues the submeshes of a mesh whose bounding sphere intersects the
+	 * view frustum.
+	 */
+	private void queueMesh(Mesh mesh, Transform transform) {
+		VertexBuffer vertices = mesh.getVertexBuffer();
+		int subMeshes = mesh.getSubMeshCount();
+		float[] m = transform.m;
+		float depth = 0;
+
+		VertexArray positions = vertices.getPositions(scaleBias);
+		if (positions != null) {
+			// Bounding sphere in world coordinates
+			float[] sphere = positions.getBoundingSphere();
+			float scale = scaleBias[0];
+			float x = sphere[0] * scale + scaleBias[1];
+			float y = sphere[1] * scale + scaleBias[2];
+			float z = sphere[2] * scale + scaleBias[3];
+			float cx = m[0] * x + m[1] * y + m[2] * z + m[3];
+			float cy = m[4] * x + m[5] * y + m[6] * z + m[7];
+			float cz = m[8] * x + m[9] * y + m[10] * z + m[11];
+			depth = getDepth(m, x, y, z);
+
+			// The vertices of skinned and morphing meshes are not the ones of the positions array
+			boolean projective = (m[12] != 0) || (m[13] != 0) || (m[14] != 0) || (m[15] != 1);
+			if (!projective && !(mesh instanceof SkinnedMesh) && !(mesh instanceof MorphingMesh)) {
+				float sx = m[0] * m[0] + m[4] * m[4] + m[8] * m[8];
+				float sy = m[1] * m[1] + m[5] * m[5] + m[9] * m[9];
+				float sz = m[2] * m[2] + m[6] * m[6] + m[10] * m[10];
+				float maxScale = (float) Math.sqrt(Math.max(sx, Math.max(sy, sz)));
+				float radius = sphere[3] * Math.abs(scale) * maxScale;
+				for (int p = 0; p < 24; p += 4) {
+					if (frustum[p] * cx + frustum[p + 1] * cy + frustum[p + 2] * cz + frustum[p + 3] < -radius) {
+						culledCount += subMeshes;
+						return;
 					}
 				}
 			}
 		}
+
+		for (int i = 0; i < subMeshes; ++i) {
+			Appearance appearance = mesh.getAppearance(i);
+			// Submeshes without appearance are not rendered
+			if (appearance == null)
+				continue;
+			RenderQueue.Item item = renderQueue.add(appearance, transform, depth);
+			item.vertices = vertices;
+			item.triangles = mesh.getIndexBuffer(i);
+		}
 	}
 
-	private void renderNode(Node node, Transform transform) {
+	/**
+	 * Returns the distance to the camera plane of a point given in the
+	 * coordinates of the transform m, larger for farther points.
+	 */
+	private float getDepth(float[] m, float x, float y, float z) {
+		float wx = m[0] * x + m[1] * y + m[2] * z + m[3];
+		float wy = m[4] * x + m[5] * y + m[6] * z + m[7];
+		float wz = m[8] * x + m[9] * y + m[10] * z + m[11];
+		float[] v = viewTransform.m;
+		return -(v[8] * wx + v[9] * wy + v[10] * wz + v[11]);
+	}
 
-		if (node instanceof Mesh) {
-			Mesh mesh = (Mesh) node;
-			int subMeshes = mesh.getSubMeshCount();
-			VertexBuffer vertices = mesh.getVertexBuffer();
-			for (int i = 0; i < subMeshes; ++i)
-				render(vertices, mesh.getIndexBuffer(i), mesh.getAppearance(i), transform);
-		} else if (node instanceof Sprite3D) {
-			Sprite3D sprite = (Sprite3D) node;
-			sprite.render(gl, transform);
-		} else if (node instanceof Group) {
-			renderDescendants(node, node);
+	/**
+	 * Draws the items of the render queue.
+	 */
+	private void flush() {
+		invalidateState();
+		stateChangeCount = 0;
+		int size = renderQueue.size();
+		for (int i = 0; i < size; i++) {
+			RenderQueue.Item item = renderQueue.get(i);
+			if (item.vertices != null) {
+				draw(item.vertices, item.triangles, item.appearance, item.transform);
+			} else {
+				item.sprite.render(gl, item.transform);
+				invalidateState();
+			}
 		}
+		drawnCount = size;
+		renderQueue.clear();
+	}
 
+	/**
+	 * Forgets the GL state set by the previous draws, so that the next draw
+	 * sets it all.
+	 */
+	private void invalidateState() {
+		lastVertices = INVALID;
+		for (int i = 0; i < maxTextureUnits; i++) {
+			lastTextures[i] = INVALID;
+			lastTexCoords[i] = INVALID;
+		}
+		lastPolygonMode = INVALID;
+		lastMaterial = INVALID;
+		lastFog = INVALID;
+		lastCompositingMode = INVALID;
 	}
 
-	void setAppearance(Appearance appearance) {
-		if (appearance == null)
-			throw new NullPointerException("Appearance must not be null");
+	/**
+	 * Draws a submesh, only changing the GL state that differs from the one
+	 * of the previous draw.
+	 */
+	private void draw(VertexBuffer vertices, IndexBuffer triangles, Appearance appearance, Transform transform) {
+
+		// Vertices
+		VertexArray positions = vertices.getPositions(scaleBias);
+		if (vertices != lastVertices) {
+			FloatBuffer pos = positions.getFloatBuffer();
+			pos.position(0);
+			gl.glVertexPointer(positions.getComponentCount(), GL10.GL_FLOAT, 0, pos);
+			gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+
+			// Normals
+			VertexArray normals = vertices.getNormals();
+			if (normals != null) {
+				FloatBuffer norm = normals.getFloatBuffer();
+				norm.position(0);
+				gl.glEnable(GL10.GL_NORMALIZE);
+				gl.glNormalPointer(GL10.GL_FLOAT, 0, norm);
+				gl.glEnableClientState(GL10.GL_NORMAL_ARRAY);
+			} else {
+				gl.glDisable(GL10.GL_NORMALIZE);
+				gl.glDisableClientState(GL10.GL_NORMAL_ARRAY);
+			}
+
+			// Colors
+			VertexArray colors = vertices.getColors();
+			if (colors != null) {
+				Buffer buffer = colors.getARGBBuffer();
+				buffer.position(0);
+				// Force number of color components to 4 (i.e. don't use colors.getComponentCount())
+				gl.glColorPointer(4, GL10.GL_UNSIGNED_BYTE, 0, buffer);
+				gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
+			} else {
+				// Use default color as we don't have color per vertex
+				float[] colorArray = Color.intToFloatArray(vertices.getDefaultColor(), defaultColor);
+				gl.glColor4f(colorArray[0], colorArray[1], colorArray[2], colorArray[3]);
+				gl.glDisableClientState(GL10.GL_COLOR_ARRAY);
+			}
+
+			lastVertices = vertices;
+			stateChangeCount++;
+		}
+
+		// Textures
+		for (int i = 0; i < maxTextureUnits; ++i) {
+			Texture2D texture = appearance.getTexture(i);
+			VertexArray texcoords = null;
+			if (texture != null) {
+				texcoords = vertices.getTexCoords(i, texScaleBias);
+				if (texcoords == null)
+					texture = null;
+			}
 
+			if (texture == null) {
+				if (lastTextures[i] != null) {
+					gl.glClientActiveTexture(GL10.GL_TEXTURE0 + i);
+					gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+					gl.glActiveTexture(GL10.GL_TEXTURE0 + i);
+					gl.glDisable(GL10.GL_TEXTURE_2D);
+					lastTextures[i] = null;
+					lastTexCoords[i] = null;
+					stateChangeCount++;
+				}
+			} else if ((texture != lastTextures[i]) || (texcoords != lastTexCoords[i])
+					|| !sameScaleBias(texScaleBias, lastTexScaleBias, i * 4)) {
+				// Enable the texture coordinate array
+				gl.glClientActiveTexture(GL10.GL_TEXTURE0 + i);
+				gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+				FloatBuffer tex = texcoords.getFloatBuffer();
+				tex.position(0);
+
+				// Activate the texture unit
+				gl.glActiveTexture(GL10.GL_TEXTURE0 + i);
+				texture.setupGL(gl, texScaleBias);
+
+				// Set the texture coordinates
+				gl.glTexCoordPointer(texcoords.getComponentCount(), GL10.GL_FLOAT, 0, tex);
+
+				lastTextures[i] = texture;
+				lastTexCoords[i] = texcoords;
+				System.arraycopy(texScaleBias, 0, lastTexScaleBias, i * 4, 4);
+				stateChangeCount++;
+			}
+		}
+
+		// Appearance
 		// Polygon mode
 		PolygonMode polyMode = appearance.getPolygonMode();
 		if (polyMode == null) {
 			polyMode = defaultPolygonMode;
 		}
-		polyMode.setupGL(gl);
+		if (polyMode != lastPolygonMode) {
+			polyMode.setupGL(gl);
+			lastPolygonMode = polyMode;
+			// The light target of the material depends on the polygon mode
+			lastMaterial = INVALID;
+			stateChangeCount++;
+		}
 
 		// Material
-		if (appearance.getMaterial() != null) {
-			appearance.getMaterial().setupGL(gl, polyMode.getLightTarget());
-		} else {
-			gl.glDisable(GL10.GL_LIGHTING);
+		Material material = appearance.getMaterial();
+		if (material != lastMaterial) {
+			if (material != null) {
+				material.setupGL(gl, polyMode.getLightTarget());
+			} else {
+				gl.glDisable(GL10.GL_LIGHTING);
+			}
+			lastMaterial = material;
+			stateChangeCount++;
 		}
 
 		// Fog
-		if (appearance.getFog() != null) {
-			appearance.getFog().setupGL(gl);
-		} else {
-			gl.glDisable(GL10.GL_FOG);
+		Fog fog = appearance.getFog();
+		if (fog != lastFog) {
+			if (fog != null) {
+				fog.setupGL(gl);
+			} else {
+				gl.glDisable(GL10.GL_FOG);
+			}
+			lastFog = fog;
+			stateChangeCount++;
 		}
 
 		// Compositing mode
-		if (appearance.getCompositingMode() != null) {
-			appearance.getCompositingMode().setupGL(gl, depthBufferEnabled);
+		CompositingMode compositingMode = appearance.getCompositingMode();
+		if (compositingMode == null) {
+			compositingMode = defaultCompositioningMode;
+		}
+		if (compositingMode != lastCompositingMode) {
+			compositingMode.setupGL(gl, depthBufferEnabled);
+			lastCompositingMode = compositingMode;
+			stateChangeCount++;
+		}
+
+		// Scene
+		gl.glMatrixMode(GL10.GL_MODELVIEW);
+		gl.glPushMatrix();
+		transform.multGL(gl);
+
+		gl.glTranslatef(scaleBias[1], scaleBias[2], scaleBias[3]);
+		gl.glScalef(scaleBias[0], scaleBias[0], scaleBias[0]);
+
+		// Draw
+		ShortBuffer indices = triangles.getBuffer();
+		indices.position(0);
+		if (triangles instanceof TriangleStripArray) {
+			gl.glDrawElements(GL10.GL_TRIANGLE_STRIP, triangles.getIndexCount(), GL10.GL_UNSIGNED_SHORT, indices);
 		} else {
-			defaultCompositioningMode.setupGL(gl, depthBufferEnabled);
+			gl.glDrawElements(GL10.GL_TRIANGLES, triangles.getIndexCount(), GL10.GL_UNSIGNED_SHORT, indices);
 		}
+
+		gl.glPopMatrix();
+	}
+
+	private static boolean sameScaleBias(float[] scaleBias, float[] last, int offset) {
+		return (scaleBias[0] == last[offset]) && (scaleBias[1] == last[offset + 1])
+				&& (scaleBias[2] == last[offset + 2]) && (scaleBias[3] == last[offset + 3]);
 	}
 
 	int getTextureUnitCount() {
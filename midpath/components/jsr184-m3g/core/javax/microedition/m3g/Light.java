@@ -36,6 +36,12 @@ public class Light extends Node {
 	private float spotAngle = 45.0f;
 	private float spotExponent = 0.0f;
 
+	private static final float[] NO_COLOR = { 0, 0, 0, 0 };
+	private static final float[] ORIGIN_POSITION = { 0, 0, 0, 1 };
+	private static final float[] Z_AXIS_DIRECTION = { 0, 0, 1, 0 };
+	private static final float[] SPOT_DIRECTION = { 0, 0, -1 };
+	private float[] glColor = new float[4];
+
 	public Light() {
 	}
 
@@ -114,7 +120,7 @@ public class Light extends Node {
 	void setupGL(GL10 gl, int lightId) {
 
 		// TODO: color and intensity
-		float[] col = (new Color(color)).toRBGAArray();
+		float[] col = Color.intToFloatArray(color, glColor);
 
 		col[0] *= intensity;
 		col[1] *= intensity;
@@ -126,29 +132,29 @@ public class Light extends Node {
 		} else {
 
 			gl.glLightfv(lightId, GL10.GL_DIFFUSE, col, 0);
-			gl.glLightfv(lightId, GL10.GL_AMBIENT, new float[] { 0, 0, 0, 0 }, 0);
+			gl.glLightfv(lightId, GL10.GL_AMBIENT, NO_COLOR, 0);
 			gl.glLightfv(lightId, GL10.GL_SPECULAR, col, 0);
 
 			if (mode == Light.OMNI) {
 				// set position
-				gl.glLightfv(lightId, GL10.GL_POSITION, new float[] { 0, 0, 0, 1 }, 0);
+				gl.glLightfv(lightId, GL10.GL_POSITION, ORIGIN_POSITION, 0);
 
 				// Set default values for cutoff/exponent
 				gl.glLightf(lightId, GL10.GL_SPOT_CUTOFF, 180.0f); // 0..90, 180
 				gl.glLightf(lightId, GL10.GL_SPOT_EXPONENT, 0.0f); // 0..128				
 			} else if (mode == Light.SPOT) {
 				// set position
-				gl.glLightfv(lightId, GL10.GL_POSITION, new float[] { 0, 0, 0, 1 }, 0);
+				gl.glLightfv(lightId, GL10.GL_POSITION, ORIGIN_POSITION, 0);
 
 				// Set cutoff/exponent
 				gl.glLightf(lightId, GL10.GL_SPOT_CUTOFF, spotAngle);
 				gl.glLightf(lightId, GL10.GL_SPOT_EXPONENT, spotExponent);
 
 				// Set default spot direction
-				gl.glLightfv(lightId, GL10.GL_SPOT_DIRECTION, new float[] { 0, 0, -1 }, 0);
+				gl.glLightfv(lightId, GL10.GL_SPOT_DIRECTION, SPOT_DIRECTION, 0);
 			} else if (mode == Light.DIRECTIONAL) {
 				// set direction (w=0 meaning directional instead of positional)
-				gl.glLightfv(lightId, GL10.GL_POSITION, new float[] { 0, 0, 1, 0 }, 0);
+				gl.glLightfv(lightId, GL10.GL_POSITION, Z_AXIS_DIRECTION, 0);
 
 				// Set default values for cutoff/exponent
 				gl.glLightf(lightId, GL10.GL_SPOT_CUTOFF, 180.0f);
@@ -0,0 +1,170 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA  
+ */
+package javax.microedition.m3g;
+
+/**
+ * The submeshes and sprites of a scene that passed the culling tests, sorted
+ * before they are drawn so that the GL state changes as little as possible.
+ * Items are drawn by increasing layer and, in each layer, opaque items are
+ * drawn before blended ones. Opaque items are grouped by texture and
+ * appearance, blended items are drawn back to front. The items are reused
+ * from one frame to the next.
+ */
+final class RenderQueue {
+
+	static final class Item {
+		// Submesh, or sprite if vertices is null
+		VertexBuffer vertices;
+		IndexBuffer triangles;
+		Sprite3D sprite;
+		Appearance appearance;
+		Transform transform = new Transform();
+
+		// Sort keys
+		int layer;
+		boolean blended;
+		int textureKey;
+		int appearanceKey;
+		float depth;
+	}
+
+	private Item[] items = new Item[16];
+	private Item[] sortBuffer = new Item[16];
+	private int size = 0;
+
+	/**
+	 * Returns an item to fill, added at the end of the queue.
+	 */
+	Item add(Appearance appearance, Transform transform, float depth) {
+		if (size == items.length) {
+			Item[] newItems = new Item[size * 2];
+			System.arraycopy(items, 0, newItems, 0, size);
+			items = newItems;
+			sortBuffer = new Item[size * 2];
+		}
+		Item item = items[size];
+		if (item == null) {
+			item = new Item();
+			items[size] = item;
+		}
+		size++;
+
+		item.appearance = appearance;
+		item.transform.set(transform);
+		item.depth = depth;
+		item.layer = 0;
+		item.blended = false;
+		item.textureKey = 0;
+		item.appearanceKey = 0;
+		if (appearance != null) {
+			item.layer = appearance.getLayer();
+			CompositingMode compositingMode = appearance.getCompositingMode();
+			item.blended = (compositingMode != null) && (compositingMode.getBlending() != CompositingMode.REPLACE);
+			Texture2D texture = appearance.getTexture(0);
+			if (texture != null)
+				item.textureKey = System.identityHashCode(texture);
+			item.appearanceKey = System.identityHashCode(appearance);
+		}
+		return item;
+	}
+
+	Item get(int index) {
+		return items[index];
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Empties the queue, releasing the objects referenced by the items.
+	 */
+	void clear() {
+		for (int i = 0; i < size; i++) {
+			Item item = items[i];
+			item.vertices = null;
+			item.triangles = null;
+			item.sprite = null;
+			item.appearance = null;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Sorts the items. The sort is stable: items with the same keys are
+	 * drawn in scene graph order.
+	 */
+	void sort() {
+		mergeSort(0, size);
+	}
+
+	private void mergeSort(int from, int to) {
+		int length = to - from;
+		if (length < 8) {
+			// Insertion sort
+			for (int i = from + 1; i < to; i++) {
+				Item item = items[i];
+				int j = i;
+				while ((j > from) && (compare(items[j - 1], item) > 0)) {
+					items[j] = items[j - 1];
+					j--;
+				}
+				items[j] = item;
+			}
+			return;
+		}
+
+		int middle = (from + to) >>> 1;
+		mergeSort(from, middle);
+		mergeSort(middle, to);
+		if (compare(items[middle - 1], items[middle]) <= 0) {
+			// Already in order
+			return;
+		}
+
+		System.arraycopy(items, from, sortBuffer, from, length);
+		int i = from;
+		int j = middle;
+		for (int k = from; k < to; k++) {
+			if ((j >= to) || ((i < middle) && (compare(sortBuffer[i], sortBuffer[j]) <= 0))) {
+				items[k] = sortBuffer[i++];
+			} else {
+				items[k] = sortBuffer[j++];
+			}
+		}
+	}
+
+	private static int compare(Item a, Item b) {
+		if (a.layer != b.layer)
+			return (a.layer < b.layer) ? -1 : 1;
+		if (a.blended != b.blended)
+			return a.blended ? 1 : -1;
+		if (a.blended) {
+			// Back to front
+			if (a.depth != b.depth)
+				return (a.depth > b.depth) ? -1 : 1;
+			return 0;
+		}
+		if (a.textureKey != b.textureKey)
+			return (a.textureKey < b.textureKey) ? -1 : 1;
+		if (a.appearanceKey != b.appearanceKey)
+			return (a.appearanceKey < b.appearanceKey) ? -1 : 1;
+		return 0;
+	}
+
+}
@@ -35,6 +35,9 @@ public class Texture2D extends Transformable {
 	public static final int WRAP_CLAMP = 240;
 	public static final int WRAP_REPEAT = 241;
 
+	/** Texture coordinates scale and bias leaving the coordinates unchanged */
+	static final float[] IDENTITY_SCALE_BIAS = { 1, 0, 0, 0 };
+
 	private Image2D image;
 	private int blendColor = 0;
 	private int blending = FUNC_MODULATE;
@@ -46,6 +49,10 @@ public class Texture2D extends Transformable {
 	private boolean textureInitialized = false;
 	private int[] id = { 0 };
 
+	// Scratch objects used by setupGL
+	private Transform glTransform = new Transform();
+	private float[] glBlendColor = new float[4];
+
 	public Texture2D(Image2D image) {
 		setImage(image);
 	}
@@ -173,10 +180,10 @@ public class Texture2D extends Transformable {
 
 		// Set blendmode
 		gl.glTexEnvf(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE, getGLBlend());
-		gl.glTexEnvfv(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_COLOR, Color.intToFloatArray(blendColor), 0);
+		gl.glTexEnvfv(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_COLOR, Color.intToFloatArray(blendColor, glBlendColor), 0);
 
 		// set texture scale
-		Transform t = new Transform();
+		Transform t = glTransform;
 		getCompositeTransform(t);
 
 		gl.glMatrixMode(GL10.GL_TEXTURE);
@@ -34,6 +34,9 @@ public class Transform {
 
 	protected float[] m = { 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1 };
 
+	// Column-major copy of a matrix given to OpenGL. Only used by the rendering thread.
+	private static final float[] glMatrix = new float[16];
+
 	public Transform() {
 	}
 
@@ -186,10 +189,20 @@ public class Transform {
 			//		throw new ArithmeticException("This transform is not invertible");
 	
 			// This will only work for ON-matrices, but it's really fast! :)
-			float[] n = { m[0], m[4], m[8], -m[0] * m[3] - m[4] * m[7] - m[8] * m[11], m[1], m[5], m[9],
-					-m[1] * m[3] - m[5] * m[7] - m[9] * m[11], m[2], m[6], m[10],
-					-m[2] * m[3] - m[6] * m[7] - m[10] * m[11], 0, 0, 0, 1 };
-			set(n);
+			float m1 = m[1], m2 = m[2], m3 = m[3], m6 = m[6], m7 = m[7], m11 = m[11];
+			m[3] = -m[0] * m3 - m[4] * m7 - m[8] * m11;
+			m[7] = -m1 * m3 - m[5] * m7 - m[9] * m11;
+			m[11] = -m2 * m3 - m6 * m7 - m[10] * m11;
+			m[1] = m[4];
+			m[2] = m[8];
+			m[6] = m[9];
+			m[4] = m1;
+			m[8] = m2;
+			m[9] = m6;
+			m[12] = 0;
+			m[13] = 0;
+			m[14] = 0;
+			m[15] = 1;
 		}
 
 //	public void invert() {
@@ -291,29 +304,23 @@ public class Transform {
 		if (transform == null)
 			throw new NullPointerException("transform can not be null");
 
-		float[] l = new float[16];
-		get(l);
 		float[] r = transform.m;
+		if (r == m) {
+			// Squaring: the right operand must not change while it is read
+			r = (float[]) m.clone();
+		}
 
-		m[0] = l[0] * r[0] + l[1] * r[4] + l[2] * r[8] + l[3] * r[12];
-		m[1] = l[0] * r[1] + l[1] * r[5] + l[2] * r[9] + l[3] * r[13];
-		m[2] = l[0] * r[2] + l[1] * r[6] + l[2] * r[10] + l[3] * r[14];
-		m[3] = l[0] * r[3] + l[1] * r[7] + l[2] * r[11] + l[3] * r[15];
-
-		m[4] = l[4] * r[0] + l[5] * r[4] + l[6] * r[8] + l[7] * r[12];
-		m[5] = l[4] * r[1] + l[5] * r[5] + l[6] * r[9] + l[7] * r[13];
-		m[6] = l[4] * r[2] + l[5] * r[6] + l[6] * r[10] + l[7] * r[14];
-		m[7] = l[4] * r[3] + l[5] * r[7] + l[6] * r[11] + l[7] * r[15];
-
-		m[8] = l[8] * r[0] + l[9] * r[4] + l[10] * r[8] + l[11] * r[12];
-		m[9] = l[8] * r[1] + l[9] * r[5] + l[10] * r[9] + l[11] * r[13];
-		m[10] = l[8] * r[2] + l[9] * r[6] + l[10] * r[10] + l[11] * r[14];
-		m[11] = l[8] * r[3] + l[9] * r[7] + l[10] * r[11] + l[11] * r[15];
-
-		m[12] = l[12] * r[0] + l[13] * r[4] + l[14] * r[8] + l[15] * r[12];
-		m[13] = l[12] * r[1] + l[13] * r[5] + l[14] * r[9] + l[15] * r[13];
-		m[14] = l[12] * r[2] + l[13] * r[6] + l[14] * r[10] + l[15] * r[14];
-		m[15] = l[12] * r[3] + l[13] * r[7] + l[14] * r[11] + l[15] * r[15];
+		// Each row of the result only depends on the same row of this matrix
+		for (int i = 0; i < 16; i += 4) {
+			float l0 = m[i];
+			float l1 = m[i + 1];
+			float l2 = m[i + 2];
+			float l3 = m[i + 3];
+			m[i] = l0 * r[0] + l1 * r[4] + l2 * r[8] + l3 * r[12];
+			m[i + 1] = l0 * r[1] + l1 * r[5] + l2 * r[9] + l3 * r[13];
+			m[i + 2] = l0 * r[2] + l1 * r[6] + l2 * r[10] + l3 * r[14];
+			m[i + 3] = l0 * r[3] + l1 * r[7] + l2 * r[11] + l3 * r[15];
+		}
 	}
 
 	public void postRotate(float angle, float ax, float ay, float az) {
@@ -348,13 +355,12 @@ public class Transform {
 	}
 
 	public void postScale(float sx, float sy, float sz) {
-		Transform t = new Transform();
-		float[] m = t.m;
-		m[0] = sx;
-		m[5] = sy;
-		m[10] = sz;
-
-		postMultiply(t);
+		// Same as multiplying by a scaling matrix: scales the first three columns
+		for (int i = 0; i < 16; i += 4) {
+			m[i] *= sx;
+			m[i + 1] *= sy;
+			m[i + 2] *= sz;
+		}
 	}
 
 	public void postTranslate(float tx, float ty, float tz) {
@@ -427,7 +433,7 @@ public class Transform {
 	}
 
 	void setGL(GL10 gl) {
-		float[] matrix = new float[16];
+		float[] matrix = glMatrix;
 		System.arraycopy(m, 0, matrix, 0, 16);
 		transpose(matrix);
 		//System.out.println("setGL: " + this);
@@ -437,7 +443,7 @@ public class Transform {
 	}
 
 	void multGL(GL10 gl) {
-		float[] matrix = new float[16];
+		float[] matrix = glMatrix;
 		System.arraycopy(m, 0, matrix, 0, 16);
 		transpose(matrix);
 		//System.out.println("multGL: " + this);
@@ -41,12 +41,11 @@ public abstract class Transformable extends Object3D {
 		// transform = T R S M
 
 		// Combine translation and rotation (TR)
-		float[] m = new float[16];
-		orientation.get(m);
+		transform.set(orientation);
+		float[] m = transform.m;
 		m[3] = translation.x;
 		m[7] = translation.y;
 		m[11] = translation.z;
-		transform.set(m);
 
 		// Apply scale (S)
 		transform.postScale(scale.x, scale.y, scale.z);
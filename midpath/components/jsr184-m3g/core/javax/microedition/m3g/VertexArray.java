@@ -38,6 +38,10 @@ public class VertexArray extends Object3D {
 	
 	// Hack needed for OpenGL ES
 	private ByteBuffer argbBuffer;
+
+	// Bounding sphere of the vertices, computed when first needed
+	private float[] boundingSphere;
+	private boolean boundingSphereValid = false;
 	
 	private VertexArray() {
 	}
@@ -76,6 +80,7 @@ public class VertexArray extends Object3D {
 		for (int i = 0; i < numElements; i++)
 			floatBuffer.put((float) values[i]);
 
+		boundingSphereValid = false;
 	}
 
 	public void set(int firstVertex, int numVertices, byte[] values) {
@@ -89,6 +94,8 @@ public class VertexArray extends Object3D {
 		floatBuffer.position(firstVertex);
 		for (int i = 0; i < numElements; i++)
 			floatBuffer.put((float) values[i]);
+
+		boundingSphereValid = false;
 	}
 	
 	Object3D duplicateImpl() {
@@ -172,6 +179,62 @@ public class VertexArray extends Object3D {
 		return floatBuffer;
 	}
 
+	/**
+	 * Returns the bounding sphere of the vertices as { x, y, z, radius }, in
+	 * the units of the array (i.e. before the scale and bias of the vertex
+	 * buffer). The sphere is computed again only after the array changes.
+	 */
+	float[] getBoundingSphere() {
+		if (!boundingSphereValid) {
+			if (boundingSphere == null) {
+				boundingSphere = new float[4];
+			}
+			computeBoundingSphere(boundingSphere);
+			boundingSphereValid = true;
+		}
+		return boundingSphere;
+	}
+
+	private void computeBoundingSphere(float[] sphere) {
+		int n = Math.min(numComponents, 3);
+		float[] min = { Float.MAX_VALUE, Float.MAX_VALUE, 0 };
+		float[] max = { -Float.MAX_VALUE, -Float.MAX_VALUE, 0 };
+		if (n == 3) {
+			min[2] = Float.MAX_VALUE;
+			max[2] = -Float.MAX_VALUE;
+		}
+
+		// Center of the bounding box
+		for (int i = 0; i < numElements; i += numComponents) {
+			for (int j = 0; j < n; j++) {
+				float v = floatBuffer.get(i + j);
+				if (v < min[j])
+					min[j] = v;
+				if (v > max[j])
+					max[j] = v;
+			}
+		}
+		float cx = (min[0] + max[0]) * 0.5f;
+		float cy = (min[1] + max[1]) * 0.5f;
+		float cz = (min[2] + max[2]) * 0.5f;
+
+		// Radius: farthest vertex from the center
+		float r2 = 0;
+		for (int i = 0; i < numElements; i += numComponents) {
+			float dx = floatBuffer.get(i) - cx;
+			float dy = floatBuffer.get(i + 1) - cy;
+			float dz = (n == 3) ? floatBuffer.get(i + 2) - cz : 0;
+			float d2 = dx * dx + dy * dy + dz * dz;
+			if (d2 > r2)
+				r2 = d2;
+		}
+
+		sphere[0] = cx;
+		sphere[1] = cy;
+		sphere[2] = cz;
+		sphere[3] = (float) Math.sqrt(r2);
+	}
+
 	
 	//	 Hack needed for OpenGL ES
 	ByteBuffer getARGBBuffer() {
@@ -0,0 +1,91 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA  
+ */
+package org.thenesis.m3g.engine;
+
+/**
+ * Counters of the last World or Node rendered by Graphics3D: the submeshes
+ * rejected by the view frustum test, the submeshes and sprites drawn, and
+ * the GL state changes needed to draw them. Immediate mode rendering of
+ * vertex buffers is not counted.
+ */
+public class RenderStatistics {
+
+	private static RenderStatistics instance;
+
+	private int culledCount;
+	private int drawnCount;
+	private int stateChangeCount;
+	private int frameCount;
+
+	private RenderStatistics() {
+	}
+
+	public static synchronized RenderStatistics getInstance() {
+		if (instance == null) {
+			instance = new RenderStatistics();
+		}
+		return instance;
+	}
+
+	/**
+	 * Called by Graphics3D at the end of each rendered World or Node.
+	 */
+	public synchronized void frameRendered(int culled, int drawn, int stateChanges) {
+		culledCount = culled;
+		drawnCount = drawn;
+		stateChangeCount = stateChanges;
+		frameCount++;
+	}
+
+	/**
+	 * Returns the number of submeshes outside of the view frustum in the last frame.
+	 */
+	public synchronized int getCulledCount() {
+		return culledCount;
+	}
+
+	/**
+	 * Returns the number of submeshes and sprites drawn in the last frame.
+	 */
+	public synchronized int getDrawnCount() {
+		return drawnCount;
+	}
+
+	/**
+	 * Returns the number of GL state changes (buffers, textures, materials,
+	 * fogs and compositing modes) made in the last frame.
+	 */
+	public synchronized int getStateChangeCount() {
+		return stateChangeCount;
+	}
+
+	/**
+	 * Returns the number of frames rendered since the last reset.
+	 */
+	public synchronized int getFrameCount() {
+		return frameCount;
+	}
+
+	public synchronized void reset() {
+		culledCount = 0;
+		drawnCount = 0;
+		stateChangeCount = 0;
+		frameCount = 0;
+	}
+
+}
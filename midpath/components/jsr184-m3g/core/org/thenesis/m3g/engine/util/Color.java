@@ -48,6 +48,19 @@ public class Color {
 		return c.toRBGAArray();
 	}
 
+	/**
+	 * Same as intToFloatArray(int) but stores the components in the given
+	 * array, to avoid allocations while rendering.
+	 * @return rgba
+	 */
+	public static float[] intToFloatArray(int color, float[] rgba) {
+		rgba[0] = ((float) ((color >> 16) & 0xFF)) / 255.0f;
+		rgba[1] = ((float) ((color >> 8) & 0xFF)) / 255.0f;
+		rgba[2] = ((float) (color & 0xFF)) / 255.0f;
+		rgba[3] = ((float) ((color >> 24) & 0xFF)) / 255.0f;
+		return rgba;
+	}
+
 	public String toString() {
 		return "{" + r + ", " + g + ", " + b + ", " + a + "}";
 	}
@@ -87,8 +87,8 @@ class SVGCanvas extends AbstractSVGCanvas {
 			int h = (int)r.getHeight();
 
 			synchronized (canvasManager.lock) {
-				if (x != 0 || y != 0 || w != documentNode.getWidth() || h != documentNode.getHeight()) {
-					// The repaint area is not exactly the same as the viewport area
+				if (x < 0 || y < 0 || x + w > offscreenWidth || y + h > offscreenHeight) {
+					// The repaint area is not contained in the offscreen area
 					// so we need to clear the background first.
 					g.setColor(CLEAR_COLOR_AWT);
 					g.fillRect(x, y, w, h);
@@ -97,7 +97,9 @@ class SVGCanvas extends AbstractSVGCanvas {
 				if (gsd == null) {
 					gsd = new GraphicsSurfaceDestinationImpl(g);
 				}
-				gsd.drawSurface(offscreen, 0, 0, 0, 0, offscreenWidth, offscreenHeight, 1);
+				// Only copy the repaint area, which is the dirty area of the
+				// last update unless the whole canvas has to be repainted.
+				gsd.drawSurface(offscreen, x, y, x, y, w, h, 1);
 				canvasManager.consume();
 			}
 		}
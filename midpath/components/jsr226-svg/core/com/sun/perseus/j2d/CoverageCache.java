@@ -0,0 +1,441 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package com.sun.perseus.j2d;
+
+import com.sun.perseus.PerseusToolkit;
+import com.sun.pisces.PiscesCache;
+import com.sun.pisces.Transform6;
+
+/**
+ * <p>The coverage masks of the primitives filled or drawn by a node, kept
+ * from one frame to the next so that a shape whose geometry, transform and
+ * stroke did not change is only blitted again (see
+ * <tt>PiscesRenderer.renderFromCache</tt>). The masks don't depend on the
+ * paint, so color and opacity changes keep them.</p>
+ *
+ * <p>A node owning a <tt>CoverageCache</tt> sets it on the
+ * <tt>PiscesRenderGraphics</tt> before painting. Each fill or draw is then
+ * matched with the entry of the same rank in the previous paint of the
+ * node. A mask is only computed once the same primitive has been painted
+ * on two consecutive frames, so that moving shapes don't pay for it.</p>
+ *
+ * <p>All the masks share a memory budget, set by the
+ * <tt>pisces.coverageCache.size</tt> configuration property (in bytes, 0
+ * disables the caching). The least recently used masks are discarded
+ * when it is exceeded.</p>
+ */
+public final class CoverageCache {
+    /**
+     * Default memory budget, in bytes.
+     */
+    static final int DEFAULT_MAX_SIZE = 128 * 1024;
+
+    /**
+     * Approximate memory used by an entry besides its mask, in bytes.
+     */
+    static final int ENTRY_OVERHEAD = 128;
+
+    /**
+     * Memory budget shared by all the masks, in bytes.
+     */
+    static final int MAX_SIZE;
+
+    static {
+        String strValue = PerseusToolkit.getInstance()
+            .getConfigurationProperty("pisces.coverageCache.size");
+        int intValue = DEFAULT_MAX_SIZE;
+        if (strValue != null) {
+            try {
+                intValue = Integer.parseInt(strValue.trim());
+            } catch (NumberFormatException e) {
+            }
+        }
+        MAX_SIZE = intValue;
+    }
+
+    /**
+     * Lock protecting the list of the masks.
+     */
+    private static final Object LOCK = new Object();
+
+    /**
+     * Entries holding a mask, from the most to the least recently used.
+     */
+    private static Entry head, tail;
+
+    /**
+     * Memory used by the masks, in bytes.
+     */
+    private static int size;
+
+    /**
+     * The entries of the node, in painting order.
+     */
+    private Entry[] entries = new Entry[1];
+
+    /**
+     * Number of entries used by the current paint.
+     */
+    private int count;
+
+    /**
+     * Set when the node was modified: the content of the paths has
+     * to be checked, as it may have been changed in place.
+     */
+    private boolean checkContent;
+
+    /**
+     * Entry returned by the last call to get.
+     */
+    private Entry current;
+
+    /**
+     * @return true if caching is enabled.
+     */
+    public static boolean isEnabled() {
+        return MAX_SIZE > 0;
+    }
+
+    /**
+     * @return the memory used by all the masks, in bytes.
+     */
+    public static int getSize() {
+        synchronized (LOCK) {
+            return size;
+        }
+    }
+
+    /**
+     * Called by the owner when its rendering changes. The masks are
+     * kept, but they are only reused if the primitives are the same.
+     */
+    public void invalidate() {
+        checkContent = true;
+    }
+
+    /**
+     * Discards all the masks of the node.
+     */
+    public void clear() {
+        synchronized (LOCK) {
+            for (int i = 0; i < entries.length; i++) {
+                if (entries[i] != null) {
+                    discard(entries[i]);
+                }
+            }
+        }
+        count = 0;
+        current = null;
+    }
+
+    /**
+     * Starts a paint of the node.
+     */
+    void begin() {
+        count = 0;
+        current = null;
+    }
+
+    /**
+     * Ends a paint of the node.
+     */
+    void end() {
+        checkContent = false;
+        current = null;
+    }
+
+    /**
+     * Matches the next primitive of the node with the one of the same
+     * rank in the previous paint.
+     *
+     * @param rg the <tt>RenderGraphics</tt> holding the transform and
+     *        stroke of the primitive.
+     * @param path the path of the primitive.
+     * @param isFill true for a fill, false for a stroke.
+     * @param windingRule the winding rule of a fill.
+     * @param antialiasing true if antialiasing is on.
+     * @return a valid <tt>PiscesCache</tt> to blit, an invalid one to
+     *         compute and then blit, or null if the primitive should be
+     *         rendered as usual.
+     */
+    PiscesCache get(final PiscesRenderGraphics rg,
+                    final Path path,
+                    final boolean isFill,
+                    final int windingRule,
+                    final boolean antialiasing) {
+        if (count == entries.length) {
+            Entry[] newEntries = new Entry[count * 2];
+            System.arraycopy(entries, 0, newEntries, 0, count);
+            entries = newEntries;
+        }
+        Entry entry = entries[count];
+        if (entry == null) {
+            entry = new Entry();
+            entries[count] = entry;
+        }
+        count++;
+
+        if (!entry.matches(rg, path, isFill, windingRule, antialiasing,
+                           checkContent)) {
+            // New primitive: render it as usual for now
+            synchronized (LOCK) {
+                discard(entry);
+            }
+            entry.set(rg, path, isFill, windingRule, antialiasing);
+            return null;
+        }
+
+        synchronized (LOCK) {
+            if (entry.size > 0) {
+                // Move to the head of the list
+                unlink(entry);
+                link(entry);
+                return entry.cache;
+            }
+        }
+
+        if (entry.tooLarge) {
+            return null;
+        }
+
+        // Second paint of the same primitive: compute its mask
+        if (entry.cache == null) {
+            entry.cache = PiscesCache.createInstance();
+        }
+        current = entry;
+        return entry.cache;
+    }
+
+    /**
+     * Called once the mask returned by the last call to get has been
+     * computed.
+     */
+    void computed() {
+        Entry entry = current;
+        current = null;
+        if (entry == null || entry.cache == null) {
+            return;
+        }
+
+        int cacheSize = entry.cache.getMemorySize() + ENTRY_OVERHEAD;
+        if (cacheSize > MAX_SIZE) {
+            entry.tooLarge = true;
+            entry.cache = null;
+            return;
+        }
+
+        synchronized (LOCK) {
+            entry.size = cacheSize;
+            size += cacheSize;
+            link(entry);
+            while (size > MAX_SIZE) {
+                discard(tail);
+            }
+        }
+    }
+
+    /**
+     * Drops the mask of an entry. Must be called with LOCK held. The mask
+     * is not disposed as another canvas may be blitting it.
+     */
+    private static void discard(final Entry entry) {
+        if (entry.size > 0) {
+            unlink(entry);
+            size -= entry.size;
+            entry.size = 0;
+        }
+        entry.cache = null;
+    }
+
+    private static void link(final Entry entry) {
+        entry.previous = null;
+        entry.next = head;
+        if (head != null) {
+            head.previous = entry;
+        }
+        head = entry;
+        if (tail == null) {
+            tail = entry;
+        }
+    }
+
+    private static void unlink(final Entry entry) {
+        if (entry.previous != null) {
+            entry.previous.next = entry.next;
+        } else {
+            head = entry.next;
+        }
+        if (entry.next != null) {
+            entry.next.previous = entry.previous;
+        } else {
+            tail = entry.previous;
+        }
+        entry.previous = null;
+        entry.next = null;
+    }
+
+    /**
+     * Computes a hash of the commands and coordinates of a path.
+     */
+    static int hash(final Path path) {
+        int h = path.nSegments;
+        byte[] commands = path.commands;
+        for (int i = 0; i < path.nSegments; i++) {
+            h = 31 * h + commands[i];
+        }
+        float[] data = path.data;
+        for (int i = 0; i < path.nData; i++) {
+            h = 31 * h + Float.floatToIntBits(data[i]);
+        }
+        return h;
+    }
+
+    /**
+     * A primitive of the node and its mask, if any.
+     */
+    static final class Entry {
+        // Path
+        Path path;
+        float[] data;
+        byte[] commands;
+        int nSegments;
+        int contentHash;
+
+        // Device transform
+        int m00, m01, m10, m11, m02, m12;
+
+        // Fill or stroke parameters
+        boolean isFill;
+        int windingRule;
+        int strokeWidth;
+        int capStyle;
+        int joinStyle;
+        int miterLimit;
+        int[] dashArray;
+        int dashOffset;
+
+        // Rendering surface
+        boolean antialiasing;
+        int width, height;
+
+        PiscesCache cache;
+        boolean tooLarge;
+        int size;
+        Entry previous;
+        Entry next;
+
+        boolean matches(final PiscesRenderGraphics rg,
+                        final Path path,
+                        final boolean isFill,
+                        final int windingRule,
+                        final boolean antialiasing,
+                        final boolean checkContent) {
+            if (this.path != path
+                || data != path.data
+                || commands != path.commands
+                || nSegments != path.nSegments
+                || this.isFill != isFill
+                || this.antialiasing != antialiasing
+                || width != rg.width
+                || height != rg.height) {
+                return false;
+            }
+
+            Transform6 tx = rg.transform;
+            if (m00 != tx.m00 || m01 != tx.m01 || m10 != tx.m10
+                || m11 != tx.m11 || m02 != tx.m02 || m12 != tx.m12) {
+                return false;
+            }
+
+            if (isFill) {
+                if (this.windingRule != windingRule) {
+                    return false;
+                }
+            } else if (strokeWidth != rg.strokeWidth
+                       || capStyle != rg.getStrokeLineCap()
+                       || joinStyle != rg.getStrokeLineJoin()
+                       || miterLimit != rg.strokeMiterLimit
+                       || !equals(dashArray, rg.strokeDashArray)
+                       || (dashArray != null
+                           && dashOffset != rg.computeStrokeDashOffset())) {
+                return false;
+            }
+
+            if (checkContent && contentHash != hash(path)) {
+                return false;
+            }
+
+            return true;
+        }
+
+        void set(final PiscesRenderGraphics rg,
+                 final Path path,
+                 final boolean isFill,
+                 final int windingRule,
+                 final boolean antialiasing) {
+            this.path = path;
+            data = path.data;
+            commands = path.commands;
+            nSegments = path.nSegments;
+            contentHash = hash(path);
+
+            Transform6 tx = rg.transform;
+            m00 = tx.m00;
+            m01 = tx.m01;
+            m10 = tx.m10;
+            m11 = tx.m11;
+            m02 = tx.m02;
+            m12 = tx.m12;
+
+            this.isFill = isFill;
+            this.windingRule = windingRule;
+            if (!isFill) {
+                strokeWidth = rg.strokeWidth;
+                capStyle = rg.getStrokeLineCap();
+                joinStyle = rg.getStrokeLineJoin();
+                miterLimit = rg.strokeMiterLimit;
+                dashArray = (rg.strokeDashArray != null)
+                    ? (int[]) rg.strokeDashArray.clone() : null;
+                dashOffset = (dashArray != null)
+                    ? rg.computeStrokeDashOffset() : 0;
+            } else {
+                dashArray = null;
+            }
+
+            this.antialiasing = antialiasing;
+            width = rg.width;
+            height = rg.height;
+            tooLarge = false;
+        }
+
+        private static boolean equals(final int[] a, final int[] b) {
+            if (a == b) {
+                return true;
+            }
+            if (a == null || b == null || a.length != b.length) {
+                return false;
+            }
+            for (int i = 0; i < a.length; i++) {
+                if (a[i] != b[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -26,6 +26,7 @@
 package com.sun.perseus.j2d;
 
 import com.sun.perseus.model.RasterImage;
+import com.sun.pisces.PiscesCache;
 import com.sun.pisces.PiscesRenderer;
 import com.sun.pisces.Transform6;
 
@@ -122,6 +123,11 @@ public abstract class PiscesRenderGraphics extends RenderContext {
      */
     protected Tile primitiveTile = new Tile();
 
+    /**
+     * The coverage masks of the node being painted, if any.
+     */
+    protected CoverageCache coverageCache;
+
     /**
      * Constructs a new <code>PiscesRenderGraphics</code> which will delegate painting
      * operations to a <code>PiscesRenderer</code>.
@@ -353,6 +359,27 @@ public abstract class PiscesRenderGraphics extends RenderContext {
         fillOrDraw(path, fill, getFillOpacityImpl(), true);
     }
 
+    /**
+     * Sets the coverage masks used by the following fill and draw
+     * operations, until the next call to this method. The masks are
+     * matched with the operations in order, so the owner of the cache
+     * should set it before each of its paints and unset it after.
+     *
+     * @param coverageCache the coverage masks of the node about to be
+     *        painted, or null.
+     */
+    public void setCoverageCache(final CoverageCache coverageCache) {
+        if (this.coverageCache != null) {
+            this.coverageCache.end();
+        }
+        if (coverageCache != null && CoverageCache.isEnabled()) {
+            this.coverageCache = coverageCache;
+            coverageCache.begin();
+        } else {
+            this.coverageCache = null;
+        }
+    }
+
     /**
      * @param path the Path to fill or draw.
      * @param paint the paint to use for the operation.
@@ -372,7 +399,6 @@ public abstract class PiscesRenderGraphics extends RenderContext {
         paint.getPaintDef().setPaint(this, pr, opOpacity);
         if (isFill) {
             pr.setFill();
-            pr.beginRendering(getFillRule());
         } else {
             pr.setStroke(strokeWidth,
                          getStrokeLineCap(),
@@ -380,8 +406,26 @@ public abstract class PiscesRenderGraphics extends RenderContext {
                          strokeMiterLimit,
                          strokeDashArray,
                          computeStrokeDashOffset());
-            pr.beginRendering(WIND_NON_ZERO);
         }
+        int windingRule = isFill ? getFillRule() : WIND_NON_ZERO;
+
+        if (coverageCache != null) {
+            PiscesCache coverage = coverageCache.get(this, path, isFill,
+                                                     windingRule,
+                                                     pr.getAntialiasing());
+            if (coverage != null) {
+                if (!coverage.isValid()) {
+                    pr.beginRenderingToCache(windingRule, coverage);
+                    pr.setPathData(path.data, path.commands, path.nSegments);
+                    pr.endRendering();
+                    coverageCache.computed();
+                }
+                pr.renderFromCache(coverage);
+                return;
+            }
+        }
+
+        pr.beginRendering(windingRule);
 
         // FIXME
         pr.setPathData(path.data, path.commands, path.nSegments);
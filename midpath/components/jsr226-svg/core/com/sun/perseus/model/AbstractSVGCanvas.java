@@ -334,7 +334,16 @@ public abstract class AbstractSVGCanvas implements CanvasUpdateListener {
 	 */
 	public void updateComplete(final Object canvasManager) {
 		if (!ignoreCanvasUpdate) {
-			repaintNative(0, 0, documentNode.getWidth(), documentNode.getHeight());
+			if (DirtyAreaManager.ON) {
+				// Only push the areas which were painted
+				DirtyAreaManager.TileElement t = this.canvasManager.getDirtyAreaManager().getLastDirtyAreas();
+				while (t != null) {
+					repaintNative(t.x, t.y, t.maxX - t.x + 1, t.maxY - t.y + 1);
+					t = t.next;
+				}
+			} else {
+				repaintNative(0, 0, documentNode.getWidth(), documentNode.getHeight());
+			}
 		}
 	}
 
@@ -25,6 +25,7 @@
  */
 package com.sun.perseus.model;
 
+import com.sun.perseus.j2d.CoverageCache;
 import com.sun.perseus.j2d.GraphicsProperties;
 import com.sun.perseus.j2d.PaintServer;
 import com.sun.perseus.j2d.PaintTarget;
@@ -40,6 +41,12 @@ import com.sun.perseus.j2d.Transform;
  * @version $Id: AbstractShapeNode.java,v 1.16 2006/06/29 10:47:29 ln156897 Exp $
  */
 public abstract class AbstractShapeNode extends AbstractRenderingNode {
+    /**
+     * The coverage masks of the last paint of this node, created on
+     * first paint.
+     */
+    protected CoverageCache coverageCache;
+
     /**
      * Constructor.
      *
@@ -66,6 +73,15 @@ public abstract class AbstractShapeNode extends AbstractRenderingNode {
      */
     public abstract void drawShape(final RenderGraphics rg);
 
+    /**
+     * @return true if fillShape and drawShape paint a <tt>Path</tt>, whose
+     *         coverage masks can be kept in a <tt>CoverageCache</tt>. The
+     *         rectangle, oval and line primitives don't use the masks.
+     */
+    protected boolean usesCoverageCache() {
+        return false;
+    }
+
     /**
      * @param x the hit point coordinate along the x-axis, in user space.
      * @param y the hit point coordinate along the y-axis, in user space.
@@ -150,6 +166,18 @@ public abstract class AbstractShapeNode extends AbstractRenderingNode {
         rg.setPaintTransform(tx);
         rg.setTransform(tx);
 
+        // Proxies paint with other properties and don't share the masks
+        if (gp == this && usesCoverageCache() && CoverageCache.isEnabled()) {
+            if (coverageCache == null) {
+                coverageCache = new CoverageCache();
+            }
+            if (!DirtyAreaManager.ON) {
+                // No rendering notifications: check the path content
+                coverageCache.invalidate();
+            }
+            rg.setCoverageCache(coverageCache);
+        }
+
         // Fill the shape. Only apply the fill property
         if (gp.getFill() != null) {
             rg.setFillRule(gp.getFillRule());
@@ -170,6 +198,19 @@ public abstract class AbstractShapeNode extends AbstractRenderingNode {
             rg.setStrokeDashOffset(gp.getStrokeDashOffset());
             drawShape(rg);
         }
+
+        rg.setCoverageCache(null);
+    }
+
+    /**
+     * The coverage masks are kept, as they don't depend on the paint,
+     * but the content of the path is checked before they are reused.
+     */
+    protected void modifyingNodeRendering() {
+        if (coverageCache != null) {
+            coverageCache.invalidate();
+        }
+        super.modifyingNodeRendering();
     }
 
     /**
@@ -26,8 +26,10 @@
 
 package com.sun.perseus.model;
 
-import java.util.Vector;
+import java.util.Enumeration;
+import java.util.Hashtable;
 
+import com.sun.perseus.PerseusToolkit;
 import com.sun.perseus.j2d.RGB;
 import com.sun.perseus.j2d.RenderGraphics;
 import com.sun.perseus.j2d.Tile;
@@ -36,28 +38,54 @@ import com.sun.perseus.j2d.Tile;
  * <p>The <code>DirtyAreaManager</code> abstraction is responsible for tracking
  * areas of the document tree which need to be repainted.
  *
+ * <p>The rendering area is divided in a grid of square tiles. The old and new
+ * rendering bounds of each modified node mark the tiles they hit, and the
+ * marked tiles are merged into rectangles (runs of tiles on a row, and runs
+ * with the same span on consecutive rows) which are the only areas repainted.
+ *
+ * <p>Dirty area tracking is on unless the <code>perseus.dirtyArea</code>
+ * configuration property is <code>false</code>. When the
+ * <code>perseus.dirtyArea.trace</code> property is <code>true</code>, the
+ * dirty coverage of each frame is printed.
+ *
  * @version $Id: DirtyAreaManager.java,v 1.16 2006/06/29 10:47:30 ln156897 Exp $
  */
 public class DirtyAreaManager extends UpdateAdapter {
     /**
-     * TEMPORARY: GLOBAL VARIABLE ALLOWING US TO CONTROL WHETHER DIRTY AREA 
-     * TRACKING IS ON OR OFF.
+     * Controls whether dirty area tracking is on or off. It must not be
+     * changed once nodes have been created, as they only track their
+     * renderings if it is on.
      */
-    public static boolean ON = false;
+    public static boolean ON;
 
     /**
-     * The minimal tile width or height.
+     * Controls whether the dirty coverage of each frame is printed.
      */
-    public static final int DEFAULT_TILE_MIN_SIZE = 40;
+    static final boolean TRACE;
+
+    static {
+        PerseusToolkit toolkit = PerseusToolkit.getInstance();
+        ON = !"false".equals(
+                toolkit.getConfigurationProperty("perseus.dirtyArea"));
+        TRACE = "true".equals(
+                toolkit.getConfigurationProperty("perseus.dirtyArea.trace"));
+    }
 
     /**
-     * The list of modified nodes. Some may have been removed from the tree.
+     * The default tile width and height.
      */
-    Vector dirtyNodes = new Vector();
+    public static final int DEFAULT_TILE_SIZE = 32;
+
     /**
-     * The Root tile representing this surface.
+     * Margin added around the node bounds, in pixels, to account for 
+     * antialiasing.
      */
-    TileElement rootTile;
+    static final int MARGIN = 1;
+
+    /**
+     * The set of modified nodes. Some may have been removed from the tree.
+     */
+    Hashtable dirtyNodes = new Hashtable();
 
     /**
      * The associated viewport, which defines the size of the rendering
@@ -66,9 +94,47 @@ public class DirtyAreaManager extends UpdateAdapter {
     Viewport vp;
 
     /**
-     * The minimal size, in both dimensions, for dirty area tiles.
+     * The size, in both dimensions, of dirty area tiles.
+     */
+    int tileSize = DEFAULT_TILE_SIZE;
+
+    /**
+     * Number of tile columns and rows in the grid.
+     */
+    int columns, rows;
+
+    /**
+     * Hit flags of the tiles of the grid, row by row.
+     */
+    boolean[] hitTiles;
+
+    /**
+     * Number of hit tiles in hitTiles.
+     */
+    int hitCount;
+
+    /**
+     * Start and end columns of the runs of the previous and current rows,
+     * and the rectangles they belong to.
+     */
+    int[] runStart, runEnd, prevRunStart, prevRunEnd;
+    TileElement[] runTiles, prevRunTiles;
+
+    /**
+     * Rectangles returned by getDirtyAreas. Reused from one frame to the
+     * next.
      */
-    int tileMinSize = DEFAULT_TILE_MIN_SIZE;
+    TileElement[] tilePool = new TileElement[8];
+
+    /**
+     * Number of rectangles used in tilePool.
+     */
+    int tileCount;
+
+    /**
+     * When true, the next call to getDirtyAreas repaints the whole area.
+     */
+    boolean fullRepaint = true;
 
     /**
      * Width of the viewport last time it was painted.
@@ -85,6 +151,20 @@ public class DirtyAreaManager extends UpdateAdapter {
      */
     RenderGraphics lastRG;
 
+    /**
+     * The dirty areas painted by the last call to refresh.
+     */
+    TileElement lastDirtyAreas;
+
+    /**
+     * Statistics: dirty area of the last frame and total dirty and 
+     * viewport areas, in pixels, and number of frames.
+     */
+    int lastDirtyArea;
+    long totalDirtyArea;
+    long totalArea;
+    int frameCount;
+
     /**
      * @param vp the associated viewport.
      */
@@ -102,25 +182,31 @@ public class DirtyAreaManager extends UpdateAdapter {
 
         this.vp = vp;
 
-        // Reset the lastWidth and lastHeight values to force a full repaint
-        // on the first getDirtyAreas call.
-        lastWidth = -1;
-        lastHeight = -1;
+        // Force a full repaint on the next getDirtyAreas call.
+        fullRepaint = true;
     }
 
     /**
-     * @param tileMinSize the minimal size for a rendering tile.
+     * @param tileSize the size of the grid tiles.
      */
-    public void setTileMinSize(final int tileMinSize) {
-        if (tileMinSize < 1) {
+    public void setTileSize(final int tileSize) {
+        if (tileSize < 1) {
             throw new IllegalArgumentException();
         }
 
-        this.tileMinSize = tileMinSize;
+        this.tileSize = tileSize;
         lastWidth = -1;
         lastHeight = -1;
     }
 
+    /**
+     * Marks the whole area as dirty, for changes which are not tracked by
+     * nodes, such as the clear paint.
+     */
+    public void markAllDirty() {
+        fullRepaint = true;
+    }
+
     // =========================================================================
     // UpdateAdapter extension
     // =========================================================================
@@ -132,8 +218,8 @@ public class DirtyAreaManager extends UpdateAdapter {
      */
     public void nodeInserted(ModelNode node) {
         // We only keep track of nodes which actually have a rendering.
-        if (!dirtyNodes.contains(node) && node.hasNodeRendering()) {
-            dirtyNodes.addElement(node);
+        if (node.hasNodeRendering()) {
+            dirtyNodes.put(node, node);
         }
     }
 
@@ -143,9 +229,7 @@ public class DirtyAreaManager extends UpdateAdapter {
      * @param node the node which is about to be modified
      */
     public void modifyingNodeRendering(ModelNode node) {
-        if (!dirtyNodes.contains(node)) {
-            dirtyNodes.addElement(node);
-        }
+        dirtyNodes.put(node, node);
     }
 
     // =========================================================================
@@ -156,62 +240,71 @@ public class DirtyAreaManager extends UpdateAdapter {
      * It is the responsibility of the dirty area manager to compute the list
      * of dirty areas which need to be re-painted. The minimum includes the
      * area covered by the modified node's old and new bounds. For efficiency
-     * purposes, the implementation may collapse the rectangles into a few ones.
+     * purposes, the implementation collapses the rectangles into a few ones.
      *
      * @param rg the RenderGraphics for which dirty areas are queried. The first
      *        tile a RenderGraphics is passed to this method, the full area is 
      *        considered dirty.
      * @return the set of rectangles to render, based on the 
-     *         list of node whose rendering has changed.
+     *         list of node whose rendering has changed, or null if
+     *         nothing has to be rendered. The rectangles are reused by the
+     *         next call.
      */
     public TileElement getDirtyAreas(RenderGraphics rg) {
         int vw = vp.width;
         int vh = vp.height;
+        tileCount = 0;
 
         if (lastWidth != vw || lastHeight != vh) {
-            // System.err.println(">>>>>>> lastWidth was : " + lastWidth 
-            //                      + " lastHeight was " + lastHeight);
-            // System.err.println(">>>>>>> new width is  : " + vw 
-            //                      + " new height is " + vh);
-
             lastWidth = vw;
             lastHeight = vh;
-            if (vw >= (2 * tileMinSize) 
-                && 
-                vh >= (2 * tileMinSize)) {
-                rootTile = new TileQuadrant(null, tileMinSize, 0, 0, vw, vh);
-            } else {
-                rootTile = new TileElement(null, 0, 0, vw, vh);
-            }
+            columns = (vw + tileSize - 1) / tileSize;
+            rows = (vh + tileSize - 1) / tileSize;
+            hitTiles = new boolean[columns * rows];
+            runStart = new int[columns];
+            runEnd = new int[columns];
+            runTiles = new TileElement[columns];
+            prevRunStart = new int[columns];
+            prevRunEnd = new int[columns];
+            prevRunTiles = new TileElement[columns];
 
             // This is the first rendering or the viewport dimensions have
             // changed.  Everything is dirty. We need to repaint the full
             // canvas.
-            dirtyNodes.removeAllElements();
-            lastRG = rg;
-            return rootTile;
+            fullRepaint = true;
         }
 
         // If it is the first time we render in this RenderGraphics, we consider
         // the complete area dirty.
         if (lastRG != rg) {
-            System.err.println(">>>> RenderGraphics changed");
             lastRG = rg;
-            dirtyNodes.removeAllElements();
-            return rootTile;
+            fullRepaint = true;
+        }
+
+        if (fullRepaint || columns == 0 || rows == 0) {
+            fullRepaint = false;
+            dirtyNodes.clear();
+            if (vw <= 0 || vh <= 0) {
+                return null;
+            }
+            TileElement t = newTile();
+            t.setTile(0, 0, vw, vh);
+            return t;
         }
 
         // Unmark all areas
-        rootTile.clear();
+        for (int i = 0; i < hitTiles.length; i++) {
+            hitTiles[i] = false;
+        }
+        hitCount = 0;
 
-        final int nn = dirtyNodes.size();
-        Tile nb = null;
-        ModelNode n = null;
-        for (int i = 0; i < nn && !rootTile.hit; i++) {
-            n = (ModelNode) dirtyNodes.elementAt(i);
+        final int nTiles = hitTiles.length;
+        Enumeration e = dirtyNodes.elements();
+        while (e.hasMoreElements() && hitCount < nTiles) {
+            ModelNode n = (ModelNode) e.nextElement();
 
             // First, check the previous rendering's tile.
-            rootTile.checkHit(n.getLastRenderedTile());
+            hit(n.getLastRenderedTile());
 
             // Clear the last rendered tile so that the area is not
             // unnecessarily repainted in the future, in case this node is, for
@@ -221,13 +314,141 @@ public class DirtyAreaManager extends UpdateAdapter {
             // Now, compute the current rendering tile and check the 
             // area it hits.
             if (n.parent != null && (n.canRenderState == 0)) {
-                rootTile.checkHit(n.getRenderingTile());
+                hit(n.getRenderingTile());
             } 
         }
 
-        dirtyNodes.removeAllElements();
+        dirtyNodes.clear();
+
+        if (hitCount == 0) {
+            return null;
+        }
+        if (hitCount == nTiles) {
+            TileElement t = newTile();
+            t.setTile(0, 0, vw, vh);
+            return t;
+        }
+
+        return mergeHitTiles(vw, vh);
+    }
+
+    /**
+     * Marks the grid tiles hit by a node tile.
+     *
+     * @param t the node tile. May be null.
+     */
+    void hit(final Tile t) {
+        if (t == null || t.maxX < t.x || t.maxY < t.y) {
+            return;
+        }
+
+        int c0 = Math.max(t.x - MARGIN, 0) / tileSize;
+        int r0 = Math.max(t.y - MARGIN, 0) / tileSize;
+        int c1 = Math.min(t.maxX + MARGIN, lastWidth - 1);
+        int r1 = Math.min(t.maxY + MARGIN, lastHeight - 1);
+        if (c1 < 0 || r1 < 0) {
+            return;
+        }
+        c1 /= tileSize;
+        r1 /= tileSize;
+
+        for (int r = r0; r <= r1; r++) {
+            int i = r * columns + c0;
+            for (int c = c0; c <= c1; c++, i++) {
+                if (!hitTiles[i]) {
+                    hitTiles[i] = true;
+                    hitCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the hit tiles into rectangles: consecutive hit tiles on a row
+     * form a run, and a run extends the rectangle of the previous row if it
+     * has the same span.
+     *
+     * @return the chained list of rectangles.
+     */
+    TileElement mergeHitTiles(final int vw, final int vh) {
+        TileElement head = null;
+        int prevRuns = 0;
+        for (int r = 0; r < rows; r++) {
+            int y = r * tileSize;
+            int maxY = Math.min(y + tileSize, vh) - 1;
+            int runs = 0;
+            int prev = 0;
+            int c = 0;
+            int i = r * columns;
+            while (c < columns) {
+                if (!hitTiles[i + c]) {
+                    c++;
+                    continue;
+                }
+                int start = c;
+                while (c < columns && hitTiles[i + c]) {
+                    c++;
+                }
+                int end = c - 1;
+
+                // Look for a run with the same span on the previous row
+                while (prev < prevRuns && prevRunStart[prev] < start) {
+                    prev++;
+                }
+                TileElement t;
+                if (prev < prevRuns 
+                    && prevRunStart[prev] == start 
+                    && prevRunEnd[prev] == end) {
+                    t = prevRunTiles[prev];
+                    t.maxY = maxY;
+                } else {
+                    t = newTile();
+                    t.x = start * tileSize;
+                    t.y = y;
+                    t.maxX = Math.min((end + 1) * tileSize, vw) - 1;
+                    t.maxY = maxY;
+                    t.next = head;
+                    head = t;
+                }
 
-        return rootTile.getHitTiles(null); 
+                runStart[runs] = start;
+                runEnd[runs] = end;
+                runTiles[runs] = t;
+                runs++;
+            }
+
+            // The runs of this row become the previous ones
+            int[] tmp = prevRunStart;
+            prevRunStart = runStart;
+            runStart = tmp;
+            tmp = prevRunEnd;
+            prevRunEnd = runEnd;
+            runEnd = tmp;
+            TileElement[] tmpTiles = prevRunTiles;
+            prevRunTiles = runTiles;
+            runTiles = tmpTiles;
+            prevRuns = runs;
+        }
+        return head;
+    }
+
+    /**
+     * @return a rectangle from the pool.
+     */
+    TileElement newTile() {
+        if (tileCount == tilePool.length) {
+            TileElement[] newPool = new TileElement[tileCount * 2];
+            System.arraycopy(tilePool, 0, newPool, 0, tileCount);
+            tilePool = newPool;
+        }
+        TileElement t = tilePool[tileCount];
+        if (t == null) {
+            t = new TileElement();
+            tilePool[tileCount] = t;
+        }
+        tileCount++;
+        t.next = null;
+        return t;
     }
 
     /**
@@ -242,237 +463,92 @@ public class DirtyAreaManager extends UpdateAdapter {
                         final RGB clearPaint) {
         TileElement dirtyAreaList = getDirtyAreas(rg);
         TileElement curTile = dirtyAreaList;
+        int dirtyArea = 0;
         int nTiles = 0;
         while (curTile != null) {
-            // System.err.println("Painting tile : " + curTile 
-            //         + " in thread " + Thread.currentThread());
-            // System.err.println("clearing with paint : " + clearPaint);
-            // System.err.println("Painting on buffer of size : " 
-            //         + rg.bi.getWidth() + "/" + rg.bi.getHeight());
+            int w = curTile.maxX - curTile.x + 1;
+            int h = curTile.maxY - curTile.y + 1;
             rg.setRenderingTile(curTile);
-            rg.clearRect(curTile.x, 
-                         curTile.y, 
-                         curTile.maxX - curTile.x + 1, 
-                         curTile.maxY - curTile.y + 1,
-                         clearPaint);
+            rg.clearRect(curTile.x, curTile.y, w, h, clearPaint);
             mn.paint(rg);
+            dirtyArea += w * h;
+            nTiles++;
             curTile = curTile.next;
-
-            /*
-            javax.swing.JOptionPane.showMessageDialog(
-                    null, 
-                    "Current Offscreen : " + rg.bi.getWidth() + " / " 
-                        + rg.bi.getHeight(), 
-                    "Debug",
-                    0, 
-                    new javax.swing.ImageIcon(rg.bi));
-            */
         }
-    }
-
-    public static class TileElement extends Tile {
-        /**
-         * Parent tile.
-         */
-        TileQuadrant parent;
-
-        /**
-         * Boolean marker showing the tile is fully hit.
-         * If true, it means the tile and all its children have been hit.
-         */
-        boolean hit;
-
-        /**
-         * The next tile in the rendering tile chain. Tiles are chained to 
-         * describe the list of rendering areas.
-         */
-        public TileElement next;
-
-        /**
-         * @param parent the parent TileQuadrant.
-         * @param x the tile's origin along the x-axis. Should be positive or 
-         *        zero.
-         * @param y the tile's origin along the y-axis. Should be positive or 
-         *        zero.
-         * @param width the tile's width
-         * @param height the tile's height
-         */
-        TileElement(final TileQuadrant parent, 
-                    final int x,
-                    final int y,
-                    final int width,
-                    final int height) {
-            this.parent = parent;
-            if (x < 0 || y < 0) {
-                throw new IllegalArgumentException();
-            }
-            setTile(x, y, width, height);
-        }
-
-        /**
-         * Checks if this tile is hit by the input tile. This must set the hit
-         * flag to true if this tile, and all its children (if any) are hit or
-         * have been hit by previous calls to this method.
-         *
-         * @param t the tile to check against.
-         */
-        void checkHit(final Tile t) {
-            if (t == null) {
-                return;
-            }
-
-            if (isHit(t)) {
-                hit = true;
-                if (parent != null) {
-                    parent.notifyTileHit(this);
-                }
-            }
-        }
-
-        /**
-         * Clears the hit flag.
-         */
-        public void clear() {
-            hit = false;
-            next = null;
-        }
-
-        /**
-         * @param rt the TileElement to chain to.
-         * @return the dirty area, i..e. the chained list of hit children.
-         */
-        TileElement getHitTiles(TileElement rt) {
-            if (hit) {
-                next = rt;
-                return this;
-            }
-
-            return rt;
+        rg.setRenderingTile(null);
+        lastDirtyAreas = dirtyAreaList;
+
+        int area = lastWidth * lastHeight;
+        lastDirtyArea = dirtyArea;
+        totalDirtyArea += dirtyArea;
+        totalArea += area;
+        frameCount++;
+
+        if (TRACE) {
+            System.out.println("[DEBUG] DirtyAreaManager: frame " + frameCount
+                               + ": " + nTiles + " areas, " + dirtyArea 
+                               + " pixels (" + percent(dirtyArea, area) 
+                               + "%), average " + getAverageCoverage() + "%");
         }
     }
 
-    public static class TileQuadrant extends TileElement {
-        /**
-         * Children tiles.
-         */
-        TileElement[] children;
-
-        /**
-         * @param parentTile the parent TileQuadrant
-         * @param tileMinSize the minimal size for tiles.
-         * @param x the tile's origin along the x-axis
-         * @param y the tile's origin along the y-axis
-         * @param width the tile's width
-         * @param height the tile's height
-         */
-        public TileQuadrant(final TileQuadrant parent, 
-                            final int tileMinSize,
-                            final int x,
-                            final int y,
-                            final int width,
-                            final int height) {
-            super(parent, x, y, width, height);
-
-            if (width < (2 * tileMinSize)
-                ||
-                height < (2 * tileMinSize)) {
-                throw new IllegalArgumentException();
-            }
+    /**
+     * @return the areas painted by the last call to refresh, or null if
+     *         nothing was painted. The list is only valid until the next 
+     *         call to refresh.
+     */
+    public TileElement getLastDirtyAreas() {
+        return lastDirtyAreas;
+    }
 
-            int cw = width / 2;
-            int ch = height / 2;
-
-            if (((width / 4) < tileMinSize)
-                || 
-                ((height / 4) < tileMinSize)) {
-                // We should not subdivide any more because this quadrant's tile
-                // cannot be subdivided without going below the minimal tile
-                // size.
-                children = new TileElement[4];
-                children[0] = new TileElement(this, x, y, cw, ch);
-                children[1] = new TileElement(this, x + cw, y, width - cw, ch);
-                children[2] = new TileElement(this, x, y + ch, cw, height - ch);
-                children[3] = new TileElement(this, x + cw, y + ch, width - cw,
-                                              height - ch);
-            } else {
-                children = new TileQuadrant[4];
-                children[0] = new TileQuadrant(this, tileMinSize, x, y, cw, ch);
-                children[1] = new TileQuadrant(this, tileMinSize, x + cw, y, 
-                                               width - cw, ch);
-                children[2] = new TileQuadrant(this, tileMinSize, x, y + ch, 
-                                               cw, height - ch);
-                children[3] = new TileQuadrant(this, tileMinSize, x + cw, 
-                                               y + ch, width - cw, height - ch);
-            }
-        }
+    /**
+     * @return the number of pixels painted by the last call to refresh.
+     */
+    public int getLastDirtyArea() {
+        return lastDirtyArea;
+    }
 
-        /**
-         * Checks if this tile is hit by the input tile.
-         *
-         * @param t the tile to check against.
-         */
-        void checkHit(final Tile t) {
-            if (t == null) {
-                return;
-            }
+    /**
+     * @return the percentage of the viewport painted by the last call to
+     *         refresh.
+     */
+    public int getLastCoverage() {
+        return percent(lastDirtyArea, lastWidth * lastHeight);
+    }
 
-            if (hit) {
-                // The tile is already hit, no need to check
-                // any further.
-                return;
-            }
+    /**
+     * @return the percentage of the viewport painted by the calls to 
+     *         refresh since the statistics were reset.
+     */
+    public int getAverageCoverage() {
+        return (totalArea == 0) ? 0 : (int) ((totalDirtyArea * 100) / totalArea);
+    }
 
-            if (isHit(t)) {
-                for (int i = 0; i < 4; i++) {
-                    children[i].checkHit(t);
-                }
-            }
-        }
+    /**
+     * @return the number of calls to refresh since the statistics were reset.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
 
-        /**
-         * Called by a child tile when it is hit.
-         */
-        void notifyTileHit(Tile child) {
-            // Simply check if all the quadrants have been hit. If so, notify 
-            // parent in turn.
-            if (children[0].hit && 
-                children[1].hit &&
-                children[2].hit &&
-                children[3].hit) {
-                hit = true;
-                if (parent != null) {
-                    parent.notifyTileHit(this);
-                }
-            }
-        }
+    public void resetStatistics() {
+        totalDirtyArea = 0;
+        totalArea = 0;
+        frameCount = 0;
+    }
 
-        /**
-         * Clears the hit flag.
-         */
-        public void clear() {
-            super.clear();
-            children[0].clear();
-            children[1].clear();
-            children[2].clear();
-            children[3].clear();
-        }
+    private static int percent(final int value, final int total) {
+        return (total <= 0) ? 0 : (int) (((long) value * 100) / total);
+    }
 
+    /**
+     * A dirty area. Dirty areas are chained to describe the list of areas
+     * to repaint.
+     */
+    public static class TileElement extends Tile {
         /**
-         * @param rt the TileElement to chain to.
-         * @return the dirty area, i..e. the chained list of hit children.
+         * The next tile in the rendering tile chain.
          */
-        TileElement getHitTiles(TileElement rt) {
-            if (hit) {
-                next = rt;
-                return this;
-            }
-
-            for (int i = 0; i < 4; i++) {
-                rt = children[i].getHitTiles(rt);
-            }
-
-            return rt;
-        }
-
+        public TileElement next;
     }
 }
@@ -180,6 +180,14 @@ public class ShapeNode
         rg.draw(path);
     }
 
+    /**
+     * @return true, the path is filled and drawn with fill(Path) and
+     *         draw(Path).
+     */
+    protected boolean usesCoverageCache() {
+        return true;
+    }
+
     /**
      * @param x the hit point coordinate along the x-axis, in user space.
      * @param y the hit point coordinate along the y-axis, in user space.
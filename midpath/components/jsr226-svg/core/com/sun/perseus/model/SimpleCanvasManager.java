@@ -334,6 +334,11 @@ public class SimpleCanvasManager implements UpdateListener, RunnableHandler {
         synchronized (lock) {
             if (DirtyAreaManager.ON) {
                 dirtyAreaManager.refresh(documentNode, rg, clearPaint);
+                if (dirtyAreaManager.getLastDirtyAreas() == null) {
+                    // Nothing changed on the canvas, the previous update
+                    // is still valid.
+                    return;
+                }
             } else {
                 rg.setRenderingTile(null);
                 rg.setFill(clearPaint);
@@ -360,9 +365,19 @@ public class SimpleCanvasManager implements UpdateListener, RunnableHandler {
         }
 
         this.clearPaint = clearPaint;
+        dirtyAreaManager.markAllDirty();
         needRepaint = true;
     }
 
+    /**
+     * @return the <code>DirtyAreaManager</code> which tracks the areas
+     *         updated by each paint, when <code>DirtyAreaManager.ON</code>
+     *         is true.
+     */
+    public DirtyAreaManager getDirtyAreaManager() {
+        return dirtyAreaManager;
+    }
+
     /**
      * Turns off any rendering updates.
      */
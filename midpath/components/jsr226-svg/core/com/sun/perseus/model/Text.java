@@ -29,6 +29,7 @@ import org.w3c.dom.DOMException;
 import org.w3c.dom.svg.SVGRect;
 
 import com.sun.perseus.j2d.Box;
+import com.sun.perseus.j2d.CoverageCache;
 import com.sun.perseus.j2d.PaintServer;
 import com.sun.perseus.j2d.RenderGraphics;
 import com.sun.perseus.j2d.TextProperties;
@@ -92,6 +93,12 @@ public class Text extends Group {
      */         
     protected float[] helperDashArray;
 
+    /**
+     * The coverage masks of the glyphs of the last paint of this node,
+     * created on first paint.
+     */
+    protected CoverageCache coverageCache;
+
     /**
      * Constructor.
      *
@@ -559,6 +566,14 @@ public class Text extends Group {
         }
         rg.setPaintTarget(this);
         rg.setPaintTransform(tx);
+
+        // Proxies paint with other properties and don't share the masks
+        if (trc == this && CoverageCache.isEnabled()) {
+            if (coverageCache == null) {
+                coverageCache = new CoverageCache();
+            }
+            rg.setCoverageCache(coverageCache);
+        }
         
         rg.setFontSize(trc.getFontSize());
         rg.setTextAnchor(trc.getTextAnchor());
@@ -610,6 +625,8 @@ public class Text extends Group {
             rg.setStrokeMiterLimit(trc.getStrokeMiterLimit());
             drawText(rg, tx, fc);
         }
+
+        rg.setCoverageCache(null);
     }
 
     /**
@@ -661,6 +678,16 @@ public class Text extends Group {
         }
     }
 
+    /**
+     * The glyph masks are kept, as they don't depend on the paint.
+     */
+    protected void modifyingNodeRendering() {
+        if (coverageCache != null) {
+            coverageCache.invalidate();
+        }
+        super.modifyingNodeRendering();
+    }
+
     /**
      * Simply notifies the RenderingManager.
      */
@@ -28,8 +28,14 @@ package com.sun.pisces;
 
 /**
  * An object used to cache pre-rendered complex paths.
+ * <p>
+ * The cache holds the run-length encoded coverage mask of a path, row by
+ * row, in device coordinates. It doesn't depend on the paint, so it can be
+ * blitted again with another color or opacity, and it is clipped when it
+ * is blitted.
  *
- * @see PiscesRenderer#render
+ * @see PiscesRenderer#renderPath
+ * @see PiscesRenderer#beginRenderingToCache
  */
 public final class PiscesCache {
 
@@ -45,6 +51,9 @@ public final class PiscesCache {
     int alphaHeight = 0;
 
     int[] minTouched = null;
+
+    // Device y coordinate of each row
+    int[] rowY = null;
     
     private PiscesCache() {}
 
@@ -73,17 +82,21 @@ public final class PiscesCache {
             int len = Math.max(newHeight, MIN_TOUCHED_LEN);
             minTouched = new int[len];
             rowOffsetsRLE = new int[len];
+            rowY = new int[len];
         } else if (minTouched.length < newHeight) {
             int len = Math.max(newHeight,
                                (int)(minTouched.length*TOUCHED_FACTOR));
             int[] newMinTouched = new int[len];
             int[] newRowOffsetsRLE = new int[len];
+            int[] newRowY = new int[len];
             System.arraycopy(minTouched, 0, newMinTouched, 0,
                              minTouched.length);
             System.arraycopy(rowOffsetsRLE, 0, newRowOffsetsRLE, 0,
                              rowOffsetsRLE.length);
+            System.arraycopy(rowY, 0, newRowY, 0, rowY.length);
             minTouched = newMinTouched;
             rowOffsetsRLE = newRowOffsetsRLE;
+            rowY = newRowY;
         }
     }
 
@@ -93,10 +106,16 @@ public final class PiscesCache {
         rowAARLE[alphaRLELength++] = (byte)runLen;
     }
 
-    void addRow(int minX, int offset) {
+    /**
+     * @param y the device y coordinate of the row
+     * @param minX the device x coordinate of the first pixel of the row
+     * @param offset the offset of the runs of the row in rowAARLE
+     */
+    void addRow(int y, int minX, int offset) {
         reallocRowInfo(alphaHeight + 1);
         minTouched[alphaHeight] = minX;
         rowOffsetsRLE[alphaHeight] = offset;
+        rowY[alphaHeight] = y;
         ++alphaHeight;
     }
 
@@ -104,6 +123,53 @@ public final class PiscesCache {
         return isValid;
     }
 
+    /**
+     * Marks the cache as invalid, keeping its buffers so that it can be
+     * filled again without reallocation.
+     */
+    public synchronized void invalidate() {
+        alphaWidth = alphaHeight = 0;
+        alphaRLELength = 0;
+        isValid = false;
+    }
+
+    /**
+     * Shrinks the buffers to the size of the cached data.
+     */
+    public synchronized void trim() {
+        if (rowAARLE != null && rowAARLE.length > alphaRLELength) {
+            byte[] newRowAARLE = new byte[alphaRLELength];
+            System.arraycopy(rowAARLE, 0, newRowAARLE, 0, alphaRLELength);
+            rowAARLE = newRowAARLE;
+        }
+        if (minTouched != null && minTouched.length > alphaHeight) {
+            int[] newMinTouched = new int[alphaHeight];
+            int[] newRowOffsetsRLE = new int[alphaHeight];
+            int[] newRowY = new int[alphaHeight];
+            System.arraycopy(minTouched, 0, newMinTouched, 0, alphaHeight);
+            System.arraycopy(rowOffsetsRLE, 0, newRowOffsetsRLE, 0,
+                             alphaHeight);
+            System.arraycopy(rowY, 0, newRowY, 0, alphaHeight);
+            minTouched = newMinTouched;
+            rowOffsetsRLE = newRowOffsetsRLE;
+            rowY = newRowY;
+        }
+    }
+
+    /**
+     * @return the number of bytes used by the buffers of the cache.
+     */
+    public synchronized int getMemorySize() {
+        int size = 0;
+        if (rowAARLE != null) {
+            size += rowAARLE.length;
+        }
+        if (minTouched != null) {
+            size += 3*4*minTouched.length;
+        }
+        return size;
+    }
+
     public synchronized void dispose() {
         alphaWidth = alphaHeight = 0;
 
@@ -112,6 +178,7 @@ public final class PiscesCache {
 
         minTouched = null;
         rowOffsetsRLE = null;
+        rowY = null;
 
         isValid = false;
     }
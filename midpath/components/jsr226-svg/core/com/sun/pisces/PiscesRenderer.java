@@ -137,6 +137,9 @@ public final class PiscesRenderer extends PathSink {
 	int bbMaxX = Integer.MAX_VALUE;
 	int bbMaxY = Integer.MAX_VALUE;
 
+	// Cache being filled by beginRenderingToCache, if any
+	private PiscesCache renderingCache = null;
+
 	/**
 	 * Creates a renderer that will write into a given pixel array.
 	 *
@@ -623,6 +626,46 @@ public final class PiscesRenderer extends PathSink {
 
 	private void myEndRendering() {
 		rdr.endRendering();
+		if (renderingCache != null) {
+			rdr.setCache(null);
+			renderingCache.trim();
+			renderingCache = null;
+		}
+	}
+
+	/**
+	 * Begins the rendering of path data into a cache only.  Nothing is
+	 * drawn: the coverage mask of the path, up to the next call to
+	 * <code>endRendering</code>, is stored in <code>cache</code>.  It is
+	 * clipped to the destination image bounds but not to the current
+	 * clip rectangle, so that it can be drawn later with any paint and
+	 * clip using <code>renderFromCache</code>.
+	 */
+	public void beginRenderingToCache(int windingRule, PiscesCache cache) {
+		if (enableLogging) {
+			if (logStream != null) {
+				logStream.println("pr.beginRenderingToCache(" + windingRule + ", cache);");
+			}
+		}
+		inSubpath = false;
+		cache.invalidate();
+		renderingCache = cache;
+		rdr.setCache(cache, false);
+		rdr.beginRendering(0, 0, width, height, windingRule);
+	}
+
+	/**
+	 * Draws the coverage mask stored in a valid cache with the current
+	 * paint, clipped to the current clip rectangle.
+	 */
+	public void renderFromCache(PiscesCache cache) {
+		if (enableLogging) {
+			if (logStream != null) {
+				logStream.println("pr.renderFromCache(cache);");
+			}
+		}
+		myBeginRendering(RendererBase.WIND_NON_ZERO);
+		rdr.renderFromCache(cache);
 	}
 	
 
@@ -731,7 +774,7 @@ public final class PiscesRenderer extends PathSink {
 	public void renderPath(int numCommands, byte[] commands, float[] coordsXY, int windingRule, PiscesCache cache) {
 		if (cache != null) {
 			if (cache.isValid()) {
-				rdr.renderFromCache(cache);
+				renderFromCache(cache);
 			} else {
 				rdr.setCache(cache);
 				renderPath(numCommands, commands, coordsXY, windingRule, true);
@@ -61,6 +61,9 @@ public class Renderer extends RendererBase {
     // Cache to store RLE-encoded coverage mask of the current primitive
     PiscesCache cache = null;
 
+    // If false, the current primitive is only stored in the cache
+    private boolean cacheRendering = true;
+
     // Bounds of the drawing region, at S15.16 precsion
     private int boundsMinX, boundsMinY, boundsMaxX, boundsMaxY;
 
@@ -405,8 +408,10 @@ public class Renderer extends RendererBase {
             return;
         }
 
-        // Special case for filling a single rect with a flat, opaque color
-        if (paintMode == PAINT_FLAT_COLOR &&
+        // Special case for filling a single rect with a flat, opaque color.
+        // Not used when caching, the coverage mask would not be computed.
+        if (cache == null &&
+            paintMode == PAINT_FLAT_COLOR &&
             calpha == 255 &&
             edgeIdx == 10 &&
             edges[0] == edges[2] &&
@@ -592,9 +597,9 @@ public class Renderer extends RendererBase {
             this.rowAA = new byte[bufLen];
 
             this.paintBuffer = new int[bufLen];
-            this.paintBufferOffset = 0;
-            this.paintBufferStride = width;
 	}
+        this.paintBufferOffset = 0;
+        this.paintBufferStride = width;
 
 	// Mask to determine the relevant bit of the crossing sum
 	// 0x1 if EVEN_ODD, all bits if NON_ZERO
@@ -747,14 +752,12 @@ public class Renderer extends RendererBase {
     }
     
     private void emitRow(int minX, int maxX, boolean forceOutput) {
-        // Copy rowAA data into the cache if one is present
+        // Copy rowAA data into the cache if one is present. Rows are
+        // stored in device coordinates as the strips of a primitive
+        // may have different origins and widths.
         if (cache != null) {
-            if (cache.alphaWidth == 0) {
+            if (alphaWidth > cache.alphaWidth) {
                 cache.alphaWidth = alphaWidth;
-            } else {
-                if (alphaWidth != cache.alphaWidth) {
-                    throw new IllegalStateException("alphaWidth changed!");
-                }
             }
 
             int len = -1;
@@ -781,10 +784,12 @@ public class Renderer extends RendererBase {
                 if (runLen > 0) {
                     cache.addRLERun(startVal, runLen);
                 }
-                cache.addRLERun((byte)0, 0);
             }
+            // Empty rows have only the terminating run
+            cache.addRLERun((byte)0, 0);
 
-            cache.addRow(minX, dstIdx);
+            cache.addRow(currY + rowNum,
+                         (maxX >= minX) ? currX + minX : currX, dstIdx);
         }
 
         // Record values for later blitting
@@ -796,7 +801,9 @@ public class Renderer extends RendererBase {
         rowAAOffset += alphaWidth;
         rowNum++;
         if (forceOutput || rowNum == NUM_ALPHA_ROWS) {
-            emitRows(rowNum);
+            if (cacheRendering) {
+                emitRows(rowNum);
+            }
             clearAlpha(rowAA, 0,
                        alphaWidth, rowNum,
                        minTouched, maxTouched, rowOffsets);
@@ -834,75 +841,132 @@ public class Renderer extends RendererBase {
     }
 
     public void setCache(PiscesCache cache) {
+        setCache(cache, true);
+    }
+
+    /**
+     * @param cache the cache where the coverage mask of the next
+     * primitives is stored, or null.
+     * @param render if false, the primitives are only stored in the
+     * cache and nothing is drawn.
+     */
+    public void setCache(PiscesCache cache, boolean render) {
         this.cache = cache;
+        this.cacheRendering = (cache == null) || render;
     }
 
+    /**
+     * Blits a coverage mask stored in a cache with the current paint,
+     * clipped to the bounds given to the last call to beginRendering.
+     */
     public void renderFromCache(PiscesCache cache) {
-        this.alphaWidth = cache.alphaWidth;
         int alphaHeight = cache.alphaHeight;
+        int x0 = cache.bboxX0;
 
-        int bufLen = NUM_ALPHA_ROWS*alphaWidth;
-	if (this.rowAA == null || this.rowAA.length < bufLen) {
+        // Update the bounding box for possible retrieval via getBoundingBox
+        this.bboxX0 = cache.bboxX0;
+        this.bboxY0 = cache.bboxY0;
+        this.bboxX1 = cache.bboxX1;
+        this.bboxY1 = cache.bboxY1;
+
+        if (alphaHeight == 0 || cache.bboxX1 < x0) {
+            return;
+        }
+
+        int alphaWidth = cache.bboxX1 - x0 + 1;
+        this.alphaWidth = alphaWidth;
+        int bufLen = NUM_ALPHA_ROWS*alphaWidth + 1;
+        if (this.rowAA == null || this.rowAA.length < bufLen) {
             this.rowAA = new byte[bufLen];
+
+            this.paintBuffer = new int[bufLen];
         }
+        this.paintBufferOffset = 0;
+        this.paintBufferStride = alphaWidth;
+
+        int clipMinX = boundsMinX >> 16;
+        int clipMinY = boundsMinY >> 16;
+        int clipMaxX = (boundsMaxX >> 16) - 1;
+        int clipMaxY = (boundsMaxY >> 16) - 1;
 
         // Decode run-length encoded alpha mask data
         // The data for row j begins at cache.rowOffsetsRLE[j]
         // and is encoded as a set of 2-byte pairs (val, runLen)
         // terminated by a (0, 0) pair.
 
-        int currX = cache.bboxX0;
-        int currY = cache.bboxY0;
-        currImageOffset = imageOffset +
-            currY*imageScanlineStride +
-            currX*imagePixelStride;
-        
+        this.currX = x0;
+        byte[] rle = cache.rowAARLE;
+        int rows = 0;
         int idx = 0;
+        int nextY = 0;
         for (int j = 0; j < alphaHeight; j++) {
-            int jj = j & (NUM_ALPHA_ROWS - 1);
+            int y = cache.rowY[j];
+            if (y < clipMinY || y > clipMaxY) {
+                continue;
+            }
 
-            rowOffsets[jj] = idx - cache.minTouched[j];
+            // Blit the decoded rows when they are not contiguous with
+            // this one, or when NUM_ALPHA_ROWS rows have been decoded
+            if (rows > 0 && (y != nextY || rows == NUM_ALPHA_ROWS)) {
+                emitRows(rows);
+                clearDecodedAlpha(idx);
+                rows = 0;
+                idx = 0;
+            }
+            if (rows == 0) {
+                this.currY = y;
+                this.currImageOffset = imageOffset +
+                    y*imageScanlineStride +
+                    x0*imagePixelStride;
+            }
 
             int pos = cache.rowOffsetsRLE[j];
-            int len = 0;
-
+            int start = idx;
             while (true) {
-                byte val = cache.rowAARLE[pos];
-                int runLen = cache.rowAARLE[pos + 1] & 0xff;
+                byte val = rle[pos];
+                int runLen = rle[pos + 1] & 0xff;
                 if (runLen == 0) {
                     break;
                 }
                 for (int i = 0; i < runLen; i++) {
                     rowAA[idx++] = val;
                 }
-                len += runLen;
                 pos += 2;
             }
 
-            minTouched[jj] = cache.minTouched[j];
-            if (len == 0) {
-                // Empty rows have minX = Integer.MAX_VALUE,
-                // maxX = Integer.MIN_VALUE
-                maxTouched[jj] = Integer.MIN_VALUE;
+            int rowMinX = cache.minTouched[j] - x0;
+            int minX = Math.max(cache.minTouched[j], clipMinX) - x0;
+            int maxX = Math.min(cache.minTouched[j] + idx - start - 1,
+                                clipMaxX) - x0;
+            rowOffsets[rows] = start - rowMinX;
+            if (maxX >= minX) {
+                minTouched[rows] = minX;
+                maxTouched[rows] = maxX;
             } else {
-                maxTouched[jj] = cache.minTouched[j] + len - 1;
+                // Empty or clipped row
+                minTouched[rows] = 0;
+                maxTouched[rows] = -1;
             }
 
-            // Perform blitting after NUM_ALPHA_ROWS rows have
-            // been decoded, or when we reach the last row
-            if ((jj == NUM_ALPHA_ROWS - 1) || (j == alphaHeight - 1)) {
-                emitRows(jj + 1);
-                currImageOffset += (jj + 1)*imageScanlineStride;
-                idx = 0;
-            }
+            nextY = y + 1;
+            rows++;
+        }
 
+        if (rows > 0) {
+            emitRows(rows);
+            clearDecodedAlpha(idx);
         }
+    }
 
-        // Update the bounding box for possible retrieval via getBoundingBox
-        this.bboxX0 = cache.bboxX0;
-        this.bboxY0 = cache.bboxY0;
-        this.bboxX1 = cache.bboxX1;
-        this.bboxY1 = cache.bboxY1;
+    /**
+     * The rasterizer accumulates coverage into rowAA and expects it to be
+     * cleared, so the rows decoded from a cache must not be left in it.
+     */
+    private void clearDecodedAlpha(int length) {
+        byte[] rowAA = this.rowAA;
+        for (int i = 0; i < length; i++) {
+            rowAA[i] = (byte)0;
+        }
     }
 
     // Edge list data
@@ -115,6 +115,8 @@ public abstract class RendererBase extends LineSink {
 
     public abstract void setCache(PiscesCache cache);
 
+    public abstract void setCache(PiscesCache cache, boolean render);
+
     public abstract void renderFromCache(PiscesCache cache);
 
 //     public abstract void drawImage(int imageType, Object data,
@@ -138,7 +138,12 @@ public abstract class ScalableGraphics  {
 
         if (DirtyAreaManager.ON) {
             dirtyAreaManager.setViewport(documentNode);
-            documentNode.setUpdateListener(dirtyAreaManager);
+            if (documentNode.getUpdateListener() != dirtyAreaManager) {
+                // Modifications made while another listener was set
+                // were not tracked.
+                dirtyAreaManager.markAllDirty();
+                documentNode.setUpdateListener(dirtyAreaManager);
+            }
         }
 
         rg.setRenderingQuality(qualityMode == RENDERING_QUALITY_HIGH);
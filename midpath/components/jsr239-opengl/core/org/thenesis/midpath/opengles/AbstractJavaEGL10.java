@@ -214,6 +214,11 @@ public abstract class AbstractJavaEGL10 implements EGL10 {
 			throwIAE(Errors.EGL_ATTRIBS_NOT_TERMINATED);
 		}
 		
+		// The Java renderer only draws in ARGB surfaces
+		if (imageGraphics.getSurface().isRGB565()) {
+			throwIAE(Errors.EGL_BAD_PIXMAP);
+		}
+		
 		JavaEGLSurface surface = new JavaEGLSurface(imageGraphics.getSurface().data, width, height);
 		
 		surface.setTarget(imageGraphics);
@@ -257,6 +262,11 @@ public abstract class AbstractJavaEGL10 implements EGL10 {
 			throwIAE(Errors.EGL_ATTRIBS_NOT_TERMINATED);
 		}
 		
+		// The Java renderer only draws in ARGB surfaces
+		if (imageGraphics.getSurface().isRGB565()) {
+			throwIAE(Errors.EGL_BAD_WINDOW_SURFACE);
+		}
+		
 		JavaEGLSurface surface = new JavaEGLSurface(imageGraphics.getSurface().data, width, height);
 
 		surface.setTarget(imageGraphics);
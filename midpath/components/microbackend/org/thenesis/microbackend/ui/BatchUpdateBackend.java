@@ -0,0 +1,33 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA  
+ */
+package org.thenesis.microbackend.ui;
+
+/**
+ * Implemented by backends which can push several damaged regions of a frame
+ * in a single call, e.g. to redraw the mouse cursor only once per frame.
+ */
+public interface BatchUpdateBackend {
+
+	/**
+	 * Updates several regions at once.
+	 * @param regions the regions, as (x, y, width, height) quadruples
+	 * @param regionCount the number of regions
+	 */
+	public void updateARGBPixels(int[] argbPixels, int[] regions, int regionCount);
+
+}
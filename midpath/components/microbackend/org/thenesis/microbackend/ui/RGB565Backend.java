@@ -0,0 +1,41 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA  
+ */
+package org.thenesis.microbackend.ui;
+
+/**
+ * Implemented by backends which can take 16 bpp RGB565 pixels directly,
+ * without a conversion from ARGB8888.
+ */
+public interface RGB565Backend {
+
+	/**
+	 * Returns true if RGB565 pixels can be pushed to the device without conversion.
+	 * Must be called after the backend has been opened.
+	 */
+	public boolean isRGB565Native();
+
+	public void updateRGB565Pixels(short[] rgb565Pixels, int x, int y, int width, int height);
+
+	/**
+	 * Updates several regions at once.
+	 * @param regions the regions, as (x, y, width, height) quadruples
+	 * @param regionCount the number of regions
+	 */
+	public void updateRGB565Pixels(short[] rgb565Pixels, int[] regions, int regionCount);
+
+}
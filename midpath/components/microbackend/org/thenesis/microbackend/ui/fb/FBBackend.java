@@ -18,14 +18,16 @@
 package org.thenesis.microbackend.ui.fb;
 
 import org.thenesis.microbackend.ui.BackendEventListener;
+import org.thenesis.microbackend.ui.BatchUpdateBackend;
 import org.thenesis.microbackend.ui.Configuration;
 import org.thenesis.microbackend.ui.Logging;
 import org.thenesis.microbackend.ui.NullBackendEventListener;
+import org.thenesis.microbackend.ui.RGB565Backend;
 import org.thenesis.microbackend.ui.UIBackend;
 
 import com.sun.cldchi.jvm.JVM;
 
-public class FBBackend implements UIBackend {
+public class FBBackend implements UIBackend, RGB565Backend, BatchUpdateBackend {
 
 	private BackendEventListener listener = new NullBackendEventListener();
 	private PollEventThread eventThread;
@@ -38,6 +40,9 @@ public class FBBackend implements UIBackend {
 	private String touchscreenDeviceName;
 
 	private int[] copiedARGBBuffer;
+	private short[] copiedRGB565Buffer;
+	private boolean rgb565Mode;
+	private int[] damage = new int[4];
 
 	private static final int MOUSE_WIDTH = 5;
 	private static final int MOUSE_HEIGHT = 5;
@@ -46,6 +51,13 @@ public class FBBackend implements UIBackend {
 			0xFFFF0000, 0xFFFF0000, 0xFFFF0000, 0xFF000000, 0xFF000000, 0xFF000000, 0xFF000000, 0xFF000000, 0xFF000000 };
 	private int mouseX, mouseY, mouseButton;
 
+	/* Statistics */
+	private int lastFrameBytes;
+	private int lastFrameRegions;
+	private boolean mouseErased;
+	private long totalBytes;
+	private int frameCount;
+
 	static {
 		JVM.loadLibrary("libmicrobackendfb.so");
 		//System.loadLibrary("microbackendfb");
@@ -83,6 +95,11 @@ public class FBBackend implements UIBackend {
 	public void open() {
 
 		copiedARGBBuffer = new int[canvasWidth * canvasHeight];
+		copiedRGB565Buffer = null;
+		rgb565Mode = false;
+		lastFrameBytes = 0;
+		totalBytes = 0;
+		frameCount = 0;
 
 		// Initialize the framebuffer.
 		if (!initialize(keyboardDeviceName, mouseDeviceName, touchscreenDeviceName, fbDeviceName, canvasWidth,
@@ -100,10 +117,204 @@ public class FBBackend implements UIBackend {
 		eventThread.stop();
 	}
 
-	public synchronized void updateARGBPixels(final int[] argbBuffer, final int x, final int y, final int w, final int h) {
-		System.arraycopy(argbBuffer, 0, copiedARGBBuffer, 0, copiedARGBBuffer.length);
+	public synchronized void updateARGBPixels(final int[] argbBuffer, int x, int y, int w, int h) {
+		beginFrame();
+		pushARGBRegion(argbBuffer, x, y, w, h);
+		endFrame();
+	}
+
+	/* BatchUpdateBackend interface */
+
+	public synchronized void updateARGBPixels(int[] argbBuffer, int[] regions, int regionCount) {
+		beginFrame();
+		for (int i = 0; i < regionCount * 4; i += 4) {
+			pushARGBRegion(argbBuffer, regions[i], regions[i + 1], regions[i + 2], regions[i + 3]);
+		}
+		endFrame();
+	}
+
+	/* RGB565Backend interface */
+
+	public boolean isRGB565Native() {
+		return isRGB565();
+	}
+
+	public synchronized void updateRGB565Pixels(short[] rgb565Buffer, int x, int y, int w, int h) {
+		beginFrame();
+		pushRGB565Region(rgb565Buffer, x, y, w, h);
+		endFrame();
+	}
+
+	public synchronized void updateRGB565Pixels(short[] rgb565Buffer, int[] regions, int regionCount) {
+		beginFrame();
+		for (int i = 0; i < regionCount * 4; i += 4) {
+			pushRGB565Region(rgb565Buffer, regions[i], regions[i + 1], regions[i + 2], regions[i + 3]);
+		}
+		endFrame();
+	}
+
+	private void pushARGBRegion(int[] argbBuffer, int x, int y, int w, int h) {
+
+		if (!clipDamage(x, y, w, h)) {
+			return;
+		}
+		x = damage[0];
+		y = damage[1];
+		w = damage[2];
+		h = damage[3];
+
+		// Keep a copy of the damaged region only (used to restore the screen under the mouse)
+		int offset = y * canvasWidth + x;
+		if (w == canvasWidth) {
+			System.arraycopy(argbBuffer, offset, copiedARGBBuffer, offset, w * h);
+		} else {
+			for (int i = 0; i < h; i++, offset += canvasWidth) {
+				System.arraycopy(argbBuffer, offset, copiedARGBBuffer, offset, w);
+			}
+		}
+		rgb565Mode = false;
+
 		drawARGB(argbBuffer, y * canvasWidth + x, canvasWidth, x, y, w, h);
-		drawARGB(mouseImage, 0, MOUSE_WIDTH, mouseX, mouseY, MOUSE_WIDTH, MOUSE_HEIGHT);
+		countRegion(x, y, w, h, 4);
+	}
+
+	private void pushRGB565Region(short[] rgb565Buffer, int x, int y, int w, int h) {
+
+		if (!clipDamage(x, y, w, h)) {
+			return;
+		}
+		x = damage[0];
+		y = damage[1];
+		w = damage[2];
+		h = damage[3];
+
+		if (copiedRGB565Buffer == null) {
+			copiedRGB565Buffer = new short[canvasWidth * canvasHeight];
+		}
+
+		int offset = y * canvasWidth + x;
+		if (w == canvasWidth) {
+			System.arraycopy(rgb565Buffer, offset, copiedRGB565Buffer, offset, w * h);
+		} else {
+			for (int i = 0; i < h; i++, offset += canvasWidth) {
+				System.arraycopy(rgb565Buffer, offset, copiedRGB565Buffer, offset, w);
+			}
+		}
+		rgb565Mode = true;
+
+		drawRGB565(rgb565Buffer, y * canvasWidth + x, canvasWidth, x, y, w, h);
+		countRegion(x, y, w, h, 2);
+	}
+
+	/**
+	 * Clips a damaged region to the screen. The result is stored in <code>damage</code>.
+	 * @return false if nothing is left to draw
+	 */
+	private boolean clipDamage(int x, int y, int w, int h) {
+		if (x < 0) {
+			w += x;
+			x = 0;
+		}
+		if (y < 0) {
+			h += y;
+			y = 0;
+		}
+		if (x + w > canvasWidth) {
+			w = canvasWidth - x;
+		}
+		if (y + h > canvasHeight) {
+			h = canvasHeight - y;
+		}
+		damage[0] = x;
+		damage[1] = y;
+		damage[2] = w;
+		damage[3] = h;
+		return (w > 0) && (h > 0);
+	}
+
+	private void beginFrame() {
+		lastFrameBytes = 0;
+		lastFrameRegions = 0;
+		mouseErased = false;
+	}
+
+	private void countRegion(int x, int y, int w, int h, int bytesPerPixel) {
+		lastFrameBytes += w * h * bytesPerPixel;
+		lastFrameRegions++;
+
+		// The mouse has only been erased if it is in the damaged region
+		if ((mouseX < x + w) && (mouseX + MOUSE_WIDTH > x) && (mouseY < y + h) && (mouseY + MOUSE_HEIGHT > y)) {
+			mouseErased = true;
+		}
+
+		if (Logging.TRACE_ENABLED)
+			System.out.println("[DEBUG] FBBackend.countRegion(): x=" + x + " y=" + y + " w=" + w + " h=" + h);
+	}
+
+	/**
+	 * Redraws the mouse if it has been erased by the update and updates the statistics.
+	 */
+	private void endFrame() {
+		if (lastFrameRegions == 0) {
+			return;
+		}
+
+		if (mouseErased) {
+			drawARGB(mouseImage, 0, MOUSE_WIDTH, mouseX, mouseY, MOUSE_WIDTH, MOUSE_HEIGHT);
+			lastFrameBytes += MOUSE_WIDTH * MOUSE_HEIGHT * 4;
+		}
+
+		totalBytes += lastFrameBytes;
+		frameCount++;
+
+		if (Logging.TRACE_ENABLED)
+			System.out.println("[DEBUG] FBBackend.endFrame(): regions=" + lastFrameRegions + " bytes="
+					+ lastFrameBytes);
+	}
+
+	/**
+	 * Redraws the part of screen which is hidden by the mouse.
+	 */
+	private void restoreUnderMouse() {
+		if (rgb565Mode) {
+			drawRGB565(copiedRGB565Buffer, mouseY * canvasWidth + mouseX, canvasWidth, mouseX, mouseY, MOUSE_WIDTH,
+					MOUSE_HEIGHT);
+		} else {
+			drawARGB(copiedARGBBuffer, mouseY * canvasWidth + mouseX, canvasWidth, mouseX, mouseY, MOUSE_WIDTH,
+					MOUSE_HEIGHT);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes pushed to the framebuffer by the last update.
+	 * @return the number of bytes of the last update
+	 */
+	public int getLastFrameBytes() {
+		return lastFrameBytes;
+	}
+
+	/**
+	 * Returns the number of regions pushed to the framebuffer by the last update.
+	 * @return the number of regions of the last update
+	 */
+	public int getLastFrameRegions() {
+		return lastFrameRegions;
+	}
+
+	/**
+	 * Returns the number of bytes pushed to the framebuffer since the backend was opened.
+	 * @return the total number of bytes
+	 */
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * Returns the number of updates pushed to the framebuffer since the backend was opened.
+	 * @return the number of updates
+	 */
+	public int getFrameCount() {
+		return frameCount;
 	}
 	
 	public int getWidth() {
@@ -159,8 +370,7 @@ public class FBBackend implements UIBackend {
 		//System.out.println("raw mouse event: dx=" + dx + " dy=" + dy + " button=" + button);
 
 		// Redraw the part of screen which was hidden by the mouse
-		drawARGB(copiedARGBBuffer, mouseY * canvasWidth + mouseX, canvasWidth, mouseX, mouseY, MOUSE_WIDTH,
-				MOUSE_HEIGHT);
+		restoreUnderMouse();
 
 		// Set mouse absolute position
 		boolean moved = false;
@@ -198,8 +408,7 @@ public class FBBackend implements UIBackend {
 		//System.out.println("raw touchscreen event: rawX=" + x + " rawY=" + y + " button=" + button);
 
 		// Redraw the part of screen which was hidden by the mouse
-		drawARGB(copiedARGBBuffer, mouseY * canvasWidth + mouseX, canvasWidth, mouseX, mouseY, MOUSE_WIDTH,
-				MOUSE_HEIGHT);
+		restoreUnderMouse();
 
 		mouseX = rawX;
 		mouseY = rawY;
@@ -232,6 +441,26 @@ public class FBBackend implements UIBackend {
 	 */
 	native private void drawARGB(int[] argbBuffer, int offset, int scanlength, int x, int y, int width, int height);
 
+	/** 
+	 * Renders a series of RGB565 values in a specified region. The pixels are copied
+	 * without conversion if the framebuffer is in RGB565 format.
+	 * @param rgb565Data an array of RGB565 values
+	 * @param offset the array index of the first value
+	 * @param scanlength the relative array offset between the
+	 * corresponding pixels in consecutive rows in the
+	 * <code>rgb565Data</code> array
+	 * @param x the horizontal location of the region to be rendered
+	 * @param y the vertical location of the region to be rendered
+	 * @param width the width of the region to be rendered
+	 * @param height the height of the region to be rendered
+	 */
+	native private void drawRGB565(short[] rgb565Buffer, int offset, int scanlength, int x, int y, int width, int height);
+
+	/**
+	 * Returns true if the framebuffer pixel format is RGB565.
+	 */
+	native private boolean isRGB565();
+
 	native private void eventLoop();
 
 	native private int quit();
@@ -0,0 +1,220 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ */
+package org.thenesis.microbackend.ui.graphics;
+
+/**
+ * Pixel compositing loops shared by the drawRGB, drawImage and copyArea
+ * implementations. Sources are ARGB8888 pixels; destinations are
+ * ARGB8888 or RGB565 pixels and are considered opaque, as required by
+ * MIDP: a source pixel is blended over the destination with SRC_OVER
+ * and the result is opaque.
+ * <p>
+ * Each source is classified once (see {@link #getAlphaType}) so that
+ * the cheapest loop can be used: bulk row copies for opaque sources,
+ * a masked copy for 1-bit alpha and fixed-point blending otherwise.
+ */
+public final class Compositor {
+
+    /** The alpha type of the source is not known yet */
+    public static final int ALPHA_UNKNOWN = -1;
+    /** All the pixels are opaque */
+    public static final int ALPHA_OPAQUE = 0;
+    /** The pixels are either opaque or fully transparent */
+    public static final int ALPHA_BINARY = 1;
+    /** Some pixels are partially transparent */
+    public static final int ALPHA_TRANSLUCENT = 2;
+
+    private Compositor() {
+    }
+
+    /**
+     * Returns the alpha type of a block of ARGB pixels.
+     */
+    public static int getAlphaType(int[] data, int offset, int scanlength, int width, int height) {
+        int type = ALPHA_OPAQUE;
+        for (int y = 0; y < height; y++) {
+            int p = offset + y * scanlength;
+            for (int end = p + width; p < end; p++) {
+                int a = data[p] >>> 24;
+                if (a != 0xFF) {
+                    if (a != 0) {
+                        return ALPHA_TRANSLUCENT;
+                    }
+                    type = ALPHA_BINARY;
+                }
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Draws ARGB pixels over ARGB pixels.
+     */
+    public static void blit(int[] src, int srcOffset, int srcScanlength, int[] dst, int dstOffset, int dstScanlength,
+            int width, int height, int alphaType) {
+
+        if ((width <= 0) || (height <= 0)) {
+            return;
+        }
+
+        switch (alphaType) {
+        case ALPHA_OPAQUE:
+            for (int y = 0; y < height; y++, srcOffset += srcScanlength, dstOffset += dstScanlength) {
+                System.arraycopy(src, srcOffset, dst, dstOffset, width);
+            }
+            break;
+
+        case ALPHA_BINARY:
+            for (int y = 0; y < height; y++, srcOffset += srcScanlength, dstOffset += dstScanlength) {
+                for (int sp = srcOffset, dp = dstOffset, end = srcOffset + width; sp < end; sp++, dp++) {
+                    int argb = src[sp];
+                    if ((argb & 0xFF000000) != 0) {
+                        dst[dp] = argb;
+                    }
+                }
+            }
+            break;
+
+        default:
+            for (int y = 0; y < height; y++, srcOffset += srcScanlength, dstOffset += dstScanlength) {
+                for (int sp = srcOffset, dp = dstOffset, end = srcOffset + width; sp < end; sp++, dp++) {
+                    int argb = src[sp];
+                    int a = argb >>> 24;
+                    if (a == 0xFF) {
+                        dst[dp] = argb;
+                    } else if (a != 0) {
+                        dst[dp] = srcOver(argb, dst[dp]);
+                    }
+                }
+            }
+            break;
+        }
+    }
+
+    /**
+     * Draws ARGB pixels over RGB565 pixels.
+     */
+    public static void blit(int[] src, int srcOffset, int srcScanlength, short[] dst, int dstOffset,
+            int dstScanlength, int width, int height, int alphaType) {
+
+        if ((width <= 0) || (height <= 0)) {
+            return;
+        }
+
+        for (int y = 0; y < height; y++, srcOffset += srcScanlength, dstOffset += dstScanlength) {
+            for (int sp = srcOffset, dp = dstOffset, end = srcOffset + width; sp < end; sp++, dp++) {
+                int argb = src[sp];
+                int a = argb >>> 24;
+                if ((a == 0xFF) || (alphaType == ALPHA_OPAQUE)) {
+                    dst[dp] = (short) toRGB565(argb);
+                } else if (a != 0) {
+                    dst[dp] = (short) toRGB565(srcOver(argb, toARGB(dst[dp])));
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies RGB pixels ignoring their alpha channel: rows are copied in bulk,
+     * then the copied pixels are made opaque.
+     */
+    public static void copyOpaque(int[] src, int srcOffset, int srcScanlength, int[] dst, int dstOffset,
+            int dstScanlength, int width, int height) {
+
+        for (int y = 0; y < height; y++, srcOffset += srcScanlength, dstOffset += dstScanlength) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, width);
+            for (int dp = dstOffset, end = dstOffset + width; dp < end; dp++) {
+                dst[dp] |= 0xFF000000;
+            }
+        }
+    }
+
+    /**
+     * Moves a block of pixels inside a buffer, e.g. to scroll it. The
+     * source and destination blocks may overlap: rows are copied from the
+     * bottom up when the destination is after the source, and each row is
+     * copied in bulk.
+     */
+    public static void move(int[] data, int srcOffset, int dstOffset, int scanlength, int width, int height) {
+        if (dstOffset > srcOffset) {
+            int delta = (height - 1) * scanlength;
+            srcOffset += delta;
+            dstOffset += delta;
+            scanlength = -scanlength;
+        }
+        for (int y = 0; y < height; y++, srcOffset += scanlength, dstOffset += scanlength) {
+            System.arraycopy(data, srcOffset, data, dstOffset, width);
+        }
+    }
+
+    /**
+     * Moves a block of RGB565 pixels inside a buffer.
+     * @see #move(int[], int, int, int, int, int)
+     */
+    public static void move(short[] data, int srcOffset, int dstOffset, int scanlength, int width, int height) {
+        if (dstOffset > srcOffset) {
+            int delta = (height - 1) * scanlength;
+            srcOffset += delta;
+            dstOffset += delta;
+            scanlength = -scanlength;
+        }
+        for (int y = 0; y < height; y++, srcOffset += scanlength, dstOffset += scanlength) {
+            System.arraycopy(data, srcOffset, data, dstOffset, width);
+        }
+    }
+
+    /**
+     * Blends an ARGB pixel over another one (SRC_OVER). The alpha is
+     * scaled to 0..256 so that the division is a shift, and the red and
+     * blue channels are blended together.
+     */
+    public static int srcOver(int src, int dst) {
+        int dstAlpha = dst >>> 24;
+        if (dstAlpha == 0) {
+            return src;
+        }
+
+        int a = src >>> 24;
+        a += a >> 7;
+        int ia = 256 - a;
+
+        int rb = ((((src & 0x00FF00FF) * a) + ((dst & 0x00FF00FF) * ia)) >>> 8) & 0x00FF00FF;
+        int g = ((((src & 0x0000FF00) * a) + ((dst & 0x0000FF00) * ia)) >>> 8) & 0x0000FF00;
+
+        int outAlpha = (dstAlpha == 0xFF) ? 0xFF : (src >>> 24) + ((dstAlpha * ia) >> 8);
+        return (outAlpha << 24) | rb | g;
+    }
+
+    /**
+     * Converts an ARGB8888 color to RGB565.
+     */
+    public static int toRGB565(int argb) {
+        return ((argb >> 8) & 0xF800) | ((argb >> 5) & 0x07E0) | ((argb >> 3) & 0x001F);
+    }
+
+    /**
+     * Converts a RGB565 color to an opaque ARGB8888 color.
+     */
+    public static int toARGB(int rgb565) {
+        int r = (rgb565 >> 11) & 0x1F;
+        int g = (rgb565 >> 5) & 0x3F;
+        int b = rgb565 & 0x1F;
+        return 0xFF000000 | (((r << 3) | (r >> 2)) << 16) | (((g << 2) | (g >> 4)) << 8) | ((b << 3) | (b >> 2));
+    }
+
+}
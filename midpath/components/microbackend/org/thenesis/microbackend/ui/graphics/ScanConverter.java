@@ -0,0 +1,270 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ */
+package org.thenesis.microbackend.ui.graphics;
+
+/**
+ * Fixed-point edge-walking scan converter for filled triangles and
+ * convex polygons.
+ * <p>
+ * Vertices are sorted by y and the edges are walked one scanline at a
+ * time in 16.16 fixed point, so each row costs two additions. Rows are
+ * clipped against the clip rectangle before any x is computed and the
+ * resulting horizontal spans are handed to {@link #fillSpan}, which
+ * the graphics implementation maps onto its span loop. Following MIDP,
+ * the pixels lying on the edges are part of the shape: every row
+ * between the top and bottom vertices gets at least one pixel.
+ */
+public abstract class ScanConverter {
+
+    private static final int FIXED_SHIFT = 16;
+    private static final long FIXED_HALF = 1L << (FIXED_SHIFT - 1);
+
+    private int clipXMin, clipYMin, clipXMax, clipYMax;
+    private int originX, originY;
+
+    /**
+     * Sets the clip rectangle. The maximum coordinates are exclusive.
+     */
+    public void setClip(int xmin, int ymin, int xmax, int ymax) {
+        clipXMin = xmin;
+        clipYMin = ymin;
+        clipXMax = xmax;
+        clipYMax = ymax;
+    }
+
+    /**
+     * Sets the translation added to the vertices before they are
+     * rasterized.
+     */
+    public void setOrigin(int x, int y) {
+        originX = x;
+        originY = y;
+    }
+
+    /**
+     * Fills a clipped, non-empty horizontal span.
+     *
+     * @param y the row of the span
+     * @param x the first pixel of the span
+     * @param width the number of pixels in the span
+     */
+    protected abstract void fillSpan(int y, int x, int width);
+
+    /**
+     * Fills the triangle defined by the given vertices, edges included.
+     */
+    public void fillTriangle(int x1, int y1, int x2, int y2, int x3, int y3) {
+        int t;
+
+        x1 += originX; y1 += originY;
+        x2 += originX; y2 += originY;
+        x3 += originX; y3 += originY;
+
+        // Sort the vertices by y: (x1, y1) top, (x3, y3) bottom.
+        if (y1 > y2) {
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+        }
+        if (y2 > y3) {
+            t = x2; x2 = x3; x3 = t;
+            t = y2; y2 = y3; y3 = t;
+        }
+        if (y1 > y2) {
+            t = x1; x1 = x2; x2 = t;
+            t = y1; y1 = y2; y2 = t;
+        }
+
+        // Trivial rejection.
+        if ((y3 < clipYMin) || (y1 >= clipYMax))
+            return;
+
+        if (y1 == y3) {
+            // Degenerate triangle: a single horizontal span.
+            int xmin = x1, xmax = x1;
+            if (x2 < xmin) xmin = x2;
+            if (x2 > xmax) xmax = x2;
+            if (x3 < xmin) xmin = x3;
+            if (x3 > xmax) xmax = x3;
+            clipSpan(y1, xmin, xmax);
+            return;
+        }
+
+        int ystart = (y1 < clipYMin) ? clipYMin : y1;
+        int yend = (y3 >= clipYMax) ? clipYMax - 1 : y3;
+
+        // Long edge from top to bottom.
+        long dxLong = edgeSlope(x1, y1, x3, y3);
+        long xLong = edgeStart(x1, y1, dxLong, ystart);
+
+        // Upper half: rows [y1, y2) between the long edge and the top edge.
+        int y = ystart;
+        if (y < y2) {
+            int ymid = (y2 - 1 < yend) ? y2 - 1 : yend;
+            long dxShort = edgeSlope(x1, y1, x2, y2);
+            long xShort = edgeStart(x1, y1, dxShort, y);
+            for (; y <= ymid; y++) {
+                clipSpan(y, (int) (xLong >> FIXED_SHIFT), (int) (xShort >> FIXED_SHIFT));
+                xLong += dxLong;
+                xShort += dxShort;
+            }
+        }
+
+        // Lower half: rows [y2, y3] between the long edge and the bottom edge.
+        if (y <= yend) {
+            long dxShort = (y3 != y2) ? edgeSlope(x2, y2, x3, y3) : 0;
+            long xShort = edgeStart(x2, y2, dxShort, y);
+            for (; y <= yend; y++) {
+                clipSpan(y, (int) (xLong >> FIXED_SHIFT), (int) (xShort >> FIXED_SHIFT));
+                xLong += dxLong;
+                xShort += dxShort;
+            }
+        }
+    }
+
+    /**
+     * Fills a convex polygon, edges included. The two chains of edges
+     * going down from the top vertex are walked together, so each row is
+     * filled with a single span; polygons which are not convex are not
+     * rendered correctly.
+     *
+     * @param xPoints the x coordinates of the vertices
+     * @param yPoints the y coordinates of the vertices
+     * @param nPoints the number of vertices
+     */
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        if (nPoints <= 0)
+            return;
+
+        // Find the top and bottom vertices.
+        int top = 0, ytop = yPoints[0], ybottom = yPoints[0];
+        int xmin = xPoints[0], xmax = xPoints[0];
+        for (int i = 1; i < nPoints; i++) {
+            int y = yPoints[i];
+            if (y < ytop) {
+                ytop = y;
+                top = i;
+            }
+            if (y > ybottom)
+                ybottom = y;
+            int x = xPoints[i];
+            if (x < xmin) xmin = x;
+            if (x > xmax) xmax = x;
+        }
+        ytop += originY;
+        ybottom += originY;
+
+        if ((ybottom < clipYMin) || (ytop >= clipYMax))
+            return;
+        if (ytop == ybottom) {
+            clipSpan(ytop, xmin + originX, xmax + originX);
+            return;
+        }
+
+        int ystart = (ytop < clipYMin) ? clipYMin : ytop;
+        int yend = (ybottom >= clipYMax) ? clipYMax - 1 : ybottom;
+
+        // Chain 0 walks the vertices backward, chain 1 forward.
+        int from0 = top, to0 = (top == 0) ? nPoints - 1 : top - 1;
+        int from1 = top, to1 = (top == nPoints - 1) ? 0 : top + 1;
+        long x0 = 0, dx0 = 0, x1 = 0, dx1 = 0;
+        boolean setup0 = true, setup1 = true;
+
+        for (int y = ystart; y <= yend; y++) {
+            int ly = y - originY;
+
+            // Move each chain to the edge crossing this row.
+            while (yPoints[to0] < ly) {
+                from0 = to0;
+                to0 = (to0 == 0) ? nPoints - 1 : to0 - 1;
+                setup0 = true;
+            }
+            while (yPoints[to1] < ly) {
+                from1 = to1;
+                to1 = (to1 == nPoints - 1) ? 0 : to1 + 1;
+                setup1 = true;
+            }
+            if (setup0) {
+                dx0 = (yPoints[to0] != yPoints[from0]) ? edgeSlope(xPoints[from0], yPoints[from0], xPoints[to0], yPoints[to0]) : 0;
+                x0 = edgeStart(xPoints[from0] + originX, yPoints[from0], dx0, ly);
+                setup0 = false;
+            }
+            if (setup1) {
+                dx1 = (yPoints[to1] != yPoints[from1]) ? edgeSlope(xPoints[from1], yPoints[from1], xPoints[to1], yPoints[to1]) : 0;
+                x1 = edgeStart(xPoints[from1] + originX, yPoints[from1], dx1, ly);
+                setup1 = false;
+            }
+
+            int left = (int) (x0 >> FIXED_SHIFT);
+            int right = (int) (x1 >> FIXED_SHIFT);
+            if (left > right) {
+                int t = left;
+                left = right;
+                right = t;
+            }
+
+            // Horizontal edges lying on this row are part of the span.
+            int v = to0;
+            for (int n = nPoints; (n > 0) && (yPoints[v] == ly); n--) {
+                int x = xPoints[v] + originX;
+                if (x < left) left = x;
+                if (x > right) right = x;
+                v = (v == 0) ? nPoints - 1 : v - 1;
+            }
+            v = to1;
+            for (int n = nPoints; (n > 0) && (yPoints[v] == ly); n--) {
+                int x = xPoints[v] + originX;
+                if (x < left) left = x;
+                if (x > right) right = x;
+                v = (v == nPoints - 1) ? 0 : v + 1;
+            }
+
+            clipSpan(y, left, right);
+            x0 += dx0;
+            x1 += dx1;
+        }
+    }
+
+    private static long edgeSlope(int x0, int y0, int x1, int y1) {
+        return ((long) (x1 - x0) << FIXED_SHIFT) / (y1 - y0);
+    }
+
+    /**
+     * Returns the x coordinate of an edge on row <code>y</code>, rounded
+     * to the nearest pixel once shifted back.
+     */
+    private static long edgeStart(int x0, int y0, long dx, int y) {
+        return ((long) x0 << FIXED_SHIFT) + dx * (y - y0) + FIXED_HALF;
+    }
+
+    private void clipSpan(int y, int x0, int x1) {
+        if ((y < clipYMin) || (y >= clipYMax))
+            return;
+        if (x0 > x1) {
+            int t = x0;
+            x0 = x1;
+            x1 = t;
+        }
+        if (x0 < clipXMin)
+            x0 = clipXMin;
+        if (x1 >= clipXMax)
+            x1 = clipXMax - 1;
+        if (x1 >= x0)
+            fillSpan(y, x0, x1 - x0 + 1);
+    }
+
+}
@@ -135,6 +135,7 @@ public class VirtualGraphics {
 
     Rectangle clipRectangle = new Rectangle();
     private int internalColor;
+    private ScanConverter scanConverter;
 
     VirtualGraphics(VirtualSurface surface) {
         this.surface = surface;
@@ -713,9 +714,43 @@ public class VirtualGraphics {
     public void fillTriangle(int x1, int y1, 
                                     int x2, int y2,
                                     int x3, int y3) {
-        if (Logging.TRACE_ENABLED)
-            System.out.println("[DEBUG] VirtualGraphics.fillTriangle(): not yet implemented");
-        
+        if (surface == null)
+            return;
+        ScanConverter sc = getScanConverter();
+        sc.fillTriangle(x1, y1, x2, y2, x3, y3);
+    }
+
+    /**
+     * Fills the convex polygon defined by the given vertices with the
+     * current color. The edges are included in the filled polygon.
+     *
+     * @param xPoints the x coordinates of the vertices
+     * @param yPoints the y coordinates of the vertices
+     * @param nPoints the number of vertices
+     */
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        if (surface == null)
+            return;
+        ScanConverter sc = getScanConverter();
+        sc.fillPolygon(xPoints, yPoints, nPoints);
+    }
+
+    /**
+     * Returns the scan converter of this graphics, set up with the current
+     * translation and clip rectangle.
+     */
+    private ScanConverter getScanConverter() {
+        if (scanConverter == null) {
+            scanConverter = new ScanConverter() {
+                protected void fillSpan(int y, int x, int width) {
+                    drawSpan(surface.data, y * surface.width + x, width);
+                }
+            };
+        }
+        Rectangle r = clipRectangle;
+        scanConverter.setClip(r.xmin, r.ymin, r.xmax, r.ymax);
+        scanConverter.setOrigin(transX, transY);
+        return scanConverter;
     }
     
     /**
@@ -1841,35 +1876,17 @@ public class VirtualGraphics {
         symax = dymax - y;
 
         int w = sxmax - sxmin, h = symax - symin;
+        if ((w <= 0) || (h <= 0))
+            return;
 
-        if (processAlpha) {
-            for (int ry = 0; ry < h; ry++) {
-
-                int srcPosition = offset + (symin + ry) * scanlength + sxmin;
-                int dstPosition = (dymin + ry) * surface.width + dxmin;
-                int length = w;
+        int srcPosition = offset + symin * scanlength + sxmin;
+        int dstPosition = dymin * surface.width + dxmin;
 
-                for (int i = 0, sp = srcPosition, dp = dstPosition; i < length; i++, sp += 1, dp += 1) {
-                    if (((rgbData[i + srcPosition]) & 0xFF000000) == 0xFF000000)
-                        surface.data[i + dstPosition] = rgbData[i + srcPosition];
-                }
-
-            }
+        if (processAlpha) {
+            Compositor.blit(rgbData, srcPosition, scanlength, surface.data, dstPosition, surface.width, w, h,
+                    Compositor.ALPHA_TRANSLUCENT);
         } else {
-            for (int ry = 0; ry < h; ry++) {
-
-                int srcPosition = offset + (symin + ry) * scanlength + sxmin;
-                int dstPosition = (dymin + ry) * surface.width + dxmin;
-                int length = w;
-
-                for (int i = 0, sp = srcPosition, dp = dstPosition; i < length; i++, sp += 1, dp += 1) {
-                    // System.out.println(
-                    // "[DEBUG] VirtualGraphics.drawRGB()() : dest=" + (i +
-                    // dstPosition) + " src=" + (i + srcPosition));
-                    surface.data[i + dstPosition] = rgbData[i + srcPosition] | 0xFF000000;
-                }
-
-            }
+            Compositor.copyOpaque(rgbData, srcPosition, scanlength, surface.data, dstPosition, surface.width, w, h);
         }
 
     }
@@ -1882,20 +1899,45 @@ public class VirtualGraphics {
         x_src += transX;
         y_src += transY;
 
-        VirtualImage image = new VirtualImage(width, height);
+        if ((width < 0) || (height < 0) || (x_src < 0) || (y_src < 0) || (x_src + width > surface.width)
+                || (y_src + height > surface.height)) {
+            throw new IllegalArgumentException();
+        }
 
-        for (int j = 0; j < height; j++) {
+        x_dest += transX;
+        y_dest += transY;
 
-            int srcPosition = (y_src + j) * surface.width + x_src;
-            int dstPosition = j * width;
+        if ((anchor & BOTTOM) == BOTTOM) {
+            y_dest -= height;
+        } else if ((anchor & VCENTER) == VCENTER) {
+            y_dest -= height / 2;
+        }
 
-            for (int i = 0; i < width; i++) {
-                image.surface.data[dstPosition + i] = surface.data[srcPosition + i];
-            }
+        if ((anchor & RIGHT) == RIGHT) {
+            x_dest -= width;
+        } else if ((anchor & HCENTER) == HCENTER) {
+            x_dest -= width / 2;
         }
 
-        drawImage(image, x_dest, y_dest, anchor);
+        // Clip the destination, then move the pixels in place.
+        int dx = x_dest - x_src, dy = y_dest - y_src;
+        int xmin = x_src, ymin = y_src, xmax = x_src + width, ymax = y_src + height;
+        Rectangle r = clipRectangle;
+        if (xmin + dx < r.xmin)
+            xmin = r.xmin - dx;
+        if (ymin + dy < r.ymin)
+            ymin = r.ymin - dy;
+        if (xmax + dx > r.xmax)
+            xmax = r.xmax - dx;
+        if (ymax + dy > r.ymax)
+            ymax = r.ymax - dy;
+
+        int w = xmax - xmin, h = ymax - ymin;
+        if ((w <= 0) || (h <= 0))
+            return;
 
+        Compositor.move(surface.data, ymin * surface.width + xmin, (ymin + dy) * surface.width + xmin + dx,
+                surface.width, w, h);
     }
     
     /**
@@ -1934,21 +1976,6 @@ public class VirtualGraphics {
         }
     }
 
-
-    //
-    // public void fillTriangle(int x1, int y1, int x2, int y2, int x3, int y3)
-    // {
-    //
-    // x1 += transX;
-    // y1 += transY;
-    // x2 += transX;
-    // y2 += transY;
-    // x3 += transX;
-    // y3 += transY;
-    //
-    // SDLGfx.trigonColor(surface, x1, y1, x2, y2, x3, y3, sdlGfxColor);
-    // }
-
     public void drawRoundRect(int x, int y, int w, int h, int arcWidth, int arcHeight) {
 
         // Vertical lines
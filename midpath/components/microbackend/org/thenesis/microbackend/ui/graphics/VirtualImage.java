@@ -86,6 +86,8 @@ public class VirtualImage {
 
     VirtualSurface surface;
     private boolean isMutable = false;
+    /** Alpha type of immutable images, detected on first use (see Compositor) */
+    private int alphaType = Compositor.ALPHA_UNKNOWN;
     private int imgWidth;
     private int imgHeight;
 
@@ -171,19 +173,12 @@ public class VirtualImage {
         surface = createSurface(width, height);
 
         // P(a, b) = rgb[a + b * width];
-        int size = width * height;
         if (processAlpha) {
-            for (int i = 0; i < size; i++) {
-                if ((rgb[i] & 0xFF000000) != 0xFF000000)
-                    surface.data[i] = rgb[i] & 0x00FFFFFF;
-                else {
-                    surface.data[i] = rgb[i];
-                }
-            }
+            System.arraycopy(rgb, 0, surface.data, 0, width * height);
+            alphaType = Compositor.getAlphaType(rgb, 0, width, width, height);
         } else {
-            for (int i = 0; i < size; i++) {
-                surface.data[i] = rgb[i] | 0xFF000000;
-            }
+            Compositor.copyOpaque(rgb, 0, width, surface.data, 0, width, width, height);
+            alphaType = Compositor.ALPHA_OPAQUE;
         }
 
         isMutable = false;
@@ -201,6 +196,9 @@ public class VirtualImage {
 
         setDimensions(srcImage.getWidth(), srcImage.getHeight());
         isMutable = false;
+        if (!srcImage.isMutable()) {
+            alphaType = srcImage.alphaType;
+        }
 
     }
 
@@ -299,50 +297,23 @@ public class VirtualImage {
         //			}
         //		}
 
-        // Clip source rectangle in source image.
-        //int sxmin=r.xmin, symin=r.ymin, sxmax=r.xmax, symax=r.ymax;
-        int sxmin = x_src, symin = y_src, sxmax = x_src + width, symax = y_src + height;
-        if (sxmin < 0)
-            sxmin = 0;
-        if (symin < 0)
-            symin = 0;
-        if (sxmax > surface.width - 1)
-            sxmax = surface.width - 1;
-        if (symax > surface.height - 1)
-            symax = surface.height - 1;
-
         // Clip destination rectangle in destination image.
-        int dxmin = x + sxmin - x_src, dymin = y + symin - y_src, dxmax = x + sxmax - x_src, dymax = y + symax - y_src;
+        int dxmin = x, dymin = y, dxmax = x + width, dymax = y + height;
         if (dxmin < clipRect.xmin)
             dxmin = clipRect.xmin;
         if (dymin < clipRect.ymin)
             dymin = clipRect.ymin;
-        if (dxmax > clipRect.xmax - 1)
-            dxmax = clipRect.xmax - 1;
-        if (dymax > clipRect.ymax - 1)
-            dymax = clipRect.ymax - 1;
+        if (dxmax > clipRect.xmax)
+            dxmax = clipRect.xmax;
+        if (dymax > clipRect.ymax)
+            dymax = clipRect.ymax;
 
         // New source rectangle.
-        sxmin = dxmin - x + x_src;
-        symin = dymin - y + y_src;
-        sxmax = dxmax - x + x_src;
-        symax = dymax - y + y_src;
-
-        int w = sxmax - sxmin + 1, h = symax - symin + 1;
-        for (int ry = 0; ry < h; ry++) {
-
-            int srcPosition = (symin + ry) * surface.width + sxmin;
-            int dstPosition = (dymin + ry) * destSurface.width + dxmin;
-            int length = w;
-
-            for (int i = 0, sp = srcPosition, dp = dstPosition; i < length; i++, sp += 1, dp += 1) {
-                // TODO support transparent pixels
-                //System.out.println("[DEBUG]VirtualImage.render(): " + (i + dstPosition));
-                if (((surface.data[i + srcPosition]) & 0xFF000000) == 0xFF000000)
-                    destSurface.data[i + dstPosition] = surface.data[i + srcPosition];
-            }
+        int sxmin = dxmin - x + x_src;
+        int symin = dymin - y + y_src;
 
-        }
+        Compositor.blit(surface.data, symin * surface.width + sxmin, surface.width, destSurface.data, dymin
+                * destSurface.width + dxmin, destSurface.width, dxmax - dxmin, dymax - dymin, getAlphaType());
 
         return true;
     }
@@ -372,6 +343,7 @@ public class VirtualImage {
         } else {
             VirtualSurface transformedSurface = transform(this.surface, x_src, y_src, width, height, transform);
             VirtualImage transformedImage = new VirtualImage(transformedSurface);
+            transformedImage.alphaType = getAlphaType();
             g.drawImage(transformedImage, x_dest, y_dest, anchor);
         }
 
@@ -520,6 +492,21 @@ public class VirtualImage {
         return isMutable;
     }
 
+    /**
+     * Returns the alpha type of the image pixels. It is detected once for
+     * immutable images. Mutable images can change at any time and are
+     * always blended.
+     */
+    int getAlphaType() {
+        if (isMutable) {
+            return Compositor.ALPHA_TRANSLUCENT;
+        }
+        if (alphaType == Compositor.ALPHA_UNKNOWN) {
+            alphaType = Compositor.getAlphaType(surface.data, 0, surface.width, surface.width, surface.height);
+        }
+        return alphaType;
+    }
+
     public int getWidth() {
         return imgWidth;
     }
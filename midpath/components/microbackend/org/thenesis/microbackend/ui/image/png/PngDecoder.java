@@ -0,0 +1,527 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.microbackend.ui.image.png;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.thenesis.microbackend.zip.DataFormatException;
+import org.thenesis.microbackend.zip.FastInflater;
+
+/**
+ * A single pass PNG decoder for the most common formats: non interlaced
+ * images with 8 bits per sample (gray, gray with alpha, RGB and RGBA) or
+ * with a palette, optionally made transparent by a tRNS chunk.
+ * <p>
+ * The image data is inflated row by row into a reused buffer, unfiltered
+ * in place and converted straight to ARGB pixels. The ancillary chunks
+ * which don't change the pixels are skipped without being parsed.
+ * <p>
+ * Only the signature and the IHDR chunk are read by the constructor. If
+ * the format is not supported, the stream returned by
+ * {@link #getInputStream()} gives the PNG data again from the beginning
+ * so that it can be read by {@link PngImage}.
+ */
+public final class PngDecoder {
+
+	private static final int HEADER_LENGTH = 33;
+
+	private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+	private InputStream in;
+	private byte[] header = new byte[HEADER_LENGTH];
+	private int headerLength;
+	private boolean supported;
+
+	private int width;
+	private int height;
+	private int depth;
+	private int colorType;
+
+	private CRC32 crc = new CRC32();
+	private byte[] buffer;
+
+	/* Color conversion tables, lut is the ARGB value of each gray level or palette index */
+	private int[] lut;
+	private int[] gammaTable;
+	private int transColor = -1;
+	private boolean sRGB;
+
+	/* Decoding state */
+	private FastInflater inflater;
+	private byte[] cur;
+	private byte[] prev;
+	private int rowLength;
+	private int rowPos;
+	private int bpp;
+	private int row;
+
+	/**
+	 * Creates a decoder and reads the header of the image.
+	 *
+	 * @param is the stream of the PNG data
+	 * @throws IOException if the stream can't be read
+	 */
+	public PngDecoder(InputStream is) throws IOException {
+		in = is;
+		while (headerLength < HEADER_LENGTH) {
+			int n = in.read(header, headerLength, HEADER_LENGTH - headerLength);
+			if (n < 0)
+				return;
+			headerLength += n;
+		}
+
+		for (int i = 0; i < SIGNATURE.length; i++) {
+			if (header[i] != SIGNATURE[i])
+				return;
+		}
+		if ((getInt(header, 8) != 13) || (getInt(header, 12) != Chunk.IHDR))
+			return;
+		crc.reset();
+		crc.update(header, 12, 17);
+		if ((int) crc.getValue() != getInt(header, 29))
+			return;
+
+		width = getInt(header, 16);
+		height = getInt(header, 20);
+		depth = header[24] & 0xFF;
+		colorType = header[25] & 0xFF;
+		int compression = header[26];
+		int filter = header[27];
+		int interlace = header[28];
+
+		if ((width <= 0) || (height <= 0) || (compression != 0) || (filter != 0)
+				|| (interlace != PngImage.INTERLACE_TYPE_NONE))
+			return;
+
+		switch (colorType) {
+		case PngImage.COLOR_TYPE_GRAY:
+		case PngImage.COLOR_TYPE_GRAY_ALPHA:
+		case PngImage.COLOR_TYPE_RGB:
+		case PngImage.COLOR_TYPE_RGB_ALPHA:
+			supported = (depth == 8);
+			break;
+		case PngImage.COLOR_TYPE_PALETTE:
+			supported = (depth == 1) || (depth == 2) || (depth == 4) || (depth == 8);
+			break;
+		}
+	}
+
+	/**
+	 * @return true if the image can be decoded by {@link #decode(int[])}
+	 */
+	public boolean isSupported() {
+		return supported;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Returns a stream giving the whole PNG data, including the header
+	 * already read by this decoder. It must be used instead of the original
+	 * stream when the image is not supported.
+	 *
+	 * @return a stream starting at the PNG signature
+	 */
+	public InputStream getInputStream() {
+		return new InputStream() {
+			private int pos;
+
+			public int read() throws IOException {
+				if (pos < headerLength)
+					return header[pos++] & 0xFF;
+				return in.read();
+			}
+
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (pos < headerLength) {
+					int n = Math.min(len, headerLength - pos);
+					System.arraycopy(header, pos, b, off, n);
+					pos += n;
+					return n;
+				}
+				return in.read(b, off, len);
+			}
+
+			public int available() throws IOException {
+				return (headerLength - pos) + in.available();
+			}
+
+			public void close() throws IOException {
+				in.close();
+			}
+		};
+	}
+
+	/**
+	 * Decodes the image into an array of ARGB pixels. The stream is read
+	 * up to the end of the IEND chunk.
+	 *
+	 * @param argb the destination, at least width * height pixels long
+	 * @throws IOException if the stream can't be read or the data is corrupted
+	 */
+	public void decode(int[] argb) throws IOException {
+		if (!supported)
+			throw new PngException("Unsupported PNG format");
+
+		buffer = new byte[PngImage.BUFFER_SIZE];
+		int samples = (colorType == PngImage.COLOR_TYPE_PALETTE) ? 1 : (colorType == PngImage.COLOR_TYPE_GRAY) ? 1
+				: (colorType == PngImage.COLOR_TYPE_GRAY_ALPHA) ? 2 : (colorType == PngImage.COLOR_TYPE_RGB) ? 3 : 4;
+		bpp = Math.max(1, depth * samples / 8);
+		rowLength = 1 + ((width * samples * depth + 7) >> 3);
+		cur = new byte[rowLength];
+		prev = new byte[rowLength];
+
+		long fileGamma = PngImage.DEFAULT_GAMMA;
+		byte[] palette = null;
+		byte[] trans = null;
+		boolean idat = false;
+
+		while (true) {
+			int length = readInt();
+			int type = readInt();
+			if (length < 0)
+				throw new PngException("Bad " + Chunk.typeToString(type) + " chunk length: " + length);
+
+			if (type == Chunk.IDAT) {
+				if (!idat) {
+					if ((colorType == PngImage.COLOR_TYPE_PALETTE) && (palette == null))
+						throw new PngException("Missing PLTE chunk");
+					initTables(fileGamma, palette, trans);
+					inflater = new FastInflater();
+					idat = true;
+				}
+				crc.reset();
+				crc.update(type >>> 24);
+				crc.update(type >>> 16);
+				crc.update(type >>> 8);
+				crc.update(type);
+				readImageData(length, argb);
+				checkCRC(type);
+			} else if (type == Chunk.IEND) {
+				break;
+			} else if ((type == Chunk.PLTE) || (type == Chunk.tRNS) || (type == Chunk.gAMA)) {
+				byte[] data = readChunk(type, length);
+				if (idat)
+					continue;
+				if (type == Chunk.PLTE) {
+					if ((length % 3) != 0 || (length > 768))
+						throw new PngException("Bad PLTE chunk length: " + length);
+					palette = data;
+				} else if (type == Chunk.tRNS) {
+					trans = data;
+				} else if ((length == 4) && !sRGB) {
+					long gamma = getInt(data, 0) & 0xFFFFFFFFL;
+					if (gamma != 0)
+						fileGamma = gamma;
+				}
+			} else if (type == Chunk.sRGB) {
+				skip(length + 4);
+				if (!idat) {
+					sRGB = true;
+					fileGamma = PngImage.DEFAULT_GAMMA;
+				}
+			} else if ((type & 0x20000000) == 0) {
+				throw new PngException("Private critical chunk encountered: " + Chunk.typeToString(type));
+			} else {
+				// Ancillary chunk without effect on the pixels
+				skip(length + 4);
+			}
+		}
+
+		if (inflater != null)
+			inflater.end();
+		if (row < height)
+			throw new PngException("Truncated image data");
+	}
+
+	private void initTables(long fileGamma, byte[] palette, byte[] trans) throws PngException {
+		int max = (colorType == PngImage.COLOR_TYPE_PALETTE) ? 0xFF : (1 << depth) - 1;
+		double exponent = PngImage.getDecodingExponent(fileGamma);
+		int[] table = new int[256];
+		boolean identity = true;
+		for (int i = 0; i <= max; i++) {
+			table[i] = (int) (Util.pow((double) i / max, exponent) * 0xFF);
+			identity &= (table[i] == i);
+		}
+		if (!identity)
+			gammaTable = table;
+
+		switch (colorType) {
+		case PngImage.COLOR_TYPE_PALETTE:
+			lut = new int[256];
+			int size = palette.length / 3;
+			if ((trans != null) && (trans.length > size))
+				throw new PngException("Bad tRNS chunk length: " + trans.length);
+			for (int i = 0, p = 0; i < size; i++) {
+				int r = table[palette[p++] & 0xFF];
+				int g = table[palette[p++] & 0xFF];
+				int b = table[palette[p++] & 0xFF];
+				int a = ((trans != null) && (i < trans.length)) ? (trans[i] & 0xFF) : 0xFF;
+				lut[i] = (a << 24) | (r << 16) | (g << 8) | b;
+			}
+			break;
+		case PngImage.COLOR_TYPE_GRAY:
+		case PngImage.COLOR_TYPE_GRAY_ALPHA:
+			int transGray = -1;
+			if (trans != null) {
+				if ((colorType != PngImage.COLOR_TYPE_GRAY) || (trans.length != 2))
+					throw new PngException("Bad tRNS chunk");
+				transGray = getShort(trans, 0);
+			}
+			lut = new int[256];
+			for (int i = 0; i < 256; i++) {
+				int v = table[i];
+				lut[i] = ((i == transGray) ? 0 : 0xFF000000) | (v << 16) | (v << 8) | v;
+			}
+			break;
+		case PngImage.COLOR_TYPE_RGB:
+		case PngImage.COLOR_TYPE_RGB_ALPHA:
+			if (trans != null) {
+				if ((colorType != PngImage.COLOR_TYPE_RGB) || (trans.length != 6))
+					throw new PngException("Bad tRNS chunk");
+				int r = getShort(trans, 0);
+				int g = getShort(trans, 2);
+				int b = getShort(trans, 4);
+				if ((r < 256) && (g < 256) && (b < 256))
+					transColor = (r << 16) | (g << 8) | b;
+			}
+			break;
+		}
+	}
+
+	private void readImageData(int length, int[] argb) throws IOException {
+		while (length > 0) {
+			int n = in.read(buffer, 0, Math.min(length, buffer.length));
+			if (n < 0)
+				throw new EOFException();
+			crc.update(buffer, 0, n);
+			length -= n;
+
+			if (row >= height)
+				continue;
+			inflater.setInput(buffer, 0, n);
+			while (row < height) {
+				int count;
+				try {
+					count = inflater.inflate(cur, rowPos, rowLength - rowPos);
+				} catch (DataFormatException e) {
+					throw new PngException("Corrupted image data: " + e.getMessage());
+				}
+				if (count == 0) {
+					if (inflater.finished())
+						throw new PngException("Truncated image data");
+					break;
+				}
+				rowPos += count;
+				if (rowPos == rowLength) {
+					unfilter();
+					convertRow(argb, row * width);
+					byte[] tmp = prev;
+					prev = cur;
+					cur = tmp;
+					rowPos = 0;
+					row++;
+				}
+			}
+		}
+	}
+
+	private void unfilter() throws PngException {
+		byte[] cur = this.cur;
+		byte[] prev = this.prev;
+		int len = rowLength;
+		int bpp = this.bpp;
+		int i;
+
+		switch (cur[0]) {
+		case 0: // None
+			break;
+		case 1: // Sub
+			for (i = 1 + bpp; i < len; i++) {
+				cur[i] += cur[i - bpp];
+			}
+			break;
+		case 2: // Up
+			for (i = 1; i < len; i++) {
+				cur[i] += prev[i];
+			}
+			break;
+		case 3: // Average
+			for (i = 1; i <= bpp; i++) {
+				cur[i] += (prev[i] & 0xFF) >> 1;
+			}
+			for (; i < len; i++) {
+				cur[i] += ((cur[i - bpp] & 0xFF) + (prev[i] & 0xFF)) >> 1;
+			}
+			break;
+		case 4: // Paeth
+			for (i = 1; i <= bpp; i++) {
+				cur[i] += prev[i];
+			}
+			for (; i < len; i++) {
+				int a = cur[i - bpp] & 0xFF;
+				int b = prev[i] & 0xFF;
+				int c = prev[i - bpp] & 0xFF;
+				int pa = b - c;
+				int pb = a - c;
+				int pc = pa + pb;
+				if (pa < 0)
+					pa = -pa;
+				if (pb < 0)
+					pb = -pb;
+				if (pc < 0)
+					pc = -pc;
+				if ((pa <= pb) && (pa <= pc))
+					cur[i] += a;
+				else if (pb <= pc)
+					cur[i] += b;
+				else
+					cur[i] += c;
+			}
+			break;
+		default:
+			throw new PngException("Bad filter type: " + cur[0]);
+		}
+	}
+
+	private void convertRow(int[] argb, int off) {
+		byte[] cur = this.cur;
+		int end = off + width;
+		int p = 1;
+
+		switch (colorType) {
+		case PngImage.COLOR_TYPE_RGB_ALPHA:
+			if (gammaTable == null) {
+				while (off < end) {
+					argb[off++] = ((cur[p] & 0xFF) << 16) | ((cur[p + 1] & 0xFF) << 8) | (cur[p + 2] & 0xFF)
+							| (cur[p + 3] << 24);
+					p += 4;
+				}
+			} else {
+				int[] gamma = gammaTable;
+				while (off < end) {
+					argb[off++] = (gamma[cur[p] & 0xFF] << 16) | (gamma[cur[p + 1] & 0xFF] << 8)
+							| gamma[cur[p + 2] & 0xFF] | (cur[p + 3] << 24);
+					p += 4;
+				}
+			}
+			break;
+		case PngImage.COLOR_TYPE_RGB:
+			int trans = transColor;
+			int[] gamma = gammaTable;
+			while (off < end) {
+				int rgb = ((cur[p] & 0xFF) << 16) | ((cur[p + 1] & 0xFF) << 8) | (cur[p + 2] & 0xFF);
+				int alpha = (rgb == trans) ? 0 : 0xFF000000;
+				if (gamma != null)
+					rgb = (gamma[cur[p] & 0xFF] << 16) | (gamma[cur[p + 1] & 0xFF] << 8) | gamma[cur[p + 2] & 0xFF];
+				argb[off++] = alpha | rgb;
+				p += 3;
+			}
+			break;
+		case PngImage.COLOR_TYPE_GRAY_ALPHA:
+			while (off < end) {
+				argb[off++] = (lut[cur[p] & 0xFF] & 0x00FFFFFF) | (cur[p + 1] << 24);
+				p += 2;
+			}
+			break;
+		default:
+			// Gray levels and palette indexes
+			int[] lut = this.lut;
+			if (depth == 8) {
+				while (off < end) {
+					argb[off++] = lut[cur[p++] & 0xFF];
+				}
+			} else {
+				int mask = (1 << depth) - 1;
+				int shift = 8;
+				int bits = 0;
+				while (off < end) {
+					if (shift == 8) {
+						bits = cur[p++] & 0xFF;
+						shift = 0;
+					}
+					shift += depth;
+					argb[off++] = lut[(bits >> (8 - shift)) & mask];
+				}
+			}
+			break;
+		}
+	}
+
+	private byte[] readChunk(int type, int length) throws IOException {
+		byte[] data = new byte[length];
+		readFully(data, 0, length);
+		crc.reset();
+		crc.update(type >>> 24);
+		crc.update(type >>> 16);
+		crc.update(type >>> 8);
+		crc.update(type);
+		crc.update(data, 0, length);
+		checkCRC(type);
+		return data;
+	}
+
+	private void checkCRC(int type) throws IOException {
+		if ((int) crc.getValue() != readInt())
+			throw new PngException("Bad CRC value for " + Chunk.typeToString(type) + " chunk");
+	}
+
+	private int readInt() throws IOException {
+		readFully(buffer, 0, 4);
+		return getInt(buffer, 0);
+	}
+
+	private void readFully(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			int n = in.read(b, off, len);
+			if (n < 0)
+				throw new EOFException();
+			off += n;
+			len -= n;
+		}
+	}
+
+	private void skip(int n) throws IOException {
+		while (n > 0) {
+			long skipped = in.skip(n);
+			if (skipped <= 0) {
+				if (in.read() < 0)
+					throw new EOFException();
+				skipped = 1;
+			}
+			n -= (int) skipped;
+		}
+	}
+
+	private static int getInt(byte[] b, int off) {
+		return (b[off] << 24) | ((b[off + 1] & 0xFF) << 16) | ((b[off + 2] & 0xFF) << 8) | (b[off + 3] & 0xFF);
+	}
+
+	private static int getShort(byte[] b, int off) {
+		return ((b[off] & 0xFF) << 8) | (b[off + 1] & 0xFF);
+	}
+
+}
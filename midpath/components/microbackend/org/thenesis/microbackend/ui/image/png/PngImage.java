@@ -886,11 +886,15 @@ public final class PngImage implements ImageProducer {
 		errorList.addElement(e);
 	}
 
+	/* package */static double getDecodingExponent(long file_gamma) {
+		return (USER_EXPONENT * 100000d / (file_gamma * DISPLAY_EXPONENT));
+	}
+
 	/* package */void fillGammaTable() {
 		try {
 			long file_gamma = ((Long) getProperty("gamma")).longValue();
 			int max = (data.header.paletteUsed ? 0xFF : (1 << data.header.outputDepth) - 1);
-			double decoding_exponent = (USER_EXPONENT * 100000d / (file_gamma * DISPLAY_EXPONENT));
+			double decoding_exponent = getDecodingExponent(file_gamma);
 			for (int i = 0; i <= max; i++) {
 				int v = (int) (Util.pow((double) i / max, decoding_exponent) * 0xFF);
 				if (!data.header.colorUsed) {
@@ -0,0 +1,854 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.microbackend.zip;
+
+/**
+ * A table driven decompressor for the "deflate" format (RFC 1951), with the
+ * same streaming API as {@link Inflater}.
+ * <p>
+ * Huffman codes are decoded with a single lookup in a table indexed by the
+ * next bits of the stream (or two lookups for the rare long codes) instead
+ * of one bit at a time. The input bits are kept in an int accumulator which
+ * is refilled a byte at a time, and matches are copied with
+ * <code>System.arraycopy()</code> when they don't overlap.
+ * <p>
+ * A stream whose size is known can be decompressed straight into its
+ * destination with {@link #inflateFully(byte[], int, int, byte[], int, int)},
+ * the destination being used as the history window. Otherwise the data is
+ * decompressed into an internal window and copied to the buffers given to
+ * {@link #inflate(byte[], int, int)}.
+ */
+public class FastInflater {
+
+    /* Copy lengths for literal codes 257..285 */
+    private static final int CPLENS[] = { 3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83,
+            99, 115, 131, 163, 195, 227, 258 };
+
+    /* Extra bits for literal codes 257..285 */
+    private static final int CPLEXT[] = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5,
+            5, 0 };
+
+    /* Copy offsets for distance codes 0..29 */
+    private static final int CPDIST[] = { 1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769,
+            1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577 };
+
+    /* Extra bits for distance codes */
+    private static final int CPDEXT[] = { 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11,
+            12, 12, 13, 13 };
+
+    /* Order of the code length code lengths */
+    private static final int BL_ORDER[] = { 16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15 };
+
+    /* Number of bits of the first level tables */
+    private static final int LIT_BITS = 9;
+    private static final int DIST_BITS = 6;
+    private static final int BL_BITS = 7;
+
+    private static final int MAX_BITS = 15;
+    private static final int WINDOW_SIZE = 32768;
+
+    /* Decoder states */
+    private static final int HEADER = 0;
+    private static final int BLOCK = 1;
+    private static final int STORED_LEN = 2;
+    private static final int STORED = 3;
+    private static final int DYN_HEADER = 4;
+    private static final int DYN_BL_LENS = 5;
+    private static final int DYN_LENS = 6;
+    private static final int CODES = 7;
+    private static final int DIST = 8;
+    private static final int COPY = 9;
+    private static final int CHECKSUM = 10;
+    private static final int FINISHED = 11;
+
+    /* Tables of the fixed Huffman codes, shared by all the inflaters */
+    private static final int[] fixedLitTable;
+    private static final int[] fixedDistTable;
+
+    static {
+        FastInflater inflater = new FastInflater(true);
+        byte[] lengths = new byte[288];
+        for (int i = 0; i < 288; i++) {
+            lengths[i] = (byte) ((i < 144) ? 8 : (i < 256) ? 9 : (i < 280) ? 7 : 8);
+        }
+        byte[] distLengths = new byte[30];
+        for (int i = 0; i < 30; i++) {
+            distLengths[i] = 5;
+        }
+        try {
+            fixedLitTable = inflater.buildTable(lengths, 0, 288, LIT_BITS, null);
+            fixedDistTable = inflater.buildTable(distLengths, 0, 30, DIST_BITS, null);
+        } catch (DataFormatException e) {
+            throw new Error(e.getMessage());
+        }
+    }
+
+    private final boolean nowrap;
+    private int mode;
+    private boolean lastBlock;
+
+    /* Input and bit accumulator, bits are consumed from the lowest ones */
+    private byte[] input;
+    private int inPos;
+    private int inEnd;
+    private int bitBuf;
+    private int bitCount;
+
+    /* Current Huffman tables */
+    private int[] litTable;
+    private int[] distTable;
+    private int[] dynLitTable;
+    private int[] dynDistTable;
+
+    /* State of a dynamic block header */
+    private byte[] lengths = new byte[288 + 32];
+    private int[] blTable;
+    private int numLit;
+    private int numDist;
+    private int numBl;
+    private int index;
+
+    /* State of a stored block or of a match */
+    private int remaining;
+    private int copyDist;
+
+    /* Scratch arrays used to build the tables */
+    private int[] blCount = new int[MAX_BITS + 1];
+    private int[] nextCode = new int[MAX_BITS + 1];
+    private int[] subBits = new int[1 << LIT_BITS];
+
+    /* Window used by inflate(), holding the history and the pending output */
+    private byte[] window;
+    private int readPos;
+    private int writePos;
+
+    private Adler32 adler;
+    private int readAdler;
+    private long totalIn;
+    private long totalOut;
+
+    /**
+     * Creates a new inflater expecting a zlib header and checksum.
+     */
+    public FastInflater() {
+        this(false);
+    }
+
+    /**
+     * Creates a new inflater.
+     *
+     * @param nowrap
+     *            true if no header and checksum field appears in the stream,
+     *            as in zip files.
+     */
+    public FastInflater(boolean nowrap) {
+        this.nowrap = nowrap;
+        if (!nowrap)
+            adler = new Adler32();
+        mode = nowrap ? BLOCK : HEADER;
+    }
+
+    /**
+     * Frees the buffers of the inflater.
+     */
+    public void end() {
+        input = null;
+        window = null;
+        dynLitTable = null;
+        dynDistTable = null;
+        blTable = null;
+    }
+
+    /**
+     * Returns true if the end of the compressed stream has been reached and
+     * all the data has been returned.
+     */
+    public boolean finished() {
+        return (mode == FINISHED) && (readPos == writePos);
+    }
+
+    /**
+     * Returns true if the input buffer is empty. You should then call
+     * setInput().
+     */
+    public boolean needsInput() {
+        return inPos >= inEnd;
+    }
+
+    /**
+     * Always returns false, preset dictionaries are not supported.
+     */
+    public boolean needsDictionary() {
+        return false;
+    }
+
+    /**
+     * Gets the adler checksum of the data decompressed so far.
+     */
+    public int getAdler() {
+        return (adler == null) ? 0 : (int) adler.getValue();
+    }
+
+    /**
+     * Gets the number of unprocessed input bytes, including the whole bytes
+     * still held in the bit accumulator.
+     */
+    public int getRemaining() {
+        return (inEnd - inPos) + (bitCount >> 3);
+    }
+
+    /**
+     * Gets the total number of processed compressed input bytes.
+     */
+    public int getTotalIn() {
+        return (int) getBytesRead();
+    }
+
+    public long getBytesRead() {
+        return totalIn - (bitCount >> 3);
+    }
+
+    /**
+     * Gets the total number of output bytes returned.
+     */
+    public int getTotalOut() {
+        return (int) totalOut;
+    }
+
+    public long getBytesWritten() {
+        return totalOut;
+    }
+
+    /**
+     * Resets the inflater so that a new stream can be decompressed. All
+     * pending input and output is discarded.
+     */
+    public void reset() {
+        mode = nowrap ? BLOCK : HEADER;
+        lastBlock = false;
+        input = null;
+        inPos = inEnd = 0;
+        bitBuf = bitCount = 0;
+        readPos = writePos = 0;
+        totalIn = totalOut = 0;
+        if (adler != null)
+            adler.reset();
+    }
+
+    /**
+     * Sets the input. This should only be called if needsInput() returns true.
+     *
+     * @param buf
+     *            the input.
+     * @param off
+     *            the offset into buffer where the input starts.
+     * @param len
+     *            the length of the input.
+     */
+    public void setInput(byte[] buf, int off, int len) {
+        if ((off < 0) || (len < 0) || (off + len > buf.length))
+            throw new ArrayIndexOutOfBoundsException();
+        if (inPos < inEnd)
+            throw new IllegalStateException("Old input was not completely processed");
+        input = buf;
+        inPos = off;
+        inEnd = off + len;
+    }
+
+    public void setInput(byte[] buf) {
+        setInput(buf, 0, buf.length);
+    }
+
+    /**
+     * Inflates the compressed stream to the output buffer. If this returns
+     * 0, you should check whether needsInput() or finished() returns true.
+     *
+     * @param buf
+     *            the output buffer.
+     * @param off
+     *            the offset into buffer where the output should start.
+     * @param len
+     *            the maximum length of the output.
+     * @return the number of bytes written to the buffer.
+     * @exception DataFormatException
+     *                if deflated stream is invalid.
+     */
+    public int inflate(byte[] buf, int off, int len) throws DataFormatException {
+        if ((off < 0) || (len < 0) || (off + len > buf.length))
+            throw new ArrayIndexOutOfBoundsException();
+        if (window == null)
+            window = new byte[WINDOW_SIZE * 2];
+
+        int count = 0;
+        while (len > 0) {
+            if (readPos == writePos) {
+                if (mode == FINISHED)
+                    break;
+                if (writePos == window.length) {
+                    // Keep the last 32K of history at the beginning of the window
+                    System.arraycopy(window, writePos - WINDOW_SIZE, window, 0, WINDOW_SIZE);
+                    readPos = writePos = WINDOW_SIZE;
+                }
+                int end = decode(window, writePos, window.length, 0);
+                if (end == writePos)
+                    break;
+                writePos = end;
+            }
+            int n = Math.min(len, writePos - readPos);
+            System.arraycopy(window, readPos, buf, off, n);
+            readPos += n;
+            off += n;
+            len -= n;
+            count += n;
+        }
+        totalOut += count;
+        return count;
+    }
+
+    public int inflate(byte[] buf) throws DataFormatException {
+        return inflate(buf, 0, buf.length);
+    }
+
+    /**
+     * Decompresses a whole stream straight into the destination array,
+     * which is also used as the history window. This must be called on a
+     * new or reset inflater, and finished() is true afterwards if the
+     * whole stream could be decompressed.
+     *
+     * @param in
+     *            the compressed data.
+     * @param inOff
+     *            the offset of the compressed data.
+     * @param inLen
+     *            the length of the compressed data.
+     * @param out
+     *            the destination.
+     * @param outOff
+     *            the offset into the destination.
+     * @param outLen
+     *            the size of the decompressed data.
+     * @return the number of bytes written to the destination.
+     * @exception DataFormatException
+     *                if deflated stream is invalid.
+     */
+    public int inflateFully(byte[] in, int inOff, int inLen, byte[] out, int outOff, int outLen)
+            throws DataFormatException {
+        if ((outOff < 0) || (outLen < 0) || (outOff + outLen > out.length))
+            throw new ArrayIndexOutOfBoundsException();
+        setInput(in, inOff, inLen);
+        int count = decode(out, outOff, outOff + outLen, outOff) - outOff;
+        totalOut += count;
+        return count;
+    }
+
+    /**
+     * Decodes data into the output array until the output is full, the
+     * input is exhausted or the stream is finished.
+     *
+     * @param out
+     *            the output array.
+     * @param outPos
+     *            where the decoded data starts.
+     * @param outEnd
+     *            the end of the available space.
+     * @param outBase
+     *            the beginning of the history.
+     * @return the end of the decoded data.
+     */
+    private int decode(byte[] out, int outPos, int outEnd, int outBase) throws DataFormatException {
+        final int start = outPos;
+        final byte[] input = this.input;
+        int inPos = this.inPos;
+        final int inEnd = this.inEnd;
+        int bitBuf = this.bitBuf;
+        int bitCount = this.bitCount;
+        int startIn = inPos;
+
+        try {
+            loop: for (;;) {
+                switch (mode) {
+
+                case HEADER: {
+                    while ((bitCount < 16) && (inPos < inEnd)) {
+                        bitBuf |= (input[inPos++] & 0xFF) << bitCount;
+                        bitCount += 8;
+                    }
+                    if (bitCount < 16)
+                        break loop;
+                    int header = ((bitBuf & 0xFF) << 8) | ((bitBuf >>> 8) & 0xFF);
+                    bitBuf >>>= 16;
+                    bitCount -= 16;
+                    if ((header % 31) != 0)
+                        throw new DataFormatException("Header checksum illegal");
+                    if ((header & 0x0F00) != (Inflater.DEFLATED << 8))
+                        throw new DataFormatException("Compression Method unknown");
+                    if ((header & 0x0020) != 0)
+                        throw new DataFormatException("Preset dictionaries are not supported");
+                    mode = BLOCK;
+                    break;
+                }
+
+                case BLOCK: {
+                    if (lastBlock) {
+                        mode = nowrap ? FINISHED : CHECKSUM;
+                        break;
+                    }
+                    if ((bitCount < 3) && (inPos < inEnd)) {
+                        bitBuf |= (input[inPos++] & 0xFF) << bitCount;
+                        bitCount += 8;
+                    }
+                    if (bitCount < 3)
+                        break loop;
+                    lastBlock = (bitBuf & 1) != 0;
+                    int type = (bitBuf >>> 1) & 3;
+                    bitBuf >>>= 3;
+                    bitCount -= 3;
+                    switch (type) {
+                    case 0:
+                        bitBuf >>>= (bitCount & 7);
+                        bitCount &= ~7;
+                        mode = STORED_LEN;
+                        break;
+                    case 1:
+                        litTable = fixedLitTable;
+                        distTable = fixedDistTable;
+                        mode = CODES;
+                        break;
+                    case 2:
+                        mode = DYN_HEADER;
+                        break;
+                    default:
+                        throw new DataFormatException("Unknown block type " + type);
+                    }
+                    break;
+                }
+
+                case STORED_LEN: {
+                    while ((bitCount < 32) && (inPos < inEnd)) {
+                        bitBuf |= (input[inPos++] & 0xFF) << bitCount;
+                        bitCount += 8;
+                    }
+                    if (bitCount < 32)
+                        break loop;
+                    int len = bitBuf & 0xFFFF;
+                    int nlen = bitBuf >>> 16;
+                    bitBuf = 0;
+                    bitCount = 0;
+                    if (len != (nlen ^ 0xFFFF))
+                        throw new DataFormatException("broken uncompressed block");
+                    remaining = len;
+                    mode = STORED;
+                    break;
+                }
+
+                case STORED: {
+                    while ((remaining > 0) && (outPos < outEnd) && (inPos < inEnd)) {
+                        int n = Math.min(remaining, Math.min(outEnd - outPos, inEnd - inPos));
+                        System.arraycopy(input, inPos, out, outPos, n);
+                        inPos += n;
+                        outPos += n;
+                        remaining -= n;
+                    }
+                    if (remaining > 0)
+                        break loop;
+                    mode = BLOCK;
+                    break;
+                }
+
+                case DYN_HEADER: {
+                    while ((bitCount < 14) && (inPos < inEnd)) {
+                        bitBuf |= (input[inPos++] & 0xFF) << bitCount;
+                        bitCount += 8;
+                    }
+                    if (bitCount < 14)
+                        break loop;
+                    numLit = (bitBuf & 0x1F) + 257;
+                    numDist = ((bitBuf >>> 5) & 0x1F) + 1;
+                    numBl = ((bitBuf >>> 10) & 0xF) + 4;
+                    bitBuf >>>= 14;
+                    bitCount -= 14;
+                    if ((numLit > 286) || (numDist > 30))
+                        throw new DataFormatException("Too many length or distance codes");
+                    for (int i = 0; i < 19; i++) {
+                        lengths[i] = 0;
+                    }
+                    index = 0;
+                    mode = DYN_BL_LENS;
+                    break;
+                }
+
+                case DYN_BL_LENS: {
+                    while (index < numBl) {
+                        if ((bitCount < 3) && (inPos < inEnd)) {
+                            bitBuf |= (input[inPos++] & 0xFF) << bitCount;
+                            bitCount += 8;
+                        }
+                        if (bitCount < 3)
+                            break loop;
+                        lengths[BL_ORDER[index++]] = (byte) (bitBuf & 7);
+                        bitBuf >>>= 3;
+                        bitCount -= 3;
+                    }
+                    blTable = buildTable(lengths, 0, 19, BL_BITS, blTable);
+                    index = 0;
+                    mode = DYN_LENS;
+                    break;
+                }
+
+                case DYN_LENS: {
+                    int total = numLit + numDist;
+                    while (index < total) {
+                        while ((bitCount < 14) && (inPos < inEnd)) {
+                            bitBuf |= (input[inPos++] & 0xFF) << bitCount;
+                            bitCount += 8;
+                        }
+                        int entry = blTable[bitBuf & ((1 << BL_BITS) - 1)];
+                        int len = entry & 0xF;
+                        if ((len == 0) || (len > bitCount)) {
+                            if (bitCount < 14)
+                                break loop;
+                            throw new DataFormatException("Invalid code length code");
+                        }
+                        int symbol = entry >>> 4;
+                        if (symbol < 16) {
+                            bitBuf >>>= len;
+                            bitCount -= len;
+                            lengths[index++] = (byte) symbol;
+                            continue;
+                        }
+                        int extra = (symbol == 16) ? 2 : (symbol == 17) ? 3 : 7;
+                        if (len + extra > bitCount)
+                            break loop;
+                        bitBuf >>>= len;
+                        int repeat = bitBuf & ((1 << extra) - 1);
+                        bitBuf >>>= extra;
+                        bitCount -= len + extra;
+                        byte value = 0;
+                        if (symbol == 16) {
+                            if (index == 0)
+                                throw new DataFormatException("Repeat without previous length");
+                            value = lengths[index - 1];
+                            repeat += 3;
+                        } else {
+                            repeat += (symbol == 17) ? 3 : 11;
+                        }
+                        if (index + repeat > total)
+                            throw new DataFormatException("Too many code lengths");
+                        while (repeat-- > 0) {
+                            lengths[index++] = value;
+                        }
+                    }
+                    if (lengths[256] == 0)
+                        throw new DataFormatException("Missing end of block code");
+                    litTable = dynLitTable = buildTable(lengths, 0, numLit, LIT_BITS, dynLitTable);
+                    distTable = dynDistTable = buildTable(lengths, numLit, numDist, DIST_BITS, dynDistTable);
+                    mode = CODES;
+                    break;
+                }
+
+                case CODES: {
+                    final int[] litTable = this.litTable;
+                    final int[] distTable = this.distTable;
+                    for (;;) {
+                        while ((bitCount <= 24) && (inPos < inEnd)) {
+                            bitBuf |= (input[inPos++] & 0xFF) << bitCount;
+                            bitCount += 8;
+                        }
+                        int entry = litTable[bitBuf & ((1 << LIT_BITS) - 1)];
+                        if (entry < 0) {
+                            entry = litTable[((entry >>> 4) & 0x7FFFFFF)
+                                    + ((bitBuf >>> LIT_BITS) & ((1 << (entry & 0xF)) - 1))];
+                        }
+                        int len = entry & 0xF;
+                        if ((len == 0) || (len > bitCount)) {
+                            if (bitCount < MAX_BITS)
+                                break loop;
+                            throw new DataFormatException("Invalid literal/length code");
+                        }
+                        int symbol = entry >>> 4;
+                        if (symbol < 256) {
+                            if (outPos >= outEnd)
+                                break loop;
+                            bitBuf >>>= len;
+                            bitCount -= len;
+                            out[outPos++] = (byte) symbol;
+                            continue;
+                        }
+                        if (symbol == 256) {
+                            bitBuf >>>= len;
+                            bitCount -= len;
+                            mode = BLOCK;
+                            break;
+                        }
+                        symbol -= 257;
+                        if (symbol >= 29)
+                            throw new DataFormatException("Illegal rep length code");
+                        int extra = CPLEXT[symbol];
+                        if (len + extra > bitCount)
+                            break loop;
+                        bitBuf >>>= len;
+                        int length = CPLENS[symbol] + (bitBuf & ((1 << extra) - 1));
+                        bitBuf >>>= extra;
+                        bitCount -= len + extra;
+
+                        // Decode the distance here if all its bits are available
+                        while ((bitCount <= 24) && (inPos < inEnd)) {
+                            bitBuf |= (input[inPos++] & 0xFF) << bitCount;
+                            bitCount += 8;
+                        }
+                        entry = distTable[bitBuf & ((1 << DIST_BITS) - 1)];
+                        if (entry < 0) {
+                            entry = distTable[((entry >>> 4) & 0x7FFFFFF)
+                                    + ((bitBuf >>> DIST_BITS) & ((1 << (entry & 0xF)) - 1))];
+                        }
+                        len = entry & 0xF;
+                        symbol = entry >>> 4;
+                        if ((len == 0) || (symbol >= 30) || (len + CPDEXT[symbol] > bitCount)) {
+                            remaining = length;
+                            mode = DIST;
+                            break;
+                        }
+                        extra = CPDEXT[symbol];
+                        bitBuf >>>= len;
+                        int dist = CPDIST[symbol] + (bitBuf & ((1 << extra) - 1));
+                        bitBuf >>>= extra;
+                        bitCount -= len + extra;
+                        if (dist > outPos - outBase)
+                            throw new DataFormatException("Distance too far back");
+                        if (length > outEnd - outPos) {
+                            remaining = length;
+                            copyDist = dist;
+                            mode = COPY;
+                            break;
+                        }
+                        int from = outPos - dist;
+                        if (length <= dist) {
+                            System.arraycopy(out, from, out, outPos, length);
+                            outPos += length;
+                        } else {
+                            int end = outPos + length;
+                            while (outPos < end) {
+                                out[outPos++] = out[from++];
+                            }
+                        }
+                    }
+                    break;
+                }
+
+                case DIST: {
+                    while ((bitCount <= 24) && (inPos < inEnd)) {
+                        bitBuf |= (input[inPos++] & 0xFF) << bitCount;
+                        bitCount += 8;
+                    }
+                    int entry = distTable[bitBuf & ((1 << DIST_BITS) - 1)];
+                    if (entry < 0) {
+                        entry = distTable[((entry >>> 4) & 0x7FFFFFF)
+                                + ((bitBuf >>> DIST_BITS) & ((1 << (entry & 0xF)) - 1))];
+                    }
+                    int len = entry & 0xF;
+                    if ((len == 0) || (len > bitCount)) {
+                        if (bitCount < MAX_BITS)
+                            break loop;
+                        throw new DataFormatException("Invalid distance code");
+                    }
+                    int symbol = entry >>> 4;
+                    if (symbol >= 30)
+                        throw new DataFormatException("Invalid distance code");
+                    int extra = CPDEXT[symbol];
+                    if (len + extra > bitCount)
+                        break loop;
+                    bitBuf >>>= len;
+                    int dist = CPDIST[symbol] + (bitBuf & ((1 << extra) - 1));
+                    bitBuf >>>= extra;
+                    bitCount -= len + extra;
+                    if (dist > outPos - outBase)
+                        throw new DataFormatException("Distance too far back");
+                    copyDist = dist;
+                    mode = COPY;
+                    // Fall through
+                }
+
+                case COPY: {
+                    int len = Math.min(remaining, outEnd - outPos);
+                    int dist = copyDist;
+                    int from = outPos - dist;
+                    if (len <= dist) {
+                        System.arraycopy(out, from, out, outPos, len);
+                        outPos += len;
+                    } else {
+                        // Overlapping match, the copy repeats the last dist bytes
+                        int end = outPos + len;
+                        while (outPos < end) {
+                            out[outPos++] = out[from++];
+                        }
+                    }
+                    remaining -= len;
+                    if (remaining > 0)
+                        break loop;
+                    mode = CODES;
+                    break;
+                }
+
+                case CHECKSUM: {
+                    bitBuf >>>= (bitCount & 7);
+                    bitCount &= ~7;
+                    while ((bitCount < 32) && (inPos < inEnd)) {
+                        bitBuf |= (input[inPos++] & 0xFF) << bitCount;
+                        bitCount += 8;
+                    }
+                    if (bitCount < 32)
+                        break loop;
+                    readAdler = ((bitBuf & 0xFF) << 24) | ((bitBuf & 0xFF00) << 8) | ((bitBuf >>> 8) & 0xFF00)
+                            | (bitBuf >>> 24);
+                    bitBuf = 0;
+                    bitCount = 0;
+                    adler.update(out, start, outPos - start);
+                    if (readAdler != (int) adler.getValue())
+                        throw new DataFormatException("Adler chksum doesn't match: "
+                                + Integer.toHexString((int) adler.getValue()) + " vs. " + Integer.toHexString(readAdler));
+                    mode = FINISHED;
+                    return outPos;
+                }
+
+                default: // FINISHED
+                    break loop;
+                }
+            }
+
+            if ((adler != null) && (mode != FINISHED))
+                adler.update(out, start, outPos - start);
+            return outPos;
+
+        } finally {
+            this.inPos = inPos;
+            this.bitBuf = bitBuf;
+            this.bitCount = bitCount;
+            this.totalIn += inPos - startIn;
+        }
+    }
+
+    /**
+     * Builds the decoding table of a canonical Huffman code. Each entry of
+     * the first level table, indexed by the next <code>rootBits</code> bits
+     * of the stream, is either <code>(symbol << 4) | length</code>, or a
+     * negative link <code>0x80000000 | (offset << 4) | bits</code> to a
+     * second level table indexed by the next <code>bits</code> bits. Unused
+     * entries are 0.
+     *
+     * @param lengths the code lengths of the symbols
+     * @param off the offset of the first symbol
+     * @param count the number of symbols
+     * @param rootBits the number of bits of the first level table
+     * @param table a table to reuse, or null
+     * @return the decoding table
+     */
+    private int[] buildTable(byte[] lengths, int off, int count, int rootBits, int[] table)
+            throws DataFormatException {
+        int[] blCount = this.blCount;
+        int[] nextCode = this.nextCode;
+        int[] subBits = this.subBits;
+        int rootSize = 1 << rootBits;
+        int rootMask = rootSize - 1;
+
+        for (int i = 0; i <= MAX_BITS; i++) {
+            blCount[i] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            blCount[lengths[off + i]]++;
+        }
+        blCount[0] = 0;
+
+        int left = 1;
+        int code = 0;
+        for (int bits = 1; bits <= MAX_BITS; bits++) {
+            left = (left << 1) - blCount[bits];
+            if (left < 0)
+                throw new DataFormatException("Over-subscribed Huffman code");
+            code = (code + blCount[bits - 1]) << 1;
+            nextCode[bits] = code;
+        }
+
+        // Size the second level tables from the longest code of each prefix
+        for (int i = 0; i < rootSize; i++) {
+            subBits[i] = 0;
+        }
+        int size = rootSize;
+        if (rootBits < MAX_BITS) {
+            System.arraycopy(nextCode, 0, blCount, 0, MAX_BITS + 1);
+            for (int i = 0; i < count; i++) {
+                int len = lengths[off + i];
+                if (len > rootBits) {
+                    int prefix = reverse(blCount[len]++, len) & rootMask;
+                    if (len - rootBits > subBits[prefix])
+                        subBits[prefix] = len - rootBits;
+                }
+            }
+            for (int i = 0; i < rootSize; i++) {
+                if (subBits[i] > 0)
+                    size += 1 << subBits[i];
+            }
+        }
+
+        if ((table == null) || (table.length < size)) {
+            table = new int[size];
+        } else {
+            for (int i = 0; i < size; i++) {
+                table[i] = 0;
+            }
+        }
+
+        int next = rootSize;
+        for (int i = 0; i < rootSize; i++) {
+            if (subBits[i] > 0) {
+                table[i] = 0x80000000 | (next << 4) | subBits[i];
+                next += 1 << subBits[i];
+            }
+        }
+
+        for (int symbol = 0; symbol < count; symbol++) {
+            int len = lengths[off + symbol];
+            if (len == 0)
+                continue;
+            int reversed = reverse(nextCode[len]++, len);
+            int entry = (symbol << 4) | len;
+            if (len <= rootBits) {
+                for (int i = reversed; i < rootSize; i += 1 << len) {
+                    table[i] = entry;
+                }
+            } else {
+                int link = table[reversed & rootMask];
+                int base = (link >>> 4) & 0x7FFFFFF;
+                int bits = link & 0xF;
+                for (int i = reversed >>> rootBits; i < (1 << bits); i += 1 << (len - rootBits)) {
+                    table[base + i] = entry;
+                }
+            }
+        }
+
+        return table;
+    }
+
+    private static int reverse(int code, int len) {
+        int r = 0;
+        while (len-- > 0) {
+            r = (r << 1) | (code & 1);
+            code >>>= 1;
+        }
+        return r;
+    }
+}
@@ -24,6 +24,8 @@ public class Decoder {
 	private SampleBuffer output;
 	private SynthesisFilter filter1;
 	private SynthesisFilter filter2;
+	private SynthesisFilterFixed filter1Fixed;
+	private SynthesisFilterFixed filter2Fixed;
 	private LayerIIIDecoder decoder;
 	private int outputFrequency;
 	private int outputChannels;
@@ -38,6 +40,17 @@ public class Decoder {
 	 *@param  stream  Description of Parameter
 	 */
 	public Decoder(Header header, BitStream stream) {
+		this(header, stream, false);
+	}
+
+	/**
+	 *  Constructor for the Decoder object
+	 *@param  header  Description of Parameter
+	 *@param  stream  Description of Parameter
+	 *@param  fixedPoint  true to decode with integer arithmetic only, which is
+	 *      much faster on devices without a FPU
+	 */
+	public Decoder(Header header, BitStream stream, boolean fixedPoint) {
 		// E.B Fix - Damned unloaded static fields !
 		//bitReserve.totbit = 0;
 //		bitReserve.buf_bit_idx = 0;
@@ -51,13 +64,22 @@ public class Decoder {
 			int layer = header.layer();
 			int channels = mode == Header.SINGLE_CHANNEL ? 1 : 2;
 			output = new SampleBuffer(header.frequency(), channels);
-			filter1 = new SynthesisFilter(0, scalefactor);
-			if (channels == 2) {
-				filter2 = new SynthesisFilter(1, scalefactor);
-			}
 			outputChannels = channels;
 			outputFrequency = header.frequency();
-			decoder = new LayerIIIDecoder(stream, header, filter1, filter2, output, OutputChannels.BOTH_CHANNELS);
+			if (fixedPoint) {
+				filter1Fixed = new SynthesisFilterFixed(0, scalefactor);
+				if (channels == 2) {
+					filter2Fixed = new SynthesisFilterFixed(1, scalefactor);
+				}
+				decoder = new LayerIIIDecoder(stream, header, filter1Fixed, filter2Fixed, output,
+						OutputChannels.BOTH_CHANNELS);
+			} else {
+				filter1 = new SynthesisFilter(0, scalefactor);
+				if (channels == 2) {
+					filter2 = new SynthesisFilter(1, scalefactor);
+				}
+				decoder = new LayerIIIDecoder(stream, header, filter1, filter2, output, OutputChannels.BOTH_CHANNELS);
+			}
 		} else {
 			System.out.println("only supports mp3 files");
 			System.exit(1);
@@ -288,6 +288,7 @@ final class LayerIIIDecoder {
 	private BitStream stream;
 	private Header header;
 	private SynthesisFilter filter1, filter2;
+	private SynthesisFilterFixed filter1_fixed, filter2_fixed;
 	private SampleBuffer buffer;
 	private int which_channels;
 	private BitReserve br;
@@ -309,17 +310,48 @@ final class LayerIIIDecoder {
 	private final float[] samples1 = new float[32];
 	private final float[] samples2 = new float[32];
 
+	/*
+	 * Fixed-point decoding: the samples are decoded in these arrays, with the
+	 * subbands one after the other like in out_1d.
+	 */
+	private final boolean fixedPoint;
+	private int[][] ro_fixed;
+	private int[][] lr_fixed;
+	private int[] out_1d_fixed;
+	private int[][] prevblck_fixed;
+	private int[] tsOut_fixed;
+	private int[] rawout_fixed;
+	private int[] samples1_fixed;
+	private int[] samples2_fixed;
+
 	private int[] sfBandIndexL;
 	private int[] sfBandIndexS;
 	private HuffmanTables h;
 
 	public LayerIIIDecoder(BitStream stream0, Header header0, SynthesisFilter filtera, SynthesisFilter filterb,
 			SampleBuffer buffer0, int which_ch0) {
-		stream = stream0;
-		header = header0;
+		this(stream0, header0, buffer0, which_ch0, false);
 		filter1 = filtera;
 		filter2 = filterb;
+	}
+
+	/**
+	 *  Creates a decoder using only integer arithmetic, for devices without
+	 *  a FPU.
+	 */
+	public LayerIIIDecoder(BitStream stream0, Header header0, SynthesisFilterFixed filtera,
+			SynthesisFilterFixed filterb, SampleBuffer buffer0, int which_ch0) {
+		this(stream0, header0, buffer0, which_ch0, true);
+		filter1_fixed = filtera;
+		filter2_fixed = filterb;
+	}
+
+	private LayerIIIDecoder(BitStream stream0, Header header0, SampleBuffer buffer0, int which_ch0,
+			boolean fixedPoint0) {
+		stream = stream0;
+		header = header0;
 		buffer = buffer0;
+		fixedPoint = fixedPoint0;
 		which_channels = which_ch0;
 		frame_start = 0;
 		channels = (header.mode() == Header.SINGLE_CHANNEL) ? 1 : 2;
@@ -381,6 +413,16 @@ final class LayerIIIDecoder {
 				prevblck[ch][j] = 0.0f;
 			}
 		}
+		if (fixedPoint) {
+			ro_fixed = new int[2][SBLIMIT * SSLIMIT];
+			lr_fixed = new int[2][SBLIMIT * SSLIMIT];
+			out_1d_fixed = new int[SBLIMIT * SSLIMIT];
+			prevblck_fixed = new int[2][SBLIMIT * SSLIMIT];
+			tsOut_fixed = new int[18];
+			rawout_fixed = new int[36];
+			samples1_fixed = new int[32];
+			samples2_fixed = new int[32];
+		}
 		nonzero0 = nonzero1 = 576;
 		br = new BitReserve(); 
 		si = new SideInfo();
@@ -430,11 +472,20 @@ final class LayerIIIDecoder {
 					get_scale_factors_2(ch, gr);
 				}
 				huffman_decode(ch, gr);
-				dequantize_sample(ro[ch], ch, gr);
+				if (fixedPoint) {
+					dequantize_sample_fixed(ro_fixed[ch], ch, gr);
+				} else {
+					dequantize_sample(ro[ch], ch, gr);
+				}
 			}
 
 			stereo(gr);
 
+			if (fixedPoint) {
+				synthesize_fixed(gr);
+				continue;
+			}
+
 			for (int ch = first_channel; ch <= last_channel; ch++) {
 				reorder(lr[ch], ch, gr);
 				antialias(ch, gr);
@@ -1371,6 +1422,10 @@ final class LayerIIIDecoder {
 
 	private final void stereo(final int gr) {
 		if (channels == 1) {
+			if (fixedPoint) {
+				System.arraycopy(ro_fixed[0], 0, lr_fixed[0], 0, SBLIMIT * SSLIMIT);
+				return;
+			}
 			for (int sb = SBLIMIT; --sb >= 0;) {
 				float l[] = lr[0][sb];
 				float r[] = ro[0][sb];
@@ -1418,7 +1473,7 @@ final class LayerIIIDecoder {
 								int lines = sfBandIndexS[sfb + 1] - i;
 								i = (i << 2) - i + (j + 1) * lines - 1;
 								while (lines > 0) {
-									if (ro[1][i / 18][i % 18] != 0.0f) {
+									if (right_nonzero(i)) {
 										sfbcnt = sfb;
 										sfb = -10;
 										lines = -10;
@@ -1472,7 +1527,7 @@ final class LayerIIIDecoder {
 							int ss = 17;
 							int sb = -1;
 							while (i >= 0) {
-								if (ro[1][i][ss] != 0.0f) {
+								if (right_nonzero((i << 4) + (i << 1) + ss)) {
 									sb = (i << 4) + (i << 1) + ss;
 									i = -1;
 								} else {
@@ -1518,7 +1573,7 @@ final class LayerIIIDecoder {
 								int lines = sfBandIndexS[sfb + 1] - temp;
 								int i = (temp << 2) - temp + (j + 1) * lines - 1;
 								while (lines > 0) {
-									if (ro[1][i / 18][i % 18] != 0.0f) {
+									if (right_nonzero(i)) {
 										sfbcnt = sfb;
 										sfb = -10;
 										lines = -10;
@@ -1575,7 +1630,7 @@ final class LayerIIIDecoder {
 					int ss = 17;
 					int sb = 0;
 					while (i >= 0) {
-						if (ro[1][i][ss] != 0.0f) {
+						if (right_nonzero((i << 4) + (i << 1) + ss)) {
 							sb = (i << 4) + (i << 1) + ss;
 							i = -1;
 						} else {
@@ -1621,6 +1676,10 @@ final class LayerIIIDecoder {
 					}
 				}
 			}
+			if (fixedPoint) {
+				stereo_fixed(i_stereo, (header.mode() == Header.JOINT_STEREO) && ((mode_ext & 0x2) != 0));
+				return;
+			}
 			int i = 0;
 			for (int sb = 0; sb < SBLIMIT; sb++) {
 				float[] lr0 = lr[0][sb];
@@ -1781,6 +1840,552 @@ final class LayerIIIDecoder {
 		}
 	}
 
+	/*
+	 * Fixed-point decoding. The samples have FRAC_BITS fractional bits and the
+	 * constants COEF_BITS, see SynthesisFilterFixed. Each stage computes what
+	 * its float counterpart does, in the same order.
+	 */
+
+	private final static int FRAC_BITS = SynthesisFilterFixed.FRAC_BITS;
+	private final static int COEF_BITS = SynthesisFilterFixed.COEF_BITS;
+
+	/** Dequantized samples are clipped to +/-4.0, far beyond the PCM range */
+	private final static int MAX_SAMPLE = 4 << FRAC_BITS;
+
+	private final static int SQRT_HALF = (int) (0.707106781 * (1 << COEF_BITS));
+	private final static int SQRT3 = (int) (1.732050808 * (1 << COEF_BITS));
+	private final static int HALF_SQRT3 = (int) (0.866025403 * (1 << COEF_BITS));
+	private final static int TWO_COS10 = (int) (1.9696155060244 * (1 << COEF_BITS));
+	private final static int TWO_COS20 = (int) (1.8793852415718 * (1 << COEF_BITS));
+	private final static int TWO_COS40 = (int) (1.532088886238 * (1 << COEF_BITS));
+	private final static int TWO_COS50 = (int) (1.2855752193731 * (1 << COEF_BITS));
+	private final static int TWO_COS70 = (int) (0.68404028665134 * (1 << COEF_BITS));
+	private final static int TWO_COS80 = (int) (0.34729635533386 * (1 << COEF_BITS));
+	private final static int HALF_SEC5 = (int) (0.501909918 * (1 << COEF_BITS));
+	private final static int HALF_SEC15 = (int) (0.517638090 * (1 << COEF_BITS));
+	private final static int HALF_SEC25 = (int) (0.551688959 * (1 << COEF_BITS));
+	private final static int HALF_SEC35 = (int) (0.610387294 * (1 << COEF_BITS));
+	private final static int HALF_SEC55 = (int) (0.871723397 * (1 << COEF_BITS));
+	private final static int HALF_SEC65 = (int) (1.183100792 * (1 << COEF_BITS));
+	private final static int HALF_SEC75 = (int) (1.931851653 * (1 << COEF_BITS));
+	private final static int HALF_SEC85 = (int) (5.736856623 * (1 << COEF_BITS));
+	private final static int HALF_SEC7_5 = (int) (0.504314480 * (1 << COEF_BITS));
+	private final static int HALF_SEC22_5 = (int) (0.541196100 * (1 << COEF_BITS));
+	private final static int HALF_SEC37_5 = (int) (0.630236207 * (1 << COEF_BITS));
+	private final static int HALF_SEC52_5 = (int) (0.821339815 * (1 << COEF_BITS));
+	private final static int HALF_SEC67_5 = (int) (1.306562965 * (1 << COEF_BITS));
+	private final static int HALF_SEC82_5 = (int) (3.830648788 * (1 << COEF_BITS));
+	private final static int COS7_5 = (int) (0.991444861 * (1 << COEF_BITS));
+	private final static int COS22_5 = (int) (0.923879532 * (1 << COEF_BITS));
+	private final static int COS37_5 = (int) (0.793353340 * (1 << COEF_BITS));
+	private final static int COS52_5 = (int) (0.608761429 * (1 << COEF_BITS));
+	private final static int COS67_5 = (int) (0.382683432 * (1 << COEF_BITS));
+	private final static int COS82_5 = (int) (0.130526192 * (1 << COEF_BITS));
+
+	private final static int[][] win_fixed = new int[4][36];
+	private final static int[] cs_fixed = new int[8];
+	private final static int[] ca_fixed = new int[8];
+
+	/* Intensity stereo: left and right factors for each is_pos, see stereo() */
+	private final static int[] is_left_fixed = new int[16];
+	private final static int[] is_right_fixed = new int[16];
+
+	static {
+		for (int i = 0; i < 4; i++) {
+			for (int j = 0; j < 36; j++) {
+				win_fixed[i][j] = toFixed(win[i][j]);
+			}
+		}
+		for (int i = 0; i < 8; i++) {
+			cs_fixed[i] = toFixed(cs[i]);
+			ca_fixed[i] = toFixed(ca[i]);
+		}
+		for (int i = 0; i < 16; i++) {
+			float ratio = TAN12[i];
+			// is_pos 9 would divide by zero, and is_pos 6 is a full left
+			if (1 + ratio != 0) {
+				is_right_fixed[i] = toFixed(1 / (1 + ratio));
+				is_left_fixed[i] = toFixed(ratio / (1 + ratio));
+			}
+		}
+	}
+
+	private static int toFixed(float f) {
+		f *= (1 << COEF_BITS);
+		return (int) (f < 0 ? f - 0.5f : f + 0.5f);
+	}
+
+	/**
+	 *  Tells if a dequantized sample of the right channel is not zero.
+	 *@param  i  the index of the sample
+	 */
+	private final boolean right_nonzero(final int i) {
+		return fixedPoint ? (ro_fixed[1][i] != 0) : (ro[1][i / SSLIMIT][i % SSLIMIT] != 0.0f);
+	}
+
+	private final void dequantize_sample_fixed(final int xr[], final int ch, final int gr) {
+		GRInfo gr_info = (si.ch[ch].gr[gr]);
+		int cb = 0;
+		int next_cb_boundary = 0;
+		int cb_begin = 0;
+		int cb_width = 0;
+		// choose correct scalefactor band per block type, initalize boundary
+		if ((gr_info.window_switching_flag != 0) && (gr_info.block_type == 2)) {
+			if (gr_info.mixed_block_flag != 0) {
+				next_cb_boundary = sfBandIndexL[1];
+			}
+			// LONG blocks: 0,1,3
+			else {
+				cb_width = sfBandIndexS[1];
+				next_cb_boundary = (cb_width << 2) - cb_width;
+				cb_begin = 0;
+			}
+		} else {
+			next_cb_boundary = sfBandIndexL[1];
+			// LONG blocks: 0,1,3
+		}
+		// Overall (global) scaling is 2^gain_exp, as in dequantize_sample()
+		int gain_exp = (gr_info.global_gain - 210) / 4;
+		int maxNonZero = (ch == 0) ? nonzero0 : nonzero1;
+		int s[][] = (ch == 0) ? scalefac0S : scalefac1S;
+		int l[] = (ch == 0) ? scalefac0L : scalefac1L;
+		for (int j = 0; j < maxNonZero; j++) {
+			if (j == next_cb_boundary) {
+				/*
+				 *  Adjust critical band boundary
+				 */
+				if ((gr_info.window_switching_flag != 0) && (gr_info.block_type == 2)) {
+					if (gr_info.mixed_block_flag != 0) {
+						if (j == sfBandIndexL[8]) {
+							next_cb_boundary = sfBandIndexS[4];
+							next_cb_boundary = (next_cb_boundary << 2) - next_cb_boundary;
+							cb = 3;
+							cb_width = sfBandIndexS[4] - sfBandIndexS[3];
+							cb_begin = sfBandIndexS[3];
+							cb_begin = (cb_begin << 2) - cb_begin;
+						} else if (j < sfBandIndexL[8]) {
+							next_cb_boundary = sfBandIndexL[(++cb) + 1];
+						} else {
+							next_cb_boundary = sfBandIndexS[(++cb) + 1];
+							next_cb_boundary = (next_cb_boundary << 2) - next_cb_boundary;
+							cb_begin = sfBandIndexS[cb];
+							cb_width = sfBandIndexS[cb + 1] - cb_begin;
+							cb_begin = (cb_begin << 2) - cb_begin;
+						}
+					} else {
+						next_cb_boundary = sfBandIndexS[(++cb) + 1];
+						next_cb_boundary = (next_cb_boundary << 2) - next_cb_boundary;
+						cb_begin = sfBandIndexS[cb];
+						cb_width = sfBandIndexS[cb + 1] - cb_begin;
+						cb_begin = (cb_begin << 2) - cb_begin;
+					}
+				} else {
+					// long blocks
+					next_cb_boundary = sfBandIndexL[(++cb) + 1];
+				}
+			}
+			int abv = is_1d[j];
+			if (abv == 0) {
+				xr[j] = 0;
+				continue;
+			}
+			// Do long/short dependent scaling operations
+			int idx;
+			if ((gr_info.window_switching_flag != 0)
+					&& (((gr_info.block_type == 2) && (gr_info.mixed_block_flag == 0)) || ((gr_info.block_type == 2)
+							&& (gr_info.mixed_block_flag != 0) && (j >= 36)))) {
+				int t_index = (j - cb_begin) / cb_width;
+				idx = s[t_index][cb] << gr_info.scalefac_scale;
+				idx += (gr_info.subblock_gain[t_index] << 2);
+			} else {
+				// LONG block types 0,1,3 & 1st 2 subbands of switched blocks
+				idx = l[cb];
+				if (gr_info.preflag != 0) {
+					idx += pretab[cb];
+				}
+				idx = idx << gr_info.scalefac_scale;
+			}
+			// abv * 2^gain_exp * 2^(-idx/2), with COEF_BITS more bits in m
+			long m = ((idx & 1) != 0) ? (long) abv * SQRT_HALF : (long) abv << COEF_BITS;
+			int shift = FRAC_BITS + gain_exp - (idx >> 1) - COEF_BITS;
+			if (shift >= 0) {
+				m = (shift > 20) ? abv * (long) MAX_SAMPLE : m << shift;
+			} else if (shift > -63) {
+				m = (m + (1L << (-shift - 1))) >> -shift;
+			} else {
+				m = 0;
+			}
+			if (m == 0) {
+				// Keep it nonzero: the intensity stereo bounds depend on it
+				m = (abv > 0) ? 1 : -1;
+			}
+			xr[j] = (m > MAX_SAMPLE) ? MAX_SAMPLE : ((m < -MAX_SAMPLE) ? -MAX_SAMPLE : (int) m);
+		}
+		for (int j = maxNonZero; j < 576; j++) {
+			xr[j] = 0;
+		}
+	}
+
+	private final void stereo_fixed(final boolean i_stereo, final boolean ms_stereo) {
+		int[] lr0 = lr_fixed[0];
+		int[] lr1 = lr_fixed[1];
+		int[] ro0 = ro_fixed[0];
+		int[] ro1 = ro_fixed[1];
+		for (int i = 0; i < 576; i++) {
+			int pos = is_pos[i];
+			if (pos == 7) {
+				if (ms_stereo) {
+					lr0[i] = (int) (((long) (ro0[i] + ro1[i]) * SQRT_HALF) >> COEF_BITS);
+					lr1[i] = (int) (((long) (ro0[i] - ro1[i]) * SQRT_HALF) >> COEF_BITS);
+				} else {
+					lr0[i] = ro0[i];
+					lr1[i] = ro1[i];
+				}
+			} else if (i_stereo) {
+				lr1[i] = (int) (((long) ro0[i] * is_right_fixed[pos]) >> COEF_BITS);
+				lr0[i] = (int) (((long) ro0[i] * is_left_fixed[pos]) >> COEF_BITS);
+			}
+		}
+	}
+
+	/**
+	 *  Reorders, antialiases and transforms a granule of each channel, then
+	 *  runs it through the synthesis filters.
+	 */
+	private final void synthesize_fixed(final int gr) {
+		for (int ch = first_channel; ch <= last_channel; ch++) {
+			reorder_fixed(lr_fixed[ch], ch, gr);
+			antialias_fixed(ch, gr);
+			hybrid_fixed(ch, gr);
+
+			int[] out = out_1d_fixed;
+			for (int sb18 = 18; sb18 < 576; sb18 += 36) {
+				for (int ss = 1; ss < SSLIMIT; ss += 2) {
+					out[sb18 + ss] = -out[sb18 + ss];
+				}
+			}
+
+			SynthesisFilterFixed filter;
+			int[] samples;
+			if ((ch == 0) || (which_channels == OutputChannels.RIGHT_CHANNEL)) {
+				filter = filter1_fixed;
+				samples = samples1_fixed;
+			} else {
+				filter = filter2_fixed;
+				samples = samples2_fixed;
+			}
+			for (int ss = 0; ss < SSLIMIT; ss++) {
+				for (int sb18 = 0, sb = 0; sb18 < 576; sb18 += 18) {
+					samples[sb++] = out[sb18 + ss];
+				}
+				filter.calculateSamples(samples, buffer);
+			}
+		}
+	}
+
+	private final void reorder_fixed(final int xr[], final int ch, final int gr) {
+		GRInfo gr_info = (si.ch[ch].gr[gr]);
+		int[] out = out_1d_fixed;
+
+		if ((gr_info.window_switching_flag != 0) && (gr_info.block_type == 2)) {
+			if (gr_info.mixed_block_flag != 0) {
+				// NO REORDER FOR LOW 2 SUBBANDS
+				System.arraycopy(xr, 0, out, 0, 36);
+				// REORDERING FOR REST SWITCHED SHORT
+				for (int sfb = 3; sfb < 13; sfb++) {
+					int sfb_start = sfBandIndexS[sfb];
+					int sfb_lines = sfBandIndexS[sfb + 1] - sfb_start;
+					int sfb_start3 = (sfb_start << 2) - sfb_start;
+					for (int freq = 0, freq3 = 0; freq < sfb_lines; freq++, freq3 += 3) {
+						int src_line = sfb_start3 + freq;
+						int des_line = sfb_start3 + freq3;
+						out[des_line] = xr[src_line];
+						out[des_line + 1] = xr[src_line + sfb_lines];
+						out[des_line + 2] = xr[src_line + (sfb_lines << 1)];
+					}
+				}
+			} else {
+				// pure short
+				int reorder[] = reorder_table[sfreq];
+				for (int i = 576; --i >= 0;) {
+					out[i] = xr[reorder[i]];
+				}
+			}
+		} else {
+			// long blocks
+			System.arraycopy(xr, 0, out, 0, 576);
+		}
+	}
+
+	private final void antialias_fixed(final int ch, final int gr) {
+		GRInfo gr_info = (si.ch[ch].gr[gr]);
+		int[] out = out_1d_fixed;
+
+		int sb18lim = 0;
+
+		if ((gr_info.window_switching_flag != 0) && (gr_info.block_type == 2) && (gr_info.mixed_block_flag == 0)) {
+			return;
+		}
+		if ((gr_info.window_switching_flag != 0) && (gr_info.mixed_block_flag != 0) && (gr_info.block_type == 2)) {
+			sb18lim = 18;
+		} else {
+			sb18lim = 558;
+		}
+
+		for (int sb18 = 0; sb18 < sb18lim; sb18 += 18) {
+			for (int i = 0; i < 8; i++) {
+				int src_idx1 = sb18 + 17 - i;
+				int src_idx2 = sb18 + 18 + i;
+				long bu = out[src_idx1];
+				long bd = out[src_idx2];
+				int cst = cs_fixed[i];
+				int cat = ca_fixed[i];
+				out[src_idx1] = (int) (((bu * cst) - (bd * cat)) >> COEF_BITS);
+				out[src_idx2] = (int) (((bd * cst) + (bu * cat)) >> COEF_BITS);
+			}
+		}
+	}
+
+	private final void hybrid_fixed(final int ch, final int gr) {
+		GRInfo gr_info = (si.ch[ch].gr[gr]);
+		int[] out = out_1d_fixed;
+		int[] prev = prevblck_fixed[ch];
+		int[] ts = tsOut_fixed;
+		int[] raw = rawout_fixed;
+		for (int sb18 = 0; sb18 < 576; sb18 += 18) {
+			int bt = ((gr_info.window_switching_flag != 0) && (gr_info.mixed_block_flag != 0) && (sb18 < 36)) ? 0
+					: gr_info.block_type;
+
+			System.arraycopy(out, sb18, ts, 0, 18);
+			invMDCT_fixed(ts, raw, bt);
+
+			for (int cc = 0, sbt = sb18; cc < 18; cc++, sbt++) {
+				out[sbt] = raw[cc] + prev[sbt];
+				prev[sbt] = raw[cc + 18];
+			}
+		}
+	}
+
+	private final static void invMDCT_fixed(final int[] in, final int[] out, final int block_type) {
+		if (block_type == 2) {
+			for (int i = 0; i < 36; i++)
+				out[i] = 0;
+
+			int six_i = 0;
+			for (int i = 0; i < 3; i++) {
+				// 12 point IMDCT
+				// Input aliasing for 12 pt IDCT
+				int curr0 = 15 + i;
+				int curr1 = 12 + i;
+				int curr2 = 9 + i;
+				int curr3 = 6 + i;
+				int curr4 = 3 + i;
+				in[curr0] += in[curr1];
+				in[curr1] += in[curr2];
+				in[curr2] += in[curr3];
+				in[curr3] += in[curr4];
+				in[curr4] += in[i];
+				// Input aliasing on odd indices (for 6 point IDCT)
+				in[curr0] += in[curr2];
+				in[curr2] += in[curr4];
+				// 3 point IDCT on even indices
+				int pp2 = in[curr1] >> 1;
+				int pp1 = (int) (((long) in[curr3] * HALF_SQRT3) >> COEF_BITS);
+				int sum = in[i] + pp2;
+				int tmpf_1 = in[i] - in[curr1];
+				int tmpf_0 = sum + pp1;
+				int tmpf_2 = sum - pp1;
+				// 3 point IDCT on odd indices (for 6 point IDCT)
+				pp2 = in[curr0] >> 1;
+				pp1 = (int) (((long) in[curr2] * HALF_SQRT3) >> COEF_BITS);
+				sum = in[curr4] + pp2;
+				int tmpf_4 = in[curr4] - in[curr0];
+				int tmpf_5 = sum + pp1;
+				int tmpf_3 = sum - pp1;
+				// Twiddle factors on odd indices (for 6 point IDCT)
+				tmpf_3 = (int) (((long) tmpf_3 * HALF_SEC75) >> COEF_BITS);
+				tmpf_4 = (int) (((long) tmpf_4 * SQRT_HALF) >> COEF_BITS);
+				tmpf_5 = (int) (((long) tmpf_5 * HALF_SEC15) >> COEF_BITS);
+				// Output butterflies on 2 3 point IDCT's (for 6 point IDCT)
+				int save = tmpf_0;
+				tmpf_0 += tmpf_5;
+				tmpf_5 = save - tmpf_5;
+				save = tmpf_1;
+				tmpf_1 += tmpf_4;
+				tmpf_4 = save - tmpf_4;
+				save = tmpf_2;
+				tmpf_2 += tmpf_3;
+				tmpf_3 = save - tmpf_3;
+				// Twiddle factors on indices (for 12 point IDCT)
+				tmpf_0 = (int) (((long) tmpf_0 * HALF_SEC7_5) >> COEF_BITS);
+				tmpf_1 = (int) (((long) tmpf_1 * HALF_SEC22_5) >> COEF_BITS);
+				tmpf_2 = (int) (((long) tmpf_2 * HALF_SEC37_5) >> COEF_BITS);
+				tmpf_3 = (int) (((long) tmpf_3 * HALF_SEC52_5) >> COEF_BITS);
+				tmpf_4 = (int) (((long) tmpf_4 * HALF_SEC67_5) >> COEF_BITS);
+				tmpf_5 = (int) (((long) tmpf_5 * HALF_SEC82_5) >> COEF_BITS);
+				// Shift to 12 point modified IDCT, multiply by window type 2
+				int tmpf_8 = -(int) (((long) tmpf_0 * COS37_5) >> COEF_BITS);
+				int tmpf_9 = -(int) (((long) tmpf_0 * COS52_5) >> COEF_BITS);
+				int tmpf_7 = -(int) (((long) tmpf_1 * COS22_5) >> COEF_BITS);
+				int tmpf_10 = -(int) (((long) tmpf_1 * COS67_5) >> COEF_BITS);
+				int tmpf_6 = -(int) (((long) tmpf_2 * COS7_5) >> COEF_BITS);
+				int tmpf_11 = -(int) (((long) tmpf_2 * COS82_5) >> COEF_BITS);
+				tmpf_0 = tmpf_3;
+				tmpf_1 = (int) (((long) tmpf_4 * COS67_5) >> COEF_BITS);
+				tmpf_2 = (int) (((long) tmpf_5 * COS52_5) >> COEF_BITS);
+				tmpf_3 = -(int) (((long) tmpf_5 * COS37_5) >> COEF_BITS);
+				tmpf_4 = -(int) (((long) tmpf_4 * COS22_5) >> COEF_BITS);
+				tmpf_5 = -(int) (((long) tmpf_0 * COS7_5) >> COEF_BITS);
+				tmpf_0 = (int) (((long) tmpf_0 * COS82_5) >> COEF_BITS);
+				out[six_i + 6] += tmpf_0;
+				out[six_i + 7] += tmpf_1;
+				out[six_i + 8] += tmpf_2;
+				out[six_i + 9] += tmpf_3;
+				out[six_i + 10] += tmpf_4;
+				out[six_i + 11] += tmpf_5;
+				out[six_i + 12] += tmpf_6;
+				out[six_i + 13] += tmpf_7;
+				out[six_i + 14] += tmpf_8;
+				out[six_i + 15] += tmpf_9;
+				out[six_i + 16] += tmpf_10;
+				out[six_i + 17] += tmpf_11;
+				six_i += 6;
+			}
+		} else {
+			// 36 point IDCT
+			// input aliasing for 36 point IDCT
+			for (int i = 17; i > 0; i--) {
+				in[i] += in[i - 1];
+			}
+			// 18 point IDCT for odd indices
+			// input aliasing for 18 point IDCT
+			for (int i = 17; i > 1; i -= 2) {
+				in[i] += in[i - 2];
+			}
+
+			// 9 point IDCT on even indices, see invMDCT()
+			// 5 points on odd indices (not realy an IDCT)
+			int i00 = in[0] + in[0];
+			int iip12 = i00 + in[12];
+			int tmp0 = iip12
+					+ (int) (((long) in[4] * TWO_COS20 + (long) in[8] * TWO_COS40 + (long) in[16] * TWO_COS80) >> COEF_BITS);
+			int tmp1 = i00 + in[4] - in[8] - in[12] - in[12] - in[16];
+			int tmp2 = iip12
+					+ (int) ((-(long) in[4] * TWO_COS80 - (long) in[8] * TWO_COS20 + (long) in[16] * TWO_COS40) >> COEF_BITS);
+			int tmp3 = iip12
+					+ (int) ((-(long) in[4] * TWO_COS40 + (long) in[8] * TWO_COS80 - (long) in[16] * TWO_COS20) >> COEF_BITS);
+			int tmp4 = in[0] - in[4] + in[8] - in[12] + in[16];
+			// 4 points on even indices
+			int i66_ = (int) (((long) in[6] * SQRT3) >> COEF_BITS);
+			int tmp0_ = i66_
+					+ (int) (((long) in[2] * TWO_COS10 + (long) in[10] * TWO_COS50 + (long) in[14] * TWO_COS70) >> COEF_BITS);
+			int tmp1_ = (int) (((long) (in[2] - in[10] - in[14]) * SQRT3) >> COEF_BITS);
+			int tmp2_ = -i66_
+					+ (int) (((long) in[2] * TWO_COS50 - (long) in[10] * TWO_COS70 + (long) in[14] * TWO_COS10) >> COEF_BITS);
+			int tmp3_ = -i66_
+					+ (int) (((long) in[2] * TWO_COS70 + (long) in[10] * TWO_COS10 - (long) in[14] * TWO_COS50) >> COEF_BITS);
+			// 9 point IDCT on odd indices
+			// 5 points on odd indices (not realy an IDCT)
+			int i0 = in[1] + in[1];
+			int i0p12 = i0 + in[13];
+			int tmp0o = i0p12
+					+ (int) (((long) in[5] * TWO_COS20 + (long) in[9] * TWO_COS40 + (long) in[17] * TWO_COS80) >> COEF_BITS);
+			int tmp1o = i0 + in[5] - in[9] - in[13] - in[13] - in[17];
+			int tmp2o = i0p12
+					+ (int) ((-(long) in[5] * TWO_COS80 - (long) in[9] * TWO_COS20 + (long) in[17] * TWO_COS40) >> COEF_BITS);
+			int tmp3o = i0p12
+					+ (int) ((-(long) in[5] * TWO_COS40 + (long) in[9] * TWO_COS80 - (long) in[17] * TWO_COS20) >> COEF_BITS);
+			int tmp4o = (int) (((long) (in[1] - in[5] + in[9] - in[13] + in[17]) * SQRT_HALF) >> COEF_BITS); // Twiddled
+			// 4 points on even indices
+			int i6_ = (int) (((long) in[7] * SQRT3) >> COEF_BITS);
+			int tmp0_o = i6_
+					+ (int) (((long) in[3] * TWO_COS10 + (long) in[11] * TWO_COS50 + (long) in[15] * TWO_COS70) >> COEF_BITS);
+			int tmp1_o = (int) (((long) (in[3] - in[11] - in[15]) * SQRT3) >> COEF_BITS);
+			int tmp2_o = -i6_
+					+ (int) (((long) in[3] * TWO_COS50 - (long) in[11] * TWO_COS70 + (long) in[15] * TWO_COS10) >> COEF_BITS);
+			int tmp3_o = -i6_
+					+ (int) (((long) in[3] * TWO_COS70 + (long) in[11] * TWO_COS10 - (long) in[15] * TWO_COS50) >> COEF_BITS);
+			// Twiddle factors on odd indices
+			// and
+			// Butterflies on 9 point IDCT's
+			// and
+			// twiddle factors for 36 point IDCT
+			int e = tmp0 + tmp0_;
+			int o = (int) (((long) (tmp0o + tmp0_o) * HALF_SEC5) >> COEF_BITS);
+			int tmpf_0 = e + o;
+			int tmpf_17 = e - o;
+			e = tmp1 + tmp1_;
+			o = (int) (((long) (tmp1o + tmp1_o) * HALF_SEC15) >> COEF_BITS);
+			int tmpf_1 = e + o;
+			int tmpf_16 = e - o;
+			e = tmp2 + tmp2_;
+			o = (int) (((long) (tmp2o + tmp2_o) * HALF_SEC25) >> COEF_BITS);
+			int tmpf_2 = e + o;
+			int tmpf_15 = e - o;
+			e = tmp3 + tmp3_;
+			o = (int) (((long) (tmp3o + tmp3_o) * HALF_SEC35) >> COEF_BITS);
+			int tmpf_3 = e + o;
+			int tmpf_14 = e - o;
+			int tmpf_4 = tmp4 + tmp4o;
+			int tmpf_13 = tmp4 - tmp4o;
+			e = tmp3 - tmp3_;
+			o = (int) (((long) (tmp3o - tmp3_o) * HALF_SEC55) >> COEF_BITS);
+			int tmpf_5 = e + o;
+			int tmpf_12 = e - o;
+			e = tmp2 - tmp2_;
+			o = (int) (((long) (tmp2o - tmp2_o) * HALF_SEC65) >> COEF_BITS);
+			int tmpf_6 = e + o;
+			int tmpf_11 = e - o;
+			e = tmp1 - tmp1_;
+			o = (int) (((long) (tmp1o - tmp1_o) * HALF_SEC75) >> COEF_BITS);
+			int tmpf_7 = e + o;
+			int tmpf_10 = e - o;
+			e = tmp0 - tmp0_;
+			o = (int) (((long) (tmp0o - tmp0_o) * HALF_SEC85) >> COEF_BITS);
+			int tmpf_8 = e + o;
+			int tmpf_9 = e - o;
+			// end 36 point IDCT
+			// shift to modified IDCT
+			int[] win_bt = win_fixed[block_type];
+			out[0] = (int) ((-(long) tmpf_9 * win_bt[0]) >> COEF_BITS);
+			out[1] = (int) ((-(long) tmpf_10 * win_bt[1]) >> COEF_BITS);
+			out[2] = (int) ((-(long) tmpf_11 * win_bt[2]) >> COEF_BITS);
+			out[3] = (int) ((-(long) tmpf_12 * win_bt[3]) >> COEF_BITS);
+			out[4] = (int) ((-(long) tmpf_13 * win_bt[4]) >> COEF_BITS);
+			out[5] = (int) ((-(long) tmpf_14 * win_bt[5]) >> COEF_BITS);
+			out[6] = (int) ((-(long) tmpf_15 * win_bt[6]) >> COEF_BITS);
+			out[7] = (int) ((-(long) tmpf_16 * win_bt[7]) >> COEF_BITS);
+			out[8] = (int) ((-(long) tmpf_17 * win_bt[8]) >> COEF_BITS);
+			out[9] = (int) (((long) tmpf_17 * win_bt[9]) >> COEF_BITS);
+			out[10] = (int) (((long) tmpf_16 * win_bt[10]) >> COEF_BITS);
+			out[11] = (int) (((long) tmpf_15 * win_bt[11]) >> COEF_BITS);
+			out[12] = (int) (((long) tmpf_14 * win_bt[12]) >> COEF_BITS);
+			out[13] = (int) (((long) tmpf_13 * win_bt[13]) >> COEF_BITS);
+			out[14] = (int) (((long) tmpf_12 * win_bt[14]) >> COEF_BITS);
+			out[15] = (int) (((long) tmpf_11 * win_bt[15]) >> COEF_BITS);
+			out[16] = (int) (((long) tmpf_10 * win_bt[16]) >> COEF_BITS);
+			out[17] = (int) (((long) tmpf_9 * win_bt[17]) >> COEF_BITS);
+			out[18] = (int) (((long) tmpf_8 * win_bt[18]) >> COEF_BITS);
+			out[19] = (int) (((long) tmpf_7 * win_bt[19]) >> COEF_BITS);
+			out[20] = (int) (((long) tmpf_6 * win_bt[20]) >> COEF_BITS);
+			out[21] = (int) (((long) tmpf_5 * win_bt[21]) >> COEF_BITS);
+			out[22] = (int) (((long) tmpf_4 * win_bt[22]) >> COEF_BITS);
+			out[23] = (int) (((long) tmpf_3 * win_bt[23]) >> COEF_BITS);
+			out[24] = (int) (((long) tmpf_2 * win_bt[24]) >> COEF_BITS);
+			out[25] = (int) (((long) tmpf_1 * win_bt[25]) >> COEF_BITS);
+			out[26] = (int) (((long) tmpf_0 * win_bt[26]) >> COEF_BITS);
+			out[27] = (int) (((long) tmpf_0 * win_bt[27]) >> COEF_BITS);
+			out[28] = (int) (((long) tmpf_1 * win_bt[28]) >> COEF_BITS);
+			out[29] = (int) (((long) tmpf_2 * win_bt[29]) >> COEF_BITS);
+			out[30] = (int) (((long) tmpf_3 * win_bt[30]) >> COEF_BITS);
+			out[31] = (int) (((long) tmpf_4 * win_bt[31]) >> COEF_BITS);
+			out[32] = (int) (((long) tmpf_5 * win_bt[32]) >> COEF_BITS);
+			out[33] = (int) (((long) tmpf_6 * win_bt[33]) >> COEF_BITS);
+			out[34] = (int) (((long) tmpf_7 * win_bt[34]) >> COEF_BITS);
+			out[35] = (int) (((long) tmpf_8 * win_bt[35]) >> COEF_BITS);
+		}
+	}
+
 	private static final class GRInfo {
 		private int part2_3_length;
 		private int big_values;
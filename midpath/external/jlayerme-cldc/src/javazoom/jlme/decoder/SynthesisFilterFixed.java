@@ -0,0 +1,483 @@
+/**
+ *-----------------------------------------------------------------------
+ *   This program is free software; you can redistribute it and/or modify
+ *   it under the terms of the GNU Library General Public License as published
+ *   by the Free Software Foundation; either version 2 of the License,or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU Library General Public License for more details.
+ *
+ *   You should have received a copy of the GNU Library General Public
+ *   License along with this program; if not,write to the Free Software
+ *   Foundation,Inc.,675 Mass Ave,Cambridge,MA 02139,USA.
+ *----------------------------------------------------------------------
+ */
+package javazoom.jlme.decoder;
+
+/**
+ * A fixed-point version of SynthesisFilter, for devices without a FPU.
+ * <p>
+ * The subband samples have FRAC_BITS fractional bits and the constants
+ * COEF_BITS. Products are computed on 64 bits so that no precision is lost
+ * before the shift back. The PCM samples are rounded toward zero and
+ * clipped like the float filter does.
+ */
+final class SynthesisFilterFixed {
+
+	/** Number of fractional bits of the samples */
+	final static int FRAC_BITS = 22;
+
+	/** Number of fractional bits of the constants */
+	final static int COEF_BITS = 26;
+
+	/** Number of fractional bits of the scaled synthesis window */
+	private final static int WINDOW_BITS = 15;
+
+	private final static int PCM_SHIFT = FRAC_BITS + WINDOW_BITS;
+
+	private final static int COS1_64 = (int) (0.500603 * (1 << COEF_BITS));
+	private final static int COS3_64 = (int) (0.50547093 * (1 << COEF_BITS));
+	private final static int COS5_64 = (int) (0.5154473 * (1 << COEF_BITS));
+	private final static int COS7_64 = (int) (0.5310426 * (1 << COEF_BITS));
+	private final static int COS9_64 = (int) (0.5531039 * (1 << COEF_BITS));
+	private final static int COS11_64 = (int) (0.582935 * (1 << COEF_BITS));
+	private final static int COS13_64 = (int) (0.6225041 * (1 << COEF_BITS));
+	private final static int COS15_64 = (int) (0.6748083 * (1 << COEF_BITS));
+	private final static int COS17_64 = (int) (0.7445363 * (1 << COEF_BITS));
+	private final static int COS19_64 = (int) (0.8393496 * (1 << COEF_BITS));
+	private final static int COS21_64 = (int) (0.9725682 * (1 << COEF_BITS));
+	private final static int COS23_64 = (int) (1.1694399 * (1 << COEF_BITS));
+	private final static int COS25_64 = (int) (1.4841646 * (1 << COEF_BITS));
+	private final static int COS27_64 = (int) (2.057781 * (1 << COEF_BITS));
+	private final static int COS29_64 = (int) (3.4076085 * (1 << COEF_BITS));
+	private final static int COS31_64 = (int) (10.190008 * (1 << COEF_BITS));
+	private final static int COS1_32 = (int) (0.5024193 * (1 << COEF_BITS));
+	private final static int COS3_32 = (int) (0.5224986 * (1 << COEF_BITS));
+	private final static int COS5_32 = (int) (0.56694406 * (1 << COEF_BITS));
+	private final static int COS7_32 = (int) (0.6468218 * (1 << COEF_BITS));
+	private final static int COS9_32 = (int) (0.7881546 * (1 << COEF_BITS));
+	private final static int COS11_32 = (int) (1.0606776 * (1 << COEF_BITS));
+	private final static int COS13_32 = (int) (1.7224472 * (1 << COEF_BITS));
+	private final static int COS15_32 = (int) (5.1011486 * (1 << COEF_BITS));
+	private final static int COS1_16 = (int) (0.5097956 * (1 << COEF_BITS));
+	private final static int COS3_16 = (int) (0.6013449 * (1 << COEF_BITS));
+	private final static int COS5_16 = (int) (0.8999762 * (1 << COEF_BITS));
+	private final static int COS7_16 = (int) (2.5629156 * (1 << COEF_BITS));
+	private final static int COS1_8 = (int) (0.5411961 * (1 << COEF_BITS));
+	private final static int COS3_8 = (int) (1.306563 * (1 << COEF_BITS));
+	private final static int COS1_4 = (int) (0.70710677 * (1 << COEF_BITS));
+
+	/*
+	 * Synthesis window multiplied by the scale factor, for each write
+	 * position. The coefficients are ordered like the values of V they
+	 * multiply, so that V is read sequentially.
+	 */
+	private static int[][] window;
+	private static float windowFactor;
+
+	private final int[] v1 = new int[512];
+	private final int[] v2 = new int[512];
+	private int[] actual_v;
+	private int actual_write_pos;
+	private int[] samples;
+	private final int channel;
+	private final int[][] windows;
+
+	public SynthesisFilterFixed(int channelnumber, float factor) {
+		channel = channelnumber;
+		windows = getWindow(factor);
+		reset();
+	}
+
+	/**
+	 * Returns the synthesis window for a scale factor. The window is
+	 * shared by the filters using the same scale factor.
+	 */
+	private static synchronized int[][] getWindow(float factor) {
+		if ((window == null) || (windowFactor != factor)) {
+			float[] d = D16.dat;
+			int[][] w = new int[16][512];
+			for (int pos = 0; pos < 16; pos++) {
+				for (int i = 0; i < 512; i += 16) {
+					for (int m = 0; m < 16; m++) {
+						float c = d[i + ((pos - m) & 0xf)] * factor * (1 << WINDOW_BITS);
+						w[pos][i + m] = (int) (c < 0 ? c - 0.5f : c + 0.5f);
+					}
+				}
+			}
+			window = w;
+			windowFactor = factor;
+		}
+		return window;
+	}
+
+	/** Reset the synthesis filter. */
+	public final void reset() {
+		for (int ii = 0; ii < 512; ii++) {
+			v1[ii] = 0;
+			v2[ii] = 0;
+		}
+		actual_v = v1;
+		actual_write_pos = 15;
+	}
+
+	public final void calculateSamples(int[] s, SampleBuffer buffer) {
+		samples = s;
+		compute_new_v();
+		compute_pcm_samples(buffer);
+		actual_write_pos = (actual_write_pos + 1) & 0xf;
+		actual_v = (actual_v == v1) ? v2 : v1;
+	}
+
+	/** Compute new values via a fast cosine transform. */
+	private final void compute_new_v() {
+		int s1 = samples[0], s2 = samples[1], s3 = samples[2], s4 = samples[3], s5 = samples[4], s6 = samples[5],
+				s7 = samples[6], s8 = samples[7], s9 = samples[8], s10 = samples[9], s11 = samples[10], s12 = samples[11],
+				s13 = samples[12], s14 = samples[13], s15 = samples[14], s16 = samples[15], s17 = samples[16],
+				s18 = samples[17], s19 = samples[18], s20 = samples[19], s21 = samples[20], s22 = samples[21],
+				s23 = samples[22], s24 = samples[23], s25 = samples[24], s26 = samples[25], s27 = samples[26],
+				s28 = samples[27], s29 = samples[28], s30 = samples[29], s31 = samples[30], s32 = samples[31];
+		int new_v0, new_v1, new_v2, new_v3, new_v4, new_v5, new_v6, new_v7, new_v8, new_v9, new_v10, new_v11,
+				new_v12, new_v13, new_v14, new_v15, new_v16, new_v17, new_v18, new_v19, new_v20, new_v21, new_v22, new_v23,
+				new_v24, new_v25, new_v26, new_v27, new_v28, new_v29, new_v30, new_v31;
+		int p0, p1, p2, p3, p4, p5, p6, p7, p8, p9, p10, p11, p12, p13, p14, p15;
+		int pp0, pp1, pp2, pp3, pp4, pp5, pp6, pp7, pp8, pp9, pp10, pp11, pp12, pp13, pp14, pp15;
+		p0 = s1 + s32;
+		p1 = s2 + s31;
+		p2 = s3 + s30;
+		p3 = s4 + s29;
+		p4 = s5 + s28;
+		p5 = s6 + s27;
+		p6 = s7 + s26;
+		p7 = s8 + s25;
+		p8 = s9 + s24;
+		p9 = s10 + s23;
+		p10 = s11 + s22;
+		p11 = s12 + s21;
+		p12 = s13 + s20;
+		p13 = s14 + s19;
+		p14 = s15 + s18;
+		p15 = s16 + s17;
+		pp0 = p0 + p15;
+		pp1 = p1 + p14;
+		pp2 = p2 + p13;
+		pp3 = p3 + p12;
+		pp4 = p4 + p11;
+		pp5 = p5 + p10;
+		pp6 = p6 + p9;
+		pp7 = p7 + p8;
+		pp8 = (int) (((long) (p0 - p15) * COS1_32) >> COEF_BITS);
+		pp9 = (int) (((long) (p1 - p14) * COS3_32) >> COEF_BITS);
+		pp10 = (int) (((long) (p2 - p13) * COS5_32) >> COEF_BITS);
+		pp11 = (int) (((long) (p3 - p12) * COS7_32) >> COEF_BITS);
+		pp12 = (int) (((long) (p4 - p11) * COS9_32) >> COEF_BITS);
+		pp13 = (int) (((long) (p5 - p10) * COS11_32) >> COEF_BITS);
+		pp14 = (int) (((long) (p6 - p9) * COS13_32) >> COEF_BITS);
+		pp15 = (int) (((long) (p7 - p8) * COS15_32) >> COEF_BITS);
+		p0 = pp0 + pp7;
+		p1 = pp1 + pp6;
+		p2 = pp2 + pp5;
+		p3 = pp3 + pp4;
+		p4 = (int) (((long) (pp0 - pp7) * COS1_16) >> COEF_BITS);
+		p5 = (int) (((long) (pp1 - pp6) * COS3_16) >> COEF_BITS);
+		p6 = (int) (((long) (pp2 - pp5) * COS5_16) >> COEF_BITS);
+		p7 = (int) (((long) (pp3 - pp4) * COS7_16) >> COEF_BITS);
+		p8 = pp8 + pp15;
+		p9 = pp9 + pp14;
+		p10 = pp10 + pp13;
+		p11 = pp11 + pp12;
+		p12 = (int) (((long) (pp8 - pp15) * COS1_16) >> COEF_BITS);
+		p13 = (int) (((long) (pp9 - pp14) * COS3_16) >> COEF_BITS);
+		p14 = (int) (((long) (pp10 - pp13) * COS5_16) >> COEF_BITS);
+		p15 = (int) (((long) (pp11 - pp12) * COS7_16) >> COEF_BITS);
+		pp0 = p0 + p3;
+		pp1 = p1 + p2;
+		pp2 = (int) (((long) (p0 - p3) * COS1_8) >> COEF_BITS);
+		pp3 = (int) (((long) (p1 - p2) * COS3_8) >> COEF_BITS);
+		pp4 = p4 + p7;
+		pp5 = p5 + p6;
+		pp6 = (int) (((long) (p4 - p7) * COS1_8) >> COEF_BITS);
+		pp7 = (int) (((long) (p5 - p6) * COS3_8) >> COEF_BITS);
+		pp8 = p8 + p11;
+		pp9 = p9 + p10;
+		pp10 = (int) (((long) (p8 - p11) * COS1_8) >> COEF_BITS);
+		pp11 = (int) (((long) (p9 - p10) * COS3_8) >> COEF_BITS);
+		pp12 = p12 + p15;
+		pp13 = p13 + p14;
+		pp14 = (int) (((long) (p12 - p15) * COS1_8) >> COEF_BITS);
+		pp15 = (int) (((long) (p13 - p14) * COS3_8) >> COEF_BITS);
+		p0 = pp0 + pp1;
+		p1 = (int) (((long) (pp0 - pp1) * COS1_4) >> COEF_BITS);
+		p2 = pp2 + pp3;
+		p3 = (int) (((long) (pp2 - pp3) * COS1_4) >> COEF_BITS);
+		p4 = pp4 + pp5;
+		p5 = (int) (((long) (pp4 - pp5) * COS1_4) >> COEF_BITS);
+		p6 = pp6 + pp7;
+		p7 = (int) (((long) (pp6 - pp7) * COS1_4) >> COEF_BITS);
+		p8 = pp8 + pp9;
+		p9 = (int) (((long) (pp8 - pp9) * COS1_4) >> COEF_BITS);
+		p10 = pp10 + pp11;
+		p11 = (int) (((long) (pp10 - pp11) * COS1_4) >> COEF_BITS);
+		p12 = pp12 + pp13;
+		p13 = (int) (((long) (pp12 - pp13) * COS1_4) >> COEF_BITS);
+		p14 = pp14 + pp15;
+		p15 = (int) (((long) (pp14 - pp15) * COS1_4) >> COEF_BITS);
+		// this is pretty insane coding
+		int tmp1;
+		new_v19/*
+		 *  36-17
+		 */
+		= -(new_v4 = (new_v12 = p7) + p5) - p6;
+		new_v27/*
+		 *  44-17
+		 */
+		= -p6 - p7 - p4;
+		new_v6 = (new_v10 = (new_v14 = p15) + p11) + p13;
+		new_v17/*
+		 *  34-17
+		 */
+		= -(new_v2 = p15 + p13 + p9) - p14;
+		new_v21/*
+		 *  38-17
+		 */
+		= (tmp1 = -p14 - p15 - p10 - p11) - p13;
+		new_v29/*
+		 *  46-17
+		 */
+		= -p14 - p15 - p12 - p8;
+		new_v25/*
+		 *  42-17
+		 */
+		= tmp1 - p12;
+		new_v31/*
+		 *  48-17
+		 */
+		= -p0;
+		new_v0 = p1;
+		new_v23/*
+		 *  40-17
+		 */
+		= -(new_v8 = p3) - p2;
+		p0 = (int) (((long) (s1 - s32) * COS1_64) >> COEF_BITS);
+		p1 = (int) (((long) (s2 - s31) * COS3_64) >> COEF_BITS);
+		p2 = (int) (((long) (s3 - s30) * COS5_64) >> COEF_BITS);
+		p3 = (int) (((long) (s4 - s29) * COS7_64) >> COEF_BITS);
+		p4 = (int) (((long) (s5 - s28) * COS9_64) >> COEF_BITS);
+		p5 = (int) (((long) (s6 - s27) * COS11_64) >> COEF_BITS);
+		p6 = (int) (((long) (s7 - s26) * COS13_64) >> COEF_BITS);
+		p7 = (int) (((long) (s8 - s25) * COS15_64) >> COEF_BITS);
+		p8 = (int) (((long) (s9 - s24) * COS17_64) >> COEF_BITS);
+		p9 = (int) (((long) (s10 - s23) * COS19_64) >> COEF_BITS);
+		p10 = (int) (((long) (s11 - s22) * COS21_64) >> COEF_BITS);
+		p11 = (int) (((long) (s12 - s21) * COS23_64) >> COEF_BITS);
+		p12 = (int) (((long) (s13 - s20) * COS25_64) >> COEF_BITS);
+		p13 = (int) (((long) (s14 - s19) * COS27_64) >> COEF_BITS);
+		p14 = (int) (((long) (s15 - s18) * COS29_64) >> COEF_BITS);
+		p15 = (int) (((long) (s16 - s17) * COS31_64) >> COEF_BITS);
+		pp0 = p0 + p15;
+		pp1 = p1 + p14;
+		pp2 = p2 + p13;
+		pp3 = p3 + p12;
+		pp4 = p4 + p11;
+		pp5 = p5 + p10;
+		pp6 = p6 + p9;
+		pp7 = p7 + p8;
+		pp8 = (int) (((long) (p0 - p15) * COS1_32) >> COEF_BITS);
+		pp9 = (int) (((long) (p1 - p14) * COS3_32) >> COEF_BITS);
+		pp10 = (int) (((long) (p2 - p13) * COS5_32) >> COEF_BITS);
+		pp11 = (int) (((long) (p3 - p12) * COS7_32) >> COEF_BITS);
+		pp12 = (int) (((long) (p4 - p11) * COS9_32) >> COEF_BITS);
+		pp13 = (int) (((long) (p5 - p10) * COS11_32) >> COEF_BITS);
+		pp14 = (int) (((long) (p6 - p9) * COS13_32) >> COEF_BITS);
+		pp15 = (int) (((long) (p7 - p8) * COS15_32) >> COEF_BITS);
+		p0 = pp0 + pp7;
+		p1 = pp1 + pp6;
+		p2 = pp2 + pp5;
+		p3 = pp3 + pp4;
+		p4 = (int) (((long) (pp0 - pp7) * COS1_16) >> COEF_BITS);
+		p5 = (int) (((long) (pp1 - pp6) * COS3_16) >> COEF_BITS);
+		p6 = (int) (((long) (pp2 - pp5) * COS5_16) >> COEF_BITS);
+		p7 = (int) (((long) (pp3 - pp4) * COS7_16) >> COEF_BITS);
+		p8 = pp8 + pp15;
+		p9 = pp9 + pp14;
+		p10 = pp10 + pp13;
+		p11 = pp11 + pp12;
+		p12 = (int) (((long) (pp8 - pp15) * COS1_16) >> COEF_BITS);
+		p13 = (int) (((long) (pp9 - pp14) * COS3_16) >> COEF_BITS);
+		p14 = (int) (((long) (pp10 - pp13) * COS5_16) >> COEF_BITS);
+		p15 = (int) (((long) (pp11 - pp12) * COS7_16) >> COEF_BITS);
+		pp0 = p0 + p3;
+		pp1 = p1 + p2;
+		pp2 = (int) (((long) (p0 - p3) * COS1_8) >> COEF_BITS);
+		pp3 = (int) (((long) (p1 - p2) * COS3_8) >> COEF_BITS);
+		pp4 = p4 + p7;
+		pp5 = p5 + p6;
+		pp6 = (int) (((long) (p4 - p7) * COS1_8) >> COEF_BITS);
+		pp7 = (int) (((long) (p5 - p6) * COS3_8) >> COEF_BITS);
+		pp8 = p8 + p11;
+		pp9 = p9 + p10;
+		pp10 = (int) (((long) (p8 - p11) * COS1_8) >> COEF_BITS);
+		pp11 = (int) (((long) (p9 - p10) * COS3_8) >> COEF_BITS);
+		pp12 = p12 + p15;
+		pp13 = p13 + p14;
+		pp14 = (int) (((long) (p12 - p15) * COS1_8) >> COEF_BITS);
+		pp15 = (int) (((long) (p13 - p14) * COS3_8) >> COEF_BITS);
+		p0 = pp0 + pp1;
+		p1 = (int) (((long) (pp0 - pp1) * COS1_4) >> COEF_BITS);
+		p2 = pp2 + pp3;
+		p3 = (int) (((long) (pp2 - pp3) * COS1_4) >> COEF_BITS);
+		p4 = pp4 + pp5;
+		p5 = (int) (((long) (pp4 - pp5) * COS1_4) >> COEF_BITS);
+		p6 = pp6 + pp7;
+		p7 = (int) (((long) (pp6 - pp7) * COS1_4) >> COEF_BITS);
+		p8 = pp8 + pp9;
+		p9 = (int) (((long) (pp8 - pp9) * COS1_4) >> COEF_BITS);
+		p10 = pp10 + pp11;
+		p11 = (int) (((long) (pp10 - pp11) * COS1_4) >> COEF_BITS);
+		p12 = pp12 + pp13;
+		p13 = (int) (((long) (pp12 - pp13) * COS1_4) >> COEF_BITS);
+		p14 = pp14 + pp15;
+		p15 = (int) (((long) (pp14 - pp15) * COS1_4) >> COEF_BITS);
+		// manually doing something that a compiler should handle sucks
+		// coding like this is hard to read
+		int tmp2;
+		new_v5 = (new_v11 = (new_v13 = (new_v15 = p15) + p7) + p11) + p5 + p13;
+		new_v7 = (new_v9 = p15 + p11 + p3) + p13;
+		new_v16/*
+		 *  33-17
+		 */
+		= -(new_v1 = (tmp1 = p13 + p15 + p9) + p1) - p14;
+		new_v18/*
+		 *  35-17
+		 */
+		= -(new_v3 = tmp1 + p5 + p7) - p6 - p14;
+		new_v22/*
+		 *  39-17
+		 */
+		= (tmp1 = -p10 - p11 - p14 - p15) - p13 - p2 - p3;
+		new_v20/*
+		 *  37-17
+		 */
+		= tmp1 - p13 - p5 - p6 - p7;
+		new_v24/*
+		 *  41-17
+		 */
+		= tmp1 - p12 - p2 - p3;
+		new_v26/*
+		 *  43-17
+		 */
+		= tmp1 - p12 - (tmp2 = p4 + p6 + p7);
+		new_v30/*
+		 *  47-17
+		 */
+		= (tmp1 = -p8 - p12 - p14 - p15) - p0;
+		new_v28/*
+		 *  45-17
+		 */
+		= tmp1 - tmp2;
+		int pos = actual_write_pos;
+		int[] dest = actual_v;
+		dest[pos] = new_v0;
+		dest[16 + pos] = new_v1;
+		dest[32 + pos] = new_v2;
+		dest[48 + pos] = new_v3;
+		dest[64 + pos] = new_v4;
+		dest[80 + pos] = new_v5;
+		dest[96 + pos] = new_v6;
+		dest[112 + pos] = new_v7;
+		dest[128 + pos] = new_v8;
+		dest[144 + pos] = new_v9;
+		dest[160 + pos] = new_v10;
+		dest[176 + pos] = new_v11;
+		dest[192 + pos] = new_v12;
+		dest[208 + pos] = new_v13;
+		dest[224 + pos] = new_v14;
+		dest[240 + pos] = new_v15;
+		dest[256 + pos] = 0;
+		dest[272 + pos] = -new_v15;
+		dest[288 + pos] = -new_v14;
+		dest[304 + pos] = -new_v13;
+		dest[320 + pos] = -new_v12;
+		dest[336 + pos] = -new_v11;
+		dest[352 + pos] = -new_v10;
+		dest[368 + pos] = -new_v9;
+		dest[384 + pos] = -new_v8;
+		dest[400 + pos] = -new_v7;
+		dest[416 + pos] = -new_v6;
+		dest[432 + pos] = -new_v5;
+		dest[448 + pos] = -new_v4;
+		dest[464 + pos] = -new_v3;
+		dest[480 + pos] = -new_v2;
+		dest[496 + pos] = -new_v1;
+		dest = (dest == v1) ? v2 : v1;
+		dest[pos] = -new_v0;
+		dest[16 + pos] = new_v16;
+		dest[32 + pos] = new_v17;
+		dest[48 + pos] = new_v18;
+		dest[64 + pos] = new_v19;
+		dest[80 + pos] = new_v20;
+		dest[96 + pos] = new_v21;
+		dest[112 + pos] = new_v22;
+		dest[128 + pos] = new_v23;
+		dest[144 + pos] = new_v24;
+		dest[160 + pos] = new_v25;
+		dest[176 + pos] = new_v26;
+		dest[192 + pos] = new_v27;
+		dest[208 + pos] = new_v28;
+		dest[224 + pos] = new_v29;
+		dest[240 + pos] = new_v30;
+		dest[256 + pos] = new_v31;
+		dest[272 + pos] = new_v30;
+		dest[288 + pos] = new_v29;
+		dest[304 + pos] = new_v28;
+		dest[320 + pos] = new_v27;
+		dest[336 + pos] = new_v26;
+		dest[352 + pos] = new_v25;
+		dest[368 + pos] = new_v24;
+		dest[384 + pos] = new_v23;
+		dest[400 + pos] = new_v22;
+		dest[416 + pos] = new_v21;
+		dest[432 + pos] = new_v20;
+		dest[448 + pos] = new_v19;
+		dest[464 + pos] = new_v18;
+		dest[480 + pos] = new_v17;
+		dest[496 + pos] = new_v16;
+	}
+
+
+	private final void compute_pcm_samples(SampleBuffer buff) {
+		int pos = buff.getBufferIndex(channel);
+		int channels = buff.getBufferChannelCount();
+		final byte[] bytes = buff.getBuffer();
+		final int[] v = actual_v;
+		final int[] w = windows[actual_write_pos];
+
+		for (int dvp = 0; dvp < 512; dvp += 16) {
+			long sum = (long) v[dvp] * w[dvp] + (long) v[dvp + 1] * w[dvp + 1] + (long) v[dvp + 2] * w[dvp + 2]
+					+ (long) v[dvp + 3] * w[dvp + 3] + (long) v[dvp + 4] * w[dvp + 4] + (long) v[dvp + 5] * w[dvp + 5]
+					+ (long) v[dvp + 6] * w[dvp + 6] + (long) v[dvp + 7] * w[dvp + 7] + (long) v[dvp + 8] * w[dvp + 8]
+					+ (long) v[dvp + 9] * w[dvp + 9] + (long) v[dvp + 10] * w[dvp + 10]
+					+ (long) v[dvp + 11] * w[dvp + 11] + (long) v[dvp + 12] * w[dvp + 12]
+					+ (long) v[dvp + 13] * w[dvp + 13] + (long) v[dvp + 14] * w[dvp + 14]
+					+ (long) v[dvp + 15] * w[dvp + 15];
+			if (sum < 0) {
+				sum += (1L << PCM_SHIFT) - 1;
+			}
+			int s = (int) (sum >> PCM_SHIFT);
+			if (s > 32767) {
+				s = 32767;
+			} else if (s < -32767) {
+				s = -32767;
+			}
+			bytes[pos++] = (byte) s;
+			bytes[pos] = (byte) (s >>> 8);
+			pos += channels;
+		}
+
+		buff.setBufferIndex(channel, pos);
+	}
+
+}
@@ -30,6 +30,7 @@ import com.jcraft.jogg.*;
 public class Block{
   ///necessary stream state for linking to the framing abstraction
   float[][] pcm=new float[0][]; // this is a pointer into local storage
+  int[][] ipcm=new int[0][]; // used instead of pcm when decoding in fixed point
   Buffer opb=new Buffer();
   
   int lW;
@@ -168,16 +169,31 @@ public class Block{
     // alloc pcm passback storage
     pcmend=vi.blocksizes[W];
     //pcm=alloc(vi.channels);
-    if(pcm.length<vi.channels){
-      pcm=new float[vi.channels][];
+    if(vd.fixedPoint){
+      if(ipcm.length<vi.channels){
+        ipcm=new int[vi.channels][];
+      }
+      for(int i=0;i<vi.channels;i++){
+        if(ipcm[i]==null || ipcm[i].length<pcmend){
+          ipcm[i]=new int[pcmend];
+        }
+        else{
+          for(int j=0;j<pcmend;j++){ ipcm[i][j]=0; }
+        }
+      }
     }
-    for(int i=0;i<vi.channels;i++){
-      if(pcm[i]==null || pcm[i].length<pcmend){
-        pcm[i]=new float[pcmend];
-        //pcm[i]=alloc(pcmend);
+    else{
+      if(pcm.length<vi.channels){
+        pcm=new float[vi.channels][];
       }
-      else{
-        for(int j=0;j<pcmend;j++){ pcm[i][j]=0; }
+      for(int i=0;i<vi.channels;i++){
+        if(pcm[i]==null || pcm[i].length<pcmend){
+          pcm[i]=new float[pcmend];
+          //pcm[i]=alloc(pcmend);
+        }
+        else{
+          for(int j=0;j<pcmend;j++){ pcm[i][j]=0; }
+        }
       }
     }
 
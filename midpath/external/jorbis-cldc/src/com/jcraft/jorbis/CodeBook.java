@@ -28,11 +28,14 @@ package com.jcraft.jorbis;
 import com.jcraft.jogg.Buffer;
 
 class CodeBook{
+  static final int VAL_BITS=8; // fractional bits of the fixed point values
+
   int dim;            // codebook dimensions (elements per vector)
   int entries;        // codebook entries
   StaticCodeBook c=new StaticCodeBook();
 
   float[] valuelist; // list of dim*entries actual entry values
+  int[] valuelist_fixed; // same values in fixed point (VAL_BITS fractional bits)
   int[] codelist;     // list of bitstream codewords for each entry
   DecodeAux decode_tree;
 
@@ -185,6 +188,65 @@ class CodeBook{
     return(0);
   }
 
+  // Fixed point versions of the vector decoders above, used by the
+  // integer decoding path (see DspState.synthesis_init)
+
+  synchronized int decodevs_add(int[]a, int offset, Buffer b, int n){
+    int step=n/dim;
+    int entry;
+    int i,j,o;
+
+    if(t.length<step){
+      t=new int[step];
+    }
+
+    for(i = 0; i < step; i++){
+      entry=decode(b);
+      if(entry==-1)return(-1);
+      t[i]=entry*dim;
+    }
+    for(i=0,o=0;i<dim;i++,o+=step){
+      for(j=0;j<step;j++){
+	a[offset+o+j]+=valuelist_fixed[t[j]+i];
+      }
+    }
+
+    return(0);
+  }
+
+  int decodev_add(int[]a, int offset, Buffer b,int n){
+    int[] v=valuelist_fixed;
+    for(int i=0;i<n;){
+      int entry=decode(b);
+      if(entry==-1)return(-1);
+      int t=entry*dim;
+      for(int j=0;j<dim;j++){
+	a[offset+(i++)]+=v[t+j];
+      }
+    }
+    return(0);
+  }
+
+  int decodevv_add(int[][] a, int offset,int ch, Buffer b,int n){
+    int[] v=valuelist_fixed;
+    int chptr=0;
+
+    for(int i=offset/ch;i<(offset+n)/ch;){
+      int entry = decode(b);
+      if(entry==-1)return(-1);
+
+      int t = entry*dim;
+      for(int j=0;j<dim;j++){
+        a[chptr++][i]+=v[t+j];
+        if(chptr==ch){
+          chptr=0;
+	  i++;
+	}
+      }
+    }
+    return(0);
+  }
+
 
   // Decode side is specced and easier, because we don't need to find
   // matches using different criteria; we simply read and map.  There are
@@ -345,6 +407,18 @@ class CodeBook{
     return(best);
   }
 
+  // builds the fixed point value list; the float one is released unless
+  // keep is set (floor 0 still reads it)
+  void init_fixed(boolean keep){
+    if(valuelist==null)return;
+    valuelist_fixed=new int[valuelist.length];
+    for(int i=0;i<valuelist.length;i++){
+      float v=valuelist[i]*(1<<VAL_BITS);
+      valuelist_fixed[i]=(int)(v<0 ? v-.5f : v+.5f);
+    }
+    if(!keep)valuelist=null;
+  }
+
   void clear(){
     // static book is not cleared; we're likely called on the lookup and
     // the static codebook belongs to the info struct
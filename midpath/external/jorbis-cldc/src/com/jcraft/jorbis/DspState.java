@@ -30,11 +30,18 @@ public class DspState {
 	static final int VI_TRANSFORMB = 1;
 	static final int VI_WINDOWB = 1;
 
+	// Fractional bits of the fixed point spectrum and PCM values, and of the windows
+	static final int PCM_BITS = 22;
+	static final int WINDOW_BITS = 30;
+
 	int analysisp;
 	Info vi;
 	int modebits;
 
 	float[][] pcm;
+	// Decode with integer arithmetic only: ipcm and window_fixed are used instead of pcm and window
+	boolean fixedPoint;
+	int[][] ipcm;
 	//float[][] pcmret;
 	int pcm_storage;
 	int pcm_current;
@@ -63,6 +70,7 @@ public class DspState {
 	//!!  Envelope ve=new Envelope(); // envelope
 	//float                **window[2][2][2]; // block, leadin, leadout, type
 	float[][][][][] window; // block, leadin, leadout, type
+	int[][][][][] window_fixed;
 	//vorbis_look_transform **transform[2];    // block, type 
 	Object[][] transform;
 	CodeBook[] fullbooks;
@@ -205,9 +213,11 @@ public class DspState {
 		pcm_storage = 8192; // we'll assume later that we have
 		// a minimum of twice the blocksize of
 		// accumulated samples in analysis
-		pcm = new float[vi.channels][];
-		//pcmret=new float[vi.channels][];
-		{
+		if (fixedPoint) {
+			init_fixed();
+		} else {
+			pcm = new float[vi.channels][];
+			//pcmret=new float[vi.channels][];
 			for (int i = 0; i < vi.channels; i++) {
 				pcm[i] = new float[pcm_storage];
 			}
@@ -233,7 +243,58 @@ public class DspState {
 		return (0);
 	}
 
+	// Builds the fixed point tables from the float ones
+	private void init_fixed() {
+		((Mdct) transform[0][0]).init_fixed();
+		((Mdct) transform[1][0]).init_fixed();
+
+		window_fixed = new int[2][2][2][][];
+		for (int i = 0; i < 2; i++) {
+			for (int j = 0; j < 2; j++) {
+				for (int k = 0; k < 2; k++) {
+					float[][] w = window[i][j][k];
+					window_fixed[i][j][k] = new int[w.length][];
+					for (int l = 0; l < w.length; l++) {
+						if (w[l] == null)
+							continue;
+						int[] iw = new int[w[l].length];
+						for (int m = 0; m < iw.length; m++) {
+							iw[m] = (int) (w[l][m] * (1 << WINDOW_BITS) + .5f);
+						}
+						window_fixed[i][j][k][l] = iw;
+					}
+				}
+			}
+		}
+
+		// The float values of the codebooks are only needed by floor 0
+		boolean floor0 = false;
+		for (int i = 0; i < vi.floors; i++) {
+			if (vi.floor_type[i] == 0)
+				floor0 = true;
+		}
+		for (int i = 0; i < vi.books; i++) {
+			fullbooks[i].init_fixed(floor0);
+		}
+
+		ipcm = new int[vi.channels][];
+		for (int i = 0; i < vi.channels; i++) {
+			ipcm[i] = new int[pcm_storage];
+		}
+	}
+
 	public int synthesis_init(Info vi) {
+		return synthesis_init(vi, false);
+	}
+
+	/**
+	 * Initializes the decoder.
+	 *
+	 * @param fixedPoint true to decode with integer arithmetic only. PCM
+	 *        data must then be read with synthesis_pcmout(byte[], int, int)
+	 */
+	public int synthesis_init(Info vi, boolean fixedPoint) {
+		this.fixedPoint = fixedPoint;
 		init(vi, false);
 		// Adjust centerW to allow an easier mechanism for determining output
 		pcm_returned = centerW;
@@ -272,7 +333,10 @@ public class DspState {
 			pcm_returned -= shiftPCM;
 			if (shiftPCM != 0) {
 				for (int i = 0; i < vi.channels; i++) {
-					System.arraycopy(pcm[i], shiftPCM, pcm[i], 0, pcm_current);
+					if (fixedPoint)
+						System.arraycopy(ipcm[i], shiftPCM, ipcm[i], 0, pcm_current);
+					else
+						System.arraycopy(pcm[i], shiftPCM, pcm[i], 0, pcm_current);
 				}
 			}
 		}
@@ -304,9 +368,15 @@ public class DspState {
 				// expand the storage
 				pcm_storage = endW + vi.blocksizes[1];
 				for (int i = 0; i < vi.channels; i++) {
-					float[] foo = new float[pcm_storage];
-					System.arraycopy(pcm[i], 0, foo, 0, pcm[i].length);
-					pcm[i] = foo;
+					if (fixedPoint) {
+						int[] foo = new int[pcm_storage];
+						System.arraycopy(ipcm[i], 0, foo, 0, ipcm[i].length);
+						ipcm[i] = foo;
+					} else {
+						float[] foo = new float[pcm_storage];
+						System.arraycopy(pcm[i], 0, foo, 0, pcm[i].length);
+						pcm[i] = foo;
+					}
 				}
 			}
 
@@ -322,16 +392,30 @@ public class DspState {
 				break;
 			}
 
-			for (int j = 0; j < vi.channels; j++) {
-				int _pcm = beginW;
-				// the overlap/add section
-				int i = 0;
-				for (i = beginSl; i < endSl; i++) {
-					pcm[j][_pcm + i] += vb.pcm[j][i];
+			if (fixedPoint) {
+				for (int j = 0; j < vi.channels; j++) {
+					int[] out = ipcm[j];
+					int[] in = vb.ipcm[j];
+					// the overlap/add section
+					int i = beginSl;
+					for (int k = beginW + beginSl; i < endSl; i++, k++) {
+						out[k] += in[i];
+					}
+					// the remaining section
+					System.arraycopy(in, i, out, beginW + i, sizeW - i);
 				}
-				// the remaining section
-				for (; i < sizeW; i++) {
-					pcm[j][_pcm + i] = vb.pcm[j][i];
+			} else {
+				for (int j = 0; j < vi.channels; j++) {
+					int _pcm = beginW;
+					// the overlap/add section
+					int i = 0;
+					for (i = beginSl; i < endSl; i++) {
+						pcm[j][_pcm + i] += vb.pcm[j][i];
+					}
+					// the remaining section
+					for (; i < sizeW; i++) {
+						pcm[j][_pcm + i] = vb.pcm[j][i];
+					}
 				}
 			}
 
@@ -386,6 +470,58 @@ public class DspState {
 		return (0);
 	}
 
+	/**
+	 * Writes the pending PCM samples to a buffer as interleaved 16 bit
+	 * little endian signed values, and marks them as read.
+	 *
+	 * @param buffer the buffer to fill
+	 * @param offset the offset of the first byte to write
+	 * @param length the maximum number of bytes to write
+	 * @return the number of bytes written, 0 if no samples are pending
+	 */
+	public int synthesis_pcmout(byte[] buffer, int offset, int length) {
+		int channels = vi.channels;
+		int samples = centerW - pcm_returned;
+		if (samples > length / (2 * channels))
+			samples = length / (2 * channels);
+		if (samples <= 0)
+			return 0;
+
+		int step = 2 * channels;
+		for (int i = 0; i < channels; i++) {
+			int ptr = offset + i * 2;
+			if (fixedPoint) {
+				int[] in = ipcm[i];
+				for (int j = pcm_returned, end = pcm_returned + samples; j < end; j++) {
+					// Same rounding as the float version (towards zero)
+					long v = (long) in[j] * 32767;
+					int val = (int) ((v >= 0) ? (v >> PCM_BITS) : -((-v) >> PCM_BITS));
+					if (val > 32767)
+						val = 32767;
+					else if (val < -32768)
+						val = -32768;
+					buffer[ptr] = (byte) val;
+					buffer[ptr + 1] = (byte) (val >>> 8);
+					ptr += step;
+				}
+			} else {
+				float[] in = pcm[i];
+				for (int j = pcm_returned, end = pcm_returned + samples; j < end; j++) {
+					int val = (int) (in[j] * 32767.);
+					if (val > 32767)
+						val = 32767;
+					else if (val < -32768)
+						val = -32768;
+					buffer[ptr] = (byte) val;
+					buffer[ptr + 1] = (byte) (val >>> 8);
+					ptr += step;
+				}
+			}
+		}
+		pcm_returned += samples;
+		return samples * step;
+	}
+
 	public int synthesis_read(int bytes) {
 		if (bytes != 0 && pcm_returned + bytes > centerW)
 			return (-1);
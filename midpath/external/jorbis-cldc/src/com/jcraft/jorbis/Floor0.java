@@ -246,6 +246,37 @@ class Floor0 extends FuncFloor{
     return(0);
   }
 
+  // Floor 0 is only found in streams made by pre 1.0 encoders: its curve
+  // is still computed in floating point, then applied to the fixed point
+  // residue
+  int inverse2(Block vb, Object i, Object memo, int[] out){
+    LookFloor0 look=(LookFloor0)i;
+    InfoFloor0 info=look.vi;
+
+    if(memo!=null){
+      float[] lsp=(float[])memo;
+      float amp=lsp[look.m];
+
+      if(look.curve==null){
+        look.curve=new float[look.n];
+      }
+      float[] curve=look.curve;
+      for(int j=0;j<look.n;j++){
+        curve[j]=1<<(DspState.PCM_BITS-CodeBook.VAL_BITS);
+      }
+      Lsp.lsp_to_curve(curve,look.linearmap,look.n,look.ln,
+		       lsp,look.m,amp,info.ampdB);
+      for(int j=0;j<look.n;j++){
+        out[j]=(int)(out[j]*curve[j]);
+      }
+      return(1);
+    }
+    for(int j=0; j<look.n; j++){
+      out[j]=0;
+    } 
+    return(0);
+  }
+
   static float fromdB(float x){
     return (float)(StrictMath.exp((x)*.11512925));
   }
@@ -342,6 +373,7 @@ class LookFloor0{
 
   InfoFloor0 vi;
   Lpc lpclook=new Lpc();
+  float[] curve; // work space of the fixed point inverse2
 }
 
 class EchstateFloor0{
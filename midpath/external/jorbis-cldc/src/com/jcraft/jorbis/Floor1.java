@@ -395,6 +395,41 @@ class Floor1 extends FuncFloor{
   }
 
 
+  int inverse2(Block vb, Object i, Object memo, int[] out){
+    LookFloor1 look=(LookFloor1)i;
+    InfoFloor1 info=look.vi;
+    int n=vb.vd.vi.blocksizes[vb.mode]/2;
+
+    if(memo!=null){
+      /* render the lines */
+      int[] fit_value=(int[] )memo;
+      int hx=0;
+      int lx=0;
+      int ly=fit_value[0]*info.mult;
+      for(int j=1;j<look.posts;j++){
+        int current=look.forward_index[j];
+        int hy=fit_value[current]&0x7fff;
+        if(hy==fit_value[current]){
+	  hy*=info.mult;
+          hx=info.postlist[current];
+
+          render_line(lx,hx,ly,hy,out);
+
+          lx=hx;
+          ly=hy;
+	}
+      }
+      for(int j=hx;j<n;j++){
+        out[j]=(int)(((long)out[j]*out[j-1])>>DspState.PCM_BITS); /* be certain */
+      }
+      return(1);
+    }
+    for(int j=0; j<n; j++){
+      out[j]=0;
+    } 
+    return(0);
+  }
+
   private static float[] FLOOR_fromdB_LOOKUP={
       1.0649863e-07F, 1.1341951e-07F, 1.2079015e-07F, 1.2863978e-07F, 
       1.3699951e-07F, 1.4590251e-07F, 1.5538408e-07F, 1.6548181e-07F, 
@@ -462,6 +497,43 @@ class Floor1 extends FuncFloor{
       0.82788260F, 0.88168307F, 0.9389798F, 1.F 
   };
 
+  // FLOOR_fromdB_LOOKUP with FLOOR_BITS fractional bits
+  private static final int FLOOR_BITS=30;
+  private static final int FLOOR_SHIFT=CodeBook.VAL_BITS+FLOOR_BITS-DspState.PCM_BITS;
+  private static int[] FLOOR_fromdB_LOOKUP_FIXED=new int[FLOOR_fromdB_LOOKUP.length];
+  static{
+    for(int i=0;i<FLOOR_fromdB_LOOKUP.length;i++){
+      FLOOR_fromdB_LOOKUP_FIXED[i]=(int)(FLOOR_fromdB_LOOKUP[i]*(1<<FLOOR_BITS)+.5f);
+    }
+  }
+
+  private static void render_line(int x0, int x1,int y0,int y1,int[] d){
+    int[] lookup=FLOOR_fromdB_LOOKUP_FIXED;
+    int dy=y1-y0;
+    int adx=x1-x0;
+    int ady=Math.abs(dy);
+    int base=dy/adx;
+    int sy=(dy<0?base-1:base+1);
+    int x=x0;
+    int y=y0;
+    int err=0;
+
+    ady-=Math.abs(base*adx);
+
+    d[x]=(int)(((long)d[x]*lookup[y])>>FLOOR_SHIFT);
+    while(++x<x1){
+      err=err+ady;
+      if(err>=adx){
+        err-=adx;
+        y+=sy;
+      }
+      else{
+        y+=base;
+      }
+      d[x]=(int)(((long)d[x]*lookup[y])>>FLOOR_SHIFT);
+    }
+  }
+
   private static void render_line(int x0, int x1,int y0,int y1,float[] d){
     int dy=y1-y0;
     int adx=x1-x0;
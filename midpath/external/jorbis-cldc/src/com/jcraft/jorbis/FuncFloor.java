@@ -42,4 +42,7 @@ abstract class FuncFloor{
 //  abstract int inverse(Block vb, Object i, float[] out);
   abstract Object inverse1(Block vb, Object i, Object memo);
   abstract int inverse2(Block vb, Object i, Object memo, float[] out);
+  // fixed point version: out holds the residue (CodeBook.VAL_BITS) and
+  // receives the spectrum (DspState.PCM_BITS)
+  abstract int inverse2(Block vb, Object i, Object memo, int[] out);
 }
@@ -40,4 +40,6 @@ abstract class FuncResidue{
   abstract int forward(Block vb,Object vl, float[][] in, int ch);
 //  abstract int inverse(Block vb, Object vl, float[][] in, int ch);
 abstract int inverse(Block vb, Object vl, float[][] in, int[] nonzero,int ch);
+  // fixed point version, vectors in CodeBook.VAL_BITS format
+  abstract int inverse(Block vb, Object vl, int[][] in, int[] nonzero,int ch);
 }
@@ -362,6 +362,7 @@ class Mapping0 extends FuncMapping{
 */
 
   float[][] pcmbundle=null;
+  int[][] ipcmbundle=null;
   int[] zerobundle=null;
   int[] nonzero=null;
   Object[] floormemo=null;
@@ -375,15 +376,19 @@ class Mapping0 extends FuncMapping{
     InfoMode mode=look.mode;
     int n=vb.pcmend=vi.blocksizes[vb.W];
 
-    float[] window=vd.window[vb.W][vb.lW][vb.nW][mode.windowtype];
     // float[][] pcmbundle=new float[vi.channels][];
     // int[] nonzero=new int[vi.channels];
     if(pcmbundle==null || pcmbundle.length<vi.channels){
       pcmbundle=new float[vi.channels][];
+      ipcmbundle=new int[vi.channels][];
       nonzero=new int[vi.channels];
       zerobundle=new int[vi.channels];
       floormemo=new Object[vi.channels];
     }
+    if(vd.fixedPoint){
+      return(inverse_fixed(vb,look,n));
+    }
+    float[] window=vd.window[vb.W][vb.lW][vb.nW][mode.windowtype];
   
     // time domain information decode (note that applying the
     // information would have to happen later; we'll probably add a
@@ -511,6 +516,91 @@ class Mapping0 extends FuncMapping{
   }
 
 
+  // Same as the end of inverse() on the fixed point vectors of the block
+  private int inverse_fixed(Block vb, LookMapping0 look, int n){
+    DspState vd=vb.vd;
+    Info vi=vd.vi;
+    InfoMapping0 info=look.map;
+    int[] window=vd.window_fixed[vb.W][vb.lW][vb.nW][look.mode.windowtype];
+
+    // recover the spectral envelope
+    for(int i=0;i<vi.channels;i++){
+      int submap=info.chmuxlist[i];
+      floormemo[i]=look.floor_func[submap].inverse1(vb,look.floor_look[submap],
+						    floormemo[i]);
+      nonzero[i]=(floormemo[i]!=null ? 1 : 0);
+    }
+
+    for(int i=0; i<info.coupling_steps; i++){
+      if(nonzero[info.coupling_mag[i]]!=0 ||
+         nonzero[info.coupling_ang[i]]!=0){
+        nonzero[info.coupling_mag[i]]=1;
+        nonzero[info.coupling_ang[i]]=1;
+      }
+    }
+
+    // recover the residue
+    for(int i=0;i<info.submaps;i++){
+      int ch_in_bundle=0;
+      for(int j=0;j<vi.channels;j++){
+        if(info.chmuxlist[j]==i){
+          zerobundle[ch_in_bundle]=nonzero[j];
+          ipcmbundle[ch_in_bundle++]=vb.ipcm[j];
+        }
+      }
+      look.residue_func[i].inverse(vb,look.residue_look[i],
+				   ipcmbundle,zerobundle,ch_in_bundle);
+    }
+
+    for(int i=info.coupling_steps-1;i>=0;i--){
+      int[] pcmM=vb.ipcm[info.coupling_mag[i]];
+      int[] pcmA=vb.ipcm[info.coupling_ang[i]];
+
+      for(int j=0;j<n/2;j++){
+        int mag=pcmM[j];
+        int ang=pcmA[j];
+
+        if(mag>0){
+          if(ang>0){
+            pcmA[j]=mag-ang;
+          }
+          else{
+            pcmA[j]=mag;
+            pcmM[j]=mag+ang;
+          }
+        }
+        else{
+          if(ang>0){
+            pcmA[j]=mag+ang;
+          }
+          else{
+            pcmA[j]=mag;
+            pcmM[j]=mag-ang;
+          }
+        }
+      }
+    }
+
+    // apply the spectral envelope, transform and window
+    for(int i=0;i<vi.channels;i++){
+      int[] pcm=vb.ipcm[i];
+      if(nonzero[i]!=0){
+        int submap=info.chmuxlist[i];
+        look.floor_func[submap].inverse2(vb,look.floor_look[submap],floormemo[i],pcm);
+        ((Mdct)vd.transform[vb.W][0]).backward(pcm,pcm);
+        for(int j=0;j<n;j++){
+          pcm[j]=(int)(((long)pcm[j]*window[j])>>DspState.WINDOW_BITS);
+        }
+      }
+      else{
+        for(int j=0;j<n;j++){
+          pcm[j]=0;
+        }
+      }
+    }
+    return(0);
+  }
+
   private static int ilog2(int v){
     int ret=0;
     while(v>1){
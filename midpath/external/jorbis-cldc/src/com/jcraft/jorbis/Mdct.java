@@ -81,6 +81,19 @@ class Mdct{
     scale=4.f/n;
   }
 
+  // Fixed point trig table (TRIG_BITS fractional bits) for the integer
+  // decoding path
+  static final int TRIG_BITS=30;
+  int[] trig_fixed;
+
+  void init_fixed(){
+    trig_fixed=new int[trig.length];
+    for(int i=0;i<trig.length;i++){
+      float v=trig[i]*(1<<TRIG_BITS);
+      trig_fixed[i]=(int)(v<0 ? v-.5f : v+.5f);
+    }
+  }
+
   void clear(){
   }
 
@@ -246,4 +259,169 @@ class Mdct{
     }
     return(x);
   }
+
+  int[] _ix;
+  int[] _iw;
+
+  // Same as backward(float[], float[]) on fixed point values
+  synchronized void backward(int[] in, int[] out){
+    if(_ix==null || _ix.length<n/2){_ix=new int[n/2];}
+    if(_iw==null || _iw.length<n/2){_iw=new int[n/2];}
+    int[] x=_ix;
+    int[] w=_iw;
+    int[] trig=trig_fixed;
+    int n2=n>>>1;
+    int n4=n>>>2;
+    int n8=n>>>3;
+
+    // rotate + step 1
+    {
+      int inO=1;
+      int xO=0;
+      int A=n2;
+
+      int i;
+      for(i=0;i<n8;i++){
+	A-=2;
+	x[xO++]=(int)((-(long)in[inO+2]*trig[A+1] - (long)in[inO]*trig[A])>>TRIG_BITS);
+	x[xO++]=(int)(( (long)in[inO]*trig[A+1] - (long)in[inO+2]*trig[A])>>TRIG_BITS);
+	inO+=4;
+      }
+
+      inO=n2-4;
+
+      for(i=0;i<n8;i++){
+	A-=2;
+	x[xO++]=(int)(((long)in[inO]*trig[A+1] + (long)in[inO+2]*trig[A])>>TRIG_BITS);
+	x[xO++]=(int)(((long)in[inO]*trig[A] - (long)in[inO+2]*trig[A+1])>>TRIG_BITS);
+	inO-=4;
+      }
+    }
+
+    int[] xxx=mdct_kernel(x,w,n,n2,n4,n8);
+    int xx=0;
+
+    // step 8
+
+    {
+      int B=n2;
+      int o1=n4,o2=o1-1;
+      int o3=n4+n2,o4=o3-1;
+    
+      for(int i=0;i<n4;i++){
+	int temp1= (int)(((long)xxx[xx] * trig[B+1] - (long)xxx[xx+1] * trig[B])>>TRIG_BITS);
+	int temp2=-(int)(((long)xxx[xx] * trig[B] + (long)xxx[xx+1] * trig[B+1])>>TRIG_BITS);
+    
+	out[o1]=-temp1;
+	out[o2]= temp1;
+	out[o3]= temp2;
+	out[o4]= temp2;
+
+	o1++;
+	o2--;
+	o3++;
+	o4--;
+	xx+=2;
+	B+=2;
+      }
+    }
+  }
+
+  private int[] mdct_kernel(int[] x, int[] w,
+	                       int n, int n2, int n4, int n8){
+    int[] trig=trig_fixed;
+    // step 2
+
+    int xA=n4;
+    int xB=0;
+    int w2=n4;
+    int A=n2;
+
+    for(int i=0;i<n4;){
+      int x0=x[xA] - x[xB];
+      int x1;
+      w[w2+i]=x[xA++]+x[xB++];
+
+      x1=x[xA]-x[xB];
+      A-=4;
+
+      w[i++]=   (int)(((long)x0 * trig[A] + (long)x1 * trig[A+1])>>TRIG_BITS);
+      w[i]=     (int)(((long)x1 * trig[A] - (long)x0 * trig[A+1])>>TRIG_BITS);
+
+      w[w2+i]=x[xA++]+x[xB++];
+      i++;
+    }
+
+    // step 3
+
+    {
+      for(int i=0;i<log2n-3;i++){
+        int k0=n>>>(i+2);
+	int k1=1<<(i+3);
+	int wbase=n2-2;
+
+	A=0;
+	int[] temp;
+
+	for(int r=0;r<(k0>>>2);r++){
+	  int w1=wbase;
+	  w2=w1-(k0>>1);
+	  long AEv= trig[A];
+	  long AOv= trig[A+1];
+	  int wA,wB;
+	  wbase-=2;
+		      
+	  k0++;
+	  for(int s=0;s<(2<<i);s++){
+	    wB     =w[w1]   -w[w2];
+	    x[w1]  =w[w1]   +w[w2];
+
+	    wA     =w[++w1] -w[++w2];
+	    x[w1]  =w[w1]   +w[w2];
+	    
+	    x[w2]  =(int)((wA*AEv  - wB*AOv)>>TRIG_BITS);
+	    x[w2-1]=(int)((wB*AEv  + wA*AOv)>>TRIG_BITS);
+
+	    w1-=k0;
+	    w2-=k0;
+	  }
+	  k0--;
+	  A+=k1;
+	}
+
+	temp=w;
+	w=x;
+	x=temp;
+      }
+    }
+
+    // step 4, 5, 6, 7
+    {
+      int C=n;
+      int bit=0;
+      int x1=0;
+      int x2=n2-1;
+
+      for(int i=0;i<n8;i++){
+	int t1=bitrev[bit++];
+	int t2=bitrev[bit++];
+
+	int wA=w[t1]-w[t2+1];
+	int wB=w[t1-1]+w[t2];
+	int wC=w[t1]+w[t2+1];
+	int wD=w[t1-1]-w[t2];
+
+	int wACE=(int)(((long)wA* trig[C])>>TRIG_BITS);
+	int wBCE=(int)(((long)wB* trig[C++])>>TRIG_BITS);
+	int wACO=(int)(((long)wA* trig[C])>>TRIG_BITS);
+	int wBCO=(int)(((long)wB* trig[C++])>>TRIG_BITS);
+      
+	x[x1++]=( wC+wACO+wBCE)>>1;
+	x[x2--]=(-wD+wBCO-wACE)>>1;
+	x[x1++]=( wD+wBCO-wACE)>>1; 
+	x[x2--]=( wC-wACO-wBCE)>>1;
+      }
+    }
+    return(x);
+  }
 }
@@ -156,8 +156,10 @@ class Residue0 extends FuncResidue{
 
   static int[][][] partword=new int[2][][]; // _01inverse is synchronized for
                                             // re-using partword
+  // Exactly one of in and iin is set: iin holds the fixed point vectors
+  // of the integer decoding path
   synchronized static int _01inverse(Block vb, Object vl, 
-				     float[][] in,int ch,int decodepart){
+				     float[][] in,int[][] iin,int ch,int decodepart){
     int i,j,k,l,s;
     LookResidue0 look=(LookResidue0 )vl;
     InfoResidue0 info=look.info;
@@ -211,7 +213,15 @@ class Residue0 extends FuncResidue{
 	      CodeBook stagebook=look.fullbooks[look.partbooks[partword[j][l][k]][s]];
 //	      CodeBook stagebook=look.partbooks[partword[j][l][k]][s];
 	      if(stagebook!=null){
-		  if(decodepart==0){
+		  if(iin!=null){
+		    if((decodepart==0 ?
+		        stagebook.decodevs_add(iin[j],offset,vb.opb,samples_per_partition) :
+		        stagebook.decodev_add(iin[j],offset,vb.opb,samples_per_partition))==-1){
+		      // goto errout;
+		      return(0);
+		    }
+		  }
+		  else if(decodepart==0){
 		    if(stagebook.decodevs_add(in[j],offset,vb.opb,samples_per_partition)==-1){
 		      // goto errout;
 		      return(0);
@@ -233,7 +243,7 @@ class Residue0 extends FuncResidue{
   return(0);
   }
 
-  static int _2inverse(Block vb, Object vl, float[][] in, int ch){
+  static int _2inverse(Block vb, Object vl, float[][] in, int[][] iin, int ch){
     int i,j,k,l,s;
     LookResidue0 look=(LookResidue0 )vl;
     InfoResidue0 info=look.info;
@@ -269,7 +279,9 @@ class Residue0 extends FuncResidue{
 	  if((info.secondstages[partword[l][k]]&(1<<s))!=0){
             CodeBook stagebook=look.fullbooks[look.partbooks[partword[l][k]][s]];
 	    if(stagebook!=null){
-              if(stagebook.decodevv_add(in, offset, ch, vb.opb,samples_per_partition)==-1){
+              if((iin!=null ?
+                  stagebook.decodevv_add(iin, offset, ch, vb.opb,samples_per_partition) :
+                  stagebook.decodevv_add(in, offset, ch, vb.opb,samples_per_partition))==-1){
                 // goto errout;
 		return(0);
 	      }
@@ -292,7 +304,20 @@ class Residue0 extends FuncResidue{
       }
     }
     if(used!=0)
-      return(_01inverse(vb,vl,in,used,0));
+      return(_01inverse(vb,vl,in,null,used,0));
+    else
+      return(0);
+  }
+
+  int inverse(Block vb, Object vl, int[][] in, int[] nonzero, int ch){
+    int used=0;
+    for(int i=0;i<ch;i++){
+      if(nonzero[i]!=0){
+        in[used++]=in[i];
+      }
+    }
+    if(used!=0)
+      return(_01inverse(vb,vl,null,in,used,0));
     else
       return(0);
   }
@@ -38,6 +38,14 @@ class Residue2 extends Residue0{
     for(i=0;i<ch;i++)if(nonzero[i]!=0)break;
     if(i==ch)return(0); /* no nonzero vectors */
 
-    return(_2inverse(vb,vl,in, ch));
+    return(_2inverse(vb,vl,in,null, ch));
+  }
+
+  int inverse(Block vb, Object vl, int[][] in, int[] nonzero, int ch){
+    int i=0;
+    for(i=0;i<ch;i++)if(nonzero[i]!=0)break;
+    if(i==ch)return(0); /* no nonzero vectors */
+
+    return(_2inverse(vb,vl,null,in, ch));
   }
 }
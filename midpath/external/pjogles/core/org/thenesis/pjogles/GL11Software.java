@@ -4564,6 +4564,10 @@ public class GL11Software implements GL11 {
 
 			gc.benchmark.stencilTest = 0;
 			gc.benchmark.depthTest = 0;
+
+			gc.benchmark.fixedPointSpans = 0;
+			gc.benchmark.floatingPointSpans = 0;
+			gc.benchmark.specializedSpans = 0;
 		} else if (gc.benchmark.frameCount == 32) {
 			final long totalTime = System.currentTimeMillis() - gc.benchmark.lastTime;
 			final float percent = 100.0f / totalTime;
@@ -40,6 +40,19 @@ public final class GLBenchmark {
 	public long stencilTest;
 	public long depthTest;
 
+	/**
+	 * Number of polygon rows rendered with the fixed-point and the
+	 * floating-point span paths.
+	 */
+	public int fixedPointSpans;
+	public int floatingPointSpans;
+
+	/**
+	 * Number of fixed-point polygon rows drawn by a specialized loop of
+	 * GLSpanFunctions.
+	 */
+	public int specializedSpans;
+
 	public float clearPercent;
 
 	public float lightingPercent;
@@ -115,6 +115,18 @@ public final class GLSoftwareContext extends GLContext {
 
 	public final GLBenchmark benchmark = new GLBenchmark();
 
+	/**
+	 * Rasterize polygons with integer arithmetic when the current state
+	 * allows it (see GLFragmentOperations.isFixedPointCompatible()).
+	 */
+	public boolean fixedPointRasterization = true;
+
+	/**
+	 * Draw the spans of the fixed-point path with the loops specialized
+	 * for the current state when there is one (see GLSpanFunctions).
+	 */
+	public boolean specializedSpanFunctions = true;
+
 	public GLPipeline pipeline; // set in derived class
 
 	// Pushattrib, Popattrib Stackable state.  All of the current user
@@ -26,28 +26,47 @@ import org.thenesis.pjogles.primitives.GLFragment;
 import org.thenesis.pjogles.primitives.GLSpan;
 
 /**
- * The Depth buffer (ZBuffer), a float array of z values.
- * Should really make this an int array.
+ * The Depth buffer (ZBuffer), an int array of z values. Window z
+ * values in [0, 1] are stored as integers in [0, MAX_DEPTH], so that
+ * the fixed-point rasterizer can interpolate them without floats.
  *
  * @author tdinneen
  */
 public final class GLDepthBuffer extends GLBuffer {
+	/**
+	 * Depth stored for a window z of 1.0. Leaves one bit of headroom
+	 * for the rounding errors of the interpolation.
+	 */
+	public static final int MAX_DEPTH = 0x40000000;
+
+	/**
+	 * Scale from window z to depth buffer values.
+	 */
+	public static final float DEPTH_SCALE = MAX_DEPTH;
+
 	private final GLSoftwareContext gc;
-	private float[] buffer;
+	private int[] buffer;
 
 	public GLDepthBuffer(final GLSoftwareContext gc) {
 		this.gc = gc;
 	}
 
 	public final void clear() {
-		clear(buffer, Float.MAX_VALUE * gc.state.depth.clear, gc);
+		clear(buffer, (int) (DEPTH_SCALE * gc.state.depth.clear), gc);
 	}
 
 	public final void resize(final int width, final int height) {
 		if (buffer != null && (buffer.length == width * height))
 			return;
 
-		buffer = new float[width * height];
+		buffer = new int[width * height];
+	}
+
+	/**
+	 * Returns the depth values, or null if the buffer wasn't sized yet.
+	 */
+	public final int[] getBuffer() {
+		return buffer;
 	}
 
 	public final int store(final GLSpan span) {
@@ -59,9 +78,9 @@ public final class GLDepthBuffer extends GLBuffer {
 		int passed = 0;
 		final boolean[] mask = span.mask;
 		final int length = span.length;
-		final float[] z = span.z;
+		final int[] z = span.z;
 		final int offset = span.offset;
-		final float[] zbuffer = buffer;
+		final int[] zbuffer = buffer;
 
 		final boolean[] depthFail = span.depthFail;
 		final boolean[] depthPass = span.depthPass;
@@ -294,7 +313,7 @@ public final class GLDepthBuffer extends GLBuffer {
 
 		final int x = fragment.x;
 		final int y = fragment.y;
-		final float zVal = fragment.z;
+		final int zVal = (int) fragment.z;
 
 		final int index = x + y;
 
@@ -305,8 +324,8 @@ public final class GLDepthBuffer extends GLBuffer {
 			return false;
 	}
 
-	private boolean testFunction(final int index, final float zVal) {
-		final float bufferVal = buffer[index];
+	private boolean testFunction(final int index, final int zVal) {
+		final int bufferVal = buffer[index];
 
 		switch (gc.state.depth.testFunc) {
 		case GL_NEVER:
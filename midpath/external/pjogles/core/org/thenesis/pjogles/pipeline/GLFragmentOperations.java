@@ -41,12 +41,14 @@ public final class GLFragmentOperations implements GLConstants {
 
 	private final GLBlending blending;
 	private final GLFogging fogging;
+	private final GLSpanFunctions spanFunctions;
 
 	public GLFragmentOperations(final GLSoftwareContext gc) {
 		this.gc = gc;
 
 		blending = new GLBlending(gc);
 		fogging = new GLFogging(gc);
+		spanFunctions = new GLSpanFunctions(gc);
 	}
 
 	public final void apply(final GLSpan span) {
@@ -105,6 +107,76 @@ public final class GLFragmentOperations implements GLConstants {
 		System.arraycopy(span.c, 0, gc.frameBuffer.drawBuffer.buffer, span.offset, span.length);
 	}
 
+	/**
+	 * Returns true if the spans can be processed by applyFixed(): no
+	 * stencil test or fogging, source alpha blending if any, and at most
+	 * the first texture unit enabled with a state supported by the
+	 * fixed-point texturing.
+	 */
+	public final boolean isFixedPointCompatible() {
+		final GLEnableState enables = gc.state.enables;
+
+		if (enables.stencil || enables.fog)
+			return false;
+
+		if (enables.blend && !GLSpanFunctions.isAlphaBlend(gc.state.colorBuffer))
+			return false;
+
+		final int enabledUnits = gc.state.texture.enabledUnits;
+
+		if (enabledUnits == 0)
+			return true;
+
+		return (enabledUnits == 1) && gc.pipeline.textureOperations.isFixedPointCompatible();
+	}
+
+	/**
+	 * Picks the specialized loop drawing the spans of the next fixed-point
+	 * polygon. Returns GLSpanFunctions.GENERIC if there is none for the
+	 * current state, the spans must then be drawn by applyFixed().
+	 */
+	public final int selectSpanFunction(final boolean smoothShading, final boolean textureEnabled) {
+		return spanFunctions.select(smoothShading, textureEnabled);
+	}
+
+	/**
+	 * Draws a span with the loop picked by selectSpanFunction(). The span
+	 * is set up by GLSpan.initFixedBounds().
+	 */
+	public final void applySpanFunction(final GLSpan span) {
+		spanFunctions.apply(span);
+	}
+
+	/**
+	 * Same as apply(GLSpan), for the spans set up by the fixed-point path.
+	 * Only the operations allowed by isFixedPointCompatible() are performed.
+	 */
+	public final void applyFixed(final GLSpan span) {
+		// perform depth test, if we fail then return
+		if (gc.state.enables.depthTest) {
+			span.doZValFixed();
+
+			if (gc.frameBuffer.depthBuffer.store(span) == 0)
+				return;
+		}
+
+		span.doColorFixed();
+
+		final int[] drawBuffer = gc.frameBuffer.drawBuffer.buffer;
+
+		if (span.textureEnabled) {
+			span.doTextureFixed();
+			gc.pipeline.textureOperations.applyFixed(span);
+		}
+
+		if (gc.state.enables.blend)
+			spanFunctions.blendFixed(span, drawBuffer);
+
+		span.mapColorFixed(gc, drawBuffer);
+
+		System.arraycopy(span.c, 0, drawBuffer, span.offset, span.length);
+	}
+
 	public final void apply(final GLFragment fragment) {
 		final GLFrameBuffer frameBuffer = gc.frameBuffer;
 		final GLEnableState enables = gc.state.enables;
@@ -0,0 +1,510 @@
+/*
+ * PJOGLES - Copyright (C) 2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+
+package org.thenesis.pjogles.pipeline;
+
+import org.thenesis.pjogles.GLConstants;
+import org.thenesis.pjogles.GLSoftwareContext;
+import org.thenesis.pjogles.primitives.GLEdge;
+import org.thenesis.pjogles.primitives.GLSpan;
+import org.thenesis.pjogles.states.GLColorBufferState;
+import org.thenesis.pjogles.states.GLDepthState;
+import org.thenesis.pjogles.texture.GLTextureImage;
+import org.thenesis.pjogles.texture.GLTextureObject;
+
+/**
+ * Specialized span loops of the fixed-point path for the most common
+ * states: flat or smooth colors, a nearest, repeated texture replacing or
+ * modulating the color, and source alpha blending, each with or without
+ * a GL_LESS/GL_LEQUAL depth test. The loops interpolate, test and write
+ * the pixels in a single pass, without checking the state per pixel.
+ * <p>
+ * select() picks the loop once per polygon, the spans of the polygon,
+ * set up with GLSpan.initFixedBounds(), are then drawn by apply(). States
+ * without a specialized loop (select() returns GENERIC) are drawn by
+ * GLFragmentOperations.applyFixed().
+ */
+public final class GLSpanFunctions implements GLConstants {
+	public static final int GENERIC = 0;
+	public static final int FLAT = 1;
+	public static final int SMOOTH = 2;
+	public static final int TEXTURE_REPLACE = 3;
+	public static final int TEXTURE_MODULATE = 4;
+	public static final int BLEND = 5;
+
+	public static final int NUMBER_OF_FUNCTIONS = 6;
+
+	private static final String[] NAMES = { "generic", "flat", "smooth", "texture replace", "texture modulate",
+			"blend" };
+
+	private final GLSoftwareContext gc;
+
+	// state captured by select() for the spans of the current polygon
+
+	private int function = GENERIC;
+	private boolean depthTest;
+	private int depthBias; // 1 for GL_LEQUAL, so that z <= zb becomes z < zb + depthBias
+
+	private int[] colorBuffer;
+	private int[] depthBuffer;
+
+	private int[] texels;
+	private int sAnd, tAnd, tShift;
+	private int texelOr; // forces the alpha of RGB texels to 255
+	private int colorKeep, texelKeep; // components of the color and texel kept by GL_REPLACE
+
+	public GLSpanFunctions(final GLSoftwareContext gc) {
+		this.gc = gc;
+	}
+
+	public static String getName(final int function) {
+		return NAMES[function];
+	}
+
+	/**
+	 * Returns true if the blending function is the usual source alpha
+	 * blending, the only one supported by the fixed-point path.
+	 */
+	public static boolean isAlphaBlend(final GLColorBufferState colorBuffer) {
+		return colorBuffer.blendEquation == GL_FUNC_ADD_EXT && colorBuffer.blendSrcRGB == GL_SRC_ALPHA
+				&& colorBuffer.blendSrcA == GL_SRC_ALPHA && colorBuffer.blendDstRGB == GL_ONE_MINUS_SRC_ALPHA
+				&& colorBuffer.blendDstA == GL_ONE_MINUS_SRC_ALPHA;
+	}
+
+	/**
+	 * Picks the loop drawing the spans of the next polygon. Must only be
+	 * called for a state accepted by
+	 * GLFragmentOperations.isFixedPointCompatible().
+	 */
+	public final int select(final boolean smoothShading, final boolean textureEnabled) {
+		function = GENERIC;
+
+		if (!gc.specializedSpanFunctions)
+			return function;
+
+		final GLColorBufferState colorBufferState = gc.state.colorBuffer;
+
+		if (!colorBufferState.rMask || !colorBufferState.gMask || !colorBufferState.bMask || !colorBufferState.aMask)
+			return function;
+
+		depthTest = gc.state.enables.depthTest;
+
+		if (depthTest) {
+			final GLDepthState depth = gc.state.depth;
+
+			depthBuffer = gc.frameBuffer.depthBuffer.getBuffer();
+
+			if (depthBuffer == null || !depth.writeEnable)
+				return function;
+
+			if (depth.testFunc == GL_LESS)
+				depthBias = 0;
+			else if (depth.testFunc == GL_LEQUAL)
+				depthBias = 1;
+			else
+				return function;
+		}
+
+		colorBuffer = gc.frameBuffer.drawBuffer.buffer;
+
+		if (gc.state.enables.blend) {
+			if (!textureEnabled)
+				function = BLEND;
+		} else if (textureEnabled) {
+			function = selectTexture();
+		} else {
+			function = smoothShading ? SMOOTH : FLAT;
+		}
+
+		return function;
+	}
+
+	private int selectTexture() {
+		final GLTextureObject textureObject = gc.state.texture.unit[0].currentTexture;
+
+		if (textureObject.params.magFilter != GL_NEAREST || textureObject.params.sWrapMode != GL_REPEAT
+				|| textureObject.params.tWrapMode != GL_REPEAT)
+			return GENERIC;
+
+		final GLTextureImage image = textureObject.level[0];
+
+		texels = image.buffer.data;
+		sAnd = image.width - 1;
+		tAnd = image.height - 1;
+
+		tShift = 0;
+
+		while ((1 << tShift) < image.width)
+			++tShift;
+
+		final boolean rgb = image.baseFormat == GL_RGB;
+
+		texelOr = rgb ? 0xFF000000 : 0;
+
+		switch (gc.state.texture.unit[0].env[0].mode) {
+		case GL_REPLACE:
+			colorKeep = rgb ? 0xFF000000 : 0;
+			texelKeep = ~colorKeep;
+			return TEXTURE_REPLACE;
+		case GL_MODULATE:
+			return TEXTURE_MODULATE;
+		default:
+			return GENERIC;
+		}
+	}
+
+	/**
+	 * Draws a span with the loop picked by select(), which must not be
+	 * GENERIC.
+	 */
+	public final void apply(final GLSpan span) {
+		switch (function) {
+		case FLAT:
+			flat(span);
+			break;
+		case SMOOTH:
+			smooth(span);
+			break;
+		case TEXTURE_REPLACE:
+			textureReplace(span);
+			break;
+		case TEXTURE_MODULATE:
+			textureModulate(span);
+			break;
+		case BLEND:
+			blend(span);
+			break;
+		}
+	}
+
+	private void flat(final GLSpan span) {
+		final GLEdge left = span.left;
+		final int color = ((left.fa << 8) & 0xFF000000) | (left.fr & 0x00FF0000) | ((left.fg >> 8) & 0x0000FF00)
+				| (left.fb >> 16);
+
+		final int[] buffer = colorBuffer;
+		final int offset = span.offset;
+		final int end = offset + span.length;
+
+		if (depthTest) {
+			final int[] zbuffer = depthBuffer;
+			final int bias = depthBias;
+
+			int z = left.fz;
+			final int dz = (span.right.fz - z) / span.getSteps();
+
+			for (int i = offset; i < end; ++i) {
+				if (z < zbuffer[i] + bias) {
+					zbuffer[i] = z;
+					buffer[i] = color;
+				}
+
+				z += dz;
+			}
+		} else {
+			for (int i = offset; i < end; ++i)
+				buffer[i] = color;
+		}
+	}
+
+	private void smooth(final GLSpan span) {
+		final GLEdge left = span.left;
+		final GLEdge right = span.right;
+		final int steps = span.getSteps();
+
+		int r = left.fr;
+		int g = left.fg;
+		int b = left.fb;
+		int a = left.fa;
+
+		final int dr = (right.fr - r) / steps;
+		final int dg = (right.fg - g) / steps;
+		final int db = (right.fb - b) / steps;
+		final int da = (right.fa - a) / steps;
+
+		final int[] buffer = colorBuffer;
+		final int offset = span.offset;
+		final int end = offset + span.length;
+
+		if (depthTest) {
+			final int[] zbuffer = depthBuffer;
+			final int bias = depthBias;
+
+			int z = left.fz;
+			final int dz = (right.fz - z) / steps;
+
+			for (int i = offset; i < end; ++i) {
+				if (z < zbuffer[i] + bias) {
+					zbuffer[i] = z;
+					buffer[i] = ((a << 8) & 0xFF000000) | (r & 0x00FF0000) | ((g >> 8) & 0x0000FF00) | (b >> 16);
+				}
+
+				z += dz;
+				r += dr;
+				g += dg;
+				b += db;
+				a += da;
+			}
+		} else {
+			for (int i = offset; i < end; ++i) {
+				buffer[i] = ((a << 8) & 0xFF000000) | (r & 0x00FF0000) | ((g >> 8) & 0x0000FF00) | (b >> 16);
+
+				r += dr;
+				g += dg;
+				b += db;
+				a += da;
+			}
+		}
+	}
+
+	private void textureReplace(final GLSpan span) {
+		final GLEdge left = span.left;
+		final GLEdge right = span.right;
+		final int steps = span.getSteps();
+
+		// only the alpha of the fragment is kept, for RGB textures
+		int a = left.fa;
+		final int da = span.smoothShading ? (right.fa - a) / steps : 0;
+
+		int s = left.fs;
+		int t = left.ft;
+		final int ds = (right.fs - s) / steps;
+		final int dt = (right.ft - t) / steps;
+
+		final int[] texels = this.texels;
+		final int sAnd = this.sAnd;
+		final int tAnd = this.tAnd;
+		final int tShift = this.tShift;
+		final int colorKeep = this.colorKeep;
+		final int texelKeep = this.texelKeep;
+
+		final int[] buffer = colorBuffer;
+		final int offset = span.offset;
+		final int end = offset + span.length;
+
+		if (depthTest) {
+			final int[] zbuffer = depthBuffer;
+			final int bias = depthBias;
+
+			int z = left.fz;
+			final int dz = (right.fz - z) / steps;
+
+			for (int i = offset; i < end; ++i) {
+				if (z < zbuffer[i] + bias) {
+					zbuffer[i] = z;
+					buffer[i] = ((a << 8) & colorKeep)
+							| (texels[((s >> 16) & sAnd) + (((t >> 16) & tAnd) << tShift)] & texelKeep);
+				}
+
+				z += dz;
+				a += da;
+				s += ds;
+				t += dt;
+			}
+		} else {
+			for (int i = offset; i < end; ++i) {
+				buffer[i] = ((a << 8) & colorKeep)
+						| (texels[((s >> 16) & sAnd) + (((t >> 16) & tAnd) << tShift)] & texelKeep);
+
+				a += da;
+				s += ds;
+				t += dt;
+			}
+		}
+	}
+
+	private void textureModulate(final GLSpan span) {
+		final GLEdge left = span.left;
+		final GLEdge right = span.right;
+		final int steps = span.getSteps();
+
+		int r = left.fr;
+		int g = left.fg;
+		int b = left.fb;
+		int a = left.fa;
+
+		int dr = 0, dg = 0, db = 0, da = 0;
+
+		if (span.smoothShading) {
+			dr = (right.fr - r) / steps;
+			dg = (right.fg - g) / steps;
+			db = (right.fb - b) / steps;
+			da = (right.fa - a) / steps;
+		}
+
+		int s = left.fs;
+		int t = left.ft;
+		final int ds = (right.fs - s) / steps;
+		final int dt = (right.ft - t) / steps;
+
+		final int[] texels = this.texels;
+		final int sAnd = this.sAnd;
+		final int tAnd = this.tAnd;
+		final int tShift = this.tShift;
+		final int texelOr = this.texelOr;
+
+		final int[] buffer = colorBuffer;
+		final int offset = span.offset;
+		final int end = offset + span.length;
+
+		if (depthTest) {
+			final int[] zbuffer = depthBuffer;
+			final int bias = depthBias;
+
+			int z = left.fz;
+			final int dz = (right.fz - z) / steps;
+
+			for (int i = offset; i < end; ++i) {
+				if (z < zbuffer[i] + bias) {
+					zbuffer[i] = z;
+					buffer[i] = modulate(a, r, g, b, texels[((s >> 16) & sAnd) + (((t >> 16) & tAnd) << tShift)]
+							| texelOr);
+				}
+
+				z += dz;
+				r += dr;
+				g += dg;
+				b += db;
+				a += da;
+				s += ds;
+				t += dt;
+			}
+		} else {
+			for (int i = offset; i < end; ++i) {
+				buffer[i] = modulate(a, r, g, b, texels[((s >> 16) & sAnd) + (((t >> 16) & tAnd) << tShift)]
+						| texelOr);
+
+				r += dr;
+				g += dg;
+				b += db;
+				a += da;
+				s += ds;
+				t += dt;
+			}
+		}
+	}
+
+	private void blend(final GLSpan span) {
+		final GLEdge left = span.left;
+		final GLEdge right = span.right;
+		final int steps = span.getSteps();
+
+		int r = left.fr;
+		int g = left.fg;
+		int b = left.fb;
+		int a = left.fa;
+
+		int dr = 0, dg = 0, db = 0, da = 0;
+
+		if (span.smoothShading) {
+			dr = (right.fr - r) / steps;
+			dg = (right.fg - g) / steps;
+			db = (right.fb - b) / steps;
+			da = (right.fa - a) / steps;
+		}
+
+		final int[] buffer = colorBuffer;
+		final int offset = span.offset;
+		final int end = offset + span.length;
+
+		if (depthTest) {
+			final int[] zbuffer = depthBuffer;
+			final int bias = depthBias;
+
+			int z = left.fz;
+			final int dz = (right.fz - z) / steps;
+
+			for (int i = offset; i < end; ++i) {
+				if (z < zbuffer[i] + bias) {
+					zbuffer[i] = z;
+					buffer[i] = blend(((a << 8) & 0xFF000000) | (r & 0x00FF0000) | ((g >> 8) & 0x0000FF00)
+							| (b >> 16), buffer[i]);
+				}
+
+				z += dz;
+				r += dr;
+				g += dg;
+				b += db;
+				a += da;
+			}
+		} else {
+			for (int i = offset; i < end; ++i) {
+				buffer[i] = blend(((a << 8) & 0xFF000000) | (r & 0x00FF0000) | ((g >> 8) & 0x0000FF00) | (b >> 16),
+						buffer[i]);
+
+				r += dr;
+				g += dg;
+				b += db;
+				a += da;
+			}
+		}
+	}
+
+	/**
+	 * Returns the 8.16 color a, r, g, b multiplied by a packed ARGB texel.
+	 */
+	private static int modulate(final int a, final int r, final int g, final int b, final int texel) {
+		// x / 255 is computed as (x + 1 + (x >> 8)) >> 8
+		int x = (a >> 16) * (texel >>> 24);
+		int color = ((x + 1 + (x >> 8)) >> 8) << 24;
+		x = (r >> 16) * ((texel >> 16) & 0xFF);
+		color |= ((x + 1 + (x >> 8)) >> 8) << 16;
+		x = (g >> 16) * ((texel >> 8) & 0xFF);
+		color |= ((x + 1 + (x >> 8)) >> 8) << 8;
+		x = (b >> 16) * (texel & 0xFF);
+
+		return color | ((x + 1 + (x >> 8)) >> 8);
+	}
+
+	/**
+	 * Blends the colors of the span which passed the tests with the
+	 * buffer, for the spans drawn by GLFragmentOperations.applyFixed().
+	 */
+	public final void blendFixed(final GLSpan span, final int[] buffer) {
+		final long start = System.currentTimeMillis();
+
+		final int[] c = span.c;
+		final boolean[] mask = span.mask;
+		final int offset = span.offset;
+
+		for (int i = span.length; --i >= 0;) {
+			if (mask[i])
+				c[i] = blend(c[i], buffer[offset + i]);
+		}
+
+		gc.benchmark.blendTime += System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * Returns src * As + dst * (1 - As) for packed ARGB colors.
+	 */
+	private static int blend(final int src, final int dst) {
+		final int as = src >>> 24;
+		final int ad = 255 - as;
+
+		int x = as * as + (dst >>> 24) * ad;
+		int color = ((x + 1 + (x >> 8)) >> 8) << 24;
+		x = ((src >> 16) & 0xFF) * as + ((dst >> 16) & 0xFF) * ad;
+		color |= ((x + 1 + (x >> 8)) >> 8) << 16;
+		x = ((src >> 8) & 0xFF) * as + ((dst >> 8) & 0xFF) * ad;
+		color |= ((x + 1 + (x >> 8)) >> 8) << 8;
+		x = (src & 0xFF) * as + (dst & 0xFF) * ad;
+
+		return color | ((x + 1 + (x >> 8)) >> 8);
+	}
+}
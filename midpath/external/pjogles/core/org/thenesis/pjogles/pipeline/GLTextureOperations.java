@@ -55,6 +55,11 @@ public final class GLTextureOperations implements GLConstants {
 	private final GLColor t10 = new GLColor();
 	private final GLColor t11 = new GLColor();
 
+	/**
+	 * Packed ARGB texels sampled by the fixed-point path.
+	 */
+	private final int[] fixedTexels = new int[MAX_WINDOW_WIDTH];
+
 	/**
 	 * Bitflags for texture border color sampling.
 	 */
@@ -768,6 +773,265 @@ public final class GLTextureOperations implements GLConstants {
 		}
 	}
 
+	/**
+	 * Returns true if the first texture unit can be applied by applyFixed():
+	 * a 2D texture without border, of format GL_RGB or GL_RGBA, with a
+	 * GL_REPLACE, GL_MODULATE or GL_DECAL environment.
+	 */
+	public final boolean isFixedPointCompatible() {
+		final GLTextureUnitState unit = gc.state.texture.unit[0];
+		final GLTextureObject textureObject = unit.currentTexture;
+
+		if (textureObject == null || textureObject != unit.current2D)
+			return false;
+
+		final GLTextureImage image = textureObject.level[0];
+
+		if (image == null || image.border != 0)
+			return false;
+
+		if (image.baseFormat != GL_RGB && image.baseFormat != GL_RGBA)
+			return false;
+
+		final int magFilter = textureObject.params.magFilter;
+
+		if (magFilter != GL_NEAREST && magFilter != GL_LINEAR)
+			return false;
+
+		if (!isFixedPointWrapMode(textureObject.params.sWrapMode)
+				|| !isFixedPointWrapMode(textureObject.params.tWrapMode))
+			return false;
+
+		final int mode = unit.env[0].mode;
+
+		return mode == GL_REPLACE || mode == GL_MODULATE || mode == GL_DECAL;
+	}
+
+	private static boolean isFixedPointWrapMode(final int wrapMode) {
+		return wrapMode == GL_REPEAT || wrapMode == GL_CLAMP;
+	}
+
+	/**
+	 * Same as apply(GLSpan) for the spans of the fixed-point path: the
+	 * texel coordinates are the 16.16 values set by GLSpan.doTextureFixed()
+	 * and the colors are the packed ARGB values of GLSpan.c.
+	 */
+	public final void applyFixed(final GLSpan span) {
+		final long start = System.currentTimeMillis();
+
+		final GLTextureUnitState unit = gc.state.texture.unit[0];
+		final GLTextureObject textureObject = unit.currentTexture;
+
+		if (textureObject.params.magFilter == GL_NEAREST)
+			nearestFixed(span, textureObject, fixedTexels);
+		else
+			linearFixed(span, textureObject, fixedTexels);
+
+		combineFixed(span, unit.env[0].mode, textureObject.level[0].baseFormat, fixedTexels);
+
+		gc.benchmark.textureTime += System.currentTimeMillis() - start;
+	}
+
+	private void combineFixed(final GLSpan span, final int mode, final int format, final int[] texels) {
+		final int[] colors = span.c;
+		final int length = span.length;
+
+		int c, t, at, s;
+
+		switch (mode) {
+		case GL_REPLACE:
+		case GL_DECAL:
+
+			if (format == GL_RGB) {
+				for (int i = length; --i >= 0;) {
+					// Cv = Ct
+					// Av = Af
+					colors[i] = (colors[i] & 0xFF000000) | (texels[i] & 0x00FFFFFF);
+				}
+			} else if (mode == GL_REPLACE) {
+				// Cv = Ct
+				// Av = At
+				System.arraycopy(texels, 0, colors, 0, length);
+			} else {
+				for (int i = length; --i >= 0;) {
+					// Cv = Cf(1-At) + CtAt
+					// Av = Af
+					c = colors[i];
+					t = texels[i];
+					at = t >>> 24;
+					s = 255 - at;
+
+					colors[i] = (c & 0xFF000000)
+							| (div255(((c >> 16) & 0xFF) * s + ((t >> 16) & 0xFF) * at) << 16)
+							| (div255(((c >> 8) & 0xFF) * s + ((t >> 8) & 0xFF) * at) << 8)
+							| div255((c & 0xFF) * s + (t & 0xFF) * at);
+				}
+			}
+
+			break;
+
+		case GL_MODULATE:
+
+			if (format == GL_RGB) {
+				for (int i = length; --i >= 0;) {
+					// Cv = CfCt
+					// Av = Af
+					c = colors[i];
+					t = texels[i];
+
+					colors[i] = (c & 0xFF000000) | (div255(((c >> 16) & 0xFF) * ((t >> 16) & 0xFF)) << 16)
+							| (div255(((c >> 8) & 0xFF) * ((t >> 8) & 0xFF)) << 8) | div255((c & 0xFF) * (t & 0xFF));
+				}
+			} else {
+				for (int i = length; --i >= 0;) {
+					// Cv = CfCt
+					// Av = AfAt
+					c = colors[i];
+					t = texels[i];
+
+					colors[i] = (div255((c >>> 24) * (t >>> 24)) << 24)
+							| (div255(((c >> 16) & 0xFF) * ((t >> 16) & 0xFF)) << 16)
+							| (div255(((c >> 8) & 0xFF) * ((t >> 8) & 0xFF)) << 8) | div255((c & 0xFF) * (t & 0xFF));
+				}
+			}
+
+			break;
+
+		default:
+			throw new GLInvalidEnumException("GLTextureOperations.combineFixed(GLSpan, int, int, int[])");
+		}
+	}
+
+	/**
+	 * Returns x / 255 for x in [0, 65025].
+	 */
+	private static int div255(final int x) {
+		return (x + 1 + (x >> 8)) >> 8;
+	}
+
+	private void nearestFixed(final GLSpan span, final GLTextureObject textureObject, final int[] texels) {
+		final GLTextureImage image = textureObject.level[0];
+
+		final int width = image.width;
+		final int[] data = image.buffer.data;
+
+		final int length = span.length;
+		final boolean[] mask = span.mask;
+
+		// GL_REPEAT masks the texel location, GL_CLAMP clamps it
+		final int sMax = width - 1;
+		final int tMax = image.height - 1;
+		final int sAnd = textureObject.params.sWrapMode == GL_REPEAT ? sMax : -1;
+		final int tAnd = textureObject.params.tWrapMode == GL_REPEAT ? tMax : -1;
+
+		int s = span.s;
+		int t = span.t;
+		final int ds = span.ds;
+		final int dt = span.dt;
+
+		int i, j;
+
+		for (int k = 0; k < length; ++k) {
+			if (mask[k]) {
+				i = (s >> 16) & sAnd;
+				j = (t >> 16) & tAnd;
+
+				if (i < 0)
+					i = 0;
+				else if (i > sMax)
+					i = sMax;
+
+				if (j < 0)
+					j = 0;
+				else if (j > tMax)
+					j = tMax;
+
+				texels[k] = data[i + (j * width)];
+			}
+
+			s += ds;
+			t += dt;
+		}
+	}
+
+	private void linearFixed(final GLSpan span, final GLTextureObject textureObject, final int[] texels) {
+		final GLTextureImage image = textureObject.level[0];
+
+		final int width = image.width;
+		final int height = image.height;
+		final int[] data = image.buffer.data;
+
+		final int length = span.length;
+		final boolean[] mask = span.mask;
+
+		final int borderColor = textureObject.params.borderColor.getRGBAi();
+
+		// GL_REPEAT masks the texel locations, GL_CLAMP clamps the coordinates
+		// and uses the border color outside of the texture
+		final boolean sRepeat = textureObject.params.sWrapMode == GL_REPEAT;
+		final boolean tRepeat = textureObject.params.tWrapMode == GL_REPEAT;
+		final int sAnd = sRepeat ? width - 1 : -1;
+		final int tAnd = tRepeat ? height - 1 : -1;
+		final int sMin = sRepeat ? Integer.MIN_VALUE : 0;
+		final int sMax = sRepeat ? Integer.MAX_VALUE : width << 16;
+		final int tMin = tRepeat ? Integer.MIN_VALUE : 0;
+		final int tMax = tRepeat ? Integer.MAX_VALUE : height << 16;
+
+		int s = span.s;
+		int t = span.t;
+		final int ds = span.ds;
+		final int dt = span.dt;
+
+		int fs, ft, u, v, i0, i1, j0, j1;
+		int t00, t10, t01, t11;
+		int w00, w10, w01, w11;
+
+		for (int k = 0; k < length; ++k) {
+			if (mask[k]) {
+				fs = (s < sMin ? sMin : (s > sMax ? sMax : s)) - 0x8000;
+				ft = (t < tMin ? tMin : (t > tMax ? tMax : t)) - 0x8000;
+
+				u = (fs >> 8) & 0xFF;
+				v = (ft >> 8) & 0xFF;
+
+				i0 = (fs >> 16) & sAnd;
+				i1 = (i0 + 1) & sAnd;
+				j0 = (ft >> 16) & tAnd;
+				j1 = (j0 + 1) & tAnd;
+
+				final boolean i0Out = i0 < 0 || i0 >= width;
+				final boolean i1Out = i1 < 0 || i1 >= width;
+				final boolean j0Out = j0 < 0 || j0 >= height;
+				final boolean j1Out = j1 < 0 || j1 >= height;
+
+				j0 *= width;
+				j1 *= width;
+
+				t00 = (i0Out || j0Out) ? borderColor : data[i0 + j0];
+				t10 = (i1Out || j0Out) ? borderColor : data[i1 + j0];
+				t01 = (i0Out || j1Out) ? borderColor : data[i0 + j1];
+				t11 = (i1Out || j1Out) ? borderColor : data[i1 + j1];
+
+				// weight the texels, the weights add up to 65536
+
+				w00 = (256 - u) * (256 - v);
+				w10 = u * (256 - v);
+				w01 = (256 - u) * v;
+				w11 = u * v;
+
+				texels[k] = ((((t00 >>> 24) * w00 + (t10 >>> 24) * w10 + (t01 >>> 24) * w01 + (t11 >>> 24) * w11) << 8) & 0xFF000000)
+						| (((((t00 >> 16) & 0xFF) * w00 + ((t10 >> 16) & 0xFF) * w10 + ((t01 >> 16) & 0xFF) * w01 + ((t11 >> 16) & 0xFF)
+								* w11)) & 0x00FF0000)
+						| (((((t00 >> 8) & 0xFF) * w00 + ((t10 >> 8) & 0xFF) * w10 + ((t01 >> 8) & 0xFF) * w01 + ((t11 >> 8) & 0xFF)
+								* w11) >> 8) & 0x0000FF00)
+						| ((((t00 & 0xFF) * w00 + (t10 & 0xFF) * w10 + (t01 & 0xFF) * w01 + (t11 & 0xFF) * w11) >> 16));
+			}
+
+			s += ds;
+			t += dt;
+		}
+	}
+
 	private final int COMPUTE_NEAREST_TEXEL_LOCATION(final int wrapMode, final float s, final int size) {
 		int i;
 		final float f;
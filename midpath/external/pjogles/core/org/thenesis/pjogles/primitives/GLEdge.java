@@ -33,6 +33,13 @@ public final class GLEdge implements GLConstants {
 	public final GLVector4f[] texture = new GLVector4f[NUMBER_OF_TEXTURE_UNITS];
 	public float fog, eyeZ;
 
+	// Values used by the fixed-point path: 16.16 x, z in depth buffer
+	// units, 8.16 color components in [0, 255] and 16.16 texel coordinates
+	// of the first texture unit
+	public int fx, fz;
+	public int fr, fg, fb, fa;
+	public int fs, ft;
+
 	public GLEdge() {
 		for (int i = NUMBER_OF_TEXTURE_UNITS; --i >= 0;)
 			texture[i] = new GLVector4f();
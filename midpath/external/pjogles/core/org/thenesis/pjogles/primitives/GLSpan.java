@@ -25,11 +25,16 @@ import org.thenesis.pjogles.GLSoftwareContext;
 import org.thenesis.pjogles.lighting.GLColor;
 import org.thenesis.pjogles.math.GLVector4f;
 import org.thenesis.pjogles.math.GLVertex;
+import org.thenesis.pjogles.states.GLColorBufferState;
 
 /**
  * A GLSpan is a contiguous array of fragments. It is a lot faster
  * to process a group of contiguous fragments together (in either the x or y direction, we
  * chose an increasing x).
+ * <p>
+ * Spans of polygons rendered with the fixed-point path are set up with
+ * initFixed() and interpolated with the *Fixed() methods, which only use
+ * integer arithmetic.
  *
  * @author tdinneen
  */
@@ -46,7 +51,7 @@ public final class GLSpan implements GLConstants {
 	public final boolean[] depthFail = new boolean[MAX_WINDOW_WIDTH];
 	public final boolean[] depthPass = new boolean[MAX_WINDOW_WIDTH];
 
-	public final float[] z = new float[MAX_WINDOW_WIDTH];
+	public final int[] z = new int[MAX_WINDOW_WIDTH];
 	public final int[] c = new int[MAX_WINDOW_WIDTH];
 	public final float[] fog = new float[MAX_WINDOW_WIDTH];
 
@@ -56,6 +61,9 @@ public final class GLSpan implements GLConstants {
 	public boolean textureEnabled;
 	public boolean fogEnabled;
 
+	// 16.16 texel coordinates of the first pixel and their increments, set by doTextureFixed()
+	public int s, t, ds, dt;
+
 	protected int ix1, ix2, idx;
 	protected float oneOver;
 
@@ -87,17 +95,68 @@ public final class GLSpan implements GLConstants {
 
 		ix1 = (int) (left.x + 0.5f);
 		ix2 = (int) (right.x + 0.5f);
+
+		if (!initLength(y, width))
+			return false;
+
+		initMasks();
+
+		oneOver = 1.0f / idx;
+
+		return true;
+	}
+
+	/**
+	 * Same as init(), for the edges computed by the fixed-point path.
+	 */
+	public final boolean initFixed(final int y, final int width) {
+		if (!initFixedBounds(y, width))
+			return false;
+
+		initMasks();
+
+		return true;
+	}
+
+	/**
+	 * Same as initFixed() without resetting the masks, for the spans drawn
+	 * by GLSpanFunctions.
+	 */
+	public final boolean initFixedBounds(final int y, final int width) {
+		if (right.fx < left.fx) {
+			final GLEdge edge = left;
+			left = right;
+			right = edge;
+		}
+
+		ix1 = (left.fx + 0x8000) >> 16;
+		ix2 = (right.fx + 0x8000) >> 16;
+
+		return initLength(y, width);
+	}
+
+	/**
+	 * Returns the divisor of the interpolations along the span.
+	 */
+	public final int getSteps() {
+		return idx;
+	}
+
+	private boolean initLength(final int y, final int width) {
 		length = idx = ix2 - ix1;
 
-		if (idx == 0)
+		if (idx <= 0)
 			return false;
 
 		if (--idx < 2) // don't overlap final right edge
 			idx = 2;
 
-		oneOver = 1.0f / idx;
 		offset = ix1 + y * width;
 
+		return true;
+	}
+
+	private void initMasks() {
 		// TOMD - we could have an array that always true and we use System.arraycopy(..., length) !!
 
 		for (int i = 0; i < length; ++i) {
@@ -107,8 +166,6 @@ public final class GLSpan implements GLConstants {
 			depthPass[i] = false;
 			depthFail[i] = true;
 		}
-
-		return true;
 	}
 
 	public final void doZVal() {
@@ -120,11 +177,96 @@ public final class GLSpan implements GLConstants {
 		int i = -1;
 
 		do {
-			z[++i] = zVal;
+			z[++i] = (int) zVal;
 			zVal += dz;
 		} while (++ix1 < ix2);
 	}
 
+	public final void doZValFixed() {
+		final int[] localZ = z;
+		int zVal = left.fz;
+		final int dz = (right.fz - zVal) / idx;
+
+		for (int i = 0; i < length; ++i) {
+			localZ[i] = zVal;
+			zVal += dz;
+		}
+	}
+
+	/**
+	 * Computes the packed ARGB colors of the span into c.
+	 */
+	public final void doColorFixed() {
+		final int[] localC = c;
+		final GLEdge left = this.left;
+
+		if (smoothShading) {
+			final GLEdge right = this.right;
+			final int idx = this.idx;
+
+			int r = left.fr;
+			int g = left.fg;
+			int b = left.fb;
+			int a = left.fa;
+
+			final int dr = (right.fr - r) / idx;
+			final int dg = (right.fg - g) / idx;
+			final int db = (right.fb - b) / idx;
+			final int da = (right.fa - a) / idx;
+
+			for (int i = 0; i < length; ++i) {
+				localC[i] = ((a << 8) & 0xFF000000) | (r & 0x00FF0000) | ((g >> 8) & 0x0000FF00) | (b >> 16);
+
+				r += dr;
+				g += dg;
+				b += db;
+				a += da;
+			}
+		} else {
+			final int color = ((left.fa << 8) & 0xFF000000) | (left.fr & 0x00FF0000) | ((left.fg >> 8) & 0x0000FF00)
+					| (left.fb >> 16);
+
+			for (int i = 0; i < length; ++i)
+				localC[i] = color;
+		}
+	}
+
+	/**
+	 * Sets the texel coordinates of the first pixel of the span and
+	 * their increments.
+	 */
+	public final void doTextureFixed() {
+		s = left.fs;
+		t = left.ft;
+		ds = (right.fs - s) / idx;
+		dt = (right.ft - t) / idx;
+	}
+
+	/**
+	 * Keeps the colors of c which passed the tests, restricted to the
+	 * enabled color components, and the content of the buffer elsewhere.
+	 */
+	public final void mapColorFixed(final GLSoftwareContext gc, final int[] buffer) {
+		final int[] localBuffer = buffer;
+		final boolean[] localMask = mask;
+		final int[] localC = c;
+		final int offset = this.offset;
+
+		final GLColorBufferState colorBuffer = gc.state.colorBuffer;
+		final int writeMask = (colorBuffer.aMask ? 0xFF000000 : 0) | (colorBuffer.rMask ? 0x00FF0000 : 0)
+				| (colorBuffer.gMask ? 0x0000FF00 : 0) | (colorBuffer.bMask ? 0x000000FF : 0);
+		final int keepMask = ~writeMask;
+
+		for (int i = 0; i < length; ++i) {
+			final int old = localBuffer[offset + i];
+
+			if (localMask[i])
+				localC[i] = (localC[i] & writeMask) | (old & keepMask);
+			else
+				localC[i] = old;
+		}
+	}
+
 	public final void doColor() {
 		final GLColor lc = left.color;
 		final GLColor rc = right.color;
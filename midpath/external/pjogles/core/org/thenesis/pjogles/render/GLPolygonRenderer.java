@@ -22,14 +22,17 @@ package org.thenesis.pjogles.render;
 
 import org.thenesis.pjogles.GLConstants;
 import org.thenesis.pjogles.GLSoftwareContext;
+import org.thenesis.pjogles.buffers.GLDepthBuffer;
 import org.thenesis.pjogles.lighting.GLColor;
 import org.thenesis.pjogles.math.GLVector4f;
 import org.thenesis.pjogles.math.GLVertex;
 import org.thenesis.pjogles.pipeline.GLFragmentOperations;
 import org.thenesis.pjogles.pipeline.GLRasterizer;
+import org.thenesis.pjogles.pipeline.GLSpanFunctions;
 import org.thenesis.pjogles.primitives.GLEdge;
 import org.thenesis.pjogles.primitives.GLPolygon;
 import org.thenesis.pjogles.primitives.GLSpan;
+import org.thenesis.pjogles.texture.GLTextureImage;
 
 /**
  * @author tdinneen
@@ -50,6 +53,13 @@ public final class GLPolygonRenderer implements GLConstants {
 	private boolean textureEnabled; // shared accross fillPolygon() and edge()
 	private boolean fogEnabled; // shared accross fillPolygon() and edge()
 	private int fogHint; // shared accross fillPolygon() and edge()
+	private int textureWidth, textureHeight; // shared accross fillPolygon() and edgeFixed()
+
+	/**
+	 * Largest texel coordinate accepted by the fixed-point path, so that
+	 * the 16.16 interpolation can't overflow.
+	 */
+	private static final float MAX_FIXED_TEXEL = 16384.0f;
 
 	public GLPolygonRenderer(final GLRasterizer rasterizer, final GLSoftwareContext gc) {
 		this.rasterizer = rasterizer;
@@ -135,6 +145,23 @@ public final class GLPolygonRenderer implements GLConstants {
 		if (iy1 == iy2)
 			return;
 
+		smoothShading = gc.state.lighting.shadingModel == GL_SMOOTH;
+		textureEnabled = gc.state.texture.enabledUnits != 0;
+		fogEnabled = gc.state.enables.fog;
+		fogHint = gc.state.hints.fog;
+
+		// Use integer arithmetic when the fragment operations allow it
+		final boolean fixedPoint = gc.fixedPointRasterization && fragmentOperations.isFixedPointCompatible()
+				&& isFixedPointCompatible(v, n);
+
+		if (fixedPoint)
+			fillPolygonFixed(v, n, iminy, imaxy, iy1, iy2, fragmentOperations);
+		else
+			fillPolygonFloat(v, n, iminy, imaxy, iy1, iy2, fragmentOperations);
+	}
+
+	private void fillPolygonFloat(final GLVertex[] v, final int n, final int iminy, final int imaxy, int iy1,
+			final int iy2, final GLFragmentOperations fragmentOperations) {
 		// In the following two loops we start at an extreme and walk our way around the
 		// polygon until be get to another extreme. At each vertices we call edge()
 		// to fill in the edge table for that part of the path.
@@ -145,11 +172,6 @@ public final class GLPolygonRenderer implements GLConstants {
 		if (pnt2 >= n)
 			pnt2 = 0;
 
-		smoothShading = gc.state.lighting.shadingModel == GL_SMOOTH;
-		textureEnabled = gc.state.texture.enabledUnits != 0;
-		fogEnabled = gc.state.enables.fog;
-		fogHint = gc.state.hints.fog;
-
 		do {
 			edge(table1, v[pnt1], v[pnt2]);
 
@@ -185,6 +207,8 @@ public final class GLPolygonRenderer implements GLConstants {
 
 		final int width = gc.frameBuffer.width;
 
+		gc.benchmark.floatingPointSpans += iy2 - iy1;
+
 		do {
 			span.left = table1[iy1];
 			span.right = table2[iy1];
@@ -194,6 +218,95 @@ public final class GLPolygonRenderer implements GLConstants {
 		} while (++iy1 < iy2);
 	}
 
+	private void fillPolygonFixed(final GLVertex[] v, final int n, final int iminy, final int imaxy, int iy1,
+			final int iy2, final GLFragmentOperations fragmentOperations) {
+		int pnt1 = iminy;
+		int pnt2 = iminy + 1;
+
+		if (pnt2 >= n)
+			pnt2 = 0;
+
+		do {
+			edgeFixed(table1, v[pnt1], v[pnt2]);
+
+			pnt1 = pnt2;
+			++pnt2;
+
+			if (pnt2 >= n)
+				pnt2 = 0;
+		} while (pnt1 != imaxy);
+
+		pnt1 = imaxy;
+		pnt2 = imaxy + 1;
+
+		if (pnt2 >= n)
+			pnt2 = 0;
+
+		do {
+			edgeFixed(table2, v[pnt1], v[pnt2]);
+
+			pnt1 = pnt2;
+			++pnt2;
+
+			if (pnt2 >= n)
+				pnt2 = 0;
+		} while (pnt1 != iminy);
+
+		span.smoothShading = smoothShading;
+		span.fogEnabled = false;
+		span.textureEnabled = textureEnabled;
+
+		final int width = gc.frameBuffer.width;
+
+		gc.benchmark.fixedPointSpans += iy2 - iy1;
+
+		if (fragmentOperations.selectSpanFunction(smoothShading, textureEnabled) != GLSpanFunctions.GENERIC) {
+			gc.benchmark.specializedSpans += iy2 - iy1;
+
+			do {
+				span.left = table1[iy1];
+				span.right = table2[iy1];
+
+				if (span.initFixedBounds(iy1, width))
+					fragmentOperations.applySpanFunction(span);
+			} while (++iy1 < iy2);
+		} else {
+			do {
+				span.left = table1[iy1];
+				span.right = table2[iy1];
+
+				if (span.initFixed(iy1, width))
+					fragmentOperations.applyFixed(span);
+			} while (++iy1 < iy2);
+		}
+	}
+
+	/**
+	 * Checks that the attributes of the vertices fit in the ranges of the
+	 * fixed-point path. Also sets the texture size used to compute the
+	 * texel coordinates.
+	 */
+	private boolean isFixedPointCompatible(final GLVertex[] v, final int n) {
+		if (!textureEnabled)
+			return true;
+
+		final GLTextureImage image = gc.state.texture.unit[0].currentTexture.level[0];
+		textureWidth = image.width;
+		textureHeight = image.height;
+
+		final float maxS = MAX_FIXED_TEXEL / textureWidth;
+		final float maxT = MAX_FIXED_TEXEL / textureHeight;
+
+		for (int i = 0; i < n; ++i) {
+			final GLVector4f t = v[i].texture[0];
+
+			if (t.x >= maxS || t.x <= -maxS || t.y >= maxT || t.y <= -maxT)
+				return false;
+		}
+
+		return true;
+	}
+
 	private final void edge(final GLEdge[] table, GLVertex v1, GLVertex v2) {
 		// The following routine starts with a pair of vertices that define an edge and
 		// produces a list of all the scan lines that cross the edge and the x  coordinates
@@ -232,8 +345,8 @@ public final class GLPolygonRenderer implements GLConstants {
 		float x = v1.window.x;
 		final float dx = (v2.window.x - x) * oneOver_idy;
 
-		float z = v1.window.z * Float.MAX_VALUE;
-		final float dz = ((v2.window.z * Float.MAX_VALUE) - z) * oneOver_idy;
+		float z = v1.window.z * GLDepthBuffer.DEPTH_SCALE;
+		final float dz = ((v2.window.z * GLDepthBuffer.DEPTH_SCALE) - z) * oneOver_idy;
 
 		float r, g, b, a;
 		float dr = 0.0f, dg = 0.0f, db = 0.0f, da = 0.0f;
@@ -359,6 +472,113 @@ public final class GLPolygonRenderer implements GLConstants {
 		} while (++iy1 < iy2);
 	}
 
+	/**
+	 * Same as edge(), computing the 16.16 fixed-point values of the edge.
+	 * Floats are only used to set up the edge, not for each row.
+	 */
+	private final void edgeFixed(final GLEdge[] table, GLVertex v1, GLVertex v2) {
+		if (v2.window.y < v1.window.y) {
+			final GLVertex vertex = v1;
+			v1 = v2;
+			v2 = vertex;
+		}
+
+		int iy1 = (int) (v1.window.y + 0.5f); // adjust
+		final int iy2 = (int) (v2.window.y + 0.5f); // adjust
+		int idy = iy2 - iy1;
+
+		if (idy == 0)
+			return;
+
+		if (--idy < 2)
+			idy = 2;
+
+		int x = toFixed(v1.window.x);
+		final int dx = (toFixed(v2.window.x) - x) / idy;
+
+		int z = (int) (v1.window.z * GLDepthBuffer.DEPTH_SCALE);
+		final int dz = ((int) (v2.window.z * GLDepthBuffer.DEPTH_SCALE) - z) / idy;
+
+		int r, g, b, a;
+		int dr = 0, dg = 0, db = 0, da = 0;
+		GLColor color;
+
+		if (smoothShading) {
+			color = v1.color;
+
+			r = toFixedColor(color.r);
+			g = toFixedColor(color.g);
+			b = toFixedColor(color.b);
+			a = toFixedColor(color.a);
+
+			color = v2.color;
+
+			dr = (toFixedColor(color.r) - r) / idy;
+			dg = (toFixedColor(color.g) - g) / idy;
+			db = (toFixedColor(color.b) - b) / idy;
+			da = (toFixedColor(color.a) - a) / idy;
+		} else {
+			color = gc.pipeline.provoking.color;
+
+			r = toFixedColor(color.r);
+			g = toFixedColor(color.g);
+			b = toFixedColor(color.b);
+			a = toFixedColor(color.a);
+		}
+
+		int s = 0, t = 0, ds = 0, dt = 0;
+
+		if (textureEnabled) {
+			s = toFixed(v1.texture[0].x * textureWidth);
+			t = toFixed(v1.texture[0].y * textureHeight);
+			ds = (toFixed(v2.texture[0].x * textureWidth) - s) / idy;
+			dt = (toFixed(v2.texture[0].y * textureHeight) - t) / idy;
+		}
+
+		GLEdge localTable;
+
+		do {
+			localTable = table[iy1];
+
+			localTable.fx = x;
+			localTable.fz = z;
+
+			localTable.fr = r;
+			localTable.fg = g;
+			localTable.fb = b;
+			localTable.fa = a;
+
+			localTable.fs = s;
+			localTable.ft = t;
+
+			x += dx;
+			z += dz;
+
+			r += dr;
+			g += dg;
+			b += db;
+			a += da;
+
+			s += ds;
+			t += dt;
+		} while (++iy1 < iy2);
+	}
+
+	private static int toFixed(final float f) {
+		return (int) (f * 65536.0f);
+	}
+
+	/**
+	 * Converts a color component to a 8.16 value in [0, 255].
+	 */
+	private static int toFixedColor(final float c) {
+		if (c <= 0.0f)
+			return 0;
+		if (c >= 1.0f)
+			return 255 << 16;
+		return (int) (c * (255.0f * 65536.0f));
+	}
+
 	/*
 	 private void span(GLEdge e1, GLEdge e2, GLFragmentOperations fragmentOperations)
 	 {
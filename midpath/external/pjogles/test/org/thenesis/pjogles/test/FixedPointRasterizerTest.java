@@ -0,0 +1,332 @@
+package org.thenesis.pjogles.test;
+
+import org.thenesis.pjogles.GL11;
+import org.thenesis.pjogles.GL11Software;
+import org.thenesis.pjogles.GLBackend;
+import org.thenesis.pjogles.GLSoftwareContext;
+
+/**
+ * Renders a set of scenes with the floating-point and the fixed-point
+ * rasterizers, compares the images and prints the frame times of both
+ * paths. Exits with status 1 if an image differs by more than a few color
+ * levels on more than a few edge pixels.
+ */
+public class FixedPointRasterizerTest {
+
+	private static final int WIDTH = 256;
+	private static final int HEIGHT = 256;
+
+	private static final int FRAMES = 50;
+
+	/**
+	 * Timed runs of each path, the fastest one is kept. The paths are
+	 * timed in turn within each run, so that a slowdown of the VM doesn't
+	 * favor one of them.
+	 */
+	private static final int RUNS = 5;
+
+	/**
+	 * Largest difference allowed on a color component.
+	 */
+	private static final int TOLERANCE = 3;
+
+	/**
+	 * Largest fraction of pixels allowed to exceed the tolerance, the
+	 * paths may round the polygon edges differently.
+	 */
+	private static final float MAX_DIFFERENT_PIXELS = 0.01f;
+
+	private static final String[] SCENES = { "flat", "smooth", "depth less", "depth greater", "color mask",
+			"texture nearest replace", "texture nearest modulate", "texture linear modulate", "texture linear clamp",
+			"texture decal", "texture repeat", "blend" };
+
+	private final int[] image = new int[WIDTH * HEIGHT];
+	private final int[] texture = new int[1];
+
+	private GLSoftwareContext context;
+	private GL11Software gl;
+
+	public void init() {
+		context = new GLSoftwareContext(null, null);
+		// compare the generic loops, SpanFunctionsBenchmark times the specialized ones
+		context.specializedSpanFunctions = false;
+		gl = new GL11Software(context);
+
+		gl.glXMakeCurrent(context, new GLBackend() {
+
+			public void updatePixels(int x, int y, int width, int height, int[] pixels, int offset, int scanlength) {
+				for (int j = 0; j < height; j++)
+					System.arraycopy(pixels, offset + j * scanlength, image, j * WIDTH, width);
+			}
+
+			public int getHeight() {
+				return HEIGHT;
+			}
+
+			public int getWidth() {
+				return WIDTH;
+			}
+
+			public int getX() {
+				return 0;
+			}
+
+			public int getY() {
+				return 0;
+			}
+
+			public int[] getColorBuffer(int size) {
+				return new int[size];
+			}
+		});
+
+		gl.glGenTextures(1, texture);
+		gl.glBindTexture(GL11.GL_TEXTURE_2D, texture[0]);
+		gl.glTexImage2D(GL11.GL_TEXTURE_2D, 0, 4, 64, 64, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, createCheckerboard(64));
+	}
+
+	private static byte[] createCheckerboard(int size) {
+		final byte[] data = new byte[size * size * 4];
+
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				final int i = (x + y * size) * 4;
+				final boolean odd = ((x >> 3) + (y >> 3) & 1) != 0;
+
+				data[i] = (byte) (odd ? 255 : x * 4);
+				data[i + 1] = (byte) (odd ? 240 : 32);
+				data[i + 2] = (byte) (odd ? 16 : y * 4);
+				data[i + 3] = (byte) (odd ? 255 : 96);
+			}
+		}
+
+		return data;
+	}
+
+	private void drawScene(int scene) {
+		gl.glViewport(0, 0, WIDTH, HEIGHT);
+		gl.glClearColor(0.1f, 0.2f, 0.3f, 1.0f);
+		gl.glClearDepth(1.0f);
+		gl.glColorMask(true, true, true, true);
+		gl.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
+
+		gl.glMatrixMode(GL11.GL_PROJECTION);
+		gl.glLoadIdentity();
+		gl.glOrtho(-1, 1, -1, 1, -1, 1);
+		gl.glMatrixMode(GL11.GL_MODELVIEW);
+		gl.glLoadIdentity();
+
+		gl.glDisable(GL11.GL_DEPTH_TEST);
+		gl.glDisable(GL11.GL_TEXTURE_2D);
+		gl.glDisable(GL11.GL_BLEND);
+		gl.glShadeModel(GL11.GL_SMOOTH);
+
+		switch (scene) {
+		case 0:
+			gl.glShadeModel(GL11.GL_FLAT);
+			drawTriangles(0.0f, 1.0f);
+			break;
+		case 1:
+			drawTriangles(0.0f, 1.0f);
+			break;
+		case 2:
+			gl.glEnable(GL11.GL_DEPTH_TEST);
+			gl.glDepthFunc(GL11.GL_LESS);
+			drawTriangles(0.0f, 1.0f);
+			break;
+		case 3:
+			gl.glClearDepth(0.0f);
+			gl.glClear(GL11.GL_DEPTH_BUFFER_BIT);
+			gl.glEnable(GL11.GL_DEPTH_TEST);
+			gl.glDepthFunc(GL11.GL_GREATER);
+			drawTriangles(0.0f, 1.0f);
+			break;
+		case 4:
+			gl.glColorMask(true, false, true, false);
+			gl.glEnable(GL11.GL_DEPTH_TEST);
+			gl.glDepthFunc(GL11.GL_LEQUAL);
+			drawTriangles(0.0f, 1.0f);
+			break;
+		case 5:
+			setTexture(GL11.GL_NEAREST, GL11.GL_REPEAT, GL11.GL_REPLACE);
+			drawTriangles(-0.25f, 1.25f);
+			break;
+		case 6:
+			setTexture(GL11.GL_NEAREST, GL11.GL_REPEAT, GL11.GL_MODULATE);
+			gl.glEnable(GL11.GL_DEPTH_TEST);
+			gl.glDepthFunc(GL11.GL_LESS);
+			drawTriangles(-0.25f, 1.25f);
+			break;
+		case 7:
+			setTexture(GL11.GL_LINEAR, GL11.GL_REPEAT, GL11.GL_MODULATE);
+			drawTriangles(-0.25f, 1.25f);
+			break;
+		case 8:
+			setTexture(GL11.GL_LINEAR, GL11.GL_CLAMP, GL11.GL_MODULATE);
+			drawTriangles(-0.25f, 1.25f);
+			break;
+		case 9:
+			setTexture(GL11.GL_LINEAR, GL11.GL_REPEAT, GL11.GL_DECAL);
+			drawTriangles(-0.25f, 1.25f);
+			break;
+		case 10:
+			setTexture(GL11.GL_NEAREST, GL11.GL_REPEAT, GL11.GL_MODULATE);
+			drawTriangles(-2.5f, 3.0f);
+			break;
+		case 11:
+			gl.glEnable(GL11.GL_BLEND);
+			gl.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+			gl.glEnable(GL11.GL_DEPTH_TEST);
+			gl.glDepthFunc(GL11.GL_LESS);
+			drawTriangles(0.0f, 1.0f);
+			break;
+		}
+
+		gl.glFinish();
+	}
+
+	private void setTexture(int filter, int wrapMode, int envMode) {
+		gl.glEnable(GL11.GL_TEXTURE_2D);
+		gl.glBindTexture(GL11.GL_TEXTURE_2D, texture[0]);
+		gl.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, filter);
+		gl.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, filter);
+		gl.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, wrapMode);
+		gl.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, wrapMode);
+		gl.glTexEnvi(GL11.GL_TEXTURE_ENV, GL11.GL_TEXTURE_ENV_MODE, envMode);
+	}
+
+	/**
+	 * Draws two overlapping triangles, the second one crossing the first
+	 * in depth, and a row of thin triangles. The texture coordinates of
+	 * the large triangles go from min to max.
+	 */
+	private void drawTriangles(float min, float max) {
+		gl.glBegin(GL11.GL_TRIANGLES);
+
+		gl.glColor4f(1.0f, 0.0f, 0.0f, 1.0f);
+		gl.glTexCoord2f(min, min);
+		gl.glVertex3f(-0.9f, -0.8f, -0.5f);
+		gl.glColor4f(0.0f, 1.0f, 0.0f, 0.5f);
+		gl.glTexCoord2f(max, min);
+		gl.glVertex3f(0.7f, -0.9f, 0.5f);
+		gl.glColor4f(0.0f, 0.0f, 1.0f, 1.0f);
+		gl.glTexCoord2f(min, max);
+		gl.glVertex3f(-0.2f, 0.9f, 0.0f);
+
+		gl.glColor4f(1.0f, 1.0f, 0.0f, 1.0f);
+		gl.glTexCoord2f(max, max);
+		gl.glVertex3f(0.9f, 0.8f, -0.8f);
+		gl.glColor4f(0.0f, 1.0f, 1.0f, 1.0f);
+		gl.glTexCoord2f(min, max);
+		gl.glVertex3f(-0.8f, 0.3f, 0.8f);
+		gl.glColor4f(1.0f, 0.0f, 1.0f, 1.0f);
+		gl.glTexCoord2f(max, min);
+		gl.glVertex3f(0.5f, -0.7f, 0.2f);
+
+		for (int i = 0; i < 8; i++) {
+			final float x = -0.9f + i * 0.22f;
+
+			gl.glColor4f(i / 8.0f, 0.5f, 1.0f - i / 8.0f, 1.0f);
+			gl.glTexCoord2f(0.0f, 0.0f);
+			gl.glVertex3f(x, -0.95f, 0.9f);
+			gl.glTexCoord2f(1.0f, 0.0f);
+			gl.glVertex3f(x + 0.05f, -0.95f, 0.9f);
+			gl.glTexCoord2f(0.5f, 1.0f);
+			gl.glVertex3f(x + 0.02f, -0.85f, 0.9f);
+		}
+
+		gl.glEnd();
+	}
+
+	private int[] render(int scene, boolean fixedPoint) {
+		context.fixedPointRasterization = fixedPoint;
+		drawScene(scene);
+		gl.glXSwapBuffers();
+
+		final int[] result = new int[image.length];
+		System.arraycopy(image, 0, result, 0, image.length);
+		return result;
+	}
+
+	private static int maxDifference(int a, int b) {
+		int max = 0;
+
+		for (int shift = 0; shift < 32; shift += 8) {
+			final int d = Math.abs(((a >> shift) & 0xFF) - ((b >> shift) & 0xFF));
+
+			if (d > max)
+				max = d;
+		}
+
+		return max;
+	}
+
+	private long time(int scene, boolean fixedPoint) {
+		context.fixedPointRasterization = fixedPoint;
+
+		final long start = System.currentTimeMillis();
+
+		for (int i = 0; i < FRAMES; i++)
+			drawScene(scene);
+
+		return System.currentTimeMillis() - start;
+	}
+
+	public boolean run() {
+		boolean passed = true;
+
+		for (int scene = 0; scene < SCENES.length; scene++) {
+			final int[] floatImage = render(scene, false);
+			final int[] fixedImage = render(scene, true);
+
+			int different = 0;
+			int maxDifference = 0;
+
+			for (int i = 0; i < floatImage.length; i++) {
+				final int d = maxDifference(floatImage[i], fixedImage[i]);
+
+				if (d > TOLERANCE)
+					different++;
+
+				if (d > maxDifference)
+					maxDifference = d;
+			}
+
+			// warm up, then time both paths in turn
+			time(scene, false);
+			time(scene, true);
+
+			context.benchmark.fixedPointSpans = 0;
+			context.benchmark.floatingPointSpans = 0;
+
+			long floatTime = Long.MAX_VALUE;
+			long fixedTime = Long.MAX_VALUE;
+
+			for (int run = 0; run < RUNS; run++) {
+				floatTime = Math.min(floatTime, time(scene, false));
+				fixedTime = Math.min(fixedTime, time(scene, true));
+			}
+
+			final int floatingPointSpans = context.benchmark.floatingPointSpans / RUNS;
+			final int fixedPointSpans = context.benchmark.fixedPointSpans / RUNS;
+
+			final boolean ok = different <= MAX_DIFFERENT_PIXELS * floatImage.length;
+			passed &= ok;
+
+			System.out.println((ok ? "PASS " : "FAIL ") + SCENES[scene] + ": " + different
+					+ " different pixels (max difference " + maxDifference + "), float "
+					+ ((float) floatTime / FRAMES) + " ms/frame (" + floatingPointSpans / FRAMES + " spans), fixed "
+					+ ((float) fixedTime / FRAMES) + " ms/frame (" + fixedPointSpans / FRAMES + " spans)");
+		}
+
+		return passed;
+	}
+
+	public static void main(String[] args) {
+		final FixedPointRasterizerTest test = new FixedPointRasterizerTest();
+		test.init();
+
+		if (!test.run())
+			System.exit(1);
+	}
+}
@@ -0,0 +1,278 @@
+package org.thenesis.pjogles.test;
+
+import org.thenesis.pjogles.GL11;
+import org.thenesis.pjogles.GL11Software;
+import org.thenesis.pjogles.GLBackend;
+import org.thenesis.pjogles.GLSoftwareContext;
+
+/**
+ * Exercises each specialized span loop of the fixed-point path and prints
+ * the pixels per second of the specialized loop, of the generic
+ * fixed-point path and of the floating-point path for the same state.
+ * Exits with status 1 if a state isn't drawn by its specialized loop or if
+ * the specialized and generic images differ.
+ */
+public class SpanFunctionsBenchmark {
+
+	private static final int WIDTH = 256;
+	private static final int HEIGHT = 256;
+
+	/**
+	 * Full viewport quads drawn per frame.
+	 */
+	private static final int LAYERS = 4;
+
+	private static final int FRAMES = 100;
+
+	/**
+	 * Timed runs of each path, the fastest one is kept. The paths are
+	 * timed in turn within each run, so that a slowdown of the VM doesn't
+	 * favor one of them.
+	 */
+	private static final int RUNS = 5;
+
+	/**
+	 * Largest difference allowed on a color component between the
+	 * specialized and the generic loops.
+	 */
+	private static final int TOLERANCE = 1;
+
+	private static final String[] STATES = { "flat", "flat + depth", "smooth", "smooth + depth", "texture replace",
+			"texture replace + depth", "texture modulate", "texture modulate + depth", "blend", "blend + depth" };
+
+	private static final int FLOAT = 0;
+	private static final int GENERIC = 1;
+	private static final int SPECIALIZED = 2;
+
+	private final int[] image = new int[WIDTH * HEIGHT];
+	private final int[] texture = new int[1];
+
+	private GLSoftwareContext context;
+	private GL11Software gl;
+
+	public void init() {
+		context = new GLSoftwareContext(null, null);
+		gl = new GL11Software(context);
+
+		gl.glXMakeCurrent(context, new GLBackend() {
+
+			public void updatePixels(int x, int y, int width, int height, int[] pixels, int offset, int scanlength) {
+				for (int j = 0; j < height; j++)
+					System.arraycopy(pixels, offset + j * scanlength, image, j * WIDTH, width);
+			}
+
+			public int getHeight() {
+				return HEIGHT;
+			}
+
+			public int getWidth() {
+				return WIDTH;
+			}
+
+			public int getX() {
+				return 0;
+			}
+
+			public int getY() {
+				return 0;
+			}
+
+			public int[] getColorBuffer(int size) {
+				return new int[size];
+			}
+		});
+
+		final byte[] data = new byte[32 * 32 * 4];
+
+		for (int i = 0; i < data.length; i += 4) {
+			final int x = (i >> 2) & 31;
+			final int y = (i >> 2) >> 5;
+
+			data[i] = (byte) (x * 8);
+			data[i + 1] = (byte) (y * 8);
+			data[i + 2] = (byte) ((x ^ y) * 8);
+			data[i + 3] = (byte) 200;
+		}
+
+		gl.glGenTextures(1, texture);
+		gl.glBindTexture(GL11.GL_TEXTURE_2D, texture[0]);
+		gl.glTexImage2D(GL11.GL_TEXTURE_2D, 0, 4, 32, 32, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, data);
+		gl.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+		gl.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+		gl.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+		gl.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+	}
+
+	private void setState(int state) {
+		gl.glViewport(0, 0, WIDTH, HEIGHT);
+
+		gl.glMatrixMode(GL11.GL_PROJECTION);
+		gl.glLoadIdentity();
+		gl.glOrtho(-1, 1, -1, 1, -1, 1);
+		gl.glMatrixMode(GL11.GL_MODELVIEW);
+		gl.glLoadIdentity();
+
+		gl.glShadeModel((state == 0 || state == 1) ? GL11.GL_FLAT : GL11.GL_SMOOTH);
+
+		if ((state & 1) != 0) {
+			gl.glEnable(GL11.GL_DEPTH_TEST);
+			gl.glDepthFunc(GL11.GL_LEQUAL);
+		} else
+			gl.glDisable(GL11.GL_DEPTH_TEST);
+
+		if (state == 4 || state == 5 || state == 6 || state == 7) {
+			gl.glEnable(GL11.GL_TEXTURE_2D);
+			gl.glTexEnvi(GL11.GL_TEXTURE_ENV, GL11.GL_TEXTURE_ENV_MODE, state < 6 ? GL11.GL_REPLACE
+					: GL11.GL_MODULATE);
+		} else
+			gl.glDisable(GL11.GL_TEXTURE_2D);
+
+		if (state == 8 || state == 9) {
+			gl.glEnable(GL11.GL_BLEND);
+			gl.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+		} else
+			gl.glDisable(GL11.GL_BLEND);
+	}
+
+	/**
+	 * Draws LAYERS full viewport quads, alternately in front of and behind
+	 * the previous ones.
+	 */
+	private void drawFrame() {
+		gl.glClearColor(0.2f, 0.2f, 0.2f, 1.0f);
+		gl.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
+
+		gl.glBegin(GL11.GL_TRIANGLES);
+
+		for (int i = 0; i < LAYERS; i++) {
+			final float z = ((i & 1) == 0) ? 0.5f - i * 0.1f : 0.9f;
+			final float c = (float) (i + 1) / LAYERS;
+
+			gl.glColor4f(c, 0.3f, 1.0f - c, 0.5f);
+			gl.glTexCoord2f(0.0f, 0.0f);
+			gl.glVertex3f(-1.0f, -1.0f, z);
+			gl.glColor4f(0.3f, c, 0.6f, 0.75f);
+			gl.glTexCoord2f(4.0f, 0.0f);
+			gl.glVertex3f(1.0f, -1.0f, -z);
+			gl.glColor4f(1.0f, 1.0f - c, c, 0.25f);
+			gl.glTexCoord2f(4.0f, 4.0f);
+			gl.glVertex3f(1.0f, 1.0f, z);
+
+			gl.glColor4f(c, 0.3f, 1.0f - c, 0.5f);
+			gl.glTexCoord2f(0.0f, 0.0f);
+			gl.glVertex3f(-1.0f, -1.0f, z);
+			gl.glColor4f(1.0f, 1.0f - c, c, 0.25f);
+			gl.glTexCoord2f(4.0f, 4.0f);
+			gl.glVertex3f(1.0f, 1.0f, z);
+			gl.glColor4f(0.8f, 0.8f, c, 1.0f);
+			gl.glTexCoord2f(0.0f, 4.0f);
+			gl.glVertex3f(-1.0f, 1.0f, -z);
+		}
+
+		gl.glEnd();
+		gl.glFinish();
+	}
+
+	private void setPath(int path) {
+		context.fixedPointRasterization = path != FLOAT;
+		context.specializedSpanFunctions = path == SPECIALIZED;
+	}
+
+	private int[] render(int state, int path) {
+		setPath(path);
+		setState(state);
+		drawFrame();
+		gl.glXSwapBuffers();
+
+		final int[] result = new int[image.length];
+		System.arraycopy(image, 0, result, 0, image.length);
+		return result;
+	}
+
+	/**
+	 * Returns the time taken to draw FRAMES frames, in milliseconds.
+	 */
+	private long time(int state, int path) {
+		setPath(path);
+		setState(state);
+
+		final long start = System.currentTimeMillis();
+
+		for (int i = 0; i < FRAMES; i++)
+			drawFrame();
+
+		return System.currentTimeMillis() - start;
+	}
+
+	private static float toPixelsPerSecond(long time) {
+		return (float) FRAMES * LAYERS * WIDTH * HEIGHT * 1000 / Math.max(time, 1);
+	}
+
+	private static int maxDifference(int[] a, int[] b) {
+		int max = 0;
+
+		for (int i = 0; i < a.length; i++) {
+			for (int shift = 0; shift < 32; shift += 8) {
+				final int d = Math.abs(((a[i] >> shift) & 0xFF) - ((b[i] >> shift) & 0xFF));
+
+				if (d > max)
+					max = d;
+			}
+		}
+
+		return max;
+	}
+
+	private static String toMegaPixels(float pixels) {
+		return ((int) (pixels / 10000) / 100.0f) + " Mpixels/s";
+	}
+
+	public boolean run() {
+		boolean passed = true;
+
+		for (int state = 0; state < STATES.length; state++) {
+			final int[] genericImage = render(state, GENERIC);
+
+			context.benchmark.specializedSpans = 0;
+
+			final int[] specializedImage = render(state, SPECIALIZED);
+			final boolean specialized = context.benchmark.specializedSpans > 0;
+			final int difference = maxDifference(genericImage, specializedImage);
+
+			// warm up, then time the three paths in turn
+			final long[] best = new long[SPECIALIZED + 1];
+
+			for (int path = FLOAT; path <= SPECIALIZED; path++) {
+				time(state, path);
+				best[path] = Long.MAX_VALUE;
+			}
+
+			for (int run = 0; run < RUNS; run++) {
+				for (int path = FLOAT; path <= SPECIALIZED; path++)
+					best[path] = Math.min(best[path], time(state, path));
+			}
+
+			final float floatPixels = toPixelsPerSecond(best[FLOAT]);
+			final float genericPixels = toPixelsPerSecond(best[GENERIC]);
+			final float specializedPixels = toPixelsPerSecond(best[SPECIALIZED]);
+
+			final boolean ok = specialized && difference <= TOLERANCE;
+			passed &= ok;
+
+			System.out.println((ok ? "PASS " : "FAIL ") + STATES[state] + ": specialized "
+					+ toMegaPixels(specializedPixels) + ", generic fixed-point " + toMegaPixels(genericPixels)
+					+ ", floating-point " + toMegaPixels(floatPixels)
+					+ (specialized ? "" : " (not specialized)") + " (max difference " + difference + ")");
+		}
+
+		return passed;
+	}
+
+	public static void main(String[] args) {
+		final SpanFunctionsBenchmark benchmark = new SpanFunctionsBenchmark();
+		benchmark.init();
+
+		if (!benchmark.run())
+			System.exit(1);
+	}
+}
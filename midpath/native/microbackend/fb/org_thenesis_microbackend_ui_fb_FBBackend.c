@@ -607,6 +607,101 @@ JNIEXPORT void JNICALL Java_org_thenesis_microbackend_ui_fb_FBBackend_drawARGB(J
 
 }
 
+/*
+ * Returns true if the framebuffer pixels are 16 bits RGB565
+ */
+static int isFramebufferRGB565() {
+	return (fb_var_infos.bits_per_pixel == 16)
+		&& (fb_var_infos.red.offset == 11) && (fb_var_infos.red.length == 5)
+		&& (fb_var_infos.green.offset == 5) && (fb_var_infos.green.length == 6)
+		&& (fb_var_infos.blue.offset == 0) && (fb_var_infos.blue.length == 5);
+}
+
+JNIEXPORT jboolean JNICALL Java_org_thenesis_microbackend_ui_fb_FBBackend_isRGB565(JNIEnv * env, jobject obj) {
+	return isFramebufferRGB565() ? JNI_TRUE : JNI_FALSE;
+}
+
+/*
+ * Draw RGB565 pixels. Rows are copied as is when the framebuffer is RGB565,
+ * otherwise each pixel is converted to the framebuffer format.
+ */
+JNIEXPORT void JNICALL Java_org_thenesis_microbackend_ui_fb_FBBackend_drawRGB565(JNIEnv * env, jobject obj, jshortArray shortBuffer, jint offset, jint scanlength, jint x, jint y, jint width, jint height) {
+
+	jshort *jarr = (*env)->GetShortArrayElements(env, shortBuffer, 0);
+	__u16 *srcBuffer = (__u16*)jarr;
+
+	int dest_bytes_per_pixel = fb_var_infos.bits_per_pixel / 8;
+
+	/* Clipping */
+	int sx = 0, sy = 0;
+	int dx = x, dy = y;
+	int w = width, h = height;
+	if (dx < 0) {
+		sx = -dx;
+		w += dx;
+		dx = 0;
+	}
+	if (dy < 0) {
+		sy = -dy;
+		h += dy;
+		dy = 0;
+	}
+	if (dx + w > imageWidth)
+		w = imageWidth - dx;
+	if (dy + h > imageHeight)
+		h = imageHeight - dy;
+
+	if ((w > 0) && (h > 0)) {
+
+		int i, j;
+		int rgb565 = isFramebufferRGB565();
+		__u32 p, r, g, b, color;
+
+		for (j = 0; j < h; j++) {
+
+			__u16 *src = srcBuffer + offset + (sy + j) * scanlength + sx;
+			void *destBuffer = (void*) (fb_ptr + (dy + j) * fb_fix_infos.line_length + dx * dest_bytes_per_pixel);
+
+			if (rgb565) {
+				memcpy(destBuffer, src, w * 2);
+				continue;
+			}
+
+			for (i = 0; i < w; i++) {
+				p = src[i];
+				/* Expand to 8 bits per component */
+				r = (p >> 8) & 0xF8;
+				r |= r >> 5;
+				g = (p >> 3) & 0xFC;
+				g |= g >> 6;
+				b = (p << 3) & 0xF8;
+				b |= b >> 5;
+
+				color = (r >> (8 - fb_var_infos.red.length)) << fb_var_infos.red.offset;
+				color |= (g >> (8 - fb_var_infos.green.length)) << fb_var_infos.green.offset;
+				color |= (b >> (8 - fb_var_infos.blue.length)) << fb_var_infos.blue.offset;
+				color |= (0xFF >> (8 - fb_var_infos.transp.length)) << fb_var_infos.transp.offset;
+
+				switch (fb_var_infos.bits_per_pixel) {
+				case 16 :
+					((__u16*)destBuffer)[i] = (__u16)color;
+					break ;
+				case 32 :
+					((__u32*)destBuffer)[i] = color;
+					break ;
+				}
+			}
+		}
+	}
+
+	/* Release the array without copying it back */
+	(*env)->ReleaseShortArrayElements(env, shortBuffer, jarr, JNI_ABORT);
+
+	/* Sync memory and framebuffer */
+	msync(fb_ptr, fb_fix_infos.smem_len, MS_SYNC | MS_INVALIDATE);
+
+}
+
 /*
  * Clean context
  */ 
@@ -46,6 +46,20 @@ extern JNIEXPORT jboolean JNICALL Java_org_thenesis_microbackend_ui_fb_FBBackend
  */
 extern JNIEXPORT void JNICALL Java_org_thenesis_microbackend_ui_fb_FBBackend_drawARGB(JNIEnv * env, jobject obj, jintArray intBuffer, jint offset, jint scanlength, jint x, jint y, jint width, jint height);
 
+/*
+ * Class:     org_thenesis_microbackend_ui_fb_FBBackend
+ * Method:    drawRGB565
+ * Signature: ([SIIIIII)V
+ */
+extern JNIEXPORT void JNICALL Java_org_thenesis_microbackend_ui_fb_FBBackend_drawRGB565(JNIEnv * env, jobject obj, jshortArray shortBuffer, jint offset, jint scanlength, jint x, jint y, jint width, jint height);
+
+/*
+ * Class:     org_thenesis_microbackend_ui_fb_FBBackend
+ * Method:    isRGB565
+ * Signature: ()Z
+ */
+extern JNIEXPORT jboolean JNICALL Java_org_thenesis_microbackend_ui_fb_FBBackend_isRGB565(JNIEnv * env, jobject obj);
+
 /*
  * Class:     org_thenesis_microbackend_ui_fb_FBBackend
  * Method:    readKeyCode
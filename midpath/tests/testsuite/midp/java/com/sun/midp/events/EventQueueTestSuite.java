@@ -0,0 +1,220 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package com.sun.midp.events;
+
+import java.util.Vector;
+
+import org.thenesis.midpath.test.suite.AbstractTestSuite;
+
+import com.sun.midp.lcdui.EventConstants;
+
+/**
+ * Checks the native event pool, the merging of pen drags and the events
+ * dropped when the queue is full. This suite lives in the events package
+ * so that it can create private queues and look at the queued events
+ * without the dispatch thread.
+ * <p>
+ * Usage: EventQueueTestSuite
+ */
+public class EventQueueTestSuite extends AbstractTestSuite {
+
+	public static void main(String[] args) {
+
+		EventQueueTestSuite testSuite = new EventQueueTestSuite("EventQueueTest");
+		testSuite.testRecycle();
+		testSuite.testCoalesce();
+		testSuite.testDrop();
+
+		// The global event queue thread keeps the VM alive
+		System.exit(0);
+	}
+
+	public EventQueueTestSuite(String className) {
+		super(className);
+	}
+
+	/**
+	 * A listener keeping a copy of the processed events, since pooled
+	 * events are cleared once processed.
+	 */
+	private static class RecordingListener implements EventListener {
+		Vector processed = new Vector();
+
+		public boolean preprocess(Event event, Event waitingEvent) {
+			return true;
+		}
+
+		public void process(Event event) {
+			processed.addElement(copy((NativeEvent) event));
+		}
+	}
+
+	private static NativeEvent copy(NativeEvent event) {
+		NativeEvent copy = new NativeEvent(event.type);
+		copy.intParam1 = event.intParam1;
+		copy.intParam2 = event.intParam2;
+		copy.intParam3 = event.intParam3;
+		copy.intParam4 = event.intParam4;
+		return copy;
+	}
+
+	private static EventQueue createQueue(int maxEvents) {
+		EventQueue queue = new EventQueue();
+		queue.maxEvents = maxEvents;
+		queue.registerEventListener(EventTypes.KEY_EVENT, new RecordingListener());
+		queue.registerEventListener(EventTypes.PEN_EVENT, new RecordingListener());
+		return queue;
+	}
+
+	private static NativeEvent post(EventQueue queue, int type, int action, int x, int y, int display) {
+		NativeEvent event = queue.getNativeEvent(type);
+		event.intParam1 = action;
+		event.intParam2 = x;
+		event.intParam3 = y;
+		event.intParam4 = display;
+		queue.post(event);
+		return event;
+	}
+
+	private static boolean matches(Event event, int type, int action, int x, int y, int display) {
+		NativeEvent nativeEvent = (NativeEvent) event;
+		return (nativeEvent.type == type) && (nativeEvent.intParam1 == action) && (nativeEvent.intParam2 == x)
+				&& (nativeEvent.intParam3 == y) && (nativeEvent.intParam4 == display);
+	}
+
+	private static int countQueued(EventQueue queue) {
+		int count = 0;
+		for (Event event = queue.nextEvent; event != null; event = event.next) {
+			count++;
+		}
+		return count;
+	}
+
+	public void testRecycle() {
+		EventQueue queue = createQueue(0);
+		RecordingListener listener = (RecordingListener) queue.dispatchTable[EventTypes.KEY_EVENT - 1].listener;
+		queue.start();
+
+		NativeEvent event = post(queue, EventTypes.KEY_EVENT, EventConstants.PRESSED, 42, 0, 0);
+		check(event.pooled, "event from getNativeEvent() is pooled");
+
+		// Shutting down waits until the key event has been processed
+		queue.shutdown();
+		check(listener.processed.size(), 1, "processed events");
+		if (listener.processed.size() == 1) {
+			check(matches((Event) listener.processed.elementAt(0), EventTypes.KEY_EVENT, EventConstants.PRESSED,
+					42, 0, 0), "processed event parameters");
+		}
+		check(queue.pool.eventsInPool, 1, "processed event back in the pool");
+		check(event.intParam1 == 0 && event.intParam2 == 0, "recycled event is cleared");
+		check(queue.getNativeEvent(EventTypes.PEN_EVENT) == event, "recycled event reused");
+		check(queue.pool.eventsInPool, 0, "pool empty after reuse");
+
+		// Events not from the pool are not recycled
+		queue = createQueue(0);
+		queue.start();
+		queue.post(new NativeEvent(EventTypes.KEY_EVENT));
+		queue.shutdown();
+		check(queue.pool.eventsInPool, 0, "event not from the pool not recycled");
+	}
+
+	public void testCoalesce() {
+		EventQueue queue = createQueue(0);
+
+		post(queue, EventTypes.PEN_EVENT, EventConstants.PRESSED, 1, 1, 0);
+		post(queue, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 2, 2, 0);
+		post(queue, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 3, 3, 0);
+		post(queue, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 4, 4, 0);
+		post(queue, EventTypes.PEN_EVENT, EventConstants.RELEASED, 5, 5, 0);
+		post(queue, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 6, 6, 0);
+		post(queue, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 7, 7, 1);
+		post(queue, EventTypes.KEY_EVENT, EventConstants.PRESSED, 8, 0, 0);
+		post(queue, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 9, 9, 1);
+		NativeEvent merged = post(queue, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 10, 10, 1);
+
+		check(countQueued(queue), 7, "queued events");
+		check(queue.numEvents, 7, "event count");
+		check(queue.getCoalescedCount(EventTypes.PEN_EVENT), 3, "coalesced drags");
+		check(queue.pool.eventsInPool, 1, "merged drag recycled");
+		check(merged.type, 0, "merged drag cleared");
+
+		Event event = queue.nextEvent;
+		check(matches(event, EventTypes.PEN_EVENT, EventConstants.PRESSED, 1, 1, 0), "press kept");
+		event = event.next;
+		check(matches(event, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 4, 4, 0), "drags merged to the last position");
+		event = event.next;
+		check(matches(event, EventTypes.PEN_EVENT, EventConstants.RELEASED, 5, 5, 0), "release kept");
+		event = event.next;
+		check(matches(event, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 6, 6, 0), "drag after release kept");
+		event = event.next;
+		check(matches(event, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 7, 7, 1), "drag of another display kept");
+		event = event.next;
+		check(matches(event, EventTypes.KEY_EVENT, EventConstants.PRESSED, 8, 0, 0), "key press kept");
+		check(queue.lastEvent.next == null && matches(queue.lastEvent, EventTypes.PEN_EVENT, EventConstants.DRAGGED,
+				10, 10, 1), "drag after a key event kept");
+	}
+
+	public void testDrop() {
+		EventQueue queue = createQueue(3);
+
+		post(queue, EventTypes.KEY_EVENT, EventConstants.PRESSED, 1, 0, 0);
+		post(queue, EventTypes.KEY_EVENT, EventConstants.REPEATED, 1, 0, 0);
+		post(queue, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 2, 2, 0);
+		check(queue.numEvents, 3, "queue filled up to the cap");
+
+		// Drags and repeats are dropped once the queue is full
+		post(queue, EventTypes.KEY_EVENT, EventConstants.REPEATED, 1, 0, 0);
+		post(queue, EventTypes.KEY_EVENT, EventConstants.PRESSED, 3, 0, 0);
+		post(queue, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 4, 4, 0);
+		NativeEvent dropped = post(queue, EventTypes.KEY_EVENT, EventConstants.REPEATED, 3, 0, 0);
+		check(queue.getDroppedCount(EventTypes.KEY_EVENT), 2, "dropped key repeats");
+		check(queue.getDroppedCount(EventTypes.PEN_EVENT), 1, "dropped drags");
+		check(queue.numEvents, 4, "only the key press queued");
+		check(queue.pool.eventsInPool, 1, "dropped event recycled");
+		check(dropped.type, 0, "dropped event cleared");
+
+		// Presses and releases are never dropped
+		post(queue, EventTypes.PEN_EVENT, EventConstants.PRESSED, 5, 5, 0);
+		post(queue, EventTypes.PEN_EVENT, EventConstants.DRAGGED, 6, 6, 0);
+		post(queue, EventTypes.PEN_EVENT, EventConstants.RELEASED, 7, 7, 0);
+		post(queue, EventTypes.KEY_EVENT, EventConstants.RELEASED, 3, 0, 0);
+		check(queue.getDroppedCount(EventTypes.PEN_EVENT), 2, "drag between press and release dropped");
+		check(queue.getDroppedCount(EventTypes.KEY_EVENT), 2, "no key press or release dropped");
+		check(queue.numEvents, 7, "presses and releases queued above the cap");
+		check(countQueued(queue), 7, "queued events");
+
+		Event event = queue.nextEvent;
+		event = event.next.next.next;
+		check(matches(event, EventTypes.KEY_EVENT, EventConstants.PRESSED, 3, 0, 0), "key press queued");
+		event = event.next;
+		check(matches(event, EventTypes.PEN_EVENT, EventConstants.PRESSED, 5, 5, 0), "pen press queued");
+		event = event.next;
+		check(matches(event, EventTypes.PEN_EVENT, EventConstants.RELEASED, 7, 7, 0), "pen release queued");
+		event = event.next;
+		check(matches(event, EventTypes.KEY_EVENT, EventConstants.RELEASED, 3, 0, 0), "key release queued");
+
+		// Without a cap nothing is dropped
+		queue = createQueue(0);
+		for (int i = 0; i < 100; i++) {
+			post(queue, EventTypes.KEY_EVENT, EventConstants.REPEATED, 1, 0, 0);
+		}
+		check(queue.numEvents, 100, "no cap");
+		check(queue.getDroppedCount(EventTypes.KEY_EVENT), 0, "nothing dropped without a cap");
+	}
+
+}
@@ -0,0 +1,324 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package com.sun.midp.rms;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import javax.microedition.rms.InvalidRecordIDException;
+import javax.microedition.rms.RecordStoreException;
+
+import org.thenesis.midpath.test.suite.AbstractTestSuite;
+
+import com.sun.midp.security.SecurityInitializer;
+import com.sun.midp.security.SecurityToken;
+
+/**
+ * Checks that the records of a store are found again after it has been
+ * closed and reopened with its <code>.idx</code> index file, and that a
+ * stale or dirty index file is rebuilt from the db file. The stores are
+ * created in the RMS root path of the configuration. This suite lives in
+ * the rms package so that it can open the index file of a store.
+ * <p>
+ * Usage: RecordStoreIndexTestSuite
+ */
+public class RecordStoreIndexTestSuite extends AbstractTestSuite {
+
+	private static final String SUITE_ID = "rmsindextest";
+	private static final String STORE_NAME = "store";
+
+	/** Offset of the state of the index in the index file */
+	private static final int IDX_STATE = 8;
+
+	/** Offset of the first record entry in the index file */
+	private static final int IDX_ENTRIES = 40;
+
+	private SecurityToken token;
+
+	/** Expected record data by record ID */
+	private Hashtable expected = new Hashtable();
+
+	public static void main(String[] args) {
+
+		RecordStoreIndexTestSuite testSuite = new RecordStoreIndexTestSuite("RecordStoreIndexTest");
+		try {
+			testSuite.testReopen();
+			testSuite.testStaleIndex();
+			testSuite.testDirtyIndex();
+			testSuite.testDelete();
+		} catch (Exception e) {
+			e.printStackTrace();
+			testSuite.check(false, "unexpected exception: " + e);
+		}
+
+	}
+
+	public RecordStoreIndexTestSuite(String className) {
+		super(className);
+		token = SecurityInitializer.init();
+	}
+
+	private static byte[] createData(int seed, int size) {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++) {
+			data[i] = (byte) (seed * 31 + i * 7);
+		}
+		return data;
+	}
+
+	private RecordStoreImpl open(boolean create) throws RecordStoreException {
+		return RecordStoreImpl.openRecordStore(token, SUITE_ID, STORE_NAME, create);
+	}
+
+	private void createStore() throws RecordStoreException {
+		if (RecordStoreFile.exists(SUITE_ID, STORE_NAME, AbstractRecordStoreFile.DB_EXTENSION)) {
+			RecordStoreImpl.deleteRecordStore(token, SUITE_ID, STORE_NAME);
+		}
+		expected.clear();
+	}
+
+	private int add(RecordStoreImpl store, int size) throws RecordStoreException {
+		byte[] data = createData(store.getNextRecordID(), size);
+		int recordId = store.addRecord(data, 0, size);
+		expected.put(new Integer(recordId), data);
+		return recordId;
+	}
+
+	private void set(RecordStoreImpl store, int recordId, int size) throws RecordStoreException {
+		byte[] data = createData(recordId + size, size);
+		store.setRecord(recordId, data, 0, size);
+		expected.put(new Integer(recordId), data);
+	}
+
+	private void delete(RecordStoreImpl store, int recordId) throws RecordStoreException {
+		store.deleteRecord(recordId);
+		expected.remove(new Integer(recordId));
+	}
+
+	/**
+	 * Fills a store with records of various sizes, then deletes and
+	 * resizes some of them, so that it has free blocks and moved records.
+	 */
+	private int fill(RecordStoreImpl store, int count) throws RecordStoreException {
+		int firstId = store.getNextRecordID();
+		for (int i = 0; i < count; i++) {
+			add(store, (i * 37) % 200);
+		}
+		for (int i = 0; i < count; i += 3) {
+			delete(store, firstId + i);
+		}
+		for (int i = 1; i < count; i += 3) {
+			set(store, firstId + i, (i % 2 == 0) ? 300 : 5);
+		}
+		return firstId;
+	}
+
+	private void verify(RecordStoreImpl store, String name) throws RecordStoreException {
+		check(store.getNumRecords(), expected.size(), name + ": number of records");
+
+		// The record IDs are enumerated in ascending order
+		int[] recordIds = store.getRecordIDs();
+		boolean ok = (recordIds.length == expected.size());
+		for (int i = 0; ok && (i < recordIds.length); i++) {
+			ok = expected.containsKey(new Integer(recordIds[i])) && ((i == 0) || (recordIds[i] > recordIds[i - 1]));
+		}
+		check(ok, name + ": record IDs");
+
+		ok = true;
+		for (Enumeration e = expected.keys(); e.hasMoreElements();) {
+			Integer recordId = (Integer) e.nextElement();
+			byte[] data = (byte[]) expected.get(recordId);
+			byte[] record = store.getRecord(recordId.intValue());
+			ok &= (data.length == 0) ? (record == null) : equals(data, record);
+			ok &= (store.getRecordSize(recordId.intValue()) == data.length);
+		}
+		check(ok, name + ": record data");
+
+		// Deleted records and records never added are not found
+		ok = true;
+		for (int recordId = 1; recordId < store.getNextRecordID() + 2; recordId++) {
+			if (!expected.containsKey(new Integer(recordId))) {
+				try {
+					store.getRecord(recordId);
+					ok = false;
+				} catch (InvalidRecordIDException e) {
+					// expected
+				}
+			}
+		}
+		check(ok, name + ": missing records");
+	}
+
+	private static boolean equals(byte[] a, byte[] b) {
+		if ((b == null) || (a.length != b.length)) {
+			return false;
+		}
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte[] readIndexFile() throws IOException {
+		RecordStoreFile idxFile = new RecordStoreFile(SUITE_ID, STORE_NAME, AbstractRecordStoreFile.IDX_EXTENSION);
+		try {
+			byte[] buffer = new byte[16384];
+			int length = 0;
+			int count;
+			while ((length < buffer.length) && ((count = idxFile.read(buffer, length, buffer.length - length)) > 0)) {
+				length += count;
+			}
+			byte[] content = new byte[length];
+			System.arraycopy(buffer, 0, content, 0, length);
+			return content;
+		} finally {
+			idxFile.close();
+		}
+	}
+
+	private static void writeIndexFile(byte[] content) throws IOException {
+		RecordStoreFile idxFile = new RecordStoreFile(SUITE_ID, STORE_NAME, AbstractRecordStoreFile.IDX_EXTENSION);
+		try {
+			idxFile.seek(0);
+			idxFile.write(content);
+			idxFile.truncate(content.length);
+			idxFile.commitWrite();
+		} finally {
+			idxFile.close();
+		}
+	}
+
+	private void checkCleanIndex(RecordStoreImpl store, String name) throws IOException {
+		byte[] content = readIndexFile();
+		check(content.length >= IDX_ENTRIES, name + ": index file written");
+		if (content.length >= IDX_ENTRIES) {
+			check(RecordStoreUtil.getInt(content, IDX_STATE), 0, name + ": index file clean");
+			check(content.length, IDX_ENTRIES + 8 * (store.getNumRecords() + RecordStoreUtil.getInt(content, 36)),
+					name + ": index file size");
+		}
+	}
+
+	public void testReopen() throws RecordStoreException, IOException {
+		createStore();
+
+		RecordStoreImpl store = open(true);
+		verify(store, "new store");
+		int firstId = fill(store, 40);
+		verify(store, "filled store");
+		store.closeRecordStore();
+
+		store = open(false);
+		checkCleanIndex(store, "reopened store");
+		verify(store, "reopened store");
+
+		// Free blocks are reused and record IDs are not
+		set(store, firstId + 1, 0);
+		delete(store, firstId + 2);
+		int recordId = add(store, 20);
+		check(recordId, firstId + 40, "new record ID after reopening");
+		verify(store, "changed reopened store");
+		store.closeRecordStore();
+
+		store = open(false);
+		verify(store, "store reopened twice");
+		store.closeRecordStore();
+	}
+
+	public void testStaleIndex() throws RecordStoreException, IOException {
+		createStore();
+
+		RecordStoreImpl store = open(true);
+		int firstId = fill(store, 30);
+		store.closeRecordStore();
+		byte[] oldIndex = readIndexFile();
+
+		store = open(false);
+		delete(store, firstId + 4);
+		set(store, firstId + 5, 250);
+		add(store, 60);
+		store.closeRecordStore();
+
+		// The index of the previous session no longer matches the db
+		writeIndexFile(oldIndex);
+		store = open(false);
+		verify(store, "stale index");
+		checkCleanIndex(store, "stale index");
+		store.closeRecordStore();
+
+		// The rebuilt index is used the next time
+		store = open(false);
+		verify(store, "rebuilt stale index");
+		store.closeRecordStore();
+	}
+
+	public void testDirtyIndex() throws RecordStoreException, IOException {
+		createStore();
+
+		RecordStoreImpl store = open(true);
+		fill(store, 30);
+		store.closeRecordStore();
+
+		// A dirty index whose entries would point to the wrong blocks
+		byte[] index = readIndexFile();
+		RecordStoreUtil.putInt(1, index, IDX_STATE);
+		for (int pos = IDX_ENTRIES + 4; pos + 8 < index.length; pos += 16) {
+			int offset = RecordStoreUtil.getInt(index, pos);
+			RecordStoreUtil.putInt(RecordStoreUtil.getInt(index, pos + 8), index, pos);
+			RecordStoreUtil.putInt(offset, index, pos + 8);
+		}
+		writeIndexFile(index);
+
+		store = open(false);
+		verify(store, "dirty index");
+		checkCleanIndex(store, "dirty index");
+		add(store, 10);
+		verify(store, "store with a rebuilt dirty index");
+		store.closeRecordStore();
+
+		// A truncated index file
+		index = readIndexFile();
+		byte[] truncated = new byte[index.length - 3];
+		System.arraycopy(index, 0, truncated, 0, truncated.length);
+		writeIndexFile(truncated);
+
+		store = open(false);
+		verify(store, "truncated index");
+		checkCleanIndex(store, "truncated index");
+		store.closeRecordStore();
+	}
+
+	public void testDelete() throws RecordStoreException {
+		createStore();
+
+		RecordStoreImpl store = open(true);
+		fill(store, 10);
+		store.closeRecordStore();
+		check(RecordStoreFile.exists(SUITE_ID, STORE_NAME, AbstractRecordStoreFile.IDX_EXTENSION), "index file created");
+
+		RecordStoreImpl.deleteRecordStore(token, SUITE_ID, STORE_NAME);
+		check(!RecordStoreFile.exists(SUITE_ID, STORE_NAME, AbstractRecordStoreFile.DB_EXTENSION), "db file deleted");
+		check(!RecordStoreFile.exists(SUITE_ID, STORE_NAME, AbstractRecordStoreFile.IDX_EXTENSION),
+				"index file deleted");
+		String[] stores = RecordStoreImpl.listRecordStores(token, SUITE_ID);
+		check((stores == null) || (stores.length == 0), "no store left");
+	}
+
+}
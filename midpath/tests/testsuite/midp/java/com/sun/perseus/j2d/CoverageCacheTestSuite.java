@@ -0,0 +1,302 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package com.sun.perseus.j2d;
+
+import com.sun.pisces.PiscesCache;
+import com.sun.pisces.PiscesRenderer;
+import com.sun.pisces.RendererBase;
+
+import org.thenesis.midpath.test.suite.AbstractTestSuite;
+
+/**
+ * Checks that the primitives blitted from a CoverageCache or a PiscesCache
+ * are pixel-identical to the same primitives rendered without a cache:
+ * cache misses, hits and invalidations, clipped blits and masks spanning
+ * several strips with empty rows in between. This suite lives in the j2d
+ * package so that it can drive the package-private parts of the cache.
+ * <p>
+ * Usage: CoverageCacheTestSuite
+ */
+public class CoverageCacheTestSuite extends AbstractTestSuite {
+
+	private static final int WIDTH = 64;
+	private static final int HEIGHT = 96;
+
+	private static final int BACKGROUND = 0xFF204060;
+
+	public static void main(String[] args) {
+
+		CoverageCacheTestSuite testSuite = new CoverageCacheTestSuite("CoverageCacheTest");
+		testSuite.testRenderFromCache();
+		testSuite.testMultiStrip();
+		testSuite.testHitAndMiss();
+		testSuite.testInvalidate();
+		testSuite.testStroke();
+		testSuite.testClip();
+
+	}
+
+	public CoverageCacheTestSuite(String className) {
+		super(className);
+	}
+
+	private static int[] createPixels() {
+		int[] pixels = new int[WIDTH * HEIGHT];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = BACKGROUND;
+		}
+		return pixels;
+	}
+
+	private static boolean equals(int[] a, int[] b) {
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A curved shape covering a few strips.
+	 */
+	private static Path createShape() {
+		Path path = new Path();
+		path.moveTo(8.5f, 6.25f);
+		path.curveTo(40.0f, 2.0f, 70.0f, 30.0f, 50.3f, 44.7f);
+		path.lineTo(20.1f, 38.9f);
+		path.quadTo(2.0f, 30.0f, 8.5f, 6.25f);
+		path.close();
+		return path;
+	}
+
+	/**
+	 * Two shapes far apart, so that the mask holds empty rows, and a thin
+	 * slanted one crossing the strips.
+	 */
+	private static Path createTallShape() {
+		Path path = new Path();
+		path.moveTo(4.3f, 2.6f);
+		path.lineTo(30.7f, 5.1f);
+		path.lineTo(12.2f, 21.9f);
+		path.close();
+		path.moveTo(10.4f, 61.3f);
+		path.curveTo(60.0f, 58.0f, 62.0f, 90.0f, 30.5f, 93.2f);
+		path.lineTo(5.5f, 80.8f);
+		path.close();
+		path.moveTo(50.2f, 1.5f);
+		path.lineTo(51.9f, 1.5f);
+		path.lineTo(44.1f, 94.7f);
+		path.close();
+		return path;
+	}
+
+	private static PiscesRenderer createRenderer(int[] pixels) {
+		return new PiscesRenderer(pixels, WIDTH, HEIGHT, 0, WIDTH, 1, RendererBase.TYPE_INT_ARGB);
+	}
+
+	private static RenderGraphics createGraphics(int[] pixels) {
+		RenderGraphics rg = new RenderGraphics(createRenderer(pixels), WIDTH, HEIGHT);
+		rg.setFill(new RGB(200, 30, 90));
+		rg.setStroke(new RGB(250, 240, 10));
+		rg.setStrokeWidth(3.5f);
+		return rg;
+	}
+
+	private static void setPath(PiscesRenderer pr, Path path) {
+		pr.setPathData(path.getData(), path.getCommands(), path.getNumberOfSegments());
+	}
+
+	/**
+	 * Renders a path with Pisces, with or without going through a cache.
+	 */
+	private static int[] render(Path path, boolean cached, int[] clip) {
+		int[] pixels = createPixels();
+		PiscesRenderer pr = createRenderer(pixels);
+		pr.setColor(200, 30, 90, 180);
+		pr.setFill();
+		if (clip != null) {
+			pr.setClip(clip[0], clip[1], clip[2], clip[3]);
+		}
+		if (cached) {
+			PiscesCache cache = PiscesCache.createInstance();
+			pr.beginRenderingToCache(RendererBase.WIND_NON_ZERO, cache);
+			setPath(pr, path);
+			pr.endRendering();
+			pr.renderFromCache(cache);
+		} else {
+			pr.beginRendering(RendererBase.WIND_NON_ZERO);
+			setPath(pr, path);
+			pr.endRendering();
+		}
+		return pixels;
+	}
+
+	/**
+	 * Keeps the pixels of an image inside a clip rectangle and the
+	 * background outside.
+	 */
+	private static int[] mask(int[] pixels, int[] clip) {
+		int[] masked = createPixels();
+		for (int y = clip[1]; y < clip[1] + clip[3]; y++) {
+			for (int x = clip[0]; x < clip[0] + clip[2]; x++) {
+				masked[y * WIDTH + x] = pixels[y * WIDTH + x];
+			}
+		}
+		return masked;
+	}
+
+	/**
+	 * Paints a path as a node would, with or without a coverage cache.
+	 */
+	private static int[] paint(Path path, Transform tx, CoverageCache cache, boolean isFill) {
+		int[] pixels = createPixels();
+		RenderGraphics rg = createGraphics(pixels);
+		rg.setTransform(tx);
+		rg.setCoverageCache(cache);
+		if (isFill) {
+			rg.fill(path);
+		} else {
+			rg.draw(path);
+		}
+		rg.setCoverageCache(null);
+		return pixels;
+	}
+
+	private static Transform identity() {
+		return new Transform(1, 0, 0, 1, 0, 0);
+	}
+
+	public void testRenderFromCache() {
+		Path path = createShape();
+		check(equals(render(path, true, null), render(path, false, null)), "renderFromCache");
+
+		path = new Path();
+		check(equals(render(path, true, null), createPixels()), "renderFromCache of an empty path");
+	}
+
+	public void testMultiStrip() {
+		Path path = createTallShape();
+		check(equals(render(path, true, null), render(path, false, null)), "renderFromCache over several strips");
+
+		// A mask is captured without the clip and blitted with it
+		int[] clip = { 7, 15, 40, 60 };
+		check(equals(render(path, true, clip), mask(render(path, false, null), clip)),
+				"renderFromCache clipped over several strips");
+
+		// The whole mask is outside the clip
+		int[] outside = { 0, 40, 8, 10 };
+		check(equals(render(path, true, outside), mask(render(path, false, null), outside)),
+				"renderFromCache clipped out");
+	}
+
+	public void testHitAndMiss() {
+		Path path = createTallShape();
+		Transform tx = identity();
+		int[] expected = paint(path, tx, null, true);
+		CoverageCache cache = new CoverageCache();
+
+		// First paint: rendered as usual
+		check(equals(paint(path, tx, cache, true), expected), "first paint");
+		check(CoverageCache.getSize(), 0, "first paint keeps no mask");
+
+		// Second paint: the mask is computed and blitted
+		check(equals(paint(path, tx, cache, true), expected), "second paint");
+		int size = CoverageCache.getSize();
+		check(size > 0, "second paint keeps a mask");
+
+		// Third paint: the mask is reused
+		check(equals(paint(path, tx, cache, true), expected), "cache hit");
+		check(CoverageCache.getSize(), size, "cache hit keeps the mask");
+
+		// A new transform drops the mask
+		tx = new Transform(1, 0, 0, 1, 1.5f, -2.0f);
+		check(equals(paint(path, tx, cache, true), paint(path, tx, null, true)), "cache miss on a new transform");
+		check(CoverageCache.getSize(), 0, "cache miss drops the mask");
+
+		cache.clear();
+	}
+
+	public void testInvalidate() {
+		Path path = createShape();
+		Transform tx = identity();
+		int[] expected = paint(path, tx, null, true);
+		CoverageCache cache = new CoverageCache();
+		paint(path, tx, cache, true);
+		paint(path, tx, cache, true);
+
+		// The path is changed in place: the mask is only checked
+		// against the path content after an invalidation
+		path.getData()[0] += 10.0f;
+		check(equals(paint(path, tx, cache, true), expected), "cache hit without invalidation");
+
+		cache.invalidate();
+		int[] modified = paint(path, tx, null, true);
+		check(!equals(modified, expected), "path modified");
+		check(equals(paint(path, tx, cache, true), modified), "cache miss after invalidation");
+		check(CoverageCache.getSize(), 0, "invalidation drops the mask of a modified path");
+		paint(path, tx, cache, true);
+		check(equals(paint(path, tx, cache, true), modified), "cache hit after invalidation");
+
+		cache.clear();
+		check(CoverageCache.getSize(), 0, "clear");
+	}
+
+	public void testStroke() {
+		Path path = createTallShape();
+		Transform tx = new Transform(0.9f, 0.1f, -0.1f, 0.9f, 3.0f, 1.0f);
+		int[] expected = paint(path, tx, null, false);
+		CoverageCache cache = new CoverageCache();
+		for (int i = 0; i < 3; i++) {
+			check(equals(paint(path, tx, cache, false), expected), "stroke paint " + i);
+		}
+
+		// A fill of the same path doesn't reuse the stroke mask
+		check(equals(paint(path, tx, cache, true), paint(path, tx, null, true)), "fill after stroke");
+
+		cache.clear();
+	}
+
+	public void testClip() {
+		Path path = createTallShape();
+		Transform tx = identity();
+		Tile tile = new Tile();
+		tile.x = 9;
+		tile.y = 12;
+		tile.maxX = 47;
+		tile.maxY = 70;
+		int[] clip = { tile.x, tile.y, tile.maxX - tile.x + 1, tile.maxY - tile.y + 1 };
+		int[] expected = mask(paint(path, tx, null, true), clip);
+		CoverageCache cache = new CoverageCache();
+		for (int i = 0; i < 3; i++) {
+			int[] pixels = createPixels();
+			RenderGraphics rg = createGraphics(pixels);
+			rg.setTransform(tx);
+			rg.setRenderingTile(tile);
+			rg.setCoverageCache(cache);
+			rg.fill(path);
+			rg.setCoverageCache(null);
+			if (i > 0) {
+				check(equals(pixels, expected), "clipped paint " + i);
+			}
+		}
+
+		cache.clear();
+	}
+
+}
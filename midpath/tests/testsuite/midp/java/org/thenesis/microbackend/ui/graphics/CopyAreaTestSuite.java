@@ -0,0 +1,189 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.microbackend.ui.graphics;
+
+import org.thenesis.midpath.test.suite.AbstractTestSuite;
+
+/**
+ * Checks the in-place area copies of Compositor.move and
+ * VirtualGraphics.copyArea against a copy made through a temporary buffer,
+ * for overlapping areas and for destinations partly or fully outside the
+ * surface or the clip. This suite lives in the graphics package so that it
+ * can size a VirtualGraphics without opening a backend.
+ * <p>
+ * Usage: CopyAreaTestSuite
+ */
+public class CopyAreaTestSuite extends AbstractTestSuite {
+
+	private static final int WIDTH = 16;
+	private static final int HEIGHT = 12;
+
+	/* Offsets of the overlapping moves: down, up, right, left and diagonals */
+	private static final int[][] OFFSETS = { { 0, 3 }, { 0, -3 }, { 3, 0 }, { -3, 0 }, { 2, 2 }, { -2, -2 },
+			{ 2, -2 }, { -2, 2 }, { 0, 1 }, { 1, 0 } };
+
+	public static void main(String[] args) {
+
+		CopyAreaTestSuite testSuite = new CopyAreaTestSuite("CopyAreaTest");
+		testSuite.testMove();
+		testSuite.testMove16();
+		testSuite.testCopyAreaOverlap();
+		testSuite.testCopyAreaOffScreen();
+		testSuite.testCopyAreaClip();
+		testSuite.testCopyAreaInvalidSource();
+
+	}
+
+	public CopyAreaTestSuite(String className) {
+		super(className);
+	}
+
+	private static int[] createPixels() {
+		int[] data = new int[WIDTH * HEIGHT];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = 0xFF000000 | (i * 0x010203);
+		}
+		return data;
+	}
+
+	/**
+	 * Copies an area through a temporary buffer, keeping only the
+	 * destination pixels inside the clip (clip coordinates are exclusive on
+	 * the max side).
+	 */
+	private static void referenceCopy(int[] data, int x, int y, int w, int h, int dx, int dy, int xmin, int ymin,
+			int xmax, int ymax) {
+		int[] copy = new int[data.length];
+		System.arraycopy(data, 0, copy, 0, data.length);
+		for (int j = 0; j < h; j++) {
+			for (int i = 0; i < w; i++) {
+				int tx = x + i + dx, ty = y + j + dy;
+				if ((tx >= xmin) && (tx < xmax) && (ty >= ymin) && (ty < ymax)) {
+					data[ty * WIDTH + tx] = copy[(y + j) * WIDTH + x + i];
+				}
+			}
+		}
+	}
+
+	private static boolean equals(int[] a, int[] b) {
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static VirtualGraphics createGraphics(int[] data) {
+		VirtualSurface surface = new VirtualSurface();
+		surface.width = WIDTH;
+		surface.height = HEIGHT;
+		surface.data = data;
+		VirtualGraphics g = new VirtualGraphics(surface);
+		g.setDimensions(WIDTH, HEIGHT);
+		g.setClip(0, 0, WIDTH, HEIGHT);
+		return g;
+	}
+
+	public void testMove() {
+		for (int i = 0; i < OFFSETS.length; i++) {
+			int dx = OFFSETS[i][0], dy = OFFSETS[i][1];
+			int[] data = createPixels();
+			int[] expected = createPixels();
+			referenceCopy(expected, 4, 4, 6, 5, dx, dy, 0, 0, WIDTH, HEIGHT);
+			Compositor.move(data, 4 * WIDTH + 4, (4 + dy) * WIDTH + 4 + dx, WIDTH, 6, 5);
+			check(equals(data, expected), "move by (" + dx + ", " + dy + ")");
+		}
+	}
+
+	public void testMove16() {
+		for (int i = 0; i < OFFSETS.length; i++) {
+			int dx = OFFSETS[i][0], dy = OFFSETS[i][1];
+			// Each pixel holds its own index, which fits in a short here
+			int[] expected = new int[WIDTH * HEIGHT];
+			short[] data16 = new short[WIDTH * HEIGHT];
+			for (int j = 0; j < data16.length; j++) {
+				expected[j] = j;
+				data16[j] = (short) j;
+			}
+			referenceCopy(expected, 4, 4, 6, 5, dx, dy, 0, 0, WIDTH, HEIGHT);
+			Compositor.move(data16, 4 * WIDTH + 4, (4 + dy) * WIDTH + 4 + dx, WIDTH, 6, 5);
+			boolean ok = true;
+			for (int j = 0; j < data16.length; j++) {
+				ok &= (data16[j] == expected[j]);
+			}
+			check(ok, "move RGB565 by (" + dx + ", " + dy + ")");
+		}
+	}
+
+	public void testCopyAreaOverlap() {
+		for (int i = 0; i < OFFSETS.length; i++) {
+			int dx = OFFSETS[i][0], dy = OFFSETS[i][1];
+			int[] data = createPixels();
+			int[] expected = createPixels();
+			referenceCopy(expected, 3, 2, 8, 7, dx, dy, 0, 0, WIDTH, HEIGHT);
+			createGraphics(data).doCopyArea(3, 2, 8, 7, 3 + dx, 2 + dy, VirtualGraphics.TOP | VirtualGraphics.LEFT);
+			check(equals(data, expected), "copyArea by (" + dx + ", " + dy + ")");
+		}
+	}
+
+	public void testCopyAreaOffScreen() {
+		/* Destinations crossing each edge, then fully outside the surface */
+		int[][] destinations = { { -5, 1 }, { 1, -4 }, { 12, 3 }, { 2, 9 }, { -3, -3 }, { 13, 10 }, { -20, 0 },
+				{ 0, 40 } };
+		for (int i = 0; i < destinations.length; i++) {
+			int x = destinations[i][0], y = destinations[i][1];
+			int[] data = createPixels();
+			int[] expected = createPixels();
+			referenceCopy(expected, 2, 2, 9, 6, x - 2, y - 2, 0, 0, WIDTH, HEIGHT);
+			createGraphics(data).doCopyArea(2, 2, 9, 6, x, y, VirtualGraphics.TOP | VirtualGraphics.LEFT);
+			check(equals(data, expected), "copyArea to (" + x + ", " + y + ")");
+		}
+	}
+
+	public void testCopyAreaClip() {
+		int[] data = createPixels();
+		int[] expected = createPixels();
+		referenceCopy(expected, 1, 1, 10, 8, 3, 2, 5, 4, 11, 9);
+		VirtualGraphics g = createGraphics(data);
+		g.setClip(5, 4, 6, 5);
+		g.doCopyArea(1, 1, 10, 8, 4, 3, VirtualGraphics.TOP | VirtualGraphics.LEFT);
+		check(equals(data, expected), "copyArea clipped");
+
+		// The anchor moves the destination, the translation both areas
+		data = createPixels();
+		expected = createPixels();
+		referenceCopy(expected, 3, 2, 6, 4, -1, 3, 0, 0, WIDTH, HEIGHT);
+		g = createGraphics(data);
+		g.translate(1, 1);
+		g.doCopyArea(2, 1, 6, 4, 7, 8, VirtualGraphics.BOTTOM | VirtualGraphics.RIGHT);
+		check(equals(data, expected), "copyArea translated and anchored");
+	}
+
+	public void testCopyAreaInvalidSource() {
+		VirtualGraphics g = createGraphics(createPixels());
+		boolean thrown = false;
+		try {
+			g.doCopyArea(10, 0, 8, 4, 0, 0, VirtualGraphics.TOP | VirtualGraphics.LEFT);
+		} catch (IllegalArgumentException e) {
+			thrown = true;
+		}
+		check(thrown, "copyArea from outside the surface");
+	}
+
+}
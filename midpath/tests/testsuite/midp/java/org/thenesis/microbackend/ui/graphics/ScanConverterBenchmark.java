@@ -0,0 +1,104 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation. 
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details. 
+ * 
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA 
+ */
+package org.thenesis.microbackend.ui.graphics;
+
+/**
+ * Micro-benchmark of the scan converter against the ellipse span code
+ * used by fillArc. Shapes of about the same area are filled repeatedly
+ * on an off-screen surface and the time per thousand fills is printed.
+ * <p>
+ * Usage: ScanConverterBenchmark [iterations]
+ */
+public class ScanConverterBenchmark {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int RADIUS = 100;
+    private static final int SIDES = 32;
+
+    private static final String[] NAMES = { "fillArc (disc)", "fillPolygon (" + SIDES + " sides)",
+            "fillArc (quarter)", "fillTriangle (quarter)", "fillTriangle (clipped)" };
+
+    private VirtualGraphics g;
+    private int cx, cy, r;
+    private int[] xs, ys;
+
+    private ScanConverterBenchmark() {
+        VirtualSurface surface = new VirtualSurface();
+        surface.width = WIDTH;
+        surface.height = HEIGHT;
+        surface.data = new int[WIDTH * HEIGHT];
+        g = new VirtualGraphics(surface);
+        g.setDimensions(WIDTH, HEIGHT);
+        g.setClip(0, 0, WIDTH, HEIGHT);
+        g.setColor(0x00FF00);
+
+        // A regular polygon inscribed in the disc drawn by fillArc.
+        cx = WIDTH / 2;
+        cy = HEIGHT / 2;
+        r = RADIUS / 2;
+        xs = new int[SIDES];
+        ys = new int[SIDES];
+        for (int i = 0; i < SIDES; i++) {
+            double a = 2 * Math.PI * i / SIDES;
+            xs[i] = cx + (int) (Math.cos(a) * r);
+            ys[i] = cy + (int) (Math.sin(a) * r);
+        }
+    }
+
+    private long run(int test, int iterations) {
+        long start = System.currentTimeMillis();
+        switch (test) {
+        case 0:
+            for (int i = 0; i < iterations; i++)
+                g.fillArc(cx - r, cy - r, RADIUS, RADIUS, 0, 360);
+            break;
+        case 1:
+            for (int i = 0; i < iterations; i++)
+                g.fillPolygon(xs, ys, SIDES);
+            break;
+        case 2:
+            for (int i = 0; i < iterations; i++)
+                g.fillArc(cx - r, cy - r, RADIUS, RADIUS, 0, 90);
+            break;
+        case 3:
+            for (int i = 0; i < iterations; i++)
+                g.fillTriangle(cx, cy, cx + r, cy, cx, cy - r);
+            break;
+        case 4:
+            for (int i = 0; i < iterations; i++)
+                g.fillTriangle(0, 0, WIDTH * 4, HEIGHT / 2, -WIDTH, HEIGHT * 4);
+            break;
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    public static void main(String[] args) {
+        int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+        ScanConverterBenchmark benchmark = new ScanConverterBenchmark();
+
+        System.out.println("Iterations: " + iterations);
+        for (int test = 0; test < NAMES.length; test++) {
+            // The first run warms up the VM.
+            benchmark.run(test, iterations);
+            long time = benchmark.run(test, iterations);
+            System.out.println(NAMES[test] + ": " + time + " ms (" + (time * 1000000 / iterations) + " ns/fill)");
+        }
+    }
+
+}
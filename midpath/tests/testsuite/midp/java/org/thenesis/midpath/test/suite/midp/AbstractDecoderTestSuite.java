@@ -0,0 +1,166 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.midpath.test.suite.midp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Vector;
+
+import org.thenesis.midpath.io.backend.cldc.RandomAccessFile;
+import org.thenesis.midpath.sound.codec.AudioDecoder;
+import org.thenesis.midpath.sound.codec.DecoderCallback;
+import org.thenesis.midpath.test.suite.AbstractTestSuite;
+
+/**
+ * Base class of the decoder test suites: checks that the fixed point mode
+ * of a decoder produces the same samples as the floating point one (within
+ * a few units) on real files, and compares the time taken by both.
+ */
+public abstract class AbstractDecoderTestSuite extends AbstractTestSuite {
+
+	private static final int ROUNDS = 3;
+
+	/* Maximum difference allowed between two samples */
+	private static final int MAX_DIFF = 4;
+
+	/* Minimum signal to noise ratio in dB */
+	private static final int MIN_SNR = 60;
+
+	/* Content of the files (byte[]) */
+	private Vector files = new Vector();
+	private Vector names = new Vector();
+
+	public AbstractDecoderTestSuite(String className) {
+		super(className);
+	}
+
+	/**
+	 * @return a decoder in the fixed point or in the floating point mode
+	 */
+	protected abstract AudioDecoder createDecoder(boolean fixedPoint);
+
+	/**
+	 * Reads the files given on the command line, or the default file if
+	 * there are none, then runs the comparison and the benchmark.
+	 */
+	public void run(String[] args, String defaultFile) {
+		try {
+			if (args.length == 0) {
+				readFile(defaultFile);
+			}
+			for (int i = 0; i < args.length; i++) {
+				readFile(args[i]);
+			}
+			testFixedPoint();
+			benchmark();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void readFile(String name) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(name, "r");
+		byte[] data = new byte[(int) file.length()];
+		file.readFully(data);
+		file.close();
+		files.addElement(data);
+		names.addElement(name);
+	}
+
+	public void testFixedPoint() throws IOException {
+
+		checkPoint("Fixed point decoder");
+		verbose("== Decoded samples comparison ==");
+
+		for (int i = 0; i < files.size(); i++) {
+			byte[] data = (byte[]) files.elementAt(i);
+			String name = (String) names.elementAt(i);
+			byte[] expected = decode(data, false);
+			byte[] result = decode(data, true);
+			check(expected.length == result.length, name + ": length");
+
+			int length = Math.min(expected.length, result.length) & ~1;
+			int maxDiff = 0;
+			double signal = 0;
+			double noise = 0;
+			for (int j = 0; j < length; j += 2) {
+				int a = (short) ((expected[j] & 0xFF) | (expected[j + 1] << 8));
+				int b = (short) ((result[j] & 0xFF) | (result[j + 1] << 8));
+				int diff = Math.abs(a - b);
+				if (diff > maxDiff)
+					maxDiff = diff;
+				signal += (double) a * a;
+				noise += (double) diff * diff;
+			}
+			int snr = snr(signal, noise);
+			verbose(name + ": " + (length / 2) + " samples, max difference " + maxDiff + ", SNR " + snr + " dB");
+			check(maxDiff <= MAX_DIFF, name + ": max difference");
+			check(snr >= MIN_SNR, name + ": SNR");
+		}
+	}
+
+	public void benchmark() throws IOException {
+
+		verbose("== " + className + " benchmark ==");
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.currentTimeMillis();
+			int samples = 0;
+			for (int i = 0; i < files.size(); i++) {
+				samples += decode((byte[]) files.elementAt(i), false).length / 2;
+			}
+			long floatTime = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			for (int i = 0; i < files.size(); i++) {
+				decode((byte[]) files.elementAt(i), true);
+			}
+			long fixedTime = System.currentTimeMillis() - start;
+
+			verbose("Round " + round + ": " + samples + " samples, float " + floatTime + " ms, fixed point "
+					+ fixedTime + " ms");
+		}
+	}
+
+	/* Signal to noise ratio rounded down to the decibel (no Math.log in CLDC) */
+	private static int snr(double signal, double noise) {
+		if (noise == 0)
+			return Integer.MAX_VALUE;
+		int db = 0;
+		for (double ratio = signal / noise; ratio >= 1.2589254117941673; ratio /= 1.2589254117941673) {
+			db++;
+		}
+		return db;
+	}
+
+	private byte[] decode(byte[] data, boolean fixedPoint) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AudioDecoder decoder = createDecoder(fixedPoint);
+		decoder.initialize(new ByteArrayInputStream(data));
+		DecoderCallback callback = new DecoderCallback() {
+			public void write(byte[] buf, int offset, int length) {
+				out.write(buf, offset, length);
+			}
+		};
+		while (decoder.decodeStep(callback) >= 0)
+			;
+		return out.toByteArray();
+	}
+
+}
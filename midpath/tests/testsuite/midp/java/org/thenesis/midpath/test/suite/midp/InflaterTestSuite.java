@@ -0,0 +1,566 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.midpath.test.suite.midp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Vector;
+
+import org.thenesis.microbackend.zip.DataFormatException;
+import org.thenesis.microbackend.zip.FastInflater;
+import org.thenesis.microbackend.zip.Inflater;
+import org.thenesis.midpath.io.MemoryFileHandler;
+import org.thenesis.midpath.io.backend.cldc.RandomAccessFile;
+import org.thenesis.midpath.test.suite.AbstractTestSuite;
+import org.thenesis.midpath.zip.ZipFile;
+
+/**
+ * Checks FastInflater on generated streams: input fed in small chunks,
+ * output larger than its window, zlib header and checksum, and the stream
+ * ZipFile returns for large entries. Then checks that it decompresses the
+ * deflated entries of real jar files like Inflater does, and compares the
+ * time taken by both.
+ * <p>
+ * The generated streams are compressed by a small encoder using a stored
+ * block and fixed Huffman blocks, with matches up to the full 32K distance.
+ * <p>
+ * Usage: InflaterTestSuite [file.jar...]
+ */
+public class InflaterTestSuite extends AbstractTestSuite {
+
+	private static final int ROUNDS = 5;
+
+	/* Size of the generated data, larger than ZipFile's in-memory limit (256K) */
+	private static final int DATA_SIZE = 300000;
+
+	/* Input chunk sizes of the streaming tests */
+	private static final int[] CHUNKS = { 1, 7, 300, 4096 };
+
+	private static final String[] WORDS = { "alpha", "beta", "gamma", "delta", "epsilon", " ", " ", "\n", "midpath",
+			"inflater" };
+
+	/* Lengths and distances of the deflate format (RFC 1951) */
+	private static final int[] LENGTH_BASE = { 3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51,
+			59, 67, 83, 99, 115, 131, 163, 195, 227, 258 };
+	private static final int[] LENGTH_EXTRA = { 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4,
+			4, 5, 5, 5, 5, 0 };
+	private static final int[] DIST_BASE = { 1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385,
+			513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577 };
+	private static final int[] DIST_EXTRA = { 0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10,
+			10, 11, 11, 12, 12, 13, 13 };
+
+	/* Compressed data (byte[]) and uncompressed size (Integer) of the entries */
+	private Vector entries = new Vector();
+	private Vector sizes = new Vector();
+
+	/* Generated data and its raw deflate stream */
+	private byte[] data;
+	private byte[] deflated;
+
+	/* Output of the bit writer of the encoder */
+	private ByteArrayOutputStream out;
+	private int bitBuf;
+	private int bitCount;
+
+	public static void main(String[] args) {
+
+		InflaterTestSuite testSuite = new InflaterTestSuite("InflaterTest");
+		try {
+			testSuite.testStreaming();
+			testSuite.testZlib();
+			testSuite.testZipSkip();
+			if (args.length > 0) {
+				for (int i = 0; i < args.length; i++) {
+					testSuite.readJar(args[i]);
+				}
+				testSuite.testInflate();
+				testSuite.benchmark();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+	}
+
+	public InflaterTestSuite(String className) {
+		super(className);
+		data = createData(DATA_SIZE);
+		deflated = deflate(data);
+	}
+
+	public void testStreaming() throws DataFormatException {
+
+		checkPoint("FastInflater streaming");
+
+		for (int i = 0; i < CHUNKS.length; i++) {
+			byte[] result = inflateChunks(new FastInflater(true), deflated, CHUNKS[i], 1000 + 333 * i);
+			check(equals(result, data), "inflate() with " + CHUNKS[i] + " byte chunks over " + data.length
+					+ " bytes (window wrapped " + (data.length / 65536) + " times)");
+		}
+
+		// The reference inflater agrees on the generated stream
+		byte[] padded = new byte[deflated.length + 1];
+		System.arraycopy(deflated, 0, padded, 0, deflated.length);
+		check(equals(inflate(padded, data.length), data), "Inflater on the generated stream");
+	}
+
+	public void testZlib() throws DataFormatException {
+
+		checkPoint("FastInflater zlib");
+
+		byte[] zlib = new byte[2 + deflated.length + 4];
+		zlib[0] = 0x78;
+		zlib[1] = 0x01; // 0x7801 is a multiple of 31
+		System.arraycopy(deflated, 0, zlib, 2, deflated.length);
+		int adler = adler32(data);
+		int pos = zlib.length - 4;
+		zlib[pos] = (byte) (adler >>> 24);
+		zlib[pos + 1] = (byte) (adler >>> 16);
+		zlib[pos + 2] = (byte) (adler >>> 8);
+		zlib[pos + 3] = (byte) adler;
+
+		for (int i = 0; i < CHUNKS.length; i++) {
+			FastInflater inflater = new FastInflater();
+			byte[] result = inflateChunks(inflater, zlib, CHUNKS[i], 4096);
+			check(equals(result, data), "zlib stream with " + CHUNKS[i] + " byte chunks");
+			check(inflater.getAdler(), adler, "Adler-32");
+		}
+
+		// A wrong checksum is reported at the end of the stream
+		zlib[zlib.length - 1] ^= 0x10;
+		boolean thrown = false;
+		try {
+			inflateChunks(new FastInflater(), zlib, 4096, 4096);
+		} catch (DataFormatException e) {
+			thrown = true;
+		}
+		check(thrown, "corrupt Adler-32");
+
+		// So is a wrong header
+		zlib[1] = 0x02;
+		thrown = false;
+		try {
+			inflateChunks(new FastInflater(), zlib, 4096, 4096);
+		} catch (DataFormatException e) {
+			thrown = true;
+		}
+		check(thrown, "corrupt zlib header");
+	}
+
+	public void testZipSkip() throws IOException {
+
+		checkPoint("ZipFile stream skip");
+
+		byte[] small = new byte[5000];
+		System.arraycopy(data, 1000, small, 0, small.length);
+		MemoryFileHandler handler = new MemoryFileHandler();
+		handler.connect("/", "InflaterTest.zip");
+		handler.create();
+		handler.write(createZip(new String[] { "big.txt", "small.txt" }, new byte[][] { deflated, deflate(small) },
+				new int[] { data.length, small.length }));
+		handler.seek(0);
+		ZipFile zip = new ZipFile(handler);
+
+		// Entry decompressed while it is read: skips of all sizes between reads
+		InputStream is = zip.getInputStream(zip.getEntry("big.txt"));
+		int pos = 0;
+		boolean ok = true;
+		byte[] b = new byte[3000];
+		for (int step = 0; pos < data.length; step++) {
+			long n = (step % 3 == 0) ? 1 : (step % 3 == 1) ? 4000 : 70000;
+			long skipped = is.skip(n);
+			ok &= (skipped == Math.min(n, data.length - pos));
+			pos += skipped;
+			int count = is.read(b, 0, b.length);
+			if (count < 0)
+				break;
+			for (int i = 0; i < count; i++) {
+				ok &= (b[i] == data[pos + i]);
+			}
+			pos += count;
+		}
+		check(ok, "skip() and read() through a " + data.length + " byte entry");
+		check(is.read(), -1, "end of the entry");
+		is.close();
+
+		// Entry decompressed in one go
+		is = zip.getInputStream(zip.getEntry("small.txt"));
+		check(is.skip(4990), 4990, "skip() in a small entry");
+		check(is.read(), small[4990] & 0xFF, "read() after skip()");
+		is.close();
+		zip.close();
+		handler.delete();
+	}
+
+	/**
+	 * Collects the deflated entries of a jar from its central directory.
+	 */
+	public void readJar(String name) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(name, "r");
+		byte[] jar = new byte[(int) file.length()];
+		file.readFully(jar);
+		file.close();
+
+		// Find the end of central directory record
+		int pos = jar.length - 22;
+		while ((pos >= 0) && (getLeInt(jar, pos) != 0x06054b50)) {
+			pos--;
+		}
+		if (pos < 0)
+			throw new IOException("Not a zip file: " + name);
+
+		int count = getLeShort(jar, pos + 10);
+		pos = getLeInt(jar, pos + 16);
+		for (int i = 0; i < count; i++) {
+			int method = getLeShort(jar, pos + 10);
+			int compressedSize = getLeInt(jar, pos + 20);
+			int size = getLeInt(jar, pos + 24);
+			int offset = getLeInt(jar, pos + 42);
+			pos += 46 + getLeShort(jar, pos + 28) + getLeShort(jar, pos + 30) + getLeShort(jar, pos + 32);
+
+			if (method == 8) {
+				int start = offset + 30 + getLeShort(jar, offset + 26) + getLeShort(jar, offset + 28);
+				// One more byte than needed for Inflater in nowrap mode
+				byte[] data = new byte[compressedSize + 1];
+				System.arraycopy(jar, start, data, 0, compressedSize);
+				entries.addElement(data);
+				sizes.addElement(new Integer(size));
+			}
+		}
+		verbose(name + ": " + entries.size() + " deflated entries");
+	}
+
+	public void testInflate() throws DataFormatException {
+
+		checkPoint("FastInflater");
+		verbose("== Inflated data comparison ==");
+
+		boolean ok = true;
+		for (int i = 0; i < entries.size(); i++) {
+			byte[] data = (byte[]) entries.elementAt(i);
+			int size = ((Integer) sizes.elementAt(i)).intValue();
+			byte[] expected = inflate(data, size);
+			byte[] result = fastInflate(data, size);
+			for (int j = 0; j < size; j++) {
+				if (expected[j] != result[j]) {
+					debug("Entry " + i + " differs at " + j);
+					ok = false;
+					break;
+				}
+			}
+		}
+		check(ok, "inflateFully");
+	}
+
+	public void benchmark() throws DataFormatException {
+
+		verbose("== Inflater benchmark ==");
+
+		long total = 0;
+		for (int i = 0; i < sizes.size(); i++) {
+			total += ((Integer) sizes.elementAt(i)).intValue();
+		}
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < entries.size(); i++) {
+				inflate((byte[]) entries.elementAt(i), ((Integer) sizes.elementAt(i)).intValue());
+			}
+			long inflaterTime = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			for (int i = 0; i < entries.size(); i++) {
+				fastInflate((byte[]) entries.elementAt(i), ((Integer) sizes.elementAt(i)).intValue());
+			}
+			long fastInflaterTime = System.currentTimeMillis() - start;
+
+			verbose("Round " + round + ": " + total + " bytes, Inflater " + inflaterTime + " ms, FastInflater "
+					+ fastInflaterTime + " ms");
+		}
+	}
+
+	private byte[] inflate(byte[] data, int size) throws DataFormatException {
+		byte[] result = new byte[size];
+		Inflater inflater = new Inflater(true);
+		inflater.setInput(data);
+		int pos = 0;
+		while (pos < size) {
+			int n = inflater.inflate(result, pos, size - pos);
+			if (n == 0)
+				throw new DataFormatException("Inflater: unexpected end of data");
+			pos += n;
+		}
+		return result;
+	}
+
+	private byte[] fastInflate(byte[] data, int size) throws DataFormatException {
+		byte[] result = new byte[size];
+		FastInflater inflater = new FastInflater(true);
+		if (inflater.inflateFully(data, 0, data.length - 1, result, 0, size) != size)
+			throw new DataFormatException("FastInflater: unexpected end of data");
+		return result;
+	}
+
+	/**
+	 * Inflates a stream given to the inflater in chunks of the given size,
+	 * through an output buffer of the given size.
+	 */
+	private static byte[] inflateChunks(FastInflater inflater, byte[] in, int chunk, int outSize)
+			throws DataFormatException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buf = new byte[outSize];
+		int pos = 0;
+		while (!inflater.finished()) {
+			int n = inflater.inflate(buf, 0, buf.length);
+			result.write(buf, 0, n);
+			if ((n == 0) && !inflater.finished() && inflater.needsInput()) {
+				if (pos == in.length)
+					throw new DataFormatException("Unexpected end of data");
+				int len = Math.min(chunk, in.length - pos);
+				inflater.setInput(in, pos, len);
+				pos += len;
+			}
+		}
+		return result.toByteArray();
+	}
+
+	private static boolean equals(byte[] a, byte[] b) {
+		if (a.length != b.length)
+			return false;
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != b[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static int adler32(byte[] b) {
+		int s1 = 1, s2 = 0;
+		for (int i = 0; i < b.length; i++) {
+			s1 = (s1 + (b[i] & 0xFF)) % 65521;
+			s2 = (s2 + s1) % 65521;
+		}
+		return (s2 << 16) | s1;
+	}
+
+	/**
+	 * Generates 1K pieces of text, of random bytes, or copies of the piece
+	 * written 31K earlier so that matches span most of the window.
+	 */
+	private static byte[] createData(int size) {
+		byte[] b = new byte[size];
+		int seed = 12345;
+		int pos = 0;
+		while (pos < size) {
+			int end = Math.min(pos + 1024, size);
+			seed = seed * 1103515245 + 12345;
+			int kind = (seed >>> 16) % 3;
+			if ((kind == 2) && (pos >= 31 * 1024)) {
+				System.arraycopy(b, pos - 31 * 1024, b, pos, end - pos);
+				pos = end;
+			} else {
+				while (pos < end) {
+					seed = seed * 1103515245 + 12345;
+					if (kind == 1) {
+						b[pos++] = (byte) (seed >>> 16);
+					} else {
+						String word = WORDS[(seed >>> 16) % WORDS.length];
+						for (int i = 0; (i < word.length()) && (pos < end); i++) {
+							b[pos++] = (byte) word.charAt(i);
+						}
+					}
+				}
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * Compresses data to a raw deflate stream: a stored block for the first
+	 * bytes, then a fixed Huffman block every 16K of input, with greedy
+	 * matching against the last position of each 3 byte sequence.
+	 */
+	private byte[] deflate(byte[] b) {
+		out = new ByteArrayOutputStream();
+		bitBuf = 0;
+		bitCount = 0;
+
+		int stored = Math.min(1000, b.length);
+		writeBits((stored == b.length) ? 1 : 0, 1);
+		writeBits(0, 2);
+		flushBits();
+		writeBits(stored, 16);
+		writeBits(~stored & 0xFFFF, 16);
+		out.write(b, 0, stored);
+
+		int[] head = new int[1 << 15];
+		for (int i = 0; i < head.length; i++) {
+			head[i] = -1;
+		}
+		int pos = stored;
+		int blockEnd = pos;
+		while (pos < b.length) {
+			if (pos >= blockEnd) {
+				if (pos > stored)
+					writeCode(256);
+				blockEnd = pos + 16384;
+				writeBits((blockEnd >= b.length) ? 1 : 0, 1);
+				writeBits(1, 2);
+			}
+			int length = 0;
+			int dist = 0;
+			if (pos + 3 <= b.length) {
+				int hash = (((b[pos] & 0xFF) << 10) ^ ((b[pos + 1] & 0xFF) << 5) ^ (b[pos + 2] & 0xFF)) & 0x7FFF;
+				int match = head[hash];
+				head[hash] = pos;
+				if ((match >= 0) && (pos - match <= 32768)) {
+					int max = Math.min(258, b.length - pos);
+					while ((length < max) && (b[match + length] == b[pos + length])) {
+						length++;
+					}
+					dist = pos - match;
+				}
+			}
+			if (length >= 3) {
+				int code = LENGTH_BASE.length - 1;
+				while (LENGTH_BASE[code] > length) {
+					code--;
+				}
+				writeCode(257 + code);
+				writeBits(length - LENGTH_BASE[code], LENGTH_EXTRA[code]);
+				code = DIST_BASE.length - 1;
+				while (DIST_BASE[code] > dist) {
+					code--;
+				}
+				writeBits(reverse(code, 5), 5);
+				writeBits(dist - DIST_BASE[code], DIST_EXTRA[code]);
+				pos += length;
+			} else {
+				writeCode(b[pos++] & 0xFF);
+			}
+		}
+		if (pos > stored) {
+			writeCode(256);
+			flushBits();
+		}
+		return out.toByteArray();
+	}
+
+	/* Writes a symbol with its fixed Huffman code */
+	private void writeCode(int symbol) {
+		if (symbol < 144)
+			writeBits(reverse(0x30 + symbol, 8), 8);
+		else if (symbol < 256)
+			writeBits(reverse(0x190 + symbol - 144, 9), 9);
+		else if (symbol < 280)
+			writeBits(reverse(symbol - 256, 7), 7);
+		else
+			writeBits(reverse(0xC0 + symbol - 280, 8), 8);
+	}
+
+	private void writeBits(int value, int count) {
+		bitBuf |= value << bitCount;
+		bitCount += count;
+		while (bitCount >= 8) {
+			out.write(bitBuf & 0xFF);
+			bitBuf >>>= 8;
+			bitCount -= 8;
+		}
+	}
+
+	private void flushBits() {
+		if (bitCount > 0)
+			out.write(bitBuf & 0xFF);
+		bitBuf = 0;
+		bitCount = 0;
+	}
+
+	private static int reverse(int code, int length) {
+		int r = 0;
+		for (int i = 0; i < length; i++) {
+			r = (r << 1) | (code & 1);
+			code >>>= 1;
+		}
+		return r;
+	}
+
+	/**
+	 * Builds a zip file of deflated entries (without CRC, which ZipFile
+	 * doesn't check).
+	 */
+	private static byte[] createZip(String[] names, byte[][] contents, int[] sizes) {
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		ByteArrayOutputStream central = new ByteArrayOutputStream();
+		for (int i = 0; i < names.length; i++) {
+			int offset = zip.size();
+			byte[] name = names[i].getBytes();
+			writeLe(zip, 0x04034b50, 4);
+			writeLe(zip, 20, 2); // version
+			writeLe(zip, 0, 2); // flags
+			writeLe(zip, 8, 2); // method
+			writeLe(zip, 0, 8); // time, date and crc
+			writeLe(zip, contents[i].length, 4);
+			writeLe(zip, sizes[i], 4);
+			writeLe(zip, name.length, 2);
+			writeLe(zip, 0, 2);
+			zip.write(name, 0, name.length);
+			zip.write(contents[i], 0, contents[i].length);
+
+			writeLe(central, 0x02014b50, 4);
+			writeLe(central, 20, 2);
+			writeLe(central, 20, 2);
+			writeLe(central, 0, 2);
+			writeLe(central, 8, 2);
+			writeLe(central, 0, 8);
+			writeLe(central, contents[i].length, 4);
+			writeLe(central, sizes[i], 4);
+			writeLe(central, name.length, 2);
+			writeLe(central, 0, 8); // extra, comment, disk and internal attributes
+			writeLe(central, 0, 4);
+			writeLe(central, offset, 4);
+			central.write(name, 0, name.length);
+		}
+		int centralOffset = zip.size();
+		byte[] c = central.toByteArray();
+		zip.write(c, 0, c.length);
+		writeLe(zip, 0x06054b50, 4);
+		writeLe(zip, 0, 4);
+		writeLe(zip, names.length, 2);
+		writeLe(zip, names.length, 2);
+		writeLe(zip, c.length, 4);
+		writeLe(zip, centralOffset, 4);
+		writeLe(zip, 0, 2);
+		return zip.toByteArray();
+	}
+
+	private static void writeLe(ByteArrayOutputStream os, int value, int size) {
+		for (int i = 0; i < size; i++) {
+			os.write((i < 4) ? (value >>> (i * 8)) : 0);
+		}
+	}
+
+	private static int getLeShort(byte[] b, int off) {
+		return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+	}
+
+	private static int getLeInt(byte[] b, int off) {
+		return getLeShort(b, off) | (getLeShort(b, off + 2) << 16);
+	}
+
+}
@@ -0,0 +1,49 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.midpath.test.suite.midp;
+
+import org.thenesis.midpath.sound.codec.AudioDecoder;
+import org.thenesis.midpath.sound.codec.MP3Decoder;
+
+/**
+ * Checks that the fixed point MP3 decoder produces the same samples as the
+ * floating point one (within a few units) on real files, and compares the
+ * time taken by both.
+ * <p>
+ * Usage: MP3DecoderTestSuite [file.mp3...]
+ * <p>
+ * Without arguments, decodes the sample of JLayerME (from the midpath
+ * directory).
+ */
+public class MP3DecoderTestSuite extends AbstractDecoderTestSuite {
+
+	private static final String DEFAULT_FILE = "external/jlayerme-cldc/test/javazoom/jlme/util/tr51-glegris.mp3";
+
+	public static void main(String[] args) {
+		new MP3DecoderTestSuite("MP3DecoderTest").run(args, DEFAULT_FILE);
+	}
+
+	public MP3DecoderTestSuite(String className) {
+		super(className);
+	}
+
+	protected AudioDecoder createDecoder(boolean fixedPoint) {
+		return new MP3Decoder(fixedPoint);
+	}
+
+}
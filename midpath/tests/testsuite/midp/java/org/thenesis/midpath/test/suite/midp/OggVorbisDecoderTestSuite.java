@@ -0,0 +1,49 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.midpath.test.suite.midp;
+
+import org.thenesis.midpath.sound.codec.AudioDecoder;
+import org.thenesis.midpath.sound.codec.OggVorbisDecoder;
+
+/**
+ * Checks that the fixed point Ogg Vorbis decoder produces the same samples as the
+ * floating point one (within a few units) on real files, and compares the
+ * time taken by both.
+ * <p>
+ * Usage: OggVorbisDecoderTestSuite [file.ogg...]
+ * <p>
+ * Without arguments, decodes the sample of JOrbis (from the midpath
+ * directory).
+ */
+public class OggVorbisDecoderTestSuite extends AbstractDecoderTestSuite {
+
+	private static final String DEFAULT_FILE = "external/jorbis-cldc/test/com/jcraft/jorbis/test/tr51-glegris.ogg";
+
+	public static void main(String[] args) {
+		new OggVorbisDecoderTestSuite("OggVorbisDecoderTest").run(args, DEFAULT_FILE);
+	}
+
+	public OggVorbisDecoderTestSuite(String className) {
+		super(className);
+	}
+
+	protected AudioDecoder createDecoder(boolean fixedPoint) {
+		return new OggVorbisDecoder(fixedPoint);
+	}
+
+}
@@ -0,0 +1,457 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.midpath.test.suite.midp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Hashtable;
+
+import org.thenesis.microbackend.ui.image.png.CRC32;
+import org.thenesis.microbackend.ui.image.png.ColorModel;
+import org.thenesis.microbackend.ui.image.png.ImageConsumer;
+import org.thenesis.microbackend.ui.image.png.PngDecoder;
+import org.thenesis.microbackend.ui.image.png.PngImage;
+import org.thenesis.midpath.test.suite.AbstractTestSuite;
+
+/**
+ * Checks that PngDecoder gives the same ARGB pixels as PngImage for every
+ * format it supports, with and without transparency and gamma, and that the
+ * formats it does not support are decoded by PngImage from the stream it
+ * hands back.
+ * <p>
+ * The images are generated by a small encoder using all the filter types,
+ * Adam7 interlacing and stored deflate blocks, split over several IDAT
+ * chunks.
+ * <p>
+ * Usage: PngDecoderTestSuite
+ */
+public class PngDecoderTestSuite extends AbstractTestSuite {
+
+	/* Odd sizes, so that rows end in partial bytes and Adam7 passes are uneven */
+	private static final int WIDTH = 13;
+	private static final int HEIGHT = 11;
+
+	/* Sizes of the stored deflate blocks and of the IDAT chunks */
+	private static final int BLOCK_SIZE = 97;
+	private static final int IDAT_SIZE = 64;
+
+	/* Starting point and step of the Adam7 passes */
+	private static final int[][] ADAM7 = { { 0, 0, 8, 8 }, { 4, 0, 8, 8 }, { 0, 4, 4, 8 }, { 2, 0, 4, 4 },
+			{ 0, 2, 2, 4 }, { 1, 0, 2, 2 }, { 0, 1, 1, 2 } };
+	private static final int[][] NO_INTERLACE = { { 0, 0, 1, 1 } };
+
+	private static final int NO_GAMMA = 0;
+
+	private CRC32 crc = new CRC32();
+
+	public static void main(String[] args) {
+
+		PngImage.setProgressiveDisplay(false);
+
+		PngDecoderTestSuite testSuite = new PngDecoderTestSuite("PngDecoderTest");
+		testSuite.testGray();
+		testSuite.testGrayAlpha();
+		testSuite.testRGB();
+		testSuite.testRGBA();
+		testSuite.testPalette();
+		testSuite.testGamma();
+		testSuite.testSixteenBits();
+		testSuite.testInterlaced();
+
+	}
+
+	public PngDecoderTestSuite(String className) {
+		super(className);
+	}
+
+	public void testGray() {
+		compare("gray", createPng(8, PngImage.COLOR_TYPE_GRAY, false, null, null, NO_GAMMA));
+		byte[] trns = { 0, (byte) sample(3, 2, 0, 8) };
+		compare("gray with tRNS", createPng(8, PngImage.COLOR_TYPE_GRAY, false, null, trns, NO_GAMMA));
+	}
+
+	public void testGrayAlpha() {
+		compare("gray+alpha", createPng(8, PngImage.COLOR_TYPE_GRAY_ALPHA, false, null, null, NO_GAMMA));
+	}
+
+	public void testRGB() {
+		compare("RGB", createPng(8, PngImage.COLOR_TYPE_RGB, false, null, null, NO_GAMMA));
+		byte[] trns = { 0, (byte) sample(5, 4, 0, 8), 0, (byte) sample(5, 4, 1, 8), 0, (byte) sample(5, 4, 2, 8) };
+		compare("RGB with tRNS", createPng(8, PngImage.COLOR_TYPE_RGB, false, null, trns, NO_GAMMA));
+	}
+
+	public void testRGBA() {
+		compare("RGBA", createPng(8, PngImage.COLOR_TYPE_RGB_ALPHA, false, null, null, NO_GAMMA));
+	}
+
+	public void testPalette() {
+		for (int depth = 1; depth <= 8; depth *= 2) {
+			int size = 1 << depth;
+			compare("palette " + depth + " bits", createPng(depth, PngImage.COLOR_TYPE_PALETTE, false,
+					createPalette(size), null, NO_GAMMA));
+			// The tRNS chunk may be shorter than the palette
+			compare("palette " + depth + " bits with tRNS", createPng(depth, PngImage.COLOR_TYPE_PALETTE, false,
+					createPalette(size), createAlphas((size + 1) / 2), NO_GAMMA));
+		}
+	}
+
+	public void testGamma() {
+		int[] gammas = { 100000, 22000, 45455 };
+		for (int i = 0; i < gammas.length; i++) {
+			String name = " with gAMA " + gammas[i];
+			compare("gray" + name, createPng(8, PngImage.COLOR_TYPE_GRAY, false, null, null, gammas[i]));
+			compare("gray+alpha" + name, createPng(8, PngImage.COLOR_TYPE_GRAY_ALPHA, false, null, null, gammas[i]));
+			compare("RGB" + name, createPng(8, PngImage.COLOR_TYPE_RGB, false, null, null, gammas[i]));
+			compare("RGBA" + name, createPng(8, PngImage.COLOR_TYPE_RGB_ALPHA, false, null, null, gammas[i]));
+			compare("palette" + name, createPng(4, PngImage.COLOR_TYPE_PALETTE, false, createPalette(16),
+					createAlphas(5), gammas[i]));
+		}
+	}
+
+	public void testSixteenBits() {
+		int[] colorTypes = { PngImage.COLOR_TYPE_GRAY, PngImage.COLOR_TYPE_GRAY_ALPHA, PngImage.COLOR_TYPE_RGB,
+				PngImage.COLOR_TYPE_RGB_ALPHA };
+		for (int i = 0; i < colorTypes.length; i++) {
+			String name = "16 bits color type " + colorTypes[i];
+			int[] argb = checkFallback(name, createPng(16, colorTypes[i], false, null, null, NO_GAMMA));
+
+			// The samples are the 8-bit ones scaled to 16 bits
+			int[] expected = decodeFast(createPng(8, colorTypes[i], false, null, null, NO_GAMMA));
+			check(equals(argb, expected), name + ": same pixels as 8 bits");
+		}
+	}
+
+	public void testInterlaced() {
+		int[] argb = checkFallback("interlaced RGBA", createPng(8, PngImage.COLOR_TYPE_RGB_ALPHA, true, null, null,
+				NO_GAMMA));
+		int[] expected = decodeFast(createPng(8, PngImage.COLOR_TYPE_RGB_ALPHA, false, null, null, NO_GAMMA));
+		check(equals(argb, expected), "interlaced RGBA: same pixels as non interlaced");
+
+		argb = checkFallback("interlaced palette", createPng(2, PngImage.COLOR_TYPE_PALETTE, true, createPalette(4),
+				createAlphas(3), NO_GAMMA));
+		expected = decodeFast(createPng(2, PngImage.COLOR_TYPE_PALETTE, false, createPalette(4), createAlphas(3),
+				NO_GAMMA));
+		check(equals(argb, expected), "interlaced palette: same pixels as non interlaced");
+	}
+
+	/**
+	 * Checks that a supported image gives the same pixels with both decoders.
+	 */
+	private void compare(String name, byte[] png) {
+		try {
+			PngDecoder decoder = new PngDecoder(new ByteArrayInputStream(png));
+			check(decoder.isSupported(), name + ": supported");
+			check(equals(decodeFast(png), decodeFull(new ByteArrayInputStream(png))), name + ": same pixels");
+		} catch (IOException e) {
+			check(false, name + ": " + e);
+		}
+	}
+
+	/**
+	 * Checks that an unsupported image is decoded by PngImage from the
+	 * stream given back by PngDecoder.
+	 */
+	private int[] checkFallback(String name, byte[] png) {
+		try {
+			PngDecoder decoder = new PngDecoder(new ByteArrayInputStream(png));
+			check(!decoder.isSupported(), name + ": not supported");
+			int[] argb = decodeFull(decoder.getInputStream());
+			check(equals(argb, decodeFull(new ByteArrayInputStream(png))), name + ": fallback stream");
+			return argb;
+		} catch (IOException e) {
+			check(false, name + ": " + e);
+			return new int[0];
+		}
+	}
+
+	private int[] decodeFast(byte[] png) {
+		try {
+			PngDecoder decoder = new PngDecoder(new ByteArrayInputStream(png));
+			int[] argb = new int[decoder.getWidth() * decoder.getHeight()];
+			decoder.decode(argb);
+			return argb;
+		} catch (IOException e) {
+			check(false, "PngDecoder: " + e);
+			return new int[0];
+		}
+	}
+
+	/**
+	 * Decodes an image with PngImage like VirtualImage does.
+	 */
+	private static int[] decodeFull(InputStream is) throws IOException {
+		PngImage png = new PngImage(is);
+		final int[] argb = new int[png.getWidth() * png.getHeight()];
+		png.setBuffer(argb);
+		png.startProduction(new ImageConsumer() {
+			private ColorModel cm;
+
+			public void imageComplete(int status) {
+				for (int i = 0; i < argb.length; i++) {
+					argb[i] = cm.getRGB(argb[i]);
+				}
+			}
+
+			public void setColorModel(ColorModel model) {
+				cm = model;
+			}
+
+			public void setDimensions(int width, int height) {
+			}
+
+			public void setHints(int flags) {
+			}
+
+			public void setProperties(Hashtable props) {
+			}
+
+			public void setPixels(int x, int y, int w, int h, ColorModel model, byte[] pixels, int offset, int scansize) {
+			}
+
+			public void setPixels(int x, int y, int w, int h, ColorModel model, int[] pixels, int offset, int scansize) {
+			}
+		});
+		return argb;
+	}
+
+	private static boolean equals(int[] a, int[] b) {
+		if ((a.length == 0) || (a.length != b.length)) {
+			return false;
+		}
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns an 8-bit sample of the generated image, or a palette index
+	 * when the depth is lower.
+	 */
+	private static int sample(int x, int y, int channel, int depth) {
+		int value = (x * 37 + y * 101 + channel * 59 + x * y * 13) & 0xFF;
+		return (depth < 8) ? (value % (1 << depth)) : value;
+	}
+
+	private static byte[] createPalette(int size) {
+		byte[] palette = new byte[size * 3];
+		for (int i = 0; i < palette.length; i++) {
+			palette[i] = (byte) (i * 71 + 13);
+		}
+		return palette;
+	}
+
+	private static byte[] createAlphas(int size) {
+		byte[] alphas = new byte[size];
+		for (int i = 0; i < size; i++) {
+			alphas[i] = (byte) (i * 255 / size);
+		}
+		return alphas;
+	}
+
+	private static int getChannels(int colorType) {
+		switch (colorType) {
+		case PngImage.COLOR_TYPE_GRAY_ALPHA:
+			return 2;
+		case PngImage.COLOR_TYPE_RGB:
+			return 3;
+		case PngImage.COLOR_TYPE_RGB_ALPHA:
+			return 4;
+		default:
+			return 1;
+		}
+	}
+
+	private byte[] createPng(int depth, int colorType, boolean interlaced, byte[] plte, byte[] trns, int gamma) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] signature = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+		out.write(signature, 0, signature.length);
+
+		byte[] ihdr = new byte[13];
+		putInt(ihdr, 0, WIDTH);
+		putInt(ihdr, 4, HEIGHT);
+		ihdr[8] = (byte) depth;
+		ihdr[9] = (byte) colorType;
+		ihdr[12] = (byte) (interlaced ? PngImage.INTERLACE_TYPE_ADAM7 : PngImage.INTERLACE_TYPE_NONE);
+		writeChunk(out, "IHDR", ihdr, 0, ihdr.length);
+
+		if (gamma != NO_GAMMA) {
+			byte[] gama = new byte[4];
+			putInt(gama, 0, gamma);
+			writeChunk(out, "gAMA", gama, 0, gama.length);
+		}
+		if (plte != null) {
+			writeChunk(out, "PLTE", plte, 0, plte.length);
+		}
+		if (trns != null) {
+			writeChunk(out, "tRNS", trns, 0, trns.length);
+		}
+		byte[] text = "Comment\0generated".getBytes();
+		writeChunk(out, "tEXt", text, 0, text.length);
+
+		byte[] zlib = compress(createImageData(depth, getChannels(colorType), interlaced ? ADAM7 : NO_INTERLACE));
+		for (int pos = 0; pos < zlib.length; pos += IDAT_SIZE) {
+			writeChunk(out, "IDAT", zlib, pos, Math.min(IDAT_SIZE, zlib.length - pos));
+		}
+		writeChunk(out, "IEND", new byte[0], 0, 0);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns the filtered scanlines of all the passes, using every filter
+	 * type in turn.
+	 */
+	private static byte[] createImageData(int depth, int channels, int[][] passes) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int bpp = Math.max(1, channels * depth / 8);
+		int filter = 0;
+
+		for (int p = 0; p < passes.length; p++) {
+			int x0 = passes[p][0];
+			int y0 = passes[p][1];
+			int dx = passes[p][2];
+			int dy = passes[p][3];
+			int passWidth = (WIDTH - x0 + dx - 1) / dx;
+			if ((passWidth <= 0) || (y0 >= HEIGHT)) {
+				continue;
+			}
+
+			int rowLength = (passWidth * channels * depth + 7) / 8;
+			byte[] prev = new byte[rowLength];
+			for (int y = y0; y < HEIGHT; y += dy) {
+				byte[] row = new byte[rowLength];
+				int bit = 0;
+				for (int x = x0; x < WIDTH; x += dx) {
+					for (int c = 0; c < channels; c++) {
+						int value = sample(x, y, c, depth);
+						if (depth == 16) {
+							// Both bytes equal, so that every decoder scales it to the same 8 bits
+							row[bit >> 3] = (byte) value;
+							row[(bit >> 3) + 1] = (byte) value;
+						} else if (depth == 8) {
+							row[bit >> 3] = (byte) value;
+						} else {
+							row[bit >> 3] |= value << (8 - depth - (bit & 7));
+						}
+						bit += depth;
+					}
+				}
+
+				out.write(filter);
+				for (int i = 0; i < rowLength; i++) {
+					int a = (i >= bpp) ? (row[i - bpp] & 0xFF) : 0;
+					int b = prev[i] & 0xFF;
+					int c = (i >= bpp) ? (prev[i - bpp] & 0xFF) : 0;
+					int predictor;
+					switch (filter) {
+					case 1:
+						predictor = a;
+						break;
+					case 2:
+						predictor = b;
+						break;
+					case 3:
+						predictor = (a + b) >> 1;
+						break;
+					case 4:
+						predictor = paeth(a, b, c);
+						break;
+					default:
+						predictor = 0;
+						break;
+					}
+					out.write((row[i] - predictor) & 0xFF);
+				}
+				prev = row;
+				filter = (filter + 1) % 5;
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private static int paeth(int a, int b, int c) {
+		int p = a + b - c;
+		int pa = Math.abs(p - a);
+		int pb = Math.abs(p - b);
+		int pc = Math.abs(p - c);
+		if ((pa <= pb) && (pa <= pc)) {
+			return a;
+		}
+		return (pb <= pc) ? b : c;
+	}
+
+	/**
+	 * Wraps the data in a zlib stream made of small stored blocks.
+	 */
+	private static byte[] compress(byte[] data) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(0x78);
+		out.write(0x01);
+		int pos = 0;
+		do {
+			int length = Math.min(BLOCK_SIZE, data.length - pos);
+			out.write((pos + length == data.length) ? 1 : 0);
+			out.write(length);
+			out.write(length >> 8);
+			out.write(~length);
+			out.write(~length >> 8);
+			out.write(data, pos, length);
+			pos += length;
+		} while (pos < data.length);
+
+		int s1 = 1;
+		int s2 = 0;
+		for (int i = 0; i < data.length; i++) {
+			s1 = (s1 + (data[i] & 0xFF)) % 65521;
+			s2 = (s2 + s1) % 65521;
+		}
+		byte[] adler = new byte[4];
+		putInt(adler, 0, (s2 << 16) | s1);
+		out.write(adler, 0, adler.length);
+		return out.toByteArray();
+	}
+
+	private void writeChunk(ByteArrayOutputStream out, String type, byte[] data, int off, int len) {
+		byte[] header = new byte[8];
+		putInt(header, 0, len);
+		for (int i = 0; i < 4; i++) {
+			header[4 + i] = (byte) type.charAt(i);
+		}
+		out.write(header, 0, header.length);
+		out.write(data, off, len);
+
+		crc.reset();
+		crc.update(header, 4, 4);
+		crc.update(data, off, len);
+		byte[] value = new byte[4];
+		putInt(value, 0, (int) crc.getValue());
+		out.write(value, 0, value.length);
+	}
+
+	private static void putInt(byte[] b, int off, int value) {
+		b[off] = (byte) (value >>> 24);
+		b[off + 1] = (byte) (value >>> 16);
+		b[off + 2] = (byte) (value >>> 8);
+		b[off + 3] = (byte) value;
+	}
+
+}
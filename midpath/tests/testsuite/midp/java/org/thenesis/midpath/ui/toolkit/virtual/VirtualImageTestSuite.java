@@ -0,0 +1,197 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.midpath.ui.toolkit.virtual;
+
+import java.io.IOException;
+
+import javax.microedition.lcdui.Graphics;
+import javax.microedition.lcdui.UIToolkit;
+
+import org.thenesis.microbackend.ui.graphics.Compositor;
+import org.thenesis.midpath.test.suite.AbstractTestSuite;
+
+import com.sun.midp.events.EventMapper;
+
+/**
+ * Checks that mutable images stay opaque whatever is drawn on them, so
+ * that they are blitted with the bulk row copy, while translucent
+ * immutable images are still blended. This suite lives in the virtual
+ * toolkit package so that it can plug in a backend without a screen and
+ * read the alpha type of the images.
+ * <p>
+ * Usage: VirtualImageTestSuite
+ */
+public class VirtualImageTestSuite extends AbstractTestSuite {
+
+	private static final int WIDTH = 12;
+	private static final int HEIGHT = 10;
+
+	public static void main(String[] args) {
+
+		VirtualImageTestSuite testSuite = new VirtualImageTestSuite("VirtualImageTest");
+		testSuite.testMutableImage(false);
+		testSuite.testMutableImage(true);
+		testSuite.testImmutableImage();
+
+	}
+
+	public VirtualImageTestSuite(String className) {
+		super(className);
+	}
+
+	/**
+	 * A toolkit whose surfaces are plain arrays, in ARGB8888 or in RGB565
+	 * format for the opaque ones.
+	 */
+	private static class TestToolkit extends VirtualToolkit implements VirtualBackend {
+		private boolean rgb565;
+
+		TestToolkit(boolean rgb565) {
+			this.rgb565 = rgb565;
+		}
+
+		VirtualBackend getBackend() {
+			return this;
+		}
+
+		public EventMapper getEventMapper() {
+			return null;
+		}
+
+		public VirtualSurface createSurface(int w, int h) {
+			VirtualSurface surface = new VirtualSurface();
+			surface.width = w;
+			surface.height = h;
+			surface.data = new int[w * h];
+			return surface;
+		}
+
+		public VirtualSurface createOpaqueSurface(int w, int h) {
+			if (!rgb565) {
+				return createSurface(w, h);
+			}
+			VirtualSurface surface = new VirtualSurface();
+			surface.width = w;
+			surface.height = h;
+			surface.data16 = new short[w * h];
+			return surface;
+		}
+
+		public VirtualSurface getRootSurface() {
+			return null;
+		}
+
+		public void updateSurfacePixels(int x, int y, long widht, long heigth) {
+		}
+
+		public void updateSurfacePixels(int[] regions, int regionCount) {
+		}
+
+		public void open() throws IOException {
+		}
+	}
+
+	/**
+	 * A graphics drawing on an image, set up without the display (that
+	 * Image.getGraphics() initializes).
+	 */
+	private static class ImageGraphics extends VirtualGraphics {
+		ImageGraphics(VirtualImage image) {
+			super(image.surface);
+			maxWidth = (short) image.surface.width;
+			maxHeight = (short) image.surface.height;
+			setClip(0, 0, maxWidth, maxHeight);
+		}
+	}
+
+	private static boolean isOpaque(VirtualSurface surface) {
+		for (int i = 0; i < surface.width * surface.height; i++) {
+			if ((surface.getARGB(i) >>> 24) != 0xFF) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Translucent pixels with all the alpha values of a row.
+	 */
+	private static int[] createTranslucentPixels() {
+		int[] rgb = new int[WIDTH * HEIGHT];
+		for (int i = 0; i < rgb.length; i++) {
+			rgb[i] = (((i * 23) & 0xFF) << 24) | (i * 0x030507);
+		}
+		return rgb;
+	}
+
+	public void testMutableImage(boolean rgb565) {
+		UIToolkit.setToolkit(new TestToolkit(rgb565));
+		String format = rgb565 ? " (RGB565)" : " (ARGB8888)";
+
+		VirtualImage image = new VirtualImage(WIDTH, HEIGHT);
+		check(image.getAlphaType(), Compositor.ALPHA_OPAQUE, "new mutable image is opaque" + format);
+		check(isOpaque(image.surface), "new mutable image pixels" + format);
+
+		// Every kind of drawing leaves the image opaque
+		Graphics g = new ImageGraphics(image);
+		g.setColor(0x123456);
+		g.fillRect(2, 1, 5, 4);
+		g.drawRGB(createTranslucentPixels(), 0, WIDTH, 0, 0, WIDTH, HEIGHT, true);
+		g.drawRGB(createTranslucentPixels(), 0, WIDTH, 3, 2, 4, 4, false);
+		g.drawImage(new VirtualImage(createTranslucentPixels(), WIDTH, HEIGHT, true), 1, 1, Graphics.TOP
+				| Graphics.LEFT);
+		check(isOpaque(image.surface), "mutable image stays opaque after drawing" + format);
+		check(image.getAlphaType(), Compositor.ALPHA_OPAQUE, "drawn mutable image is opaque" + format);
+
+		// Blitting it copies the pixels over a translucent destination
+		UIToolkit.setToolkit(new TestToolkit(false));
+		VirtualImage dest = new VirtualImage(WIDTH, HEIGHT);
+		int[] destData = dest.surface.data;
+		for (int i = 0; i < destData.length; i++) {
+			destData[i] = 0x40FF0000;
+		}
+		new ImageGraphics(dest).drawImage(image, 0, 0, Graphics.TOP | Graphics.LEFT);
+		boolean ok = true;
+		for (int i = 0; i < destData.length; i++) {
+			ok &= (destData[i] == image.surface.getARGB(i));
+		}
+		check(ok, "mutable image blit copies the pixels" + format);
+	}
+
+	public void testImmutableImage() {
+		UIToolkit.setToolkit(new TestToolkit(false));
+
+		int[] rgb = createTranslucentPixels();
+		VirtualImage image = new VirtualImage(rgb, WIDTH, HEIGHT, true);
+		check(image.getAlphaType(), Compositor.ALPHA_TRANSLUCENT, "translucent immutable image");
+
+		// Blitting it blends the pixels
+		VirtualImage dest = new VirtualImage(WIDTH, HEIGHT);
+		new ImageGraphics(dest).drawImage(image, 0, 0, Graphics.TOP | Graphics.LEFT);
+		boolean ok = true;
+		for (int i = 0; i < rgb.length; i++) {
+			ok &= (dest.surface.data[i] == Compositor.srcOver(rgb[i], 0xFFFFFFFF));
+		}
+		check(ok, "translucent immutable image blit blends the pixels");
+
+		// A copy of a mutable image is opaque too
+		VirtualImage copy = new VirtualImage(dest);
+		check(copy.getAlphaType(), Compositor.ALPHA_OPAQUE, "immutable copy of a mutable image");
+	}
+
+}
@@ -0,0 +1,303 @@
+/*
+ * MIDPath - Copyright (C) 2006-2008 Guillaume Legris, Mathieu Legris
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License version
+ * 2 only, as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License version 2 for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * version 2 along with this work; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA
+ */
+package org.thenesis.midpath.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+
+import org.thenesis.midpath.io.MemoryFileHandler;
+import org.thenesis.midpath.test.suite.AbstractTestSuite;
+
+import com.sun.midp.io.IOToolkit;
+import com.sun.midp.io.j2me.file.BaseFileHandler;
+import com.sun.midp.main.Configuration;
+
+/**
+ * Checks that the index of the central directory of a zip file is read
+ * back as written, that it is dropped once the zip file has changed, and
+ * that ZipFile finds entries through it, including entries whose names
+ * have the same hash code. The index files are created in the RMS root
+ * path of the configuration. This suite lives in the zip package so that
+ * it can use the package-private index.
+ * <p>
+ * Usage: ZipIndexTestSuite
+ */
+public class ZipIndexTestSuite extends AbstractTestSuite {
+
+	private static final String INDEX_FILE = "zipindextest.idx";
+
+	/* "Aa", "BB" and "C#" have the same hash code */
+	private static final String[] NAMES = { "META-INF/MANIFEST.MF", "Aa", "BB", "dir/", "dir/file.txt", "a.txt" };
+	private static final String MISSING_SAME_HASH = "C#";
+
+	public static void main(String[] args) {
+
+		ZipIndexTestSuite testSuite = new ZipIndexTestSuite("ZipIndexTest");
+		try {
+			testSuite.testRoundTrip();
+			testSuite.testChangedZip();
+			testSuite.testLookup();
+			testSuite.testEntriesFirst();
+		} catch (IOException e) {
+			e.printStackTrace();
+			testSuite.check(false, "unexpected exception: " + e);
+		} finally {
+			deleteIndex();
+		}
+
+	}
+
+	public ZipIndexTestSuite(String className) {
+		super(className);
+	}
+
+	private static void deleteIndex() {
+		BaseFileHandler handler = IOToolkit.getToolkit().createBaseFileHandler();
+		try {
+			handler.connect(Configuration.getPropertyDefault("com.sun.midp.rms.rootPath", ""), INDEX_FILE);
+			if (handler.exists())
+				handler.delete();
+			handler.close();
+		} catch (IOException e) {
+			// checked by the tests
+		}
+	}
+
+	public void testRoundTrip() {
+		deleteIndex();
+		check(ZipIndex.read(INDEX_FILE, 1000, 2000) == null, "missing index");
+
+		int[] hashes = { 42, -7, 2112, 0, 2112, Integer.MAX_VALUE, Integer.MIN_VALUE };
+		int[] offsets = { 10, 20, 30, 40, 50, 60, 70 };
+		new ZipIndex(1000, 0x123456789AL, 300, 400, hashes, offsets).write(INDEX_FILE);
+
+		ZipIndex index = ZipIndex.read(INDEX_FILE, 1000, 0x123456789AL);
+		check(index != null, "index read back");
+		if (index == null)
+			return;
+
+		check(index.fileSize, 1000, "zip file size");
+		check(index.lastModified, 0x123456789AL, "zip file date");
+		check(index.centralOffset, 300, "central directory offset");
+		check(index.centralSize, 400, "central directory size");
+		check(index.size(), hashes.length, "number of entries");
+
+		boolean ok = true;
+		for (int i = 0; i < index.size(); i++) {
+			ok &= (i == 0) || (index.getHash(i - 1) <= index.getHash(i));
+		}
+		check(ok, "entries sorted by hash code");
+
+		int[] expectedHashes = { Integer.MIN_VALUE, -7, 0, 42, 2112, 2112, Integer.MAX_VALUE };
+		int[] expectedOffsets = { 70, 20, 40, 10, -1, -1, 60 };
+		for (int i = 0; i < expectedHashes.length; i++) {
+			int found = index.find(expectedHashes[i]);
+			ok = (found >= 0) && (index.getHash(found) == expectedHashes[i]);
+			if (ok && (expectedOffsets[i] >= 0))
+				ok = (index.getOffset(found) == expectedOffsets[i]);
+			check(ok, "find " + expectedHashes[i]);
+		}
+
+		// Both entries with the same hash code follow each other
+		int found = index.find(2112);
+		check(found >= 0 && (found + 1 < index.size()) && (index.getHash(found + 1) == 2112)
+				&& ((index.getOffset(found) + index.getOffset(found + 1)) == 80), "entries with the same hash");
+		check(index.find(1), -1, "missing hash");
+		check(index.find(Integer.MAX_VALUE - 1), -1, "missing hash after the last one");
+	}
+
+	public void testChangedZip() {
+		new ZipIndex(1000, 5000, 300, 400, new int[] { 1, 2 }, new int[] { 0, 46 }).write(INDEX_FILE);
+		check(ZipIndex.read(INDEX_FILE, 1000, 5000) != null, "matching index");
+		check(ZipIndex.read(INDEX_FILE, 1001, 5000) == null, "index rejected after a size change");
+		check(ZipIndex.read(INDEX_FILE, 1000, 5001) == null, "index rejected after a date change");
+
+		// An empty zip file has an empty index
+		new ZipIndex(22, 5000, 0, 0, new int[0], new int[0]).write(INDEX_FILE);
+		ZipIndex index = ZipIndex.read(INDEX_FILE, 22, 5000);
+		check((index != null) && (index.size() == 0) && (index.find(0) == -1), "empty index");
+	}
+
+	public void testLookup() throws IOException {
+		deleteIndex();
+		MemoryFileHandler handler = createZipFile("ZipIndexTest.zip", NAMES);
+
+		// The first opening reads the central directory and writes the index
+		ZipFile zip = new ZipFile(handler, INDEX_FILE);
+		checkEntries(zip, NAMES, "without index");
+		ZipIndex index = ZipIndex.read(INDEX_FILE, handler.fileSize(), handler.lastModified());
+		check((index != null) && (index.size() == NAMES.length), "index written");
+
+		// Then the entries are found through the index
+		handler.seek(0);
+		zip = new ZipFile(handler, INDEX_FILE);
+		checkEntries(zip, NAMES, "with index");
+		check(zip.size(), NAMES.length, "number of entries with index");
+
+		// An index no longer matching the zip file is replaced
+		String[] names = new String[NAMES.length + 1];
+		System.arraycopy(NAMES, 0, names, 0, NAMES.length);
+		names[NAMES.length] = MISSING_SAME_HASH;
+		handler = createZipFile("ZipIndexTest.zip", names);
+		check(ZipIndex.read(INDEX_FILE, handler.fileSize(), handler.lastModified()) == null,
+				"index of the previous zip file rejected");
+		zip = new ZipFile(handler, INDEX_FILE);
+		check(zip.getEntry(MISSING_SAME_HASH) != null, "entry added to the zip file");
+		index = ZipIndex.read(INDEX_FILE, handler.fileSize(), handler.lastModified());
+		check((index != null) && (index.size() == names.length), "index rewritten");
+		handler.seek(0);
+		checkEntries(new ZipFile(handler, INDEX_FILE), names, "with new index");
+	}
+
+	public void testEntriesFirst() throws IOException {
+		deleteIndex();
+		MemoryFileHandler handler = createZipFile("ZipIndexTest.zip", NAMES);
+		ZipFile zip = new ZipFile(handler, INDEX_FILE);
+		zip.getEntry(NAMES[0]);
+		ZipIndex index = ZipIndex.read(INDEX_FILE, handler.fileSize(), handler.lastModified());
+		check(index != null, "index written");
+		if (index == null)
+			return;
+
+		// A matching index with two offsets swapped, to tell whether it is written again
+		int[] hashes = new int[index.size()];
+		int[] offsets = new int[index.size()];
+		for (int i = 0; i < index.size(); i++) {
+			hashes[i] = index.getHash(i);
+			offsets[i] = index.getOffset(i);
+		}
+		int offset = offsets[0];
+		offsets[0] = offsets[1];
+		offsets[1] = offset;
+		new ZipIndex(index.fileSize, index.lastModified, index.centralOffset, index.centralSize, hashes, offsets)
+				.write(INDEX_FILE);
+
+		handler.seek(0);
+		zip = new ZipFile(handler, INDEX_FILE);
+		int count = 0;
+		for (Enumeration e = zip.entries(); e.hasMoreElements(); e.nextElement()) {
+			count++;
+		}
+		check(count, NAMES.length, "entries() before getEntry()");
+		checkEntries(zip, NAMES, "after entries()");
+		index = ZipIndex.read(INDEX_FILE, handler.fileSize(), handler.lastModified());
+		check((index != null) && (index.getOffset(0) == offsets[0]) && (index.getOffset(1) == offsets[1]),
+				"valid index not written again");
+	}
+
+	private void checkEntries(ZipFile zip, String[] names, String name) throws IOException {
+		boolean ok = true;
+		for (int i = 0; i < names.length; i++) {
+			ZipEntry entry = zip.getEntry(names[i]);
+			if ((entry == null) || !entry.getName().equals(names[i])) {
+				ok = false;
+				continue;
+			}
+			byte[] expected = createContent(names[i]);
+			ok &= (entry.getSize() == expected.length);
+			if (expected.length > 0) {
+				InputStream is = zip.getInputStream(entry);
+				for (int j = 0; j < expected.length; j++) {
+					ok &= (is.read() == (expected[j] & 0xFF));
+				}
+				ok &= (is.read() == -1);
+				is.close();
+			}
+		}
+		check(ok, name + ": entries found");
+
+		// A directory is found without its trailing slash
+		check(zip.getEntry("dir") != null, name + ": directory");
+
+		if (names.length == NAMES.length)
+			check(zip.getEntry(MISSING_SAME_HASH) == null, name + ": missing entry with the hash of another");
+		check(zip.getEntry("missing.txt") == null, name + ": missing entry");
+	}
+
+	private static byte[] createContent(String name) {
+		return name.endsWith("/") ? new byte[0] : ("content of " + name).getBytes();
+	}
+
+	private static MemoryFileHandler createZipFile(String fileName, String[] names) throws IOException {
+		MemoryFileHandler handler = new MemoryFileHandler();
+		handler.connect("/", fileName);
+		handler.create();
+		handler.write(createZip(names));
+		handler.seek(0);
+		return handler;
+	}
+
+	/**
+	 * Builds a zip file of stored entries (without CRC, which ZipFile
+	 * doesn't check).
+	 */
+	private static byte[] createZip(String[] names) {
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		ByteArrayOutputStream central = new ByteArrayOutputStream();
+		for (int i = 0; i < names.length; i++) {
+			int offset = zip.size();
+			byte[] name = names[i].getBytes();
+			byte[] content = createContent(names[i]);
+			writeLe(zip, 0x04034b50, 4);
+			writeLe(zip, 10, 2); // version
+			writeLe(zip, 0, 2); // flags
+			writeLe(zip, 0, 2); // method
+			writeLe(zip, 0, 8); // time, date and crc
+			writeLe(zip, content.length, 4);
+			writeLe(zip, content.length, 4);
+			writeLe(zip, name.length, 2);
+			writeLe(zip, 0, 2);
+			zip.write(name, 0, name.length);
+			zip.write(content, 0, content.length);
+
+			writeLe(central, 0x02014b50, 4);
+			writeLe(central, 10, 2);
+			writeLe(central, 10, 2);
+			writeLe(central, 0, 2);
+			writeLe(central, 0, 2);
+			writeLe(central, 0, 8);
+			writeLe(central, content.length, 4);
+			writeLe(central, content.length, 4);
+			writeLe(central, name.length, 2);
+			writeLe(central, 0, 8); // extra, comment, disk and internal attributes
+			writeLe(central, 0, 4);
+			writeLe(central, offset, 4);
+			central.write(name, 0, name.length);
+		}
+		int centralOffset = zip.size();
+		byte[] c = central.toByteArray();
+		zip.write(c, 0, c.length);
+		writeLe(zip, 0x06054b50, 4);
+		writeLe(zip, 0, 4);
+		writeLe(zip, names.length, 2);
+		writeLe(zip, names.length, 2);
+		writeLe(zip, c.length, 4);
+		writeLe(zip, centralOffset, 4);
+		writeLe(zip, 0, 2);
+		return zip.toByteArray();
+	}
+
+	private static void writeLe(ByteArrayOutputStream os, int value, int size) {
+		for (int i = 0; i < size; i++) {
+			os.write((i < 4) ? (value >>> (i * 8)) : 0);
+		}
+	}
+
+}